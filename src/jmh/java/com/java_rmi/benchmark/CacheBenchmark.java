@@ -0,0 +1,100 @@
+package com.java_rmi.benchmark;
+
+import com.java_rmi.server.ResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the result caches under contention: eight threads looking up keys of which about a third are
+ * cached, and storing the results they miss. ResultCache is compared with the synchronized LRU
+ * LinkedHashMap the servers used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+public class CacheBenchmark {
+    private static final int CAPACITY = 150;
+    private static final int KEYS = 450;
+
+    @Param({"ResultCache", "SynchronizedLinkedHashMap"})
+    public String implementation;
+
+    private Cache cache;
+    private String[] keys;
+
+    /**
+     * The operations the benchmark needs from a cache.
+     */
+    private interface Cache {
+        Long get(String key);
+
+        void put(String key, Long value);
+    }
+
+    @Setup
+    public void setUp() {
+        if (implementation.equals("ResultCache")) {
+            ResultCache<String, Long> resultCache = new ResultCache<>("benchmark", CAPACITY);
+            cache = new Cache() {
+                public Long get(String key) {
+                    return resultCache.get(key);
+                }
+
+                public void put(String key, Long value) {
+                    resultCache.put(key, value);
+                }
+            };
+        } else {
+            Map<String, Long> map = Collections.synchronizedMap(new LinkedHashMap<String, Long>(CAPACITY, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > CAPACITY;
+                }
+            });
+            cache = new Cache() {
+                public Long get(String key) {
+                    return map.get(key);
+                }
+
+                public void put(String key, Long value) {
+                    map.put(key, value);
+                }
+            };
+        }
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "getNumberOfCities:Country " + i + ":" + (i * 1000);
+        }
+    }
+
+    @Benchmark
+    public Long getOrPut() {
+        String key = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        Long value = cache.get(key);
+        if (value == null) {
+            value = (long) key.length();
+            cache.put(key, value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,69 @@
+package com.java_rmi.benchmark;
+
+import com.java_rmi.data_conector.CSVReader;
+import com.java_rmi.data_conector.CountryIndex;
+import com.java_rmi.data_conector.GeoData;
+import com.java_rmi.data_conector.ParallelCSVReader;
+import com.java_rmi.data_conector.SyntheticDataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a synthetic dataset with CSVReader.readDataCSV and with ParallelCSVReader on all the
+ * processors, and building its country index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvLoadBenchmark {
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    private File csvFile;
+    private List<GeoData> data;
+
+    @Setup
+    public void writeDataset() throws IOException {
+        csvFile = File.createTempFile("synthetic-" + rows + "-", ".csv");
+        SyntheticDataset.writeCSV(rows, SyntheticDataset.DEFAULT_SEED, csvFile.getPath());
+        data = SyntheticDataset.generate(rows, SyntheticDataset.DEFAULT_SEED);
+    }
+
+    @TearDown
+    public void deleteDataset() {
+        csvFile.delete();
+    }
+
+    @Benchmark
+    public List<GeoData> readDataCSV() {
+        return CSVReader.readDataCSV(csvFile.getPath());
+    }
+
+    @Benchmark
+    public List<GeoData> readParallelCSV() throws IOException {
+        return new ParallelCSVReader(Runtime.getRuntime().availableProcessors()).read(csvFile.getPath());
+    }
+
+    @Benchmark
+    public CountryIndex buildCountryIndex() {
+        return CountryIndex.build(data);
+    }
+}
@@ -0,0 +1,109 @@
+package com.java_rmi.benchmark;
+
+import com.java_rmi.data_conector.GeoDataStore;
+import com.java_rmi.data_conector.SyntheticDataset;
+import com.java_rmi.server.ServerImplementation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every query method of ServerImplementation, called locally, on warm caches (the same query
+ * over and over) and on cold caches (the caches are emptied before every call). Both include the hand-off
+ * to the server's request executor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"10000", "1000000"})
+        public int rows;
+
+        ServerImplementation server;
+        final String country = SyntheticDataset.countryName(3);
+
+        @Setup
+        public void startServer() throws RemoteException {
+            GeoDataStore dataStore = new GeoDataStore(SyntheticDataset.generate(rows, SyntheticDataset.DEFAULT_SEED),
+                    "synthetic", 0);
+            server = new ServerImplementation("benchmark", 0, dataStore);
+        }
+
+        @TearDown
+        public void stopServer() throws RemoteException {
+            server.shutdown();
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    /**
+     * Empties the caches before every call. Setup at the invocation level costs a little time of its own,
+     * which is why the warm benchmarks use their own state.
+     */
+    @State(Scope.Benchmark)
+    public static class ColdCaches {
+        @Setup(Level.Invocation)
+        public void clearCaches(ServerState state) {
+            state.server.clearCaches();
+        }
+    }
+
+    @Benchmark
+    public long populationWarm(ServerState state) throws RemoteException {
+        return state.server.getPopulationOfCountry(state.country);
+    }
+
+    @Benchmark
+    public long populationCold(ServerState state, ColdCaches cold) throws RemoteException {
+        return state.server.getPopulationOfCountry(state.country);
+    }
+
+    @Benchmark
+    public int citiesWarm(ServerState state) throws RemoteException {
+        return state.server.getNumberOfCities(state.country, 10000);
+    }
+
+    @Benchmark
+    public int citiesCold(ServerState state, ColdCaches cold) throws RemoteException {
+        return state.server.getNumberOfCities(state.country, 10000);
+    }
+
+    @Benchmark
+    public int countriesWarm(ServerState state) throws RemoteException {
+        return state.server.getNumberOfCountries(5, 100000);
+    }
+
+    @Benchmark
+    public int countriesCold(ServerState state, ColdCaches cold) throws RemoteException {
+        return state.server.getNumberOfCountries(5, 100000);
+    }
+
+    @Benchmark
+    public int countriesInRangeWarm(ServerState state) throws RemoteException {
+        return state.server.getNumberOfCountries(5, 100000, 1000000);
+    }
+
+    @Benchmark
+    public int countriesInRangeCold(ServerState state, ColdCaches cold) throws RemoteException {
+        return state.server.getNumberOfCountries(5, 100000, 1000000);
+    }
+}
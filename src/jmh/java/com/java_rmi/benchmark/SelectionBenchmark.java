@@ -0,0 +1,92 @@
+package com.java_rmi.benchmark;
+
+import com.java_rmi.load_balancer.LeastOutstandingRequestsStrategy;
+import com.java_rmi.load_balancer.LoadBalancerServer;
+import com.java_rmi.load_balancer.LoadSnapshot;
+import com.java_rmi.load_balancer.PowerOfTwoChoicesStrategy;
+import com.java_rmi.load_balancer.SelectionStrategy;
+import com.java_rmi.load_balancer.ZoneRuleStrategy;
+import com.java_rmi.server.ServerAllocation;
+import com.java_rmi.server.ServerLauncher;
+import com.java_rmi.server.ServerLoad;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the server selection of the load balancer: the selection strategies alone, and the whole
+ * allocation path of LoadBalancerServer from one thread and from eight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SelectionBenchmark {
+    @Param({"zone", "p2c", "lor"})
+    public String strategy;
+
+    private SelectionStrategy selectionStrategy;
+    private LoadSnapshot snapshot;
+    private LoadBalancerServer loadBalancer;
+
+    @Setup
+    public void setUp() throws RemoteException {
+        switch (strategy) {
+            case "p2c":
+                selectionStrategy = new PowerOfTwoChoicesStrategy();
+                break;
+            case "lor":
+                selectionStrategy = new LeastOutstandingRequestsStrategy();
+                break;
+            default:
+                selectionStrategy = new ZoneRuleStrategy();
+        }
+        // Server3 is overloaded, so zones 1 to 5 go through different tiers
+        snapshot = LoadSnapshot.of(ServerLauncher.defaultServers()).withLoad("Server3", new ServerLoad(20, 12));
+
+        loadBalancer = new LoadBalancerServer(ServerLauncher.defaultServers(), selectionStrategy);
+        loadBalancer.reportLoad("Server3", new ServerLoad(20, 12));
+    }
+
+    @TearDown
+    public void tearDown() throws RemoteException {
+        UnicastRemoteObject.unexportObject(loadBalancer, true);
+    }
+
+    private static int randomZone() {
+        return ThreadLocalRandom.current().nextInt(1, 6);
+    }
+
+    @Benchmark
+    public int select() {
+        return selectionStrategy.select(snapshot, randomZone());
+    }
+
+    @Benchmark
+    public ServerAllocation requestServerAllocation() throws RemoteException {
+        return loadBalancer.requestServerAllocation(randomZone());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ServerAllocation requestServerAllocationContended() throws RemoteException {
+        return loadBalancer.requestServerAllocation(randomZone());
+    }
+}
@@ -1,20 +1,22 @@
 package com.java_rmi.client;
 
 import com.java_rmi.load_balancer.LoadBalancerInterface;
+import com.java_rmi.server.CacheStats;
+import com.java_rmi.server.ConsistentHashRing;
+import com.java_rmi.server.Query;
+import com.java_rmi.server.QueryResult;
+import com.java_rmi.server.Server;
 import com.java_rmi.server.ServerAllocation;
 import com.java_rmi.server.ServerInterface;
 
 import javax.swing.*;
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 /**
  * The `Client` class represents a client application that interacts with a load balancer
@@ -22,124 +24,121 @@ import java.util.Map;
  * It reads input data, performs remote method calls on servers, and manages client-side caching.
  */
 public class Client {
-    // Client-side cache for method results
-    private static Map<String, Long> clientCache;
-    private static Map<String, Long> serverCache;
+    public static final String AFFINITY_PROPERTY = "rmi.client.affinity";
+
+    // Client-side caches for method results, stamped with the dataset version of the servers
+    private static NearCache clientCache;
+    private static NearCache serverCache;
+    // Output files of the result log writer, as bits of a file mask
+    private static final int CLIENT_CACHE_OUTPUT = 1;
+    private static final int NAIVE_SERVER_OUTPUT = 1 << 1;
+    private static final int SERVER_CACHE_OUTPUT = 1 << 2;
     // Maximum cache size
-    private static final int CLIENT_CACHE_LIMIT = 45;
     private static final int SERVER_CACHE_LIMIT = 150;
-    private static Map<String, Long> executionTimes;
+    // Pool of server stubs, so the registry is not asked on every call
+    private static final ServerStubPool stubPool = new ServerStubPool();
+
+    private LoadBalancerInterface loadBalancer;
+    private LeaseManager leaseManager; // Null unless every line asks the load balancer
+    private boolean affinity; // Whether every line asks the load balancer for the server of its query key
+    private QueryBatcher batcher; // Null unless the server calls are batched
+    private ResultLogWriter output; // Writes the client_cache, naive_server and server_cache files off the request path
+    private int cacheEnabler;
+    private LatencyRecorder latencies;
+    private long startNanos;
 
     /**
      * Calls a remote method on a server and measures execution time.
      *
-     * @param methodName The name of the method to invoke.
-     * @return The result of the remote method call.
+     * @param traceLine        The line of the input file to answer.
+     * @param serverAllocation The server allocated by the load balancer.
+     * @return The result of the remote method call with the time the server spent waiting for and executing it,
+     * or null if the call failed.
      */
-    private static long callServerMethod(String methodName, String[] args) {
+    private static QueryResult callServerMethod(TraceLine traceLine, ServerAllocation serverAllocation) {
         try {
-            long startTime = System.currentTimeMillis();
-            long result = 0;
-
             /**
              * 2) The client should lookup server objects using rmi registry
-             * Initialize RMI registry connection to the Server
+             * The stub of the server allocated by the load balancer is looked up once and then pooled
              */
-            Registry registry = LocateRegistry.getRegistry();
-            ServerInterface server = (ServerInterface) registry.lookup("LoadServer");
-
-            // Call the appropriate server method based on the methodName and pass the arguments
-            if (methodName.equals("getPopulationofCountry")) {
-                if (args.length == 1) {
-                    result = server.getPopulationOfCountry(args[0]);
-                }
-            } else if (methodName.equals("getNumberofCities")) {
-                if (args.length == 2) {
-                    result = server.getNumberOfCities(args[0], Integer.parseInt(args[1]));
-                }
-            } else if (methodName.equals("getNumberofCountries")) {
-                if (args.length == 2) {
-                    result = server.getNumberOfCountries(
-                            server.getNumberOfCities(args[0], Integer.parseInt("0" + args[1])),
-                            Integer.parseInt("0" + args[1])
-                    );
-                } else if (args.length == 3) {
-                    result = server.getNumberOfCountries(
-                            server.getNumberOfCities(args[0], Integer.parseInt("0" + args[1])),
-                            Integer.parseInt("0" + args[1]),
-                            Integer.parseInt("0" + args[2])
-                    );
-                }
+            // Call the server method of the line, which the server times
+            Query query = traceLine.toQuery();
+            if (query == null) {
+                return new QueryResult(0, 0, 0);
             }
-
-            long endTime = System.currentTimeMillis();
-            long executionTime = endTime - startTime;
-            long turnAroundTime = executionTime; // Calculate turnaround time and waiting time
-            long waitingTime = 0;
-
-            return result;
+            return stubPool.call(serverAllocation, server -> server.executeTimed(query));
 
         } catch (RemoteException | NotBoundException e) {
             System.out.println("Error calling server method!!!");
             e.printStackTrace();
-            return -1;
+            return null;
         }
     }
 
     /**
-     * Calculates and prints average execution times for methods.
-     *
-     * @throws IOException If an error occurs while writing to output files.
+     * Calculates and prints the turnaround, execution and waiting time percentiles of the server calls.
      */
-    private static void calculateAndPrintAverageTimes() throws IOException {
-        long allTurnAroundTime = 0;
-        long allExecutionTime = 0;
-
-        // Iterate through the execution times
-        for (Map.Entry<String, Long> entry : executionTimes.entrySet()) {
-            String methodName = entry.getKey();
-            long executionTime = entry.getValue();
-
-            // Calculate total turnaround time and execution time
-            allTurnAroundTime += executionTime;
-            allExecutionTime += executionTime;
+    private void calculateAndPrintAverageTimes() {
+        LatencyRecorder.Latencies all = latencies.getAll();
+        System.out.println(String.format("Average turnaround time: %.3f ms \nAverage execution time: %.3f ms",
+                all.getTurnaround().getMean() / 1e6, all.getExecution().getMean() / 1e6));
+        latencies.print(System.out, System.nanoTime() - startNanos);
+        System.out.println(stubPool);
+    }
 
-            System.out.println("Method name: " + methodName + ", execution Time: " + executionTime + " ms");
+    /**
+     * Prints the cache statistics of every registered server, to compare the hit rates of the routing modes.
+     */
+    private void printServerCacheStats() {
+        try {
+            long hits = 0;
+            long lookups = 0;
+            for (Server server : loadBalancer.getServers()) {
+                ServerAllocation serverAllocation = new ServerAllocation(server.getServerName(), server.getServerHost(), server.getServerPort());
+                for (CacheStats cacheStats : stubPool.call(serverAllocation, ServerInterface::getCacheStats)) {
+                    System.out.println(server.getServerName() + " " + cacheStats);
+                    hits += cacheStats.getHits();
+                    lookups += cacheStats.getHits() + cacheStats.getMisses();
+                }
+            }
+            System.out.println("Server cache hit rate" + (affinity ? " with" : " without") + " affinity routing: "
+                    + (lookups == 0 ? 0 : 100.0 * hits / lookups) + "%");
+        } catch (RemoteException | NotBoundException e) {
+            System.out.println("Error reading the server cache statistics!!!");
         }
+    }
 
-        // Calculate average turnaround time and execution time
-        double avgTurnAroundTime = (double) allTurnAroundTime / executionTimes.size();
-        double avgExecutionTime = (double) allExecutionTime / executionTimes.size();
-
-        System.out.println("Average turnaround time: " + avgTurnAroundTime + " ms " + "\nAverage execution time: " + avgExecutionTime + " ms");
+    /**
+     * Asks the registered servers for the version of their dataset.
+     *
+     * @return The latest version of the dataset among the servers.
+     */
+    private long latestDatasetVersion() throws RemoteException, NotBoundException {
+        long latestVersion = 0;
+        for (Server server : loadBalancer.getServers()) {
+            ServerAllocation serverAllocation = new ServerAllocation(server.getServerName(), server.getServerHost(), server.getServerPort());
+            latestVersion = Math.max(latestVersion, stubPool.call(serverAllocation, ServerInterface::getDatasetVersion));
+        }
+        return latestVersion;
     }
 
     public void clientStarter(){
         try {
             // Initialize RMI registry connection to the LoadBalancer
             Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            LoadBalancerInterface loadBalancer = (LoadBalancerInterface) registry.lookup("LoadBalancer");
-
-            // Initialize client-side cache
-            clientCache = new LinkedHashMap<>(CLIENT_CACHE_LIMIT, 0.75f, true) {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    // Remove the least recently used entry when the cache size exceeds the limit
-                    return size() > CLIENT_CACHE_LIMIT;
-                }
-            };
+            loadBalancer = (LoadBalancerInterface) registry.lookup("LoadBalancer");
 
-            // Initialize server cache
-            serverCache = new LinkedHashMap<>(SERVER_CACHE_LIMIT, 0.75f, true) {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    // Remove the least recently used entry when the cache size exceeds the limit
-                    return size() > SERVER_CACHE_LIMIT;
-                }
-            };
+            // Initialize client-side cache and server cache, which drop the results of older dataset versions
+            clientCache = NearCache.fromSystemProperties();
+            serverCache = NearCache.fromSystemProperties("server", SERVER_CACHE_LIMIT);
+            clientCache.startPolling(() -> {
+                long latestVersion = latestDatasetVersion();
+                serverCache.observeVersion(latestVersion);
+                return latestVersion;
+            }, Long.getLong(NearCache.POLL_MILLIS_PROPERTY, NearCache.DEFAULT_POLL_MILLIS));
 
-            // Initialize map to store execution times
-            executionTimes = new LinkedHashMap<>();
+            // Initialize the latency histograms of the server calls
+            latencies = new LatencyRecorder();
 
             // Input and output file paths
             String inputFile = "src\\main\\java\\com\\java_rmi\\client\\exercise_1_input.txt";
@@ -148,110 +147,203 @@ public class Client {
             String naiveServerOutputFile = "src\\main\\java\\com\\java_rmi\\naive_server.txt"; // Specify the output file path for the naive server
             String serverCacheOutputFile = "src\\main\\java\\com\\java_rmi\\server_cache.txt"; // Specify the output file path for the server with caching
 
-            // Initialize FileReader and FileWriter
+            // Initialize FileReader and the output writer, in the format of -Drmi.client.output.format
             BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-            FileWriter clientCacheWriter = new FileWriter(outputFile);
-            FileWriter naiveServerWriter = new FileWriter(naiveServerOutputFile);
-            FileWriter serverCacheWriter = new FileWriter(serverCacheOutputFile);
-
-            String selectedLine;
-            long startTime = System.currentTimeMillis();
-
-            int cacheEnabler = Integer.parseInt("0" + JOptionPane.showInputDialog("1. Enable Client-Side Cache.\n2. Disable Client-Side Cache."));
-
-            while ((selectedLine = reader.readLine()) != null) {
-                // Parse each line of the input file
-                String[] elementsLine = selectedLine.split(" ");
-                if (elementsLine.length >= 2) {
-                    String methodName = elementsLine[0];
-                    String[] argsArray = new String[elementsLine.length - 2];
-                    System.arraycopy(elementsLine, 1, argsArray, 0, elementsLine.length - 2);
-                    int zone = Integer.parseInt(elementsLine[elementsLine.length - 1].substring(5));
-
-                    String cacheKey = methodName + String.join(":", argsArray);
+            output = ResultLogWriter.fromSystemProperties(outputFile, naiveServerOutputFile, serverCacheOutputFile);
 
-                    ServerAllocation serverAllocation = loadBalancer.requestServerAllocation(zone);
+            // Send the server calls in batches when -Drmi.client.batchSize is set
+            batcher = QueryBatcher.fromSystemProperties(stubPool);
+            // Lease the servers for several lines unless -Drmi.client.leases=false
+            leaseManager = LeaseManager.fromSystemProperty(loadBalancer);
+            // Route by query key instead when -Drmi.client.affinity=true
+            affinity = Boolean.getBoolean(AFFINITY_PROPERTY);
 
+            String selectedLine;
+            startNanos = System.nanoTime();
 
-                    if (cacheEnabler == 1) {
-                        if (clientCache.containsKey(cacheKey)) {
-
-                            long cachedResult1 = clientCache.get(cacheKey);
-                            String resultTime1 = " (data client cached)";
-                            String outputSelectedLine = cachedResult1 + " " + selectedLine + " " + resultTime1 + ", processed by Server " + serverAllocation.getServerName() + ")\n";
-                            clientCacheWriter.write(outputSelectedLine);
-                        } else {
-                            if (serverCache.containsKey(cacheKey)) {
-                                long cachedResult1 = serverCache.get(cacheKey);
-                                String resultTime1 = " (data server cached)";
-                                String outputSelectedLine = cachedResult1 + " " + selectedLine + " " + resultTime1 + ", processed by Server " + serverAllocation.getServerName() + ")\n";
-                                serverCacheWriter.write(outputSelectedLine);
-                                System.out.println("The server contains cache.");
-                            } else {
-                                // Make a remote method call to the LoadBalancer to get server assignment
-
-                                long result1 = callServerMethod(methodName, argsArray);
-
-                                long endTime = System.currentTimeMillis();
-                                long executionTime = endTime - startTime;
-                                long turnAroundTime = executionTime;
-                                long waitingTime = 0;
-
-                                String resultTime1 = "turnaround time: " + turnAroundTime + " ms, execution time: " + executionTime + " ms, waiting time: " + waitingTime + " ms)";
-
-                                String outputSelectedLine = result1 + " " + selectedLine + " " + resultTime1 + ", processed by Server " + serverAllocation.getServerName() + ")\n";
-
-                                // Write the output selectedLine to the file
-                                clientCacheWriter.write(outputSelectedLine);
-                                naiveServerWriter.write(outputSelectedLine);
-
-                                clientCache.put(cacheKey, result1);
-                                serverCache.put(cacheKey, result1);
+            cacheEnabler = Integer.parseInt("0" + JOptionPane.showInputDialog("1. Enable Client-Side Cache.\n2. Disable Client-Side Cache."));
 
-                            }
+            // Replay the lines concurrently when -Drmi.client.concurrency is set, writing the output in input order
+            ConcurrentTraceReplayer replayer = batcher == null ? ConcurrentTraceReplayer.fromSystemProperties() : null;
+            if (replayer != null) {
+                replayer.replay(reader, line -> {
+                    PendingLine pendingLine = resolveLine(line);
+                    if (pendingLine != null) {
+                        callServer(pendingLine);
+                    }
+                    return pendingLine;
+                }, (sequence, pendingLine) -> pendingLine.handler.onResult(pendingLine.result));
+            } else {
+                while ((selectedLine = reader.readLine()) != null) {
+                    processLine(selectedLine);
+                }
+            }
+            if (batcher != null) {
+                batcher.flush();
+                System.out.println("Batched server calls: " + batcher.getBatchCalls() + ", failed: " + batcher.getFailedBatches());
+            }
 
-                        }
-                    } else if (cacheEnabler == 2) {
-                        if (serverCache.containsKey(cacheKey)) {
+            // Close the reader and writer
+            reader.close();
+            output.close();
+            System.out.println(output);
+            clientCache.stopPolling();
+            System.out.println(clientCache);
+            System.out.println(serverCache);
 
-                            long cachedResult1 = serverCache.get(cacheKey);
-                            String resultTime1 = " (data server cached)";
-                            String outputSelectedLine = cachedResult1 + " " + selectedLine + " " + resultTime1 + ", processed by Server " + serverAllocation.getServerName() + ")\n";
-                            serverCacheWriter.write(outputSelectedLine);
-                            System.out.println("The server contains cache.");
-                        } else {
-                            //                        Make a remote method call to the LoadBalancer to get server assignment
+            calculateAndPrintAverageTimes();
+            if (leaseManager != null && !affinity) {
+                System.out.println(leaseManager);
+            }
+            printServerCacheStats();
 
-                            long result1 = callServerMethod(methodName, argsArray);
+        } catch (Exception e) {
+            System.out.println("Output ready!!!");
+        }
+    }
 
-                            long endTime = System.currentTimeMillis();
-                            long executionTime = endTime - startTime;
-                            long turnAroundTime = executionTime;
-                            long waitingTime = 0;
+    /**
+     * Processes one line of the input file: answers it from the client caches or calls the allocated
+     * server, then writes the output line.
+     *
+     * @param selectedLine The line of the input file.
+     */
+    private void processLine(String selectedLine) throws IOException, NotBoundException {
+        PendingLine pendingLine = resolveLine(selectedLine);
+        if (pendingLine == null) {
+            return;
+        }
 
-                            String resultTime1 = "turnaround time: " + turnAroundTime + " ms, execution time: " + executionTime + " ms, waiting time: " + waitingTime + " ms)";
+        if (batcher != null) {
+            // Queue the server call in the current batch, keeping the cached lines in order with it
+            if (pendingLine.traceLine != null) {
+                batcher.add(pendingLine.serverAllocation, pendingLine.traceLine.toQuery(), pendingLine.handler);
+            } else {
+                batcher.addResolved(pendingLine.result, pendingLine.handler);
+            }
+        } else {
+            callServer(pendingLine);
+            pendingLine.handler.onResult(pendingLine.result);
+        }
+    }
 
-                            String outputSelectedLine = result1 + " " + selectedLine + " " + resultTime1 + ", processed by Server " + serverAllocation.getServerName() + ")\n";
+    /**
+     * Requests a server for a line and looks its result up in the client caches. The output of the line
+     * is left to the returned handler, so that lines resolved concurrently can be written in input order.
+     *
+     * @param selectedLine The line of the input file.
+     * @return The pending output of the line, or null if the line produces no output.
+     */
+    private PendingLine resolveLine(String selectedLine) throws RemoteException {
+        // Parse each line of the input file
+        TraceLine traceLine = TraceLine.parse(selectedLine);
+        if (traceLine == null) {
+            return null;
+        }
+        String cacheKey = traceLine.getCacheKey();
+
+        ServerAllocation serverAllocation;
+        if (affinity) {
+            // Route the query to the server that answered it before, if the zone rules allow it
+            serverAllocation = loadBalancer.requestServerAllocation(traceLine.getZone(), ConsistentHashRing.hash(cacheKey));
+        } else if (leaseManager != null) {
+            // Reuse the zone's server lease, so the load balancer is only asked when the lease ends
+            serverAllocation = leaseManager.acquire(traceLine.getZone());
+        } else {
+            serverAllocation = loadBalancer.requestServerAllocation(traceLine.getZone());
+        }
 
-                            naiveServerWriter.write(outputSelectedLine);
-                            serverCache.put(cacheKey, result1);
-                        }
+        Long cachedResult1 = cacheEnabler == 1 ? clientCache.get(cacheKey) : null;
+        if (cachedResult1 != null) {
+            return new PendingLine(cachedResult1, null, null, result -> output.write(CLIENT_CACHE_OUTPUT,
+                    ResultRecord.cached(ResultRecord.Source.CLIENT_CACHE, result, traceLine, serverAllocation.getServerName())));
+        }
 
-                    }
+        cachedResult1 = cacheEnabler == 1 || cacheEnabler == 2 ? serverCache.get(cacheKey) : null;
+        if (cachedResult1 != null) {
+            return new PendingLine(cachedResult1, null, null, result -> {
+                output.write(SERVER_CACHE_OUTPUT, ResultRecord.cached(ResultRecord.Source.SERVER_CACHE, result,
+                        traceLine, serverAllocation.getServerName()));
+                System.out.println("The server contains cache.");
+            });
+        }
 
+        if (cacheEnabler == 1 || cacheEnabler == 2) {
+            PendingLine pendingLine = new PendingLine(0, traceLine, serverAllocation);
+            pendingLine.handler = result1 -> {
+                // The turnaround runs from the line being read to its result, including batching and allocation
+                long turnAroundTime = System.nanoTime() - pendingLine.startNanos;
+                long executionTime = pendingLine.executionNanos;
+                long waitingTime = pendingLine.waitingNanos;
+                latencies.record(traceLine.getMethodName(), traceLine.getZone(), turnAroundTime, executionTime, waitingTime);
+
+                // Queue the output line, formatted by the writer thread
+                ResultRecord record = ResultRecord.answered(result1, traceLine, serverAllocation.getServerName(),
+                        turnAroundTime, executionTime, waitingTime);
+                output.write(cacheEnabler == 1 ? CLIENT_CACHE_OUTPUT | NAIVE_SERVER_OUTPUT : NAIVE_SERVER_OUTPUT, record);
+
+                // A failed call has no result to reuse
+                if (pendingLine.failed || result1 < 0) {
+                    return;
+                }
+                if (cacheEnabler == 1) {
+                    clientCache.put(cacheKey, result1, pendingLine.datasetVersion);
+                }
+                serverCache.put(cacheKey, result1, pendingLine.datasetVersion);
+            };
+            return pendingLine;
+        }
+        return null;
+    }
 
+    /**
+     * Makes the remote method call of a line that was not found in the caches.
+     */
+    private void callServer(PendingLine pendingLine) {
+        if (pendingLine.traceLine != null) {
+            QueryResult queryResult = callServerMethod(pendingLine.traceLine, pendingLine.serverAllocation);
+            if (queryResult == null) {
+                // The call failed: the line is written with result -1 and not cached
+                pendingLine.result = -1;
+                pendingLine.failed = true;
+                if (leaseManager != null) {
+                    // The next line of the zone gets a new server
+                    leaseManager.invalidate(pendingLine.serverAllocation);
                 }
+                return;
             }
-            // Close the reader and writer
-            reader.close();
-            clientCacheWriter.close();
-            naiveServerWriter.close();
-            serverCacheWriter.close();
+            pendingLine.result = queryResult.getResult();
+            pendingLine.executionNanos = queryResult.getExecutionNanos();
+            pendingLine.waitingNanos = queryResult.getWaitNanos();
+            pendingLine.datasetVersion = queryResult.getDatasetVersion();
+            clientCache.observeVersion(pendingLine.datasetVersion);
+            serverCache.observeVersion(pendingLine.datasetVersion);
+        }
+    }
 
-            calculateAndPrintAverageTimes();
+    /**
+     * The result of a line of the input file, waiting to be written.
+     */
+    private static final class PendingLine {
+        private final TraceLine traceLine; // Null if the result came from a cache
+        private final ServerAllocation serverAllocation;
+        private final long startNanos = System.nanoTime();
+        private QueryBatcher.ResultHandler handler;
+        private long result;
+        private long executionNanos; // Time the server spent executing the call, 0 for batched calls
+        private long waitingNanos; // Time the call waited in the server's queue, 0 for batched calls
+        private long datasetVersion; // Dataset version of the result, 0 for batched calls
+        private boolean failed; // Whether the server call failed
+
+        PendingLine(long result, TraceLine traceLine, ServerAllocation serverAllocation, QueryBatcher.ResultHandler handler) {
+            this(result, traceLine, serverAllocation);
+            this.handler = handler;
+        }
 
-        } catch (Exception e) {
-            System.out.println("Output ready!!!");
+        PendingLine(long result, TraceLine traceLine, ServerAllocation serverAllocation) {
+            this.result = result;
+            this.traceLine = traceLine;
+            this.serverAllocation = serverAllocation;
         }
     }
 
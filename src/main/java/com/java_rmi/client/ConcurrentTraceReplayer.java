@@ -0,0 +1,165 @@
+package com.java_rmi.client;
+
+import com.java_rmi.server.RequestExecutor;
+
+import java.io.BufferedReader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The ConcurrentTraceReplayer class replays the lines of an input file with several requests in flight at
+ * once. Every line gets a sequence number, is processed on a worker thread and its result goes through a
+ * ReorderBuffer, so the results still reach the sink in input order.
+ *
+ * At most maxInFlight lines are processed or waiting to be written at any time, and optionally at most
+ * zoneConcurrency lines of the same zone are processed at once. A line waits for its zone on its worker
+ * thread, so the reading thread keeps handing out the lines of the other zones.
+ */
+public class ConcurrentTraceReplayer {
+    public static final String CONCURRENCY_PROPERTY = "rmi.client.concurrency";
+    public static final String ZONE_CONCURRENCY_PROPERTY = "rmi.client.zoneConcurrency";
+    public static final String VIRTUAL_THREADS_PROPERTY = "rmi.client.virtualThreads";
+
+    private final int maxInFlight;
+    private final int zoneConcurrency;
+    private final boolean virtualThreads;
+    private final Map<Integer, Semaphore> zonePermits = new ConcurrentHashMap<>();
+
+    /**
+     * Processes one line of the input file.
+     * @param <T> the type of the result.
+     */
+    public interface LineProcessor<T> {
+        /**
+         * @param line the line of the input file.
+         * @return the result of the line, or null if it has none.
+         */
+        T process(String line) throws Exception;
+    }
+
+    /**
+     * Creates a replayer.
+     * @param maxInFlight     the number of lines processed or waiting to be written at once.
+     * @param zoneConcurrency the number of lines of one zone processed at once, or 0 for no limit.
+     * @param virtualThreads  whether to process the lines on virtual threads, when the JVM supports them.
+     */
+    public ConcurrentTraceReplayer(int maxInFlight, int zoneConcurrency, boolean virtualThreads) {
+        this.maxInFlight = maxInFlight;
+        this.zoneConcurrency = zoneConcurrency;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Creates a replayer configured from the rmi.client.concurrency, rmi.client.zoneConcurrency and
+     * rmi.client.virtualThreads system properties.
+     * @return the replayer, or null if the client should replay the lines one at a time.
+     */
+    public static ConcurrentTraceReplayer fromSystemProperties() {
+        int concurrency = Integer.getInteger(CONCURRENCY_PROPERTY, 1);
+        if (concurrency < 2) {
+            return null;
+        }
+        return new ConcurrentTraceReplayer(concurrency, Integer.getInteger(ZONE_CONCURRENCY_PROPERTY, 0),
+                Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY));
+    }
+
+    /**
+     * Replays every line of the reader and hands the results to the sink in input order. Replay stops at
+     * the first line whose processing fails.
+     * @param reader    the input file.
+     * @param processor processes one line, on a worker thread.
+     * @param sink      receives the results in input order, one at a time.
+     * @return the number of lines replayed.
+     * @throws Exception the first failure of a line or of the sink.
+     */
+    public <T> long replay(BufferedReader reader, LineProcessor<T> processor, ReorderBuffer.Sink<T> sink) throws Exception {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ReorderBuffer<T> reorderBuffer = new ReorderBuffer<>((sequence, result) -> {
+            try {
+                if (result != null) {
+                    sink.accept(sequence, result);
+                }
+            } finally {
+                // A line stops counting against the in-flight limit once it has been written
+                inFlight.release();
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxInFlight, threadFactory());
+        long sequence = 0;
+        try {
+            String line;
+            while (failure.get() == null && (line = reader.readLine()) != null) {
+                inFlight.acquire();
+                Semaphore zonePermit = zonePermitFor(line);
+
+                long lineSequence = sequence++;
+                String selectedLine = line;
+                executor.execute(() -> {
+                    T result = null;
+                    try {
+                        // Waiting for the zone here, not on the reading thread, lets the lines of the other
+                        // zones go on while one zone is saturated
+                        if (zonePermit != null) {
+                            zonePermit.acquire();
+                        }
+                        try {
+                            result = processor.process(selectedLine);
+                        } finally {
+                            if (zonePermit != null) {
+                                zonePermit.release();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    reorderBuffer.complete(lineSequence, result);
+                });
+            }
+            reorderBuffer.awaitDelivered(sequence);
+        } finally {
+            executor.shutdown();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return sequence;
+    }
+
+    private Semaphore zonePermitFor(String line) {
+        if (zoneConcurrency <= 0) {
+            return null;
+        }
+        TraceLine traceLine;
+        try {
+            traceLine = TraceLine.parse(line);
+        } catch (RuntimeException e) {
+            return null; // The processor reports malformed lines
+        }
+        if (traceLine == null) {
+            return null;
+        }
+        return zonePermits.computeIfAbsent(traceLine.getZone(), zone -> new Semaphore(zoneConcurrency));
+    }
+
+    private ThreadFactory threadFactory() {
+        ThreadFactory threadFactory = virtualThreads ? RequestExecutor.virtualThreadFactory() : null;
+        if (threadFactory != null) {
+            return threadFactory;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "client-replay-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
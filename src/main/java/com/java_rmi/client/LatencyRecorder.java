@@ -0,0 +1,110 @@
+package com.java_rmi.client;
+
+import com.java_rmi.server.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The LatencyRecorder class collects the turnaround, execution and waiting times of the server calls, per
+ * method and per zone, and prints their percentiles.
+ *
+ * The turnaround time of a call runs from the moment it should have been sent until its result arrived,
+ * the execution time is the time the server spent computing it, and the waiting time is the time it
+ * waited in the server's queue for a worker.
+ */
+public class LatencyRecorder {
+    private final Map<String, Latencies> byMethod = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Latencies> byZone = new ConcurrentSkipListMap<>();
+    private final Latencies all = new Latencies();
+    private final Map<String, Long> errors = new ConcurrentHashMap<>();
+
+    /**
+     * The histograms of one method or zone.
+     */
+    public static final class Latencies {
+        private final LatencyHistogram turnaround = new LatencyHistogram();
+        private final LatencyHistogram execution = new LatencyHistogram();
+        private final LatencyHistogram waiting = new LatencyHistogram();
+
+        private void record(long turnaroundNanos, long executionNanos, long waitingNanos) {
+            turnaround.record(turnaroundNanos);
+            execution.record(executionNanos);
+            waiting.record(waitingNanos);
+        }
+
+        public LatencyHistogram getTurnaround() {
+            return turnaround;
+        }
+
+        public LatencyHistogram getExecution() {
+            return execution;
+        }
+
+        public LatencyHistogram getWaiting() {
+            return waiting;
+        }
+    }
+
+    /**
+     * Records a server call.
+     * @param methodName      the method of the call.
+     * @param zone            the zone of the client.
+     * @param turnaroundNanos the time from the intended send of the call until its result arrived.
+     * @param executionNanos  the time the server spent executing the call.
+     * @param waitingNanos    the time the call waited in the server's queue.
+     */
+    public void record(String methodName, int zone, long turnaroundNanos, long executionNanos, long waitingNanos) {
+        byMethod.computeIfAbsent(methodName, m -> new Latencies()).record(turnaroundNanos, executionNanos, waitingNanos);
+        byZone.computeIfAbsent(zone, z -> new Latencies()).record(turnaroundNanos, executionNanos, waitingNanos);
+        all.record(turnaroundNanos, executionNanos, waitingNanos);
+    }
+
+    /**
+     * Counts a failed server call.
+     * @param methodName the method of the call.
+     */
+    public void recordError(String methodName) {
+        errors.merge(methodName, 1L, Long::sum);
+    }
+
+    public Map<String, Latencies> getByMethod() {
+        return byMethod;
+    }
+
+    public Map<Integer, Latencies> getByZone() {
+        return byZone;
+    }
+
+    public Latencies getAll() {
+        return all;
+    }
+
+    /**
+     * Prints the percentiles and the throughput of every method and zone.
+     * @param out          the stream to print to.
+     * @param elapsedNanos the duration of the run, to compute the throughput.
+     */
+    public void print(PrintStream out, long elapsedNanos) {
+        for (Map.Entry<String, Latencies> entry : byMethod.entrySet()) {
+            print(out, "Method " + entry.getKey(), entry.getValue(), elapsedNanos);
+        }
+        for (Map.Entry<Integer, Latencies> entry : byZone.entrySet()) {
+            print(out, "Zone " + entry.getKey(), entry.getValue(), elapsedNanos);
+        }
+        print(out, "All calls", all, elapsedNanos);
+        if (!errors.isEmpty()) {
+            out.println("Failed calls: " + errors);
+        }
+    }
+
+    private static void print(PrintStream out, String name, Latencies latencies, long elapsedNanos) {
+        long calls = latencies.turnaround.getCount();
+        out.println(String.format("%s: %d calls, %.1f calls/s", name, calls, elapsedNanos == 0 ? 0 : calls * 1e9 / elapsedNanos));
+        out.println("  turnaround time: " + latencies.turnaround);
+        out.println("  execution time:  " + latencies.execution);
+        out.println("  waiting time:    " + latencies.waiting);
+    }
+}
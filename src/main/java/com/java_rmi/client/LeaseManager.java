@@ -0,0 +1,137 @@
+package com.java_rmi.client;
+
+import com.java_rmi.load_balancer.LoadBalancerInterface;
+import com.java_rmi.server.ServerAllocation;
+import com.java_rmi.server.ServerLease;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LeaseManager class holds one server lease per client zone and hands out its allocation until the
+ * lease has been used for its number of requests or its time is up. Only then is the load balancer asked
+ * for a new lease, by one thread per zone while the others wait for it.
+ *
+ * A lease also ends early when a call to its server fails, so the next request of the zone gets a server
+ * chosen on fresh load information.
+ */
+public class LeaseManager {
+    public static final String LEASES_PROPERTY = "rmi.client.leases";
+
+    private final LoadBalancerInterface loadBalancer;
+    private final Map<Integer, ZoneLease> leases = new ConcurrentHashMap<>();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder leaseRequests = new LongAdder();
+
+    /**
+     * Creates a lease manager.
+     * @param loadBalancer the load balancer to request the leases from.
+     */
+    public LeaseManager(LoadBalancerInterface loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    /**
+     * Creates a lease manager, unless leases are disabled with -Drmi.client.leases=false.
+     * @param loadBalancer the load balancer to request the leases from.
+     * @return the lease manager, or null if every request should ask the load balancer.
+     */
+    public static LeaseManager fromSystemProperty(LoadBalancerInterface loadBalancer) {
+        if (!Boolean.parseBoolean(System.getProperty(LEASES_PROPERTY, "true"))) {
+            return null;
+        }
+        return new LeaseManager(loadBalancer);
+    }
+
+    /**
+     * Returns the server of the zone's lease, after requesting a new lease if the current one has ended.
+     * @param zone the zone of the client.
+     * @return the allocated server.
+     * @throws RemoteException if the load balancer cannot be reached.
+     */
+    public ServerAllocation acquire(int zone) throws RemoteException {
+        allocations.increment();
+        ZoneLease zoneLease = leases.computeIfAbsent(zone, key -> new ZoneLease());
+        while (true) {
+            ActiveLease lease = zoneLease.current;
+            if (lease != null && lease.tryUse()) {
+                return lease.serverAllocation;
+            }
+            synchronized (zoneLease) {
+                // Another thread may have renewed the lease while this one waited
+                if (zoneLease.current == lease) {
+                    leaseRequests.increment();
+                    ActiveLease renewed = new ActiveLease(loadBalancer.requestServerLease(zone));
+                    // The requesting thread always gets the first request of the new lease, however short
+                    renewed.remaining.decrementAndGet();
+                    zoneLease.current = renewed;
+                    return renewed.serverAllocation;
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends the leases on a server, for example because a call to it failed.
+     * @param serverAllocation the server.
+     */
+    public void invalidate(ServerAllocation serverAllocation) {
+        for (ZoneLease zoneLease : leases.values()) {
+            ActiveLease lease = zoneLease.current;
+            if (lease != null && lease.serverAllocation.getServerName().equals(serverAllocation.getServerName())) {
+                lease.remaining.set(0);
+            }
+        }
+    }
+
+    /**
+     * @return the number of allocations handed out.
+     */
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * @return the number of leases requested from the load balancer.
+     */
+    public long getLeaseRequests() {
+        return leaseRequests.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LeaseManager{allocations=" + getAllocations() + ", leaseRequests=" + getLeaseRequests() + "}";
+    }
+
+    /**
+     * The lease of one zone.
+     */
+    private static final class ZoneLease {
+        private volatile ActiveLease current;
+    }
+
+    /**
+     * A lease and how much of it is left.
+     */
+    private static final class ActiveLease {
+        private final ServerAllocation serverAllocation;
+        private final AtomicInteger remaining;
+        private final long expiresAt;
+
+        ActiveLease(ServerLease lease) {
+            this.serverAllocation = lease.getServerAllocation();
+            this.remaining = new AtomicInteger(lease.getMaxRequests());
+            this.expiresAt = System.currentTimeMillis() + lease.getTtlMillis();
+        }
+
+        boolean tryUse() {
+            if (System.currentTimeMillis() > expiresAt) {
+                return false;
+            }
+            return remaining.getAndDecrement() > 0;
+        }
+    }
+}
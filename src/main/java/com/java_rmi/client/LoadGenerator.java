@@ -0,0 +1,335 @@
+package com.java_rmi.client;
+
+import com.java_rmi.data_conector.GeoDataStore;
+import com.java_rmi.data_conector.SyntheticDataset;
+import com.java_rmi.load_balancer.LoadBalancerInterface;
+import com.java_rmi.load_balancer.LoadBalancerServer;
+import com.java_rmi.server.LoadReporter;
+import com.java_rmi.server.NioQueryServer;
+import com.java_rmi.server.Query;
+import com.java_rmi.server.QueryResult;
+import com.java_rmi.server.Server;
+import com.java_rmi.server.ServerAllocation;
+import com.java_rmi.server.ServerImplementation;
+import com.java_rmi.server.ServerLauncher;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The LoadGenerator class is a headless client that sends queries to the zone servers at a fixed arrival
+ * rate and reports the percentiles of their turnaround, execution and waiting times per method and per zone.
+ *
+ * The load is open-loop: the send time of every query is fixed in advance by the rate, whether or not the
+ * earlier queries have been answered, and the turnaround time is measured from that intended send time.
+ * A slow server therefore shows up in the percentiles as the queries that piled up behind it, instead of
+ * silently slowing the generator down (coordinated omission).
+ *
+ * The queries are the lines of a trace file such as exercise_1_input.txt, replayed in a loop, or a
+ * synthetic mix over the countries of SyntheticDataset. With -Drmi.loadgen.local=true the generator first
+ * starts the load balancer and the five zone servers in this JVM on a synthetic dataset.
+ *
+ * The queries go over RMI, or over the NIO endpoints of the servers with -Drmi.transport=nio. To compare
+ * the two, -Drmi.loadgen.transports=rmi,nio runs the same load over each transport in turn. The caches of
+ * the local servers are emptied before every transport, so each one starts cold; servers in other JVMs
+ * keep theirs, and only the first transport runs on cold caches.
+ */
+public class LoadGenerator {
+    public static final String RATE_PROPERTY = "rmi.loadgen.rate";
+    public static final String DURATION_PROPERTY = "rmi.loadgen.durationSeconds";
+    public static final String TRACE_PROPERTY = "rmi.loadgen.trace";
+    public static final String THREADS_PROPERTY = "rmi.loadgen.threads";
+    public static final String SEED_PROPERTY = "rmi.loadgen.seed";
+    public static final String LOCAL_PROPERTY = "rmi.loadgen.local";
+    public static final String LOCAL_ROWS_PROPERTY = "rmi.loadgen.localRows";
+    public static final String TRANSPORTS_PROPERTY = "rmi.loadgen.transports";
+    public static final int DEFAULT_RATE = 200;
+    public static final int DEFAULT_DURATION_SECONDS = 10;
+    public static final int DEFAULT_THREADS = 64;
+    public static final int DEFAULT_LOCAL_ROWS = 100000;
+
+    private static final String[] METHODS = {"getPopulationofCountry", "getNumberofCities", "getNumberofCountries"};
+    private static final int ZONES = 5;
+
+    private final LoadBalancerInterface loadBalancer;
+    private final LeaseManager leaseManager; // Null if every query asks the load balancer
+    private final ServerStubPool stubPool;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+    private final List<Request> requests;
+    private final int rate;
+    private final int threads;
+
+    /**
+     * A query of the load, with the method and zone it is reported under.
+     */
+    public static final class Request {
+        private final String methodName;
+        private final int zone;
+        private final Query query;
+
+        public Request(String methodName, int zone, Query query) {
+            this.methodName = methodName;
+            this.zone = zone;
+            this.query = query;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public int getZone() {
+            return zone;
+        }
+
+        public Query getQuery() {
+            return query;
+        }
+    }
+
+    /**
+     * Creates a load generator.
+     * @param loadBalancer the load balancer that allocates the servers.
+     * @param requests     the queries to send, in a loop.
+     * @param rate         the number of queries to send per second.
+     * @param threads      the number of threads that wait for the results.
+     * @param stubPool     the stubs of the servers, which decide the transport of the queries.
+     */
+    public LoadGenerator(LoadBalancerInterface loadBalancer, List<Request> requests, int rate, int threads,
+                         ServerStubPool stubPool) {
+        if (requests.isEmpty() || rate <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("The load needs queries, a positive rate and threads");
+        }
+        this.loadBalancer = loadBalancer;
+        this.leaseManager = LeaseManager.fromSystemProperty(loadBalancer);
+        this.requests = requests;
+        this.rate = rate;
+        this.threads = threads;
+        this.stubPool = stubPool;
+    }
+
+    /**
+     * Creates a load generator that uses the transport set with -Drmi.transport.
+     * @param loadBalancer the load balancer that allocates the servers.
+     * @param requests     the queries to send, in a loop.
+     * @param rate         the number of queries to send per second.
+     * @param threads      the number of threads that wait for the results.
+     */
+    public LoadGenerator(LoadBalancerInterface loadBalancer, List<Request> requests, int rate, int threads) {
+        this(loadBalancer, requests, rate, threads, new ServerStubPool());
+    }
+
+    /**
+     * Reads the queries of a trace file. The lines that do not match a server method are skipped.
+     * @param traceFile the trace file.
+     * @return the queries.
+     * @throws IOException if the file cannot be read.
+     */
+    public static List<Request> readTrace(String traceFile) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(traceFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                TraceLine traceLine = TraceLine.parse(line);
+                Query query = traceLine == null ? null : traceLine.toQuery();
+                if (query != null) {
+                    requests.add(new Request(traceLine.getMethodName(), traceLine.getZone(), query));
+                }
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Generates a mix of the three methods over the named countries of SyntheticDataset, from all zones.
+     * @param count the number of queries.
+     * @param seed  the seed of the random generator.
+     * @return the queries.
+     */
+    public static List<Request> syntheticMix(int count, long seed) {
+        List<Request> requests = new ArrayList<>(count);
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            // Favor the first countries, like the dataset does
+            double u = random.nextDouble();
+            String country = SyntheticDataset.countryName((int) (u * u * 30));
+            int minPopulation = random.nextInt(100000);
+            String methodName = METHODS[random.nextInt(METHODS.length)];
+            Query query;
+            if (methodName.equals("getPopulationofCountry")) {
+                query = Query.populationOfCountry(country);
+            } else if (methodName.equals("getNumberofCities")) {
+                query = Query.numberOfCities(country, minPopulation);
+            } else {
+                query = Query.numberOfCountriesOfCities(country, minPopulation);
+            }
+            requests.add(new Request(methodName, 1 + random.nextInt(ZONES), query));
+        }
+        return requests;
+    }
+
+    /**
+     * Sends the queries at the fixed rate for a while and waits for their results.
+     * @param durationNanos how long to send queries.
+     * @return the latencies of the queries.
+     * @throws InterruptedException if interrupted while waiting for the results.
+     */
+    public LatencyRecorder run(long durationNanos) throws InterruptedException {
+        ExecutorService callers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "load-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long startTime = System.nanoTime();
+        long sent = 0;
+        for (long intendedTime = startTime; intendedTime - startTime < durationNanos; intendedTime += periodNanos) {
+            // Wait for the send time of the query, never for the results of the earlier ones
+            long delay;
+            while ((delay = intendedTime - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            Request request = requests.get((int) (sent++ % requests.size()));
+            long scheduledTime = intendedTime;
+            callers.execute(() -> call(request, scheduledTime));
+        }
+        callers.shutdown();
+        callers.awaitTermination(1, TimeUnit.HOURS);
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        System.out.println(String.format("Sent %d queries at %d queries/s over %.1f s", sent, rate, elapsedNanos / 1e9));
+        recorder.print(System.out, elapsedNanos);
+        if (leaseManager != null) {
+            System.out.println(leaseManager);
+        }
+        System.out.println(stubPool);
+        return recorder;
+    }
+
+    /**
+     * Allocates a server, sends it a query and records the latencies, measured from the intended send time.
+     */
+    private void call(Request request, long intendedTime) {
+        try {
+            ServerAllocation serverAllocation = leaseManager != null ? leaseManager.acquire(request.zone)
+                    : loadBalancer.requestServerAllocation(request.zone);
+            try {
+                QueryResult result = stubPool.call(serverAllocation, server -> server.executeTimed(request.query));
+                recorder.record(request.methodName, request.zone, System.nanoTime() - intendedTime,
+                        result.getExecutionNanos(), result.getWaitNanos());
+            } catch (Exception e) {
+                if (leaseManager != null) {
+                    leaseManager.invalidate(serverAllocation);
+                }
+                throw e;
+            }
+        } catch (Exception e) {
+            recorder.recordError(request.methodName);
+        }
+    }
+
+    /**
+     * Runs the load generator, configured by the rmi.loadgen system properties.
+     */
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger(RATE_PROPERTY, DEFAULT_RATE);
+        int durationSeconds = Integer.getInteger(DURATION_PROPERTY, DEFAULT_DURATION_SECONDS);
+        int threads = Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS);
+        long seed = Long.getLong(SEED_PROPERTY, SyntheticDataset.DEFAULT_SEED);
+        String traceFile = System.getProperty(TRACE_PROPERTY);
+        String host = System.getProperty(LoadReporter.LOAD_BALANCER_HOST_PROPERTY, "localhost");
+        int port = Integer.getInteger(LoadReporter.LOAD_BALANCER_PORT_PROPERTY, LoadReporter.DEFAULT_LOAD_BALANCER_PORT);
+
+        List<Request> requests = traceFile != null ? readTrace(traceFile) : syntheticMix(rate * durationSeconds, seed);
+        String[] transports = System.getProperty(TRANSPORTS_PROPERTY,
+                System.getProperty(NioQueryServer.TRANSPORT_PROPERTY, "rmi")).split(",");
+
+        LocalCluster localCluster = null;
+        if (Boolean.getBoolean(LOCAL_PROPERTY)) {
+            if (Arrays.asList(transports).contains("nio")) {
+                System.setProperty(NioQueryServer.ENABLED_PROPERTY, "true");
+            }
+            localCluster = LocalCluster.start(Integer.getInteger(LOCAL_ROWS_PROPERTY, DEFAULT_LOCAL_ROWS), seed, port);
+            host = "localhost";
+        }
+        try {
+            LoadBalancerInterface loadBalancer = (LoadBalancerInterface) LocateRegistry.getRegistry(host, port).lookup("LoadBalancer");
+            for (int i = 0; i < transports.length; i++) {
+                String transport = transports[i];
+                if (localCluster != null) {
+                    localCluster.clearCaches();
+                } else if (i > 0) {
+                    System.out.println("The servers are not local, their caches stay warm from the previous transport");
+                }
+                System.out.println("Transport: " + transport);
+                ServerStubPool stubPool = new ServerStubPool("nio".equals(transport.trim()));
+                try {
+                    new LoadGenerator(loadBalancer, requests, rate, threads, stubPool).run(TimeUnit.SECONDS.toNanos(durationSeconds));
+                } finally {
+                    stubPool.close();
+                }
+            }
+            System.out.println(loadBalancer.getFleetMetrics());
+        } finally {
+            if (localCluster != null) {
+                localCluster.stop();
+            }
+        }
+    }
+
+    /**
+     * The load balancer and the five zone servers, started in this JVM on loopback.
+     */
+    private static final class LocalCluster {
+        private final ServerLauncher launcher = new ServerLauncher();
+        private Registry registry;
+        private LoadBalancerServer loadBalancer;
+
+        static LocalCluster start(int rows, long seed, int port) throws Exception {
+            System.setProperty("java.rmi.server.hostname", System.getProperty("java.rmi.server.hostname", "127.0.0.1"));
+            LocalCluster cluster = new LocalCluster();
+            List<Server> servers = ServerLauncher.defaultServers();
+            cluster.loadBalancer = new LoadBalancerServer(servers);
+            cluster.registry = LocateRegistry.createRegistry(port);
+            cluster.registry.bind("LoadBalancer", cluster.loadBalancer);
+
+            GeoDataStore dataStore = new GeoDataStore(SyntheticDataset.generate(rows, seed), "synthetic " + rows + " rows", 0);
+            for (Server server : servers) {
+                cluster.launcher.launch(server, dataStore);
+            }
+            return cluster;
+        }
+
+        /**
+         * Empties the result caches of the servers, so the next run does not hit the results of the last one.
+         */
+        void clearCaches() {
+            for (ServerImplementation server : launcher.getLaunchedServers()) {
+                server.clearCaches();
+                server.resetCacheHitCounts();
+            }
+        }
+
+        void stop() {
+            launcher.shutdown();
+            try {
+                UnicastRemoteObject.unexportObject(loadBalancer, true);
+                UnicastRemoteObject.unexportObject(registry, true);
+            } catch (NoSuchObjectException e) {
+                // Already unexported
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.java_rmi.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The NearCache class is the client-side cache of server results. Unlike a plain LRU map it can be left on
+ * while the dataset of the servers is reloaded: every entry is stamped with the version of the dataset its
+ * result was computed on (see QueryResult.getDatasetVersion), and an entry is only served while no newer
+ * version is known. The cache learns about newer versions from the results of the server calls and by
+ * asking the servers for their version every -Drmi.client.nearCache.pollMillis milliseconds (1000 by
+ * default, 0 disables the polling), so a reload is noticed within that time even when every line is a hit.
+ *
+ * The cache holds at most -Drmi.client.nearCache.capacity entries (45 by default), evicting the least
+ * recently used one, and an entry expires -Drmi.client.nearCache.ttlMillis milliseconds after it was cached
+ * (60000 by default, 0 for never). A result whose version is unknown, such as the result of a batched call,
+ * is trusted only for -Drmi.client.nearCache.unversionedTtlMillis milliseconds (1000 by default, 0 to not
+ * cache it), enough for the immediate repeats of a line. Failed calls must not be cached.
+ */
+public class NearCache {
+    public static final String CAPACITY_PROPERTY = "rmi.client.nearCache.capacity";
+    public static final String TTL_MILLIS_PROPERTY = "rmi.client.nearCache.ttlMillis";
+    public static final String POLL_MILLIS_PROPERTY = "rmi.client.nearCache.pollMillis";
+    public static final String UNVERSIONED_TTL_MILLIS_PROPERTY = "rmi.client.nearCache.unversionedTtlMillis";
+    public static final int DEFAULT_CAPACITY = 45;
+    public static final long DEFAULT_TTL_MILLIS = 60000;
+    public static final long DEFAULT_POLL_MILLIS = 1000;
+    public static final long DEFAULT_UNVERSIONED_TTL_MILLIS = 1000;
+
+    private final String name;
+    private final int capacity;
+    private final long ttlNanos;
+    private final long unversionedTtlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, CachedResult> entries;
+    private final AtomicLong knownVersion = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleEntries = new LongAdder();
+    private final LongAdder expiredEntries = new LongAdder();
+    private ScheduledExecutorService poller;
+
+    /**
+     * Tells the latest version of the dataset of the servers.
+     */
+    public interface VersionSource {
+        /**
+         * @return the latest version of the dataset, or 0 if it is not known.
+         */
+        long latestVersion() throws Exception;
+    }
+
+    /**
+     * Creates a cache.
+     * @param name                 the name of the cache, used in reports.
+     * @param capacity             the maximum number of entries.
+     * @param ttlMillis            the time an entry is served after it was cached, or 0 for no limit.
+     * @param unversionedTtlMillis the time an entry of an unknown version is served, or 0 to not cache it.
+     */
+    public NearCache(String name, int capacity, long ttlMillis, long unversionedTtlMillis) {
+        this(name, capacity, ttlMillis, unversionedTtlMillis, System::nanoTime);
+    }
+
+    NearCache(String name, int capacity, long ttlMillis, long unversionedTtlMillis, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.unversionedTtlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis > 0
+                ? Math.min(ttlMillis, unversionedTtlMillis) : unversionedTtlMillis);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, CachedResult>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                // Remove the least recently used entry when the cache size exceeds the limit
+                return size() > NearCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates the client cache, sized by -Drmi.client.nearCache.capacity, with the TTLs of the system properties.
+     * @return the cache.
+     */
+    public static NearCache fromSystemProperties() {
+        return fromSystemProperties("client", Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Creates a cache with the TTLs of -Drmi.client.nearCache.ttlMillis and
+     * -Drmi.client.nearCache.unversionedTtlMillis.
+     * @param name     the name of the cache, used in reports.
+     * @param capacity the maximum number of entries.
+     * @return the cache.
+     */
+    public static NearCache fromSystemProperties(String name, int capacity) {
+        return new NearCache(name, capacity, Long.getLong(TTL_MILLIS_PROPERTY, DEFAULT_TTL_MILLIS),
+                Long.getLong(UNVERSIONED_TTL_MILLIS_PROPERTY, DEFAULT_UNVERSIONED_TTL_MILLIS));
+    }
+
+    /**
+     * Looks up a cached result that is still current: from the latest known version of the dataset and not
+     * expired. Other entries are removed.
+     * @param key the key of the result.
+     * @return the result, or null if there is no current one.
+     */
+    public Long get(String key) {
+        synchronized (entries) {
+            CachedResult entry = entries.get(key);
+            if (entry != null) {
+                if (entry.datasetVersion < knownVersion.get()) {
+                    entries.remove(key);
+                    staleEntries.increment();
+                } else if (entry.ttlNanos > 0 && clock.getAsLong() - entry.cachedAtNanos > entry.ttlNanos) {
+                    entries.remove(key);
+                    expiredEntries.increment();
+                } else {
+                    hits.increment();
+                    return entry.result;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the result of a successful call. A result of an older version than the latest known one is not
+     * cached. A result of an unknown version, such as the result of a batched call, may come from a server
+     * still on an older version, so it is only kept for the short unversioned TTL.
+     * @param key            the key of the result.
+     * @param result         the result.
+     * @param datasetVersion the version of the dataset the result was computed on, or 0 if it is unknown.
+     */
+    public void put(String key, long result, long datasetVersion) {
+        if (datasetVersion == 0) {
+            if (unversionedTtlNanos <= 0) {
+                return;
+            }
+            synchronized (entries) {
+                entries.put(key, new CachedResult(result, knownVersion.get(), clock.getAsLong(), unversionedTtlNanos));
+            }
+            return;
+        }
+        observeVersion(datasetVersion);
+        synchronized (entries) {
+            if (datasetVersion >= knownVersion.get()) {
+                entries.put(key, new CachedResult(result, datasetVersion, clock.getAsLong(), ttlNanos));
+            }
+        }
+    }
+
+    /**
+     * Takes note of a version of the dataset. When it is newer than the known one, the entries of older
+     * versions are removed.
+     * @param datasetVersion a version of the dataset seen on a server, or 0.
+     */
+    public void observeVersion(long datasetVersion) {
+        long known = knownVersion.get();
+        while (datasetVersion > known) {
+            if (knownVersion.compareAndSet(known, datasetVersion)) {
+                removeOlderThan(datasetVersion);
+                return;
+            }
+            known = knownVersion.get();
+        }
+    }
+
+    private void removeOlderThan(long datasetVersion) {
+        synchronized (entries) {
+            Iterator<CachedResult> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().datasetVersion < datasetVersion) {
+                    iterator.remove();
+                    staleEntries.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Asks a source for the latest version of the dataset every pollMillis milliseconds on a background
+     * thread, until stopPolling is called.
+     * @param source     the source of the version, usually the servers.
+     * @param pollMillis the time between two polls, or 0 to not poll.
+     */
+    public synchronized void startPolling(VersionSource source, long pollMillis) {
+        if (pollMillis <= 0 || poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "near-cache-version-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                observeVersion(source.latestVersion());
+            } catch (Exception e) {
+                System.out.println("Error polling the dataset version!!!");
+            }
+        }, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopPolling() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    /**
+     * @return the current number of entries.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getKnownVersion() {
+        return knownVersion.get();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getStaleCount() {
+        return staleEntries.sum();
+    }
+
+    public long getExpiredCount() {
+        return expiredEntries.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + " near cache: " + size() + "/" + capacity + " entries at dataset version " + getKnownVersion() + ", "
+                + getHitCount() + " hits, " + getMissCount() + " misses, " + getStaleCount() + " stale, "
+                + getExpiredCount() + " expired";
+    }
+
+    /**
+     * A cached result with the version of the dataset it was computed on.
+     */
+    private static final class CachedResult {
+        private final long result;
+        private final long datasetVersion;
+        private final long cachedAtNanos;
+        private final long ttlNanos; // 0 for no limit
+
+        CachedResult(long result, long datasetVersion, long cachedAtNanos, long ttlNanos) {
+            this.result = result;
+            this.datasetVersion = datasetVersion;
+            this.cachedAtNanos = cachedAtNanos;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+}
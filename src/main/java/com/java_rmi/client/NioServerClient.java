@@ -0,0 +1,261 @@
+package com.java_rmi.client;
+
+import com.java_rmi.server.BinaryProtocol;
+import com.java_rmi.server.CacheStats;
+import com.java_rmi.server.Query;
+import com.java_rmi.server.QueryResult;
+import com.java_rmi.server.ServerInterface;
+import com.java_rmi.server.ServerLoad;
+import com.java_rmi.server.ServerMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.rmi.ConnectIOException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The NioServerClient class calls the queries of a server over its NIO endpoint (see NioQueryServer)
+ * instead of RMI. All the threads of the client share one connection: every request gets a correlation
+ * id and is written as soon as it is made, and a reader thread hands every response to the request with
+ * the same id, so many requests can be in flight on the connection at the same time.
+ *
+ * The methods that are not queries are called through the RMI stub of the server.
+ */
+public class NioServerClient implements ServerInterface, Closeable {
+    public static final String TIMEOUT_PROPERTY = "rmi.nio.timeoutMillis";
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private final ServerInterface rmiStub;
+    private final Socket socket;
+    private final OutputStream out;
+    private final Map<Long, CompletableFuture<QueryResult>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final long timeoutMillis;
+    private volatile boolean closed;
+
+    /**
+     * Connects to the NIO endpoint of a server.
+     * @param host    the host of the server.
+     * @param port    the port of the NIO endpoint.
+     * @param rmiStub the RMI stub of the server, for the methods that are not queries.
+     * @throws IOException if the endpoint cannot be reached.
+     */
+    public NioServerClient(String host, int port, ServerInterface rmiStub) throws IOException {
+        this.rmiStub = rmiStub;
+        this.timeoutMillis = Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_MILLIS);
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port), (int) Math.min(timeoutMillis, Integer.MAX_VALUE));
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread reader = new Thread(() -> readResponses(in), "nio-client-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a query without waiting for its result.
+     * @param query the query.
+     * @return the result of the query with the server's timings, completed when the response arrives.
+     */
+    public CompletableFuture<QueryResult> submit(Query query) {
+        CompletableFuture<QueryResult> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new ConnectIOException("Connection to the NIO endpoint is closed"));
+            return result;
+        }
+        long correlationId = nextCorrelationId.incrementAndGet();
+        ByteBuffer frame = BinaryProtocol.encodeRequest(correlationId, query);
+        pending.put(correlationId, result);
+        // Forget the request once it is answered, failed or given up on (see await)
+        result.whenComplete((queryResult, error) -> pending.remove(correlationId, result));
+        if (closed && pending.remove(correlationId) != null) {
+            // Closed while the request was being registered
+            result.completeExceptionally(new ConnectIOException("Connection to the NIO endpoint is closed"));
+            return result;
+        }
+        try {
+            synchronized (out) {
+                out.write(frame.array(), 0, frame.limit());
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(correlationId);
+            result.completeExceptionally(new ConnectIOException("Error sending to the NIO endpoint", e));
+            close();
+        }
+        return result;
+    }
+
+    private void readResponses(DataInputStream in) {
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 9 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                ByteBuffer frame = ByteBuffer.wrap(bytes);
+                long correlationId = frame.getLong();
+                byte status = frame.get();
+                CompletableFuture<QueryResult> result = pending.remove(correlationId);
+                if (result == null) {
+                    continue;
+                }
+                if (status == BinaryProtocol.STATUS_OK) {
+                    result.complete(BinaryProtocol.decodeResult(frame));
+                } else {
+                    // Like RMI, errors raised by the server are not communication errors
+                    result.completeExceptionally(new ServerException(BinaryProtocol.decodeError(frame)));
+                }
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Sends a query and waits for its result.
+     * @param query the query.
+     * @return the result of the query with the server's timings.
+     * @throws RemoteException if the server fails the query, or the connection fails or times out; a
+     *                         ResponseTimeoutException when only this query timed out.
+     */
+    @Override
+    public QueryResult executeTimed(Query query) throws RemoteException {
+        return await(submit(query));
+    }
+
+    private QueryResult await(CompletableFuture<QueryResult> result) throws RemoteException {
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the NIO endpoint", e);
+        } catch (TimeoutException e) {
+            // The connection may be fine and busy: only this request is given up on
+            ResponseTimeoutException timeout = new ResponseTimeoutException(
+                    "No response from the NIO endpoint within " + timeoutMillis + " ms");
+            result.completeExceptionally(timeout);
+            throw timeout;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            throw new RemoteException("Request failed", e.getCause());
+        }
+    }
+
+    @Override
+    public long getPopulationOfCountry(String countryName) throws RemoteException {
+        return executeTimed(Query.populationOfCountry(countryName)).getResult();
+    }
+
+    @Override
+    public int getNumberOfCities(String countryName, int minPopulation) throws RemoteException {
+        return (int) executeTimed(Query.numberOfCities(countryName, minPopulation)).getResult();
+    }
+
+    @Override
+    public int getNumberOfCountries(int cityCount, int minPopulation) throws RemoteException {
+        return (int) executeTimed(Query.numberOfCountries(cityCount, minPopulation)).getResult();
+    }
+
+    @Override
+    public int getNumberOfCountries(int cityCount, int minPopulation, int maxPopulation) throws RemoteException {
+        return (int) executeTimed(Query.numberOfCountries(cityCount, minPopulation, maxPopulation)).getResult();
+    }
+
+    /**
+     * Sends all the queries of a batch before waiting for any of them.
+     * @param queries the queries to execute.
+     * @return the result of every query, in the order of the queries.
+     * @throws RemoteException if one of the queries fails.
+     */
+    @Override
+    public long[] executeBatch(Query[] queries) throws RemoteException {
+        List<CompletableFuture<QueryResult>> results = new ArrayList<>(queries.length);
+        for (Query query : queries) {
+            results.add(submit(query));
+        }
+        long[] values = new long[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            values[i] = await(results.get(i)).getResult();
+        }
+        return values;
+    }
+
+    @Override
+    public QueryResult fetchOwned(Query query, long datasetVersion) throws RemoteException {
+        return rmiStub.fetchOwned(query, datasetVersion);
+    }
+
+    @Override
+    public ServerLoad getServerLoadInfo() throws RemoteException {
+        return rmiStub.getServerLoadInfo();
+    }
+
+    @Override
+    public CacheStats[] getCacheStats() throws RemoteException {
+        return rmiStub.getCacheStats();
+    }
+
+    @Override
+    public ServerMetrics getServerMetrics() throws RemoteException {
+        return rmiStub.getServerMetrics();
+    }
+
+    @Override
+    public long getDatasetVersion() throws RemoteException {
+        return rmiStub.getDatasetVersion();
+    }
+
+    /**
+     * Closes the connection. The requests still waiting for a response fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        for (Long correlationId : pending.keySet()) {
+            CompletableFuture<QueryResult> result = pending.remove(correlationId);
+            if (result != null) {
+                result.completeExceptionally(new ConnectIOException("Connection to the NIO endpoint closed"));
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of requests waiting for their response.
+     */
+    int getPendingRequests() {
+        return pending.size();
+    }
+}
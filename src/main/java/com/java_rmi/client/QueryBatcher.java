@@ -0,0 +1,180 @@
+package com.java_rmi.client;
+
+import com.java_rmi.server.Query;
+import com.java_rmi.server.ServerAllocation;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The QueryBatcher class collects the queries of consecutive input lines and sends them to their
+ * allocated servers with one executeBatch call per server. The results are handed back in the order the
+ * lines were added, including lines that did not need a server call, so the output keeps the input order.
+ *
+ * A batch is sent when it holds batchSize lines, or when a line is added more than flushIntervalMillis
+ * after the first pending one. The interval is only checked when a line is added: nothing sends a batch in
+ * the background, so while the trace pauses the pending lines wait for the next line or the final flush.
+ *
+ * A batch that fails, on a server that crashed for instance, does not stop the others: each of its lines
+ * gets the result -1, as a line whose single call fails does, and the lines are handed on in order.
+ */
+public class QueryBatcher {
+    public static final String BATCH_SIZE_PROPERTY = "rmi.client.batchSize";
+    public static final String FLUSH_INTERVAL_PROPERTY = "rmi.client.flushIntervalMillis";
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+    private final ServerStubPool stubPool;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final List<Pending> pending = new ArrayList<>();
+    private long firstPendingTime;
+    private long batchCalls;
+    private long failedBatches;
+
+    /**
+     * Handles the result of a line once its batch has been executed.
+     */
+    public interface ResultHandler {
+        void onResult(long result) throws IOException;
+    }
+
+    /**
+     * Creates a batcher.
+     * @param stubPool            the pool of server stubs to call the servers with.
+     * @param batchSize           the number of lines sent at once.
+     * @param flushIntervalMillis the longest time a line waits for its batch to fill, as long as lines keep
+     *                            being added.
+     */
+    public QueryBatcher(ServerStubPool stubPool, int batchSize, long flushIntervalMillis) {
+        this.stubPool = stubPool;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Creates a batcher configured from the rmi.client.batchSize and rmi.client.flushIntervalMillis
+     * system properties.
+     * @param stubPool the pool of server stubs to call the servers with.
+     * @return the batcher, or null if batching is disabled (batch size below 2).
+     */
+    public static QueryBatcher fromSystemProperties(ServerStubPool stubPool) {
+        int batchSize = Integer.getInteger(BATCH_SIZE_PROPERTY, 0);
+        if (batchSize < 2) {
+            return null;
+        }
+        return new QueryBatcher(stubPool, batchSize, Long.getLong(FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL_MILLIS));
+    }
+
+    /**
+     * Adds a query to the batch.
+     * @param serverAllocation the server to execute the query on.
+     * @param query            the query, or null if the line has no server call; its result is then 0.
+     * @param handler          receives the result once the batch has been executed.
+     */
+    public void add(ServerAllocation serverAllocation, Query query, ResultHandler handler)
+            throws IOException {
+        addPending(new Pending(serverAllocation, query, 0, handler));
+    }
+
+    /**
+     * Adds a line whose result is already known, to keep its output in order with the batched lines.
+     * @param result  the result of the line.
+     * @param handler receives the result once the lines before it have been handled.
+     */
+    public void addResolved(long result, ResultHandler handler) throws IOException {
+        addPending(new Pending(null, null, result, handler));
+    }
+
+    private void addPending(Pending line) throws IOException {
+        long now = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            firstPendingTime = now;
+        }
+        pending.add(line);
+        if (pending.size() >= batchSize || now - firstPendingTime >= flushIntervalMillis) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the pending queries, one batch per server, then hands every result to its handler in order.
+     * The lines of a batch that fails get the result -1.
+     */
+    public void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Pending> completed = new ArrayList<>(pending);
+        pending.clear();
+
+        // Group the queries by the server they were allocated to
+        Map<String, List<Pending>> batches = new LinkedHashMap<>();
+        for (Pending line : completed) {
+            if (line.query != null) {
+                String serverKey = line.serverAllocation.getServerHost() + ":" + line.serverAllocation.getServerPort()
+                        + "/" + line.serverAllocation.getServerName();
+                batches.computeIfAbsent(serverKey, key -> new ArrayList<>()).add(line);
+            }
+        }
+        for (List<Pending> batch : batches.values()) {
+            Query[] queries = new Query[batch.size()];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = batch.get(i).query;
+            }
+            ServerAllocation serverAllocation = batch.get(0).serverAllocation;
+            batchCalls++;
+            try {
+                long[] results = stubPool.call(serverAllocation, server -> server.executeBatch(queries));
+                for (int i = 0; i < results.length; i++) {
+                    batch.get(i).result = results[i];
+                }
+            } catch (RemoteException | NotBoundException | RuntimeException e) {
+                System.out.println("Error calling a batch on server " + serverAllocation.getServerName() + "!!!");
+                failedBatches++;
+                for (Pending line : batch) {
+                    line.result = -1;
+                }
+            }
+        }
+
+        for (Pending line : completed) {
+            line.handler.onResult(line.result);
+        }
+    }
+
+    /**
+     * @return the number of executeBatch calls made so far.
+     */
+    public long getBatchCalls() {
+        return batchCalls;
+    }
+
+    /**
+     * @return the number of executeBatch calls that failed, whose lines got the result -1.
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    /**
+     * A line waiting for its batch.
+     */
+    private static final class Pending {
+        private final ServerAllocation serverAllocation;
+        private final Query query;
+        private final ResultHandler handler;
+        private long result;
+
+        Pending(ServerAllocation serverAllocation, Query query, long result, ResultHandler handler) {
+            this.serverAllocation = serverAllocation;
+            this.query = query;
+            this.result = result;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.java_rmi.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ReorderBuffer class receives results numbered by sequence in any order and hands them to a sink
+ * strictly in sequence order. Whichever thread completes the next expected sequence number becomes the
+ * drainer: it takes every result that is then ready under the lock, and hands them to the sink outside it,
+ * so the other threads only wait for the lock to add their result, never for the sink. Once the sink fails,
+ * with an IOException or a RuntimeException, the later results are dropped and awaitDelivered reports the
+ * failure.
+ * @param <T> the type of the results.
+ */
+public class ReorderBuffer<T> {
+    private final Sink<T> sink;
+    private final Map<Long, T> waiting = new HashMap<>();
+    private long nextSequence; // The next sequence number to take for the sink
+    private long delivered; // The sequence numbers below this one went through the sink
+    private boolean draining;
+    private IOException failure;
+
+    /**
+     * Receives the results in sequence order.
+     * @param <T> the type of the results.
+     */
+    public interface Sink<T> {
+        /**
+         * @param sequence the sequence number of the result.
+         * @param result   the result, or null if that sequence number produced no result.
+         */
+        void accept(long sequence, T result) throws IOException;
+    }
+
+    /**
+     * Creates a buffer whose sequence numbers start at 0.
+     * @param sink the receiver of the results.
+     */
+    public ReorderBuffer(Sink<T> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Adds the result of a sequence number, then hands over every result that is now in order, unless
+     * another thread is already doing so.
+     * @param sequence the sequence number of the result.
+     * @param result   the result, or null if the sequence number produced no result.
+     */
+    public void complete(long sequence, T result) {
+        synchronized (this) {
+            waiting.put(sequence, result);
+            if (draining || sequence != nextSequence) {
+                return;
+            }
+            draining = true;
+        }
+        drain();
+    }
+
+    private void drain() {
+        List<T> ready = new ArrayList<>();
+        while (true) {
+            long firstSequence;
+            IOException sinkFailure;
+            synchronized (this) {
+                firstSequence = nextSequence;
+                while (waiting.containsKey(nextSequence)) {
+                    ready.add(waiting.remove(nextSequence++));
+                }
+                if (ready.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                sinkFailure = failure;
+            }
+
+            for (int i = 0; i < ready.size() && sinkFailure == null; i++) {
+                sinkFailure = deliver(firstSequence + i, ready.get(i));
+            }
+            synchronized (this) {
+                failure = sinkFailure;
+                delivered = firstSequence + ready.size();
+                notifyAll();
+            }
+            ready.clear();
+        }
+    }
+
+    /**
+     * @return the failure of the sink, or null if it accepted the result.
+     */
+    private IOException deliver(long sequence, T result) {
+        try {
+            sink.accept(sequence, result);
+            return null;
+        } catch (IOException e) {
+            return e;
+        } catch (RuntimeException e) {
+            // Still counts the sequence number as delivered, so that the waiters wake up and see the failure
+            return new IOException("Error handling the result of line " + sequence, e);
+        }
+    }
+
+    /**
+     * Waits until every sequence number below the given one has been handed to the sink.
+     * @param sequence the first sequence number not to wait for.
+     * @throws IOException if the sink failed on one of the results.
+     */
+    public synchronized void awaitDelivered(long sequence) throws IOException, InterruptedException {
+        while (delivered < sequence) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the number of results received out of order and still waiting for earlier ones.
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+}
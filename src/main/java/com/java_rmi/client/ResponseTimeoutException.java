@@ -0,0 +1,17 @@
+package com.java_rmi.client;
+
+import java.rmi.RemoteException;
+
+/**
+ * The ResponseTimeoutException class reports a query that got no response from the NIO endpoint of a
+ * server in time. Unlike the other RemoteExceptions of NioServerClient it says nothing about the connection,
+ * which the other requests may still be using, so the stub is kept (see ServerStubPool).
+ */
+public class ResponseTimeoutException extends RemoteException {
+    /**
+     * @param message the description of the timeout.
+     */
+    public ResponseTimeoutException(String message) {
+        super(message);
+    }
+}
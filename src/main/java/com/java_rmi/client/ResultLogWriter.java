@@ -0,0 +1,342 @@
+package com.java_rmi.client;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ResultLogWriter class writes the output files of the client off the request path. The threads that
+ * answer the lines only queue a ResultRecord; a single writer thread formats the records, collects them in
+ * a large buffer per file and writes every buffer with one FileChannel write when it is full, or when no
+ * record arrived for a while.
+ *
+ * The queue holds at most -Drmi.client.output.queueCapacity records (8192 by default). When the disk falls
+ * behind and the queue is full, the request threads wait for room, which slows the client down to the speed
+ * of the disk instead of growing the heap; the time they waited is reported by toString.
+ *
+ * The records are written in the text format of the client, or as CSV rows for analysis with
+ * -Drmi.client.output.format=csv: result, method, arguments, zone, source, server and the turnaround,
+ * execution and waiting times in nanoseconds.
+ */
+public class ResultLogWriter implements Closeable {
+    public static final String FORMAT_PROPERTY = "rmi.client.output.format";
+    public static final String QUEUE_CAPACITY_PROPERTY = "rmi.client.output.queueCapacity";
+    public static final String BUFFER_BYTES_PROPERTY = "rmi.client.output.bufferBytes";
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    public static final int DEFAULT_BUFFER_BYTES = 256 * 1024;
+
+    private static final long IDLE_FLUSH_MILLIS = 100;
+    private static final int MAX_BATCH = 1024;
+    private static final Entry END = new Entry(0, null);
+
+    /**
+     * The formats of the output files.
+     */
+    public enum Format {
+        TEXT,
+        CSV;
+
+        /**
+         * @return the format named by -Drmi.client.output.format, text by default.
+         */
+        public static Format fromSystemProperty() {
+            return valueOf(System.getProperty(FORMAT_PROPERTY, "text").toUpperCase());
+        }
+    }
+
+    private final Format format;
+    private final Charset charset;
+    private final FileChannel[] channels;
+    private final ByteBuffer[] buffers;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writerThread;
+    private final StringBuilder line = new StringBuilder(256);
+    private final CSVPrinter csvPrinter;
+    private final LongAdder blockedNanos = new LongAdder();
+    private long records;
+    private long bytes;
+    private volatile IOException failure;
+    private boolean closed;
+
+    /**
+     * Opens the output files, replacing their content, and starts the writer thread.
+     * @param files         the output files; a record is written to some of them, chosen by a bit mask.
+     * @param format        the format of the records.
+     * @param charset       the charset of the files.
+     * @param queueCapacity the number of records waiting to be written before the request threads wait.
+     * @param bufferBytes   the size of the buffer of each file.
+     * @throws IOException if a file cannot be opened.
+     */
+    public ResultLogWriter(List<Path> files, Format format, Charset charset, int queueCapacity, int bufferBytes) throws IOException {
+        if (files.size() > Integer.SIZE - 1) {
+            throw new IllegalArgumentException("Too many output files: " + files.size());
+        }
+        this.format = format;
+        this.charset = charset;
+        this.channels = new FileChannel[files.size()];
+        this.buffers = new ByteBuffer[files.size()];
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.csvPrinter = format == Format.CSV ? CSVFormat.DEFAULT.print(line) : null;
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                channels[i] = FileChannel.open(files.get(i), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                buffers[i] = ByteBuffer.allocateDirect(bufferBytes);
+            }
+            if (format == Format.CSV) {
+                csvPrinter.printRecord("result", "method", "arguments", "zone", "source", "server",
+                        "turnaroundNanos", "executionNanos", "waitingNanos");
+                append(-1, encode()); // The header goes to every file
+            }
+        } catch (IOException e) {
+            closeChannels();
+            throw e;
+        }
+        this.writerThread = new Thread(this::run, "client-output");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Opens the output files in the format and with the queue and buffer sizes of the system properties,
+     * in the default charset like a FileWriter.
+     * @param files the output files.
+     * @return the writer.
+     * @throws IOException if a file cannot be opened.
+     */
+    public static ResultLogWriter fromSystemProperties(String... files) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (String file : files) {
+            paths.add(Paths.get(file));
+        }
+        return new ResultLogWriter(paths, Format.fromSystemProperty(), Charset.defaultCharset(),
+                Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY),
+                Integer.getInteger(BUFFER_BYTES_PROPERTY, DEFAULT_BUFFER_BYTES));
+    }
+
+    /**
+     * Queues a record to be written, waiting for room in the queue if the writer thread is behind.
+     * @param fileMask the files to write the record to, bit i standing for the file i.
+     * @param record   the record.
+     * @throws IOException if an earlier write failed, or the thread is interrupted while waiting.
+     */
+    public void write(int fileMask, ResultRecord record) throws IOException {
+        IOException writeFailure = failure;
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+        enqueue(new Entry(fileMask, record));
+    }
+
+    private void enqueue(Entry entry) throws InterruptedIOException {
+        if (queue.offer(entry)) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write a result");
+        } finally {
+            blockedNanos.add(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Writes the queued records, closes the files and stops the writer thread.
+     * @throws IOException if a record or a file could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        enqueue(END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the output files");
+        } finally {
+            closeChannels();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                Entry first = queue.poll(IDLE_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    flushAll();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (Entry entry : batch) {
+                    if (entry == END) {
+                        flushAll();
+                        return;
+                    }
+                    if (failure == null) {
+                        format(entry.record);
+                        append(entry.fileMask, encode());
+                        records++;
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("The output writer was interrupted");
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error writing the client output!!!");
+            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            // Keep taking the records until the end, so that no request thread waits for room forever
+            try {
+                while (queue.take() != END) {
+                    // Discard
+                }
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Formats a record into the line builder.
+     */
+    private void format(ResultRecord record) throws IOException {
+        line.setLength(0);
+        TraceLine traceLine = record.getTraceLine();
+        if (format == Format.CSV) {
+            csvPrinter.printRecord(record.getResult(), traceLine.getMethodName(), String.join(" ", traceLine.getArgs()),
+                    traceLine.getZone(), record.getSource().name().toLowerCase(), record.getServerName(),
+                    record.getTurnaroundNanos(), record.getExecutionNanos(), record.getWaitingNanos());
+            return;
+        }
+        line.append(record.getResult()).append(' ').append(traceLine.getLine()).append(' ');
+        switch (record.getSource()) {
+            case CLIENT_CACHE:
+                line.append(" (data client cached)");
+                break;
+            case SERVER_CACHE:
+                line.append(" (data server cached)");
+                break;
+            default:
+                line.append(String.format("turnaround time: %.3f ms, execution time: %.3f ms, waiting time: %.3f ms)",
+                        record.getTurnaroundNanos() / 1e6, record.getExecutionNanos() / 1e6, record.getWaitingNanos() / 1e6));
+        }
+        line.append(", processed by Server ").append(record.getServerName()).append(")\n");
+    }
+
+    private byte[] encode() {
+        return line.toString().getBytes(charset);
+    }
+
+    /**
+     * Adds encoded bytes to the buffers of the files of a mask, writing a buffer out when it is full.
+     */
+    private void append(int fileMask, byte[] encoded) throws IOException {
+        for (int i = 0; i < buffers.length; i++) {
+            if ((fileMask & (1 << i)) == 0) {
+                continue;
+            }
+            ByteBuffer buffer = buffers[i];
+            if (buffer.remaining() < encoded.length) {
+                flush(i);
+            }
+            if (buffer.remaining() < encoded.length) {
+                // Larger than the whole buffer
+                writeFully(channels[i], ByteBuffer.wrap(encoded));
+            } else {
+                buffer.put(encoded);
+            }
+            bytes += encoded.length;
+        }
+        line.setLength(0);
+    }
+
+    private void flushAll() throws IOException {
+        for (int i = 0; i < buffers.length; i++) {
+            flush(i);
+        }
+    }
+
+    private void flush(int file) throws IOException {
+        ByteBuffer buffer = buffers[file];
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        writeFully(channels[file], buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void closeChannels() {
+        for (FileChannel channel : channels) {
+            if (channel == null) {
+                continue;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Error closing an output file!!!");
+            }
+        }
+    }
+
+    /**
+     * @return the total time the request threads waited for room in the queue, in nanoseconds.
+     */
+    public long getBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        // The counts are updated by the writer thread and are final once the writer is closed
+        return "Output: " + records + " records, " + bytes + " bytes written as " + format.name().toLowerCase()
+                + ", request threads blocked " + TimeUnit.NANOSECONDS.toMillis(getBlockedNanos()) + " ms";
+    }
+
+    /**
+     * A record queued for some of the files.
+     */
+    private static final class Entry {
+        private final int fileMask;
+        private final ResultRecord record;
+
+        Entry(int fileMask, ResultRecord record) {
+            this.fileMask = fileMask;
+            this.record = record;
+        }
+    }
+}
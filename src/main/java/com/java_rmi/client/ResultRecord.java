@@ -0,0 +1,90 @@
+package com.java_rmi.client;
+
+/**
+ * The ResultRecord class is the answer to one line of the input file, as written to the output files by
+ * ResultLogWriter: the result, where it came from, the server that was allocated and the times of the call.
+ */
+public final class ResultRecord {
+    /**
+     * Where the result of a line came from.
+     */
+    public enum Source {
+        CLIENT_CACHE,
+        SERVER_CACHE,
+        SERVER
+    }
+
+    private final Source source;
+    private final long result;
+    private final TraceLine traceLine;
+    private final String serverName;
+    private final long turnaroundNanos;
+    private final long executionNanos;
+    private final long waitingNanos;
+
+    private ResultRecord(Source source, long result, TraceLine traceLine, String serverName,
+                         long turnaroundNanos, long executionNanos, long waitingNanos) {
+        this.source = source;
+        this.result = result;
+        this.traceLine = traceLine;
+        this.serverName = serverName;
+        this.turnaroundNanos = turnaroundNanos;
+        this.executionNanos = executionNanos;
+        this.waitingNanos = waitingNanos;
+    }
+
+    /**
+     * Describes a line answered from one of the client caches.
+     * @param source     CLIENT_CACHE or SERVER_CACHE.
+     * @param result     the cached result.
+     * @param traceLine  the line.
+     * @param serverName the server allocated to the line.
+     * @return the record.
+     */
+    public static ResultRecord cached(Source source, long result, TraceLine traceLine, String serverName) {
+        return new ResultRecord(source, result, traceLine, serverName, 0, 0, 0);
+    }
+
+    /**
+     * Describes a line answered by a server.
+     * @param result          the result of the call.
+     * @param traceLine       the line.
+     * @param serverName      the server that answered.
+     * @param turnaroundNanos the time from reading the line to its result.
+     * @param executionNanos  the time the server executed the call.
+     * @param waitingNanos    the time the call waited in the queue of the server.
+     * @return the record.
+     */
+    public static ResultRecord answered(long result, TraceLine traceLine, String serverName,
+                                        long turnaroundNanos, long executionNanos, long waitingNanos) {
+        return new ResultRecord(Source.SERVER, result, traceLine, serverName, turnaroundNanos, executionNanos, waitingNanos);
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public long getResult() {
+        return result;
+    }
+
+    public TraceLine getTraceLine() {
+        return traceLine;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public long getTurnaroundNanos() {
+        return turnaroundNanos;
+    }
+
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    public long getWaitingNanos() {
+        return waitingNanos;
+    }
+}
@@ -0,0 +1,274 @@
+package com.java_rmi.client;
+
+import com.java_rmi.server.NioQueryServer;
+import com.java_rmi.server.ServerAllocation;
+import com.java_rmi.server.ServerInterface;
+
+import java.io.IOException;
+import java.rmi.ConnectIOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ServerStubPool class keeps the RMI stubs of the servers so that the registry is only asked once per
+ * (host, port, name) instead of on every call. A stub is looked up again when a call through it fails with
+ * a communication error, and stubs that have not been used for a while are dropped.
+ *
+ * With -Drmi.transport=nio the queries are sent over the NIO endpoint of the servers instead (see
+ * NioServerClient): the pool then keeps one connection per server next to its RMI stub.
+ */
+public class ServerStubPool {
+    public static final String IDLE_TIMEOUT_PROPERTY = "rmi.client.stubIdleMillis";
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    private final Map<StubKey, PooledStub> stubs = new ConcurrentHashMap<>();
+    private final long idleTimeoutMillis;
+    private final boolean nio;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder idleEvictions = new LongAdder();
+    private volatile long lastIdleCheck = System.currentTimeMillis();
+
+    /**
+     * Creates a pool.
+     * @param idleTimeoutMillis the time after which an unused stub is dropped.
+     * @param nio               whether the queries are sent over the NIO endpoints rather than RMI.
+     */
+    public ServerStubPool(long idleTimeoutMillis, boolean nio) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.nio = nio;
+    }
+
+    /**
+     * Creates a pool of RMI stubs.
+     * @param idleTimeoutMillis the time after which an unused stub is dropped.
+     */
+    public ServerStubPool(long idleTimeoutMillis) {
+        this(idleTimeoutMillis, false);
+    }
+
+    /**
+     * Creates a pool for a transport.
+     * @param nio whether the queries are sent over the NIO endpoints rather than RMI.
+     */
+    public ServerStubPool(boolean nio) {
+        this(Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MILLIS), nio);
+    }
+
+    /**
+     * Creates a pool whose idle timeout is read from the rmi.client.stubIdleMillis system property, and
+     * whose transport is read from rmi.transport.
+     */
+    public ServerStubPool() {
+        this("nio".equals(System.getProperty(NioQueryServer.TRANSPORT_PROPERTY)));
+    }
+
+    /**
+     * A call to a remote method of a server.
+     * @param <T> the type of the result.
+     */
+    public interface ServerCall<T> {
+        T call(ServerInterface server) throws RemoteException;
+    }
+
+    /**
+     * Calls a server through its pooled stub. If the call fails with a communication error, the stub is
+     * looked up again and the call is retried once; the queries are read-only, so retrying is safe.
+     * Errors raised by the server itself and response timeouts are not retried, and keep the stub.
+     * @param serverAllocation the server to call.
+     * @param serverCall       the remote method to call.
+     * @return the result of the call.
+     * @throws RemoteException   if the call fails twice or the server reports an error.
+     * @throws NotBoundException if the server is not bound in its registry.
+     */
+    public <T> T call(ServerAllocation serverAllocation, ServerCall<T> serverCall) throws RemoteException, NotBoundException {
+        StubKey key = new StubKey(serverAllocation.getServerHost(), serverAllocation.getServerPort(), serverAllocation.getServerName());
+        calls.increment();
+        PooledStub pooledStub = getPooledStub(key);
+        try {
+            return serverCall.call(pooledStub.stub);
+        } catch (ServerException | ResponseTimeoutException e) {
+            // The connection works: the server failed the query, or it is slow to answer it
+            throw e;
+        } catch (RemoteException e) {
+            // The stub may point to a server that restarted: look it up again and retry once. Another thread
+            // may have replaced it already, and the new stub carries its calls: only drop the failed one
+            if (stubs.remove(key, pooledStub)) {
+                drop(pooledStub);
+            }
+            revalidations.increment();
+            return serverCall.call(getStub(key));
+        }
+    }
+
+    /**
+     * Retrieves the stub of a server, looking it up in the server's registry if it is not pooled.
+     * @param serverAllocation the server.
+     * @return the stub of the server.
+     * @throws RemoteException   if the registry cannot be reached.
+     * @throws NotBoundException if the server is not bound in its registry.
+     */
+    public ServerInterface getStub(ServerAllocation serverAllocation) throws RemoteException, NotBoundException {
+        return getStub(new StubKey(serverAllocation.getServerHost(), serverAllocation.getServerPort(), serverAllocation.getServerName()));
+    }
+
+    private ServerInterface getStub(StubKey key) throws RemoteException, NotBoundException {
+        return getPooledStub(key).stub;
+    }
+
+    private PooledStub getPooledStub(StubKey key) throws RemoteException, NotBoundException {
+        long now = System.currentTimeMillis();
+        evictIdleStubs(now);
+
+        PooledStub pooledStub = stubs.get(key);
+        if (pooledStub != null && pooledStub.stub instanceof NioServerClient && ((NioServerClient) pooledStub.stub).isClosed()) {
+            stubs.remove(key, pooledStub);
+            pooledStub = null;
+        }
+        if (pooledStub == null) {
+            // Concurrent misses on the same key may both look it up, the first one wins
+            lookups.increment();
+            Registry registry = LocateRegistry.getRegistry(key.host, key.port);
+            ServerInterface stub = (ServerInterface) registry.lookup(key.name);
+            if (nio) {
+                try {
+                    stub = new NioServerClient(key.host, NioQueryServer.portOf(key.port), stub);
+                } catch (IOException e) {
+                    throw new ConnectIOException("Error connecting to the NIO endpoint of " + key.name, e);
+                }
+            }
+            PooledStub newStub = new PooledStub(stub, now);
+            pooledStub = stubs.putIfAbsent(key, newStub);
+            if (pooledStub == null) {
+                pooledStub = newStub;
+            } else {
+                drop(newStub);
+            }
+        }
+        pooledStub.lastUsed = now;
+        return pooledStub;
+    }
+
+    /**
+     * Drops the stubs that have not been used within the idle timeout. The check runs at most once per
+     * timeout period.
+     */
+    private void evictIdleStubs(long now) {
+        if (now - lastIdleCheck < idleTimeoutMillis) {
+            return;
+        }
+        lastIdleCheck = now;
+        Iterator<PooledStub> iterator = stubs.values().iterator();
+        while (iterator.hasNext()) {
+            PooledStub pooledStub = iterator.next();
+            if (now - pooledStub.lastUsed > idleTimeoutMillis) {
+                iterator.remove();
+                drop(pooledStub);
+                idleEvictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Closes the connection of a stub that left the pool, if it has one.
+     */
+    private static void drop(PooledStub pooledStub) {
+        if (pooledStub != null && pooledStub.stub instanceof NioServerClient) {
+            ((NioServerClient) pooledStub.stub).close();
+        }
+    }
+
+    /**
+     * Drops all the stubs and closes their connections.
+     */
+    public void close() {
+        Iterator<PooledStub> iterator = stubs.values().iterator();
+        while (iterator.hasNext()) {
+            drop(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the number of registry lookups done so far.
+     */
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    public long getIdleEvictionCount() {
+        return idleEvictions.sum();
+    }
+
+    public int size() {
+        return stubs.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Stub pool" + (nio ? " (nio)" : "") + ": " + getCallCount() + " calls, " + getLookupCount() + " registry lookups, "
+                + getRevalidationCount() + " revalidations, " + getIdleEvictionCount() + " idle evictions";
+    }
+
+    /**
+     * The registry address and name of a server.
+     */
+    private static final class StubKey {
+        private final String host;
+        private final int port;
+        private final String name;
+
+        StubKey(String host, int port, String name) {
+            this.host = host;
+            this.port = port;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof StubKey)) {
+                return false;
+            }
+            StubKey key = (StubKey) other;
+            return port == key.port && Objects.equals(host, key.host) && name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, name);
+        }
+    }
+
+    /**
+     * A pooled stub and the time it was last used.
+     */
+    private static final class PooledStub {
+        private final ServerInterface stub;
+        private volatile long lastUsed;
+
+        PooledStub(ServerInterface stub, long lastUsed) {
+            this.stub = stub;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.java_rmi.client;
+
+import com.java_rmi.server.Query;
+
+/**
+ * The TraceLine class is one parsed line of the client input file, such as
+ * "getNumberofCities Honduras 40894 Zone:5": a method name, its arguments and the zone of the client.
+ */
+public final class TraceLine {
+    private final String line;
+    private final String methodName;
+    private final String[] args;
+    private final int zone;
+
+    private TraceLine(String line, String methodName, String[] args, int zone) {
+        this.line = line;
+        this.methodName = methodName;
+        this.args = args;
+        this.zone = zone;
+    }
+
+    /**
+     * Parses a line of the input file. The elements are separated by single spaces, so a double space
+     * yields an empty argument, as it always has.
+     * @param line the line to parse.
+     * @return the parsed line, or null if the line has fewer than two elements.
+     */
+    public static TraceLine parse(String line) {
+        String[] elementsLine = line.split(" ");
+        if (elementsLine.length < 2) {
+            return null;
+        }
+        String methodName = elementsLine[0];
+        String[] argsArray = new String[elementsLine.length - 2];
+        System.arraycopy(elementsLine, 1, argsArray, 0, elementsLine.length - 2);
+        int zone = Integer.parseInt(elementsLine[elementsLine.length - 1].substring(5));
+        return new TraceLine(line, methodName, argsArray, zone);
+    }
+
+    /**
+     * Builds the server query of the line. The first argument of a getNumberofCountries line is resolved
+     * by the server through getNumberOfCities, like the client has always done.
+     * @return the query, or null if the line does not match any server method; such lines have result 0.
+     */
+    public Query toQuery() {
+        return Query.fromTrace(methodName, args);
+    }
+
+    /**
+     * @return the key of the line's result in the client caches.
+     */
+    public String getCacheKey() {
+        return methodName + String.join(":", args);
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String[] getArgs() {
+        return args.clone();
+    }
+
+    public int getZone() {
+        return zone;
+    }
+}
@@ -15,13 +15,32 @@ import java.util.List;
  * converting it into a list of GeoData objects.
  */
 public class CSVReader {
+    public static final String DEFAULT_CSV_FILE = "src\\main\\java\\com\\java_rmi\\data_conector\\exercise_1_dataset.csv";
+    public static final String DATASET_PROPERTY = "rmi.dataset.path";
 
     /**
-     * Reads geographical data from a CSV file and returns it as a list of GeoData objects.
+     * Retrieves the CSV file of the dataset, set with -Drmi.dataset.path.
+     * @return The path of the CSV file, DEFAULT_CSV_FILE if the property is not set.
+     */
+    public static String datasetPath() {
+        return System.getProperty(DATASET_PROPERTY, DEFAULT_CSV_FILE);
+    }
+
+    /**
+     * Reads geographical data from the CSV file of the dataset (see datasetPath) and returns it as a list of
+     * GeoData objects.
      * @return A list of GeoData objects containing the read data.
      */
     public static List<GeoData> readDataCSV() {
-        String csvFile = "src\\main\\java\\com\\java_rmi\\data_conector\\exercise_1_dataset.csv";
+        return readDataCSV(datasetPath());
+    }
+
+    /**
+     * Reads geographical data from a CSV file and returns it as a list of GeoData objects.
+     * @param csvFile The path of the CSV file to read.
+     * @return A list of GeoData objects containing the read data.
+     */
+    public static List<GeoData> readDataCSV(String csvFile) {
         List<GeoData> allData = new ArrayList<>();
 
         try {
@@ -0,0 +1,427 @@
+package com.java_rmi.data_conector;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CompactGeoDataTable class is a GeoDataTable that keeps the dataset in a few primitive arrays instead
+ * of one GeoData object and seven strings per row.
+ *
+ * The population is a long column. The country name, country code and timezone, which repeat on many rows,
+ * are dictionary-encoded: every distinct value is kept once, with its normalized form (see
+ * CountryIndex.normalize), and the rows hold its id in a short column, or an int column when there are
+ * more than 65536 values. The geoname ID, the name and the coordinates are not read by any query; they are
+ * kept as UTF-8 bytes and only decoded when a row is materialized with getRow.
+ *
+ * A table is built row by row with a Builder, which takes the lazy fields as bytes, so a reader can fill
+ * it without creating their strings (see ParallelCSVReader.readTable).
+ */
+public class CompactGeoDataTable implements GeoDataTable {
+    private static final int LAZY_FIELDS = 3;
+
+    private final int rowCount;
+    private final long[] populations;
+    private final IdColumn countryIds;
+    private final String[] countryNames;
+    private final String[] normalizedCountryNames;
+    private final IdColumn countryCodeIds;
+    private final String[] countryCodes;
+    private final String[] normalizedCountryCodes;
+    private final IdColumn timezoneIds;
+    private final String[] timezones;
+    private final String[] normalizedTimezones;
+    private final int[] lazyOffsets;
+    private final byte[] lazyBytes;
+
+    /**
+     * Constructs a table over the given rows.
+     * @param rows The rows of the dataset. The rows are copied, later changes to them are not seen.
+     */
+    public CompactGeoDataTable(List<GeoData> rows) {
+        this(builderOf(rows));
+    }
+
+    private CompactGeoDataTable(Builder builder) {
+        this.rowCount = builder.rowCount;
+        this.populations = Arrays.copyOf(builder.populations, rowCount);
+        this.lazyOffsets = Arrays.copyOf(builder.lazyOffsets, rowCount * LAZY_FIELDS + 1);
+        this.lazyBytes = Arrays.copyOf(builder.lazyBytes, builder.lazyLength);
+
+        this.countryNames = builder.countryDictionary.values();
+        this.normalizedCountryNames = normalizedForms(countryNames);
+        this.countryIds = IdColumn.of(builder.countryColumn, rowCount, countryNames.length);
+        this.countryCodes = builder.countryCodeDictionary.values();
+        this.normalizedCountryCodes = normalizedForms(countryCodes);
+        this.countryCodeIds = IdColumn.of(builder.countryCodeColumn, rowCount, countryCodes.length);
+        this.timezones = builder.timezoneDictionary.values();
+        this.normalizedTimezones = normalizedForms(timezones);
+        this.timezoneIds = IdColumn.of(builder.timezoneColumn, rowCount, timezones.length);
+    }
+
+    private static Builder builderOf(List<GeoData> rows) {
+        Builder builder = new Builder(rows.size(), rows.size() * 32);
+        for (GeoData geoData : rows) {
+            builder.addRow(geoData);
+        }
+        return builder;
+    }
+
+    /**
+     * Normalizes the values of a dictionary, sharing the value itself when it is already normalized.
+     */
+    private static String[] normalizedForms(String[] values) {
+        String[] normalized = new String[values.length];
+        for (int id = 0; id < values.length; id++) {
+            if (values[id] != null) {
+                String value = CountryIndex.normalize(values[id]);
+                normalized[id] = value.equals(values[id]) ? values[id] : value;
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Copies any table into a compact table.
+     * @param table The table to copy.
+     * @return A new CompactGeoDataTable with the rows of the table.
+     */
+    public static CompactGeoDataTable of(GeoDataTable table) {
+        if (table instanceof CompactGeoDataTable) {
+            return (CompactGeoDataTable) table;
+        }
+        Builder builder = new Builder(table.size(), table.size() * 32);
+        for (int row = 0; row < table.size(); row++) {
+            builder.addRow(table.getRow(row));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public long getPopulation(int row) {
+        return populations[row];
+    }
+
+    @Override
+    public int getCountryId(int row) {
+        return countryIds.get(row);
+    }
+
+    @Override
+    public int getCountryCount() {
+        return countryNames.length;
+    }
+
+    @Override
+    public String getCountryName(int countryId) {
+        return countryNames[countryId];
+    }
+
+    @Override
+    public String getNormalizedCountryName(int countryId) {
+        return normalizedCountryNames[countryId];
+    }
+
+    public String getCountryCode(int row) {
+        return countryCodes[countryCodeIds.get(row)];
+    }
+
+    public String getTimezone(int row) {
+        return timezones[timezoneIds.get(row)];
+    }
+
+    /**
+     * @param row The index of the row.
+     * @return The normalized country code of the row (see CountryIndex.normalize).
+     */
+    public String getNormalizedCountryCode(int row) {
+        return normalizedCountryCodes[countryCodeIds.get(row)];
+    }
+
+    /**
+     * @param row The index of the row.
+     * @return The normalized timezone of the row (see CountryIndex.normalize).
+     */
+    public String getNormalizedTimezone(int row) {
+        return normalizedTimezones[timezoneIds.get(row)];
+    }
+
+    private String lazyField(int row, int field) {
+        int index = row * LAZY_FIELDS + field;
+        int start = lazyOffsets[index];
+        return new String(lazyBytes, start, lazyOffsets[index + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public GeoData getRow(int row) {
+        return new GeoData(lazyField(row, 0), lazyField(row, 1), getCountryCode(row),
+                countryNames[countryIds.get(row)], populations[row], getTimezone(row), lazyField(row, 2));
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return MemoryEstimate.ofLongArray(populations.length)
+                + countryIds.estimateHeapBytes() + countryCodeIds.estimateHeapBytes() + timezoneIds.estimateHeapBytes()
+                + MemoryEstimate.ofIntArray(lazyOffsets.length) + MemoryEstimate.ofByteArray(lazyBytes.length)
+                + dictionaryHeapBytes(countryNames, normalizedCountryNames)
+                + dictionaryHeapBytes(countryCodes, normalizedCountryCodes)
+                + dictionaryHeapBytes(timezones, normalizedTimezones);
+    }
+
+    private static long dictionaryHeapBytes(String[] values, String[] normalized) {
+        long bytes = MemoryEstimate.ofReferenceArray(values.length) + MemoryEstimate.ofReferenceArray(normalized.length);
+        for (int id = 0; id < values.length; id++) {
+            bytes += MemoryEstimate.ofString(values[id]);
+            if (normalized[id] != values[id]) {
+                bytes += MemoryEstimate.ofString(normalized[id]);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The Builder class collects the rows of a CompactGeoDataTable. Every row is added with addRow, followed
+     * by its geoname ID, name and coordinates with addLazyField, in that order. A builder is used by one
+     * thread at a time, and not after build.
+     */
+    public static final class Builder {
+        private long[] populations;
+        private int[] countryColumn;
+        private int[] countryCodeColumn;
+        private int[] timezoneColumn;
+        private int[] lazyOffsets;
+        private byte[] lazyBytes;
+        private int rowCount;
+        private int lazyFieldCount;
+        private int lazyLength;
+        private final Dictionary countryDictionary = new Dictionary();
+        private final Dictionary countryCodeDictionary = new Dictionary();
+        private final Dictionary timezoneDictionary = new Dictionary();
+
+        /**
+         * Constructs a builder for a table of unknown size.
+         */
+        public Builder() {
+            this(1024, 32 * 1024);
+        }
+
+        /**
+         * Constructs a builder sized for a table; it grows past those sizes when needed.
+         * @param expectedRows      The number of rows of the table.
+         * @param expectedLazyBytes The number of UTF-8 bytes of the lazy fields of all rows.
+         */
+        public Builder(int expectedRows, int expectedLazyBytes) {
+            int rows = Math.max(16, expectedRows);
+            this.populations = new long[rows];
+            this.countryColumn = new int[rows];
+            this.countryCodeColumn = new int[rows];
+            this.timezoneColumn = new int[rows];
+            this.lazyOffsets = new int[rows * LAZY_FIELDS + 1];
+            this.lazyBytes = new byte[Math.max(16, expectedLazyBytes)];
+        }
+
+        /**
+         * Adds a row; its lazy fields follow with addLazyField.
+         * @param countryCode The country code of the location.
+         * @param countryName The country name in English.
+         * @param population  The population of the location.
+         * @param timezone    The timezone of the location.
+         */
+        public void addRow(String countryCode, String countryName, long population, String timezone) {
+            checkLazyFields();
+            ensureRows(1);
+            populations[rowCount] = population;
+            countryColumn[rowCount] = countryDictionary.idOf(countryName);
+            countryCodeColumn[rowCount] = countryCodeDictionary.idOf(countryCode);
+            timezoneColumn[rowCount] = timezoneDictionary.idOf(timezone);
+            rowCount++;
+        }
+
+        /**
+         * Adds a row with its lazy fields.
+         * @param geoData The row.
+         */
+        public void addRow(GeoData geoData) {
+            addRow(geoData.getCountryCode(), geoData.getCountryNameEn(), geoData.getPopulation(), geoData.getTimezone());
+            for (String value : new String[]{geoData.getGeonameID(), geoData.getName(), geoData.getCoordinates()}) {
+                byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+                addLazyField(bytes, 0, bytes.length);
+            }
+        }
+
+        /**
+         * Adds the next lazy field of the last row.
+         * @param bytes  A buffer with the field in UTF-8.
+         * @param offset The position of the field in the buffer.
+         * @param length The number of bytes of the field.
+         */
+        public void addLazyField(byte[] bytes, int offset, int length) {
+            if (lazyFieldCount >= rowCount * LAZY_FIELDS) {
+                throw new IllegalStateException("A row has only " + LAZY_FIELDS + " lazy fields");
+            }
+            ensureLazyBytes(length);
+            System.arraycopy(bytes, offset, lazyBytes, lazyLength, length);
+            lazyLength += length;
+            lazyOffsets[++lazyFieldCount] = lazyLength;
+        }
+
+        /**
+         * Appends the rows of another builder, such as the one of the next chunk of a file.
+         * @param other The builder to append.
+         */
+        public void addAll(Builder other) {
+            checkLazyFields();
+            other.checkLazyFields();
+            ensureRows(other.rowCount);
+            ensureLazyBytes(other.lazyLength);
+            int[] countryMap = countryDictionary.idsOf(other.countryDictionary);
+            int[] countryCodeMap = countryCodeDictionary.idsOf(other.countryCodeDictionary);
+            int[] timezoneMap = timezoneDictionary.idsOf(other.timezoneDictionary);
+            System.arraycopy(other.populations, 0, populations, rowCount, other.rowCount);
+            for (int row = 0; row < other.rowCount; row++) {
+                countryColumn[rowCount + row] = countryMap[other.countryColumn[row]];
+                countryCodeColumn[rowCount + row] = countryCodeMap[other.countryCodeColumn[row]];
+                timezoneColumn[rowCount + row] = timezoneMap[other.timezoneColumn[row]];
+            }
+            for (int field = 1; field <= other.lazyFieldCount; field++) {
+                lazyOffsets[lazyFieldCount + field] = lazyLength + other.lazyOffsets[field];
+            }
+            System.arraycopy(other.lazyBytes, 0, lazyBytes, lazyLength, other.lazyLength);
+            rowCount += other.rowCount;
+            lazyFieldCount += other.lazyFieldCount;
+            lazyLength += other.lazyLength;
+        }
+
+        /**
+         * @return The number of rows added so far.
+         */
+        public int size() {
+            return rowCount;
+        }
+
+        /**
+         * @return The number of bytes of the lazy fields added so far.
+         */
+        public int getLazyByteCount() {
+            return lazyLength;
+        }
+
+        /**
+         * @return A new table with the rows added.
+         */
+        public CompactGeoDataTable build() {
+            checkLazyFields();
+            return new CompactGeoDataTable(this);
+        }
+
+        private void checkLazyFields() {
+            if (lazyFieldCount != rowCount * LAZY_FIELDS) {
+                throw new IllegalStateException("Every row needs its " + LAZY_FIELDS + " lazy fields");
+            }
+        }
+
+        private void ensureRows(int added) {
+            if (rowCount + added <= populations.length) {
+                return;
+            }
+            long grown = Math.max((long) populations.length * 2, (long) rowCount + added);
+            if (grown * LAZY_FIELDS + 1 > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("The dataset has too many rows");
+            }
+            int rows = (int) grown;
+            populations = Arrays.copyOf(populations, rows);
+            countryColumn = Arrays.copyOf(countryColumn, rows);
+            countryCodeColumn = Arrays.copyOf(countryCodeColumn, rows);
+            timezoneColumn = Arrays.copyOf(timezoneColumn, rows);
+            lazyOffsets = Arrays.copyOf(lazyOffsets, rows * LAZY_FIELDS + 1);
+        }
+
+        private void ensureLazyBytes(int added) {
+            if (lazyLength + added <= lazyBytes.length) {
+                return;
+            }
+            long grown = Math.max((long) lazyBytes.length * 2, (long) lazyLength + added);
+            if (grown > Integer.MAX_VALUE - 8) {
+                if ((long) lazyLength + added > Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("The dataset has more than 2 GB of text");
+                }
+                grown = Integer.MAX_VALUE - 8;
+            }
+            lazyBytes = Arrays.copyOf(lazyBytes, (int) grown);
+        }
+    }
+
+    /**
+     * Assigns consecutive ids to the distinct values of a column.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String[] values() {
+            return values.toArray(new String[0]);
+        }
+
+        /**
+         * Assigns ids to the values of another dictionary.
+         * @return The id in this dictionary of every id of the other one.
+         */
+        int[] idsOf(Dictionary other) {
+            int[] mapped = new int[other.values.size()];
+            for (int id = 0; id < mapped.length; id++) {
+                mapped[id] = idOf(other.values.get(id));
+            }
+            return mapped;
+        }
+    }
+
+    /**
+     * A column of dictionary ids, two bytes per row when the dictionary has at most 65536 values.
+     */
+    private static final class IdColumn {
+        private final short[] narrowIds;
+        private final int[] wideIds;
+
+        private IdColumn(short[] narrowIds, int[] wideIds) {
+            this.narrowIds = narrowIds;
+            this.wideIds = wideIds;
+        }
+
+        static IdColumn of(int[] ids, int rowCount, int dictionarySize) {
+            if (dictionarySize > 1 << 16) {
+                return new IdColumn(null, Arrays.copyOf(ids, rowCount));
+            }
+            short[] narrowIds = new short[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                narrowIds[row] = (short) ids[row];
+            }
+            return new IdColumn(narrowIds, null);
+        }
+
+        int get(int row) {
+            return narrowIds != null ? narrowIds[row] & 0xFFFF : wideIds[row];
+        }
+
+        long estimateHeapBytes() {
+            return narrowIds != null ? MemoryEstimate.ofShortArray(narrowIds.length) : MemoryEstimate.ofIntArray(wideIds.length);
+        }
+    }
+}
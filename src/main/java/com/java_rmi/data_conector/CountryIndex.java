@@ -0,0 +1,257 @@
+package com.java_rmi.data_conector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The CountryIndex class groups the cities of the dataset by country. For every country it keeps the
+ * city populations as a primitive array sorted in ascending order together with their total, so the
+ * population of a country is a single map lookup and the number of cities above a threshold is a
+ * binary search.
+ */
+public final class CountryIndex {
+    private final Map<String, Entry> countries;
+
+    private CountryIndex(Map<String, Entry> countries) {
+        this.countries = countries;
+    }
+
+    /**
+     * Builds the index over the rows of the dataset.
+     * @param data The rows of the dataset.
+     * @return A new CountryIndex.
+     */
+    public static CountryIndex build(List<GeoData> data) {
+        return build(new HeapGeoDataTable(data));
+    }
+
+    /**
+     * Builds the index over the columns of a table, without materializing its rows.
+     * @param table The table of the dataset.
+     * @return A new CountryIndex.
+     */
+    public static CountryIndex build(GeoDataTable table) {
+        // Map every country id of the table to a group of names that are equal ignoring case
+        Map<String, Integer> groupsByName = new HashMap<>();
+        List<String> groupNames = new ArrayList<>();
+        int[] groupOfCountry = new int[table.getCountryCount()];
+        for (int countryId = 0; countryId < groupOfCountry.length; countryId++) {
+            String normalizedName = table.getNormalizedCountryName(countryId);
+            Integer group = groupsByName.get(normalizedName);
+            if (group == null) {
+                group = groupNames.size();
+                groupsByName.put(normalizedName, group);
+                groupNames.add(table.getCountryName(countryId));
+            }
+            groupOfCountry[countryId] = group;
+        }
+
+        // Count the cities of each group, then collect their populations
+        int[] cityCounts = new int[groupNames.size()];
+        for (int row = 0; row < table.size(); row++) {
+            cityCounts[groupOfCountry[table.getCountryId(row)]]++;
+        }
+        long[][] populations = new long[cityCounts.length][];
+        long[] totalPopulations = new long[cityCounts.length];
+        for (int group = 0; group < cityCounts.length; group++) {
+            populations[group] = new long[cityCounts[group]];
+            cityCounts[group] = 0;
+        }
+        for (int row = 0; row < table.size(); row++) {
+            int group = groupOfCountry[table.getCountryId(row)];
+            long population = table.getPopulation(row);
+            populations[group][cityCounts[group]++] = population;
+            totalPopulations[group] += population;
+        }
+
+        Map<String, Entry> countries = new HashMap<>(groupNames.size() * 2);
+        for (Map.Entry<String, Integer> group : groupsByName.entrySet()) {
+            int index = group.getValue();
+            Arrays.sort(populations[index]);
+            countries.put(group.getKey(), new Entry(groupNames.get(index), populations[index], totalPopulations[index]));
+        }
+        return new CountryIndex(Collections.unmodifiableMap(countries));
+    }
+
+    /**
+     * Normalizes a country name so that names differing only in case map to the same key. Two names have
+     * the same normalized form exactly when String.equalsIgnoreCase considers them equal.
+     * @param countryName The name of the country.
+     * @return The normalized name.
+     */
+    public static String normalize(String countryName) {
+        char[] chars = countryName.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Retrieves the index entry of a country.
+     * @param countryName The name of the country, in any case.
+     * @return The entry of the country, or null if the dataset has no city in that country.
+     */
+    public Entry getCountry(String countryName) {
+        return countries.get(normalize(countryName));
+    }
+
+    /**
+     * Retrieves the entries of all countries of the dataset.
+     * @return An unmodifiable collection of the entries.
+     */
+    public Collection<Entry> getCountries() {
+        return countries.values();
+    }
+
+    /**
+     * Retrieves the population of a country, i.e. the sum of the populations of its cities.
+     * @param countryName The name of the country.
+     * @return The population of the country, or 0 if it is unknown.
+     */
+    public long getPopulation(String countryName) {
+        Entry entry = getCountry(countryName);
+        return entry == null ? 0 : entry.getTotalPopulation();
+    }
+
+    /**
+     * Retrieves the number of cities of a country with at least the given population.
+     * @param countryName   The name of the country.
+     * @param minPopulation The minimum population of a city to be counted.
+     * @return The number of cities, or 0 if the country is unknown.
+     */
+    public int getNumberOfCities(String countryName, long minPopulation) {
+        Entry entry = getCountry(countryName);
+        return entry == null ? 0 : entry.countCitiesAtLeast(minPopulation);
+    }
+
+    public int size() {
+        return countries.size();
+    }
+
+    /**
+     * Finds the countries whose cities differ between this index and another one, such as the index of a
+     * new version of the dataset.
+     * @param other The other index.
+     * @return The normalized names (see normalize) of the countries that are only in one of the indexes, or
+     * whose city populations differ.
+     */
+    public Set<String> changedCountries(CountryIndex other) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Entry> country : countries.entrySet()) {
+            Entry otherEntry = other.countries.get(country.getKey());
+            if (otherEntry == null || !Arrays.equals(country.getValue().populations, otherEntry.populations)) {
+                changed.add(country.getKey());
+            }
+        }
+        for (String country : other.countries.keySet()) {
+            if (!countries.containsKey(country)) {
+                changed.add(country);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Estimates the heap memory held by the index (see MemoryEstimate).
+     * @return The estimated number of bytes.
+     */
+    public long estimateHeapBytes() {
+        // A hash map node has a hash, three references and a header, and the table has a slot per node
+        long bytes = MemoryEstimate.ofReferenceArray(Integer.highestOneBit(Math.max(1, countries.size()) * 2));
+        for (Map.Entry<String, Entry> country : countries.entrySet()) {
+            Entry entry = country.getValue();
+            bytes += MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 4 + 3 * MemoryEstimate.REFERENCE)
+                    + MemoryEstimate.ofString(country.getKey())
+                    + MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 2 * MemoryEstimate.REFERENCE + 8)
+                    + MemoryEstimate.ofLongArray(entry.populations.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds the position of the first value that is greater than or equal to the given key.
+     * @param sorted A sorted array.
+     * @param key    The value to search for.
+     * @return The index of the first value not less than key, or the length of the array if there is none.
+     */
+    public static int lowerBound(long[] sorted, long key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The Entry class holds the indexed cities of one country.
+     */
+    public static final class Entry {
+        private final String countryName;
+        private final long[] populations;
+        private final long totalPopulation;
+
+        private Entry(String countryName, long[] populations, long totalPopulation) {
+            this.countryName = countryName;
+            this.populations = populations;
+            this.totalPopulation = totalPopulation;
+        }
+
+        /**
+         * Counts the cities of the country with at least the given population.
+         * @param minPopulation The minimum population of a city to be counted.
+         * @return The number of cities.
+         */
+        public int countCitiesAtLeast(long minPopulation) {
+            return populations.length - lowerBound(populations, minPopulation);
+        }
+
+        /**
+         * Counts the cities of the country whose population lies in a closed range.
+         * @param minPopulation The minimum population of a city to be counted.
+         * @param maxPopulation The maximum population of a city to be counted.
+         * @return The number of cities, 0 if the range is empty.
+         */
+        public int countCitiesBetween(long minPopulation, long maxPopulation) {
+            if (maxPopulation < minPopulation) {
+                return 0;
+            }
+            int end = maxPopulation == Long.MAX_VALUE ? populations.length : lowerBound(populations, maxPopulation + 1);
+            return end - lowerBound(populations, minPopulation);
+        }
+
+        public String getCountryName() {
+            return countryName;
+        }
+
+        public int getNumberOfCities() {
+            return populations.length;
+        }
+
+        /**
+         * Retrieves the population of the city at a given rank, in ascending order.
+         * @param index The rank of the city, from 0 to getNumberOfCities() - 1.
+         * @return The population of that city.
+         */
+        public long getPopulationAt(int index) {
+            return populations[index];
+        }
+
+        public long getTotalPopulation() {
+            return totalPopulation;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.java_rmi.data_conector;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+
+/**
+ * The DatasetFootprint class measures the heap memory that the dataset takes in each table layout, to size
+ * the heap of a JVM that runs several servers. For every layout it reports the estimate of
+ * GeoDataTable.estimateHeapBytes and the growth of the used heap, after garbage collection, once the table
+ * and its country index are built.
+ *
+ * Usage: DatasetFootprint [csvFile]
+ * Without a file, or when the file does not exist, a synthetic dataset of -Drmi.footprint.rows rows
+ * (1000000 by default) is used.
+ */
+public final class DatasetFootprint {
+    public static final String ROWS_PROPERTY = "rmi.footprint.rows";
+
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private DatasetFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String csvFile = args.length > 0 ? args[0] : CSVReader.datasetPath();
+        File temporary = null;
+        if (!new File(csvFile).isFile()) {
+            int rows = Integer.getInteger(ROWS_PROPERTY, 1000000);
+            temporary = File.createTempFile("footprint-", ".csv");
+            SyntheticDataset.writeCSV(rows, SyntheticDataset.DEFAULT_SEED, temporary.getPath());
+            csvFile = temporary.getPath();
+            System.out.println("No dataset at " + (args.length > 0 ? args[0] : CSVReader.datasetPath())
+                    + ", using " + rows + " synthetic rows");
+        }
+
+        try {
+            ParallelCSVReader reader = ParallelCSVReader.fromSystemProperty();
+            for (String layout : new String[]{"heap", "compact"}) {
+                long before = usedHeap();
+                GeoDataTable table = "heap".equals(layout)
+                        ? new HeapGeoDataTable(reader.read(csvFile)) : reader.readTable(csvFile);
+                CountryIndex countryIndex = CountryIndex.build(table);
+                long measured = usedHeap() - before;
+                Reference.reachabilityFence(table);
+                Reference.reachabilityFence(countryIndex);
+
+                System.out.printf("%-8s %d rows: table %.1f MB + index %.1f MB estimated, %.1f MB measured%n",
+                        layout, table.size(), table.estimateHeapBytes() / MEGABYTE,
+                        countryIndex.estimateHeapBytes() / MEGABYTE, measured / MEGABYTE);
+            }
+        } finally {
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * @return The heap memory in use after collecting the garbage.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
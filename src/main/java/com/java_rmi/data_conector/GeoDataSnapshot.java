@@ -0,0 +1,248 @@
+package com.java_rmi.data_conector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * The GeoDataSnapshot class converts the CSV dataset into a columnar binary file that the servers can
+ * memory-map at startup instead of parsing text.
+ *
+ * The file starts with a fixed-size header followed by these sections:
+ * the population column (one long per row), the country column (one int dictionary id per row), the
+ * country dictionary (countryCount + 1 int offsets followed by the UTF-8 names) and the other string
+ * fields (5 * rowCount + 1 int offsets followed by the UTF-8 bytes of geonameID, name, countryCode,
+ * timezone and coordinates of every row).
+ */
+public final class GeoDataSnapshot {
+    static final int MAGIC = 0x47454F44; // "GEOD"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 80;
+    static final int STRING_FIELDS = 5;
+
+    // Header layout
+    static final int SOURCE_LENGTH = 8;
+    static final int SOURCE_LAST_MODIFIED = 16;
+    static final int ROW_COUNT = 24;
+    static final int COUNTRY_COUNT = 28;
+    static final int POPULATION_OFFSET = 32;
+    static final int COUNTRY_ID_OFFSET = 40;
+    static final int COUNTRY_DICTIONARY_OFFSET = 48;
+    static final int STRING_OFFSETS_OFFSET = 56;
+    static final int STRING_HEAP_OFFSET = 64;
+    static final int FILE_LENGTH = 72;
+
+    private GeoDataSnapshot() {
+    }
+
+    /**
+     * Retrieves the snapshot file used for a CSV file: the same path with a ".snapshot" suffix.
+     * @param csvFile The path of the CSV file.
+     * @return The path of its snapshot.
+     */
+    public static String snapshotFileFor(String csvFile) {
+        return csvFile + ".snapshot";
+    }
+
+    /**
+     * Checks whether a snapshot can be used in place of its CSV file. A snapshot is usable when it exists
+     * and, if the CSV file is present, was written from a CSV file of the same length and modification time.
+     * @param snapshotFile The path of the snapshot.
+     * @param csvFile      The path of the CSV file the snapshot was written from.
+     * @return True if the snapshot is present and up to date.
+     */
+    public static boolean isUsable(String snapshotFile, String csvFile) {
+        File snapshot = new File(snapshotFile);
+        if (!snapshot.isFile() || snapshot.length() < HEADER_SIZE) {
+            return false;
+        }
+        File csv = new File(csvFile);
+        if (!csv.isFile()) {
+            return true;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read the whole header
+            }
+            return header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION
+                    && header.getLong(SOURCE_LENGTH) == csv.length()
+                    && header.getLong(SOURCE_LAST_MODIFIED) == csv.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Memory-maps a snapshot file.
+     * @param snapshotFile The path of the snapshot.
+     * @return A table reading its columns straight from the mapped file.
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     */
+    public static MappedGeoDataTable map(String snapshotFile) throws IOException {
+        return new MappedGeoDataTable(Paths.get(snapshotFile));
+    }
+
+    /**
+     * Writes a table as a snapshot file. The file is written next to the target and then moved in place,
+     * so a server never maps a half-written snapshot.
+     * @param table        The rows to write.
+     * @param csvFile      The CSV file the rows were read from, recorded to detect stale snapshots.
+     * @param snapshotFile The path of the snapshot to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(GeoDataTable table, String csvFile, String snapshotFile) throws IOException {
+        File csv = new File(csvFile);
+        int rowCount = table.size();
+        int countryCount = table.getCountryCount();
+
+        // Encode the country dictionary
+        byte[][] countryNames = new byte[countryCount][];
+        int dictionaryBytes = 0;
+        for (int i = 0; i < countryCount; i++) {
+            countryNames[i] = table.getCountryName(i).getBytes(StandardCharsets.UTF_8);
+            dictionaryBytes += countryNames[i].length;
+        }
+
+        long populationOffset = HEADER_SIZE;
+        long countryIdOffset = populationOffset + 8L * rowCount;
+        long dictionaryOffset = countryIdOffset + 4L * rowCount;
+        long stringOffsetsOffset = dictionaryOffset + 4L * (countryCount + 1) + dictionaryBytes;
+        long stringHeapOffset = stringOffsetsOffset + 4L * (STRING_FIELDS * (long) rowCount + 1);
+
+        Path target = Paths.get(snapshotFile);
+        Path temporary = Paths.get(snapshotFile + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SectionWriter columns = new SectionWriter(channel, populationOffset);
+            for (int row = 0; row < rowCount; row++) {
+                columns.putLong(table.getPopulation(row));
+            }
+            for (int row = 0; row < rowCount; row++) {
+                columns.putInt(table.getCountryId(row));
+            }
+
+            int countryNameOffset = 0;
+            for (byte[] countryName : countryNames) {
+                columns.putInt(countryNameOffset);
+                countryNameOffset += countryName.length;
+            }
+            columns.putInt(countryNameOffset);
+            for (byte[] countryName : countryNames) {
+                columns.put(countryName);
+            }
+
+            // The string offsets and the string bytes are written side by side in one pass over the rows
+            SectionWriter heap = new SectionWriter(channel, stringHeapOffset);
+            long heapOffset = 0;
+            for (int row = 0; row < rowCount; row++) {
+                GeoData geoData = table.getRow(row);
+                String[] fields = {geoData.getGeonameID(), geoData.getName(), geoData.getCountryCode(),
+                        geoData.getTimezone(), geoData.getCoordinates()};
+                for (String field : fields) {
+                    columns.putInt((int) heapOffset);
+                    byte[] bytes = (field == null ? "" : field).getBytes(StandardCharsets.UTF_8);
+                    heap.put(bytes);
+                    heapOffset += bytes.length;
+                    if (heapOffset > Integer.MAX_VALUE) {
+                        throw new IOException("Dataset too large for a snapshot: string fields exceed 2 GB");
+                    }
+                }
+            }
+            columns.putInt((int) heapOffset);
+            columns.flush();
+            heap.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, FORMAT_VERSION);
+            header.putLong(SOURCE_LENGTH, csv.length());
+            header.putLong(SOURCE_LAST_MODIFIED, csv.lastModified());
+            header.putInt(ROW_COUNT, rowCount);
+            header.putInt(COUNTRY_COUNT, countryCount);
+            header.putLong(POPULATION_OFFSET, populationOffset);
+            header.putLong(COUNTRY_ID_OFFSET, countryIdOffset);
+            header.putLong(COUNTRY_DICTIONARY_OFFSET, dictionaryOffset);
+            header.putLong(STRING_OFFSETS_OFFSET, stringOffsetsOffset);
+            header.putLong(STRING_HEAP_OFFSET, stringHeapOffset);
+            header.putLong(FILE_LENGTH, stringHeapOffset + heapOffset);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Converts a CSV dataset into a snapshot file.
+     * Usage: GeoDataSnapshot [csvFile] [snapshotFile]
+     * @param args The optional CSV file and snapshot file paths.
+     */
+    public static void main(String[] args) throws IOException {
+        String csvFile = args.length > 0 ? args[0] : CSVReader.datasetPath();
+        String snapshotFile = args.length > 1 ? args[1] : snapshotFileFor(csvFile);
+
+        long startTime = System.currentTimeMillis();
+        List<GeoData> rows = ParallelCSVReader.readDataCSV(csvFile);
+        write(new HeapGeoDataTable(rows), csvFile, snapshotFile);
+        System.out.println("Wrote " + rows.size() + " rows to " + snapshotFile + " in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * Buffers the values of one section and writes them at increasing positions of the file.
+     */
+    private static final class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        private long position;
+
+        SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                ensureRemaining(1);
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
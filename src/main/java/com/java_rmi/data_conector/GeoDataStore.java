@@ -0,0 +1,259 @@
+package com.java_rmi.data_conector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * The GeoDataStore class holds the geographical dataset in memory so that it is read once and then
+ * shared by every query. The store is immutable after construction, which makes it safe to read from
+ * the RMI dispatch threads without any locking.
+ *
+ * A store loaded from a CSV file remembers the file, its length and modification time, and a version
+ * number; when the file changes, a new store with the next version is loaded and the servers switch to it
+ * (see DatasetWatcher).
+ */
+public final class GeoDataStore {
+    public static final String LAYOUT_PROPERTY = "rmi.dataset.layout";
+
+    private static volatile GeoDataStore shared;
+
+    private final GeoDataTable table;
+    private final CountryIndex countryIndex;
+    private final String source;
+    private final long loadTimeMillis;
+    private final long version;
+    private final String csvFile; // Null unless loaded from a CSV file
+    private final long csvLastModified;
+    private final long csvLength;
+    private volatile long tableHeapBytes = -1; // Estimated on first use
+    private volatile long indexHeapBytes = -1;
+
+    /**
+     * Constructs a new GeoDataStore over the given rows.
+     * @param data           The rows of the dataset. The list is copied, later changes to it are not seen.
+     * @param source         A description of where the rows were loaded from.
+     * @param loadTimeMillis The time it took to load the rows, in milliseconds.
+     */
+    public GeoDataStore(List<GeoData> data, String source, long loadTimeMillis) {
+        this(tableOf(data), source, loadTimeMillis);
+    }
+
+    /**
+     * Constructs a new GeoDataStore over a table.
+     * @param table          The table of the dataset.
+     * @param source         A description of where the table was loaded from.
+     * @param loadTimeMillis The time it took to load the table, in milliseconds.
+     */
+    public GeoDataStore(GeoDataTable table, String source, long loadTimeMillis) {
+        this(table, source, loadTimeMillis, 1);
+    }
+
+    /**
+     * Constructs a new version of a GeoDataStore over a table.
+     * @param table          The table of the dataset.
+     * @param source         A description of where the table was loaded from.
+     * @param loadTimeMillis The time it took to load the table, in milliseconds.
+     * @param version        The version of the dataset, 1 for the first one.
+     */
+    public GeoDataStore(GeoDataTable table, String source, long loadTimeMillis, long version) {
+        this(table, source, loadTimeMillis, version, null, 0, 0);
+    }
+
+    private GeoDataStore(GeoDataTable table, String source, long loadTimeMillis, long version,
+                         String csvFile, long csvLastModified, long csvLength) {
+        this.table = table;
+        this.countryIndex = CountryIndex.build(table);
+        this.source = source;
+        this.loadTimeMillis = loadTimeMillis;
+        this.version = version;
+        this.csvFile = csvFile;
+        this.csvLastModified = csvLastModified;
+        this.csvLength = csvLength;
+    }
+
+    /**
+     * Stores rows in the table layout chosen with -Drmi.dataset.layout: "compact" (CompactGeoDataTable, the
+     * default) or "heap" (HeapGeoDataTable, one GeoData object per row).
+     * @param data The rows of the dataset.
+     * @return A new table with the rows.
+     */
+    public static GeoDataTable tableOf(List<GeoData> data) {
+        if ("heap".equals(System.getProperty(LAYOUT_PROPERTY))) {
+            return new HeapGeoDataTable(data);
+        }
+        return new CompactGeoDataTable(data);
+    }
+
+    /**
+     * Reads a CSV file in the table layout chosen with -Drmi.dataset.layout. The compact table is filled
+     * while the file is parsed, without a GeoData object per row (see ParallelCSVReader.readTable).
+     * @param csvFile The path of the CSV file to read.
+     * @return A new table with the rows of the file.
+     */
+    private static GeoDataTable readTable(String csvFile) {
+        if ("heap".equals(System.getProperty(LAYOUT_PROPERTY))) {
+            return new HeapGeoDataTable(ParallelCSVReader.readDataCSV(csvFile));
+        }
+        return ParallelCSVReader.readTableCSV(csvFile);
+    }
+
+    /**
+     * Loads the dataset of a CSV file and reports how long it took. The binary snapshot of the file is
+     * memory-mapped when it is up to date; otherwise the CSV file is parsed in parallel (see ParallelCSVReader)
+     * and a new snapshot is written for the next start.
+     * @param csvFile The path of the CSV file to read.
+     * @return A new GeoDataStore containing the rows of the file.
+     */
+    public static GeoDataStore load(String csvFile) {
+        return load(csvFile, 1);
+    }
+
+    /**
+     * Loads a version of the dataset of a CSV file, like load(csvFile).
+     * @param csvFile The path of the CSV file to read.
+     * @param version The version of the dataset.
+     * @return A new GeoDataStore containing the rows of the file.
+     */
+    public static GeoDataStore load(String csvFile, long version) {
+        long startTime = System.currentTimeMillis();
+        // Taken before reading, so that a change made during the read is seen as a change
+        File file = new File(csvFile);
+        long csvLastModified = file.lastModified();
+        long csvLength = file.length();
+        String snapshotFile = GeoDataSnapshot.snapshotFileFor(csvFile);
+        GeoDataTable table = null;
+        String source = snapshotFile;
+
+        if (GeoDataSnapshot.isUsable(snapshotFile, csvFile)) {
+            try {
+                table = GeoDataSnapshot.map(snapshotFile);
+            } catch (IOException e) {
+                System.out.println("Error mapping dataset snapshot, reading CSV instead!!!");
+            }
+        }
+        if (table == null) {
+            source = csvFile;
+            table = readTable(csvFile);
+            try {
+                GeoDataSnapshot.write(table, csvFile, snapshotFile);
+            } catch (IOException e) {
+                System.out.println("Error writing dataset snapshot!!!");
+            }
+        }
+        long loadTime = System.currentTimeMillis() - startTime;
+
+        GeoDataStore store = new GeoDataStore(table, source, loadTime, version, csvFile, csvLastModified, csvLength);
+        System.out.println("Dataset version " + version + " loaded from " + source + ": " + store.size() + " rows in "
+                + loadTime + " ms");
+        return store;
+    }
+
+    /**
+     * Retrieves the store shared by all servers of this JVM, loading it from the CSV file of the dataset
+     * (see CSVReader.datasetPath) on first use.
+     * @return The shared GeoDataStore.
+     */
+    public static GeoDataStore getShared() {
+        GeoDataStore store = shared;
+        if (store == null) {
+            synchronized (GeoDataStore.class) {
+                store = shared;
+                if (store == null) {
+                    store = load(CSVReader.datasetPath());
+                    shared = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Retrieves all rows of the dataset. Rows of a memory-mapped table are materialized on every access.
+     * @return An unmodifiable list view of the rows.
+     */
+    public List<GeoData> getData() {
+        return new AbstractList<GeoData>() {
+            @Override
+            public GeoData get(int index) {
+                return table.getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return table.size();
+            }
+        };
+    }
+
+    public GeoDataTable getTable() {
+        return table;
+    }
+
+    /**
+     * Retrieves the per-country index built over the rows of the dataset.
+     * @return The CountryIndex of this store.
+     */
+    public CountryIndex getCountryIndex() {
+        return countryIndex;
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getLoadTimeMillis() {
+        return loadTimeMillis;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The CSV file the store was loaded from, or null if it was built from rows in memory.
+     */
+    public String getCsvFile() {
+        return csvFile;
+    }
+
+    /**
+     * Checks whether the CSV file of the store differs from the file that was read, by its length and
+     * modification time.
+     * @return True if the store was loaded from a CSV file that changed since.
+     */
+    public boolean isCsvFileChanged() {
+        if (csvFile == null) {
+            return false;
+        }
+        File file = new File(csvFile);
+        return file.lastModified() != csvLastModified || file.length() != csvLength;
+    }
+
+    /**
+     * Estimates the heap memory of the table once; the store never changes.
+     * @return The estimated number of bytes held by the rows of the dataset.
+     */
+    public long getTableHeapBytes() {
+        if (tableHeapBytes < 0) {
+            tableHeapBytes = table.estimateHeapBytes();
+        }
+        return tableHeapBytes;
+    }
+
+    /**
+     * Estimates the heap memory of the country index once; the store never changes.
+     * @return The estimated number of bytes held by the country index.
+     */
+    public long getIndexHeapBytes() {
+        if (indexHeapBytes < 0) {
+            indexHeapBytes = countryIndex.estimateHeapBytes();
+        }
+        return indexHeapBytes;
+    }
+}
@@ -0,0 +1,61 @@
+package com.java_rmi.data_conector;
+
+/**
+ * The GeoDataTable interface gives column-wise access to the rows of the dataset. The columns that the
+ * queries read, the country and the population, are available without creating a GeoData object per row.
+ */
+public interface GeoDataTable {
+    /**
+     * @return The number of rows of the table.
+     */
+    int size();
+
+    /**
+     * Retrieves the population of a row.
+     * @param row The index of the row.
+     * @return The population of the location.
+     */
+    long getPopulation(int row);
+
+    /**
+     * Retrieves the dictionary id of the country of a row.
+     * @param row The index of the row.
+     * @return The country id, between 0 and getCountryCount() - 1.
+     */
+    int getCountryId(int row);
+
+    /**
+     * @return The number of distinct country names of the table.
+     */
+    int getCountryCount();
+
+    /**
+     * Retrieves the country name of a dictionary id.
+     * @param countryId The id of the country.
+     * @return The country name in English, as it appears in the dataset.
+     */
+    String getCountryName(int countryId);
+
+    /**
+     * Retrieves the normalized country name of a dictionary id (see CountryIndex.normalize).
+     * @param countryId The id of the country.
+     * @return The country name with the case of its letters normalized.
+     */
+    default String getNormalizedCountryName(int countryId) {
+        return CountryIndex.normalize(getCountryName(countryId));
+    }
+
+    /**
+     * Materializes a row as a GeoData object.
+     * @param row The index of the row.
+     * @return The GeoData of that row.
+     */
+    GeoData getRow(int row);
+
+    /**
+     * Estimates the heap memory held by the table (see MemoryEstimate). Memory-mapped columns are not on
+     * the heap and are not counted.
+     * @return The estimated number of bytes.
+     */
+    long estimateHeapBytes();
+}
@@ -0,0 +1,85 @@
+package com.java_rmi.data_conector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HeapGeoDataTable class is a GeoDataTable over a list of GeoData objects, as read from the CSV file.
+ */
+public class HeapGeoDataTable implements GeoDataTable {
+    private final List<GeoData> rows;
+    private final int[] countryIds;
+    private final List<String> countryNames;
+
+    /**
+     * Constructs a table over the given rows.
+     * @param rows The rows of the dataset. The list is copied, later changes to it are not seen.
+     */
+    public HeapGeoDataTable(List<GeoData> rows) {
+        this.rows = new ArrayList<>(rows);
+        this.countryIds = new int[rows.size()];
+        this.countryNames = new ArrayList<>();
+
+        // Dictionary-encode the country names
+        Map<String, Integer> dictionary = new HashMap<>();
+        for (int i = 0; i < countryIds.length; i++) {
+            String countryName = this.rows.get(i).getCountryNameEn();
+            Integer countryId = dictionary.get(countryName);
+            if (countryId == null) {
+                countryId = countryNames.size();
+                dictionary.put(countryName, countryId);
+                countryNames.add(countryName);
+            }
+            countryIds[i] = countryId;
+        }
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public long getPopulation(int row) {
+        return rows.get(row).getPopulation();
+    }
+
+    @Override
+    public int getCountryId(int row) {
+        return countryIds[row];
+    }
+
+    @Override
+    public int getCountryCount() {
+        return countryNames.size();
+    }
+
+    @Override
+    public String getCountryName(int countryId) {
+        return countryNames.get(countryId);
+    }
+
+    @Override
+    public GeoData getRow(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        // A GeoData has six string references and a long
+        long bytes = MemoryEstimate.ofReferenceArray(rows.size()) + MemoryEstimate.ofIntArray(countryIds.length);
+        for (GeoData row : rows) {
+            bytes += MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 6 * MemoryEstimate.REFERENCE + 8)
+                    + MemoryEstimate.ofString(row.getGeonameID()) + MemoryEstimate.ofString(row.getName())
+                    + MemoryEstimate.ofString(row.getCountryCode()) + MemoryEstimate.ofString(row.getTimezone())
+                    + MemoryEstimate.ofString(row.getCoordinates());
+        }
+        // The country names are shared by the rows of a country
+        for (String countryName : countryNames) {
+            bytes += MemoryEstimate.ofString(countryName);
+        }
+        return bytes;
+    }
+}
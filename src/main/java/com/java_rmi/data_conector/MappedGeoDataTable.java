@@ -0,0 +1,124 @@
+package com.java_rmi.data_conector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.java_rmi.data_conector.GeoDataSnapshot.*;
+
+/**
+ * The MappedGeoDataTable class reads the columns of a snapshot file written by GeoDataSnapshot straight
+ * from a memory-mapped buffer. Opening the table only decodes the country dictionary, rows are never
+ * copied onto the heap unless they are materialized with getRow.
+ */
+public class MappedGeoDataTable implements GeoDataTable {
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final LongBuffer populations;
+    private final IntBuffer countryIds;
+    private final String[] countryNames;
+    private final IntBuffer stringOffsets;
+    private final int stringHeapOffset;
+
+    /**
+     * Maps a snapshot file.
+     * @param snapshotFile The path of the snapshot.
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     */
+    public MappedGeoDataTable(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB: " + snapshotFile);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                || buffer.getLong(FILE_LENGTH) != buffer.capacity()) {
+            throw new IOException("Not a valid dataset snapshot: " + snapshotFile);
+        }
+
+        this.rowCount = buffer.getInt(ROW_COUNT);
+        this.populations = section(POPULATION_OFFSET).asLongBuffer();
+        this.countryIds = section(COUNTRY_ID_OFFSET).asIntBuffer();
+        this.stringOffsets = section(STRING_OFFSETS_OFFSET).asIntBuffer();
+        this.stringHeapOffset = (int) buffer.getLong(STRING_HEAP_OFFSET);
+
+        // Decode the country dictionary, it only has one entry per country
+        int countryCount = buffer.getInt(COUNTRY_COUNT);
+        int dictionaryOffset = (int) buffer.getLong(COUNTRY_DICTIONARY_OFFSET);
+        int namesOffset = dictionaryOffset + 4 * (countryCount + 1);
+        this.countryNames = new String[countryCount];
+        for (int i = 0; i < countryCount; i++) {
+            int start = buffer.getInt(dictionaryOffset + 4 * i);
+            int end = buffer.getInt(dictionaryOffset + 4 * (i + 1));
+            countryNames[i] = decode(namesOffset + start, end - start);
+        }
+    }
+
+    private ByteBuffer section(int headerField) {
+        ByteBuffer section = buffer.duplicate();
+        section.position((int) buffer.getLong(headerField));
+        return section.slice();
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String stringField(int row, int field) {
+        int index = row * STRING_FIELDS + field;
+        int start = stringOffsets.get(index);
+        return decode(stringHeapOffset + start, stringOffsets.get(index + 1) - start);
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public long getPopulation(int row) {
+        return populations.get(row);
+    }
+
+    @Override
+    public int getCountryId(int row) {
+        return countryIds.get(row);
+    }
+
+    @Override
+    public int getCountryCount() {
+        return countryNames.length;
+    }
+
+    @Override
+    public String getCountryName(int countryId) {
+        return countryNames[countryId];
+    }
+
+    @Override
+    public GeoData getRow(int row) {
+        return new GeoData(stringField(row, 0), stringField(row, 1), stringField(row, 2),
+                countryNames[countryIds.get(row)], populations.get(row), stringField(row, 3), stringField(row, 4));
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        // Only the country dictionary is decoded onto the heap
+        long bytes = MemoryEstimate.ofReferenceArray(countryNames.length);
+        for (String countryName : countryNames) {
+            bytes += MemoryEstimate.ofString(countryName);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,51 @@
+package com.java_rmi.data_conector;
+
+/**
+ * The MemoryEstimate class estimates the heap size of the objects that hold the dataset, for a 64 bit JVM
+ * with compressed references and compact strings: 12 byte object headers, 4 byte references and objects
+ * aligned to 8 bytes.
+ */
+public final class MemoryEstimate {
+    public static final int OBJECT_HEADER = 12;
+    public static final int ARRAY_HEADER = 16;
+    public static final int REFERENCE = 4;
+
+    private MemoryEstimate() {
+    }
+
+    /**
+     * @param bytes a size in bytes.
+     * @return the size rounded up to the object alignment.
+     */
+    public static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * @param value a string, or null.
+     * @return the bytes of the string object and of its Latin-1 byte array.
+     */
+    public static long ofString(String value) {
+        return value == null ? 0 : align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + value.length());
+    }
+
+    public static long ofLongArray(int length) {
+        return align(ARRAY_HEADER + 8L * length);
+    }
+
+    public static long ofByteArray(int length) {
+        return align(ARRAY_HEADER + (long) length);
+    }
+
+    public static long ofShortArray(int length) {
+        return align(ARRAY_HEADER + 2L * length);
+    }
+
+    public static long ofIntArray(int length) {
+        return align(ARRAY_HEADER + 4L * length);
+    }
+
+    public static long ofReferenceArray(int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+}
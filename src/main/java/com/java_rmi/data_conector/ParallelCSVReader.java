@@ -0,0 +1,579 @@
+package com.java_rmi.data_conector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * The ParallelCSVReader class reads the CSV dataset like CSVReader, but parses the file in parallel,
+ * straight from its memory-mapped bytes.
+ *
+ * The file is read in two passes on a fork-join pool. The first pass cuts the file into chunks of equal
+ * size and counts the quotes of every chunk together with its first line break after an even and after an
+ * odd number of quotes. Adding up the quote counts of the chunks before it tells which of the two line
+ * breaks of a chunk is outside a quoted field, and so where the first record of the chunk starts. The
+ * second pass parses the records of every chunk into GeoData objects, and the chunks are concatenated in
+ * file order. With readTable, the second pass fills a CompactGeoDataTable.Builder per chunk instead, and
+ * the geoname ID, name and coordinates are copied as bytes without ever becoming strings.
+ *
+ * The parser follows CSVFormat.DEFAULT, the format of CSVReader. The population is parsed from the bytes
+ * without an intermediate string, and the country code, country name and timezone, which repeat on many
+ * rows, are decoded once per chunk and shared by its rows.
+ *
+ * A quote inside an unquoted field can mislead the quote count; when the records of a chunk do not end
+ * where the next chunk starts, or the file is not valid CSV, the file is read again with CSVReader, so the
+ * rows, and the errors, are always those of CSVReader.
+ */
+public final class ParallelCSVReader {
+    public static final String PARALLELISM_PROPERTY = "rmi.csv.parallelism";
+    public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int FIELDS = 7;
+
+    private final int parallelism;
+    private final int chunkBytes;
+    private final Charset charset;
+
+    /**
+     * Constructs a reader that decodes the file with the default charset, like the FileReader of CSVReader.
+     * @param parallelism The number of threads parsing the file.
+     */
+    public ParallelCSVReader(int parallelism) {
+        this(parallelism, DEFAULT_CHUNK_BYTES, Charset.defaultCharset());
+    }
+
+    /**
+     * Constructs a reader.
+     * @param parallelism The number of threads parsing the file.
+     * @param chunkBytes  The smallest chunk the file is cut into.
+     * @param charset     The charset of the file.
+     */
+    public ParallelCSVReader(int parallelism, int chunkBytes, Charset charset) {
+        if (parallelism < 1 || chunkBytes < 1) {
+            throw new IllegalArgumentException("The parallelism and the chunk size must be positive");
+        }
+        this.parallelism = parallelism;
+        this.chunkBytes = chunkBytes;
+        this.charset = charset;
+    }
+
+    /**
+     * Creates a reader with -Drmi.csv.parallelism threads, all the processors by default.
+     * @return A new ParallelCSVReader.
+     */
+    public static ParallelCSVReader fromSystemProperty() {
+        return new ParallelCSVReader(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Reads geographical data from a CSV file with a reader configured by the system properties.
+     * @param csvFile The path of the CSV file to read.
+     * @return A list of GeoData objects containing the read data, empty if the file cannot be read.
+     */
+    public static List<GeoData> readDataCSV(String csvFile) {
+        try {
+            return fromSystemProperty().read(csvFile);
+        } catch (IOException e) {
+            System.out.println("Error reading data from CSV!!!");
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Reads a CSV file into a compact table with a reader configured by the system properties.
+     * @param csvFile The path of the CSV file to read.
+     * @return A CompactGeoDataTable with the rows of the file, empty if the file cannot be read.
+     */
+    public static CompactGeoDataTable readTableCSV(String csvFile) {
+        try {
+            return fromSystemProperty().readTable(csvFile);
+        } catch (IOException e) {
+            System.out.println("Error reading data from CSV!!!");
+            return new CompactGeoDataTable(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Reads geographical data from a CSV file and returns it as a list of GeoData objects.
+     * @param csvFile The path of the CSV file to read.
+     * @return A list of GeoData objects containing the rows of the file, header excluded.
+     * @throws IOException if the file cannot be read.
+     */
+    public List<GeoData> read(String csvFile) throws IOException {
+        ChunkRows[] chunks = parse(csvFile, false);
+        if (chunks == null) {
+            return CSVReader.readDataCSV(csvFile);
+        }
+        int rowCount = 0;
+        for (ChunkRows chunk : chunks) {
+            rowCount += chunk.rows.size();
+        }
+        List<GeoData> rows = new ArrayList<>(rowCount);
+        for (ChunkRows chunk : chunks) {
+            rows.addAll(chunk.rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a CSV file straight into a compact table, without a GeoData object or a string per row.
+     * @param csvFile The path of the CSV file to read.
+     * @return A CompactGeoDataTable with the rows of the file, header excluded.
+     * @throws IOException if the file cannot be read.
+     */
+    public CompactGeoDataTable readTable(String csvFile) throws IOException {
+        ChunkRows[] chunks = parse(csvFile, true);
+        if (chunks == null) {
+            return new CompactGeoDataTable(CSVReader.readDataCSV(csvFile));
+        }
+        int rowCount = 0;
+        long lazyBytes = 0;
+        for (ChunkRows chunk : chunks) {
+            rowCount += chunk.table.size();
+            lazyBytes += chunk.table.getLazyByteCount();
+        }
+        CompactGeoDataTable.Builder table = new CompactGeoDataTable.Builder(rowCount, (int) Math.min(lazyBytes, Integer.MAX_VALUE - 8));
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            table.addAll(chunks[chunk].table);
+            chunks[chunk] = null; // Collectable once appended
+        }
+        return table.build();
+    }
+
+    /**
+     * Maps a CSV file and parses it in chunks.
+     * @param compact Whether the chunks fill a CompactGeoDataTable.Builder rather than a list of GeoData.
+     * @return The chunks in file order, or null if the file must be read with CSVReader instead.
+     */
+    private ChunkRows[] parse(String csvFile, boolean compact) throws IOException {
+        if (!isAsciiCompatible(charset)) {
+            // The delimiters cannot be found in the bytes
+            return null;
+        }
+
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return parse(data, pool, compact);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parses the mapped file.
+     * @return The chunks, or null if they could not be parsed on their own.
+     */
+    private ChunkRows[] parse(ByteBuffer data, ForkJoinPool pool, boolean compact) {
+        int length = data.limit();
+        int chunkCount = (int) Math.max(1, Math.min((long) parallelism * CHUNKS_PER_THREAD, length / chunkBytes));
+
+        // First pass: the quotes and line breaks of every chunk
+        ChunkScan[] scans = new ChunkScan[chunkCount];
+        pool.invoke(new ForEachChunk(0, chunkCount, chunk -> scans[chunk] = scan(data,
+                chunkStart(chunk, chunkCount, length), chunkStart(chunk + 1, chunkCount, length))));
+
+        // The first record of a chunk starts after its first line break outside quotes
+        int[] starts = new int[chunkCount + 1];
+        int records = 0;
+        boolean oddQuotes = false;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int lineBreak = chunk == 0 ? -1 : oddQuotes ? scans[chunk].firstOddLineBreak : scans[chunk].firstEvenLineBreak;
+            if (chunk == 0 || lineBreak >= 0) {
+                starts[records++] = chunk == 0 ? 0 : lineBreak + 1;
+            }
+            oddQuotes ^= (scans[chunk].quotes & 1) != 0;
+        }
+        int ranges = records;
+        starts[ranges] = length;
+
+        // Second pass: the records of every range
+        ChunkRows[] parsed = new ChunkRows[ranges];
+        pool.invoke(new ForEachChunk(0, ranges, range -> parsed[range] =
+                new ChunkParser(data.duplicate(), charset).parse(starts[range], starts[range + 1], range == 0, compact)));
+
+        for (int range = 0; range < ranges; range++) {
+            if (parsed[range].failed || parsed[range].end != starts[range + 1]) {
+                return null;
+            }
+        }
+        return parsed;
+    }
+
+    private static int chunkStart(int chunk, int chunkCount, int length) {
+        return (int) ((long) length * chunk / chunkCount);
+    }
+
+    private static ChunkScan scan(ByteBuffer data, int start, int end) {
+        ChunkScan scan = new ChunkScan();
+        for (int i = start; i < end; i++) {
+            byte b = data.get(i);
+            if (b == '"') {
+                scan.quotes++;
+            } else if (b == '\n') {
+                if ((scan.quotes & 1) == 0) {
+                    if (scan.firstEvenLineBreak < 0) {
+                        scan.firstEvenLineBreak = i;
+                    }
+                } else if (scan.firstOddLineBreak < 0) {
+                    scan.firstOddLineBreak = i;
+                }
+            }
+        }
+        return scan;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || (charset.newEncoder().maxBytesPerChar() == 1 && Arrays.equals(
+                "\",\r\n".getBytes(charset), "\",\r\n".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * The quotes of a chunk and its first line breaks after an even and an odd number of them.
+     */
+    private static final class ChunkScan {
+        private int quotes;
+        private int firstEvenLineBreak = -1;
+        private int firstOddLineBreak = -1;
+    }
+
+    /**
+     * The rows of a range of the file, as GeoData objects or in a table builder, and the position where its
+     * last record ended.
+     */
+    private static final class ChunkRows {
+        private final List<GeoData> rows;
+        private final CompactGeoDataTable.Builder table;
+        private int end;
+        private boolean failed;
+
+        ChunkRows(boolean compact) {
+            this.rows = compact ? null : new ArrayList<>();
+            this.table = compact ? new CompactGeoDataTable.Builder() : null;
+        }
+    }
+
+    /**
+     * Runs an action for every chunk of a range, splitting the range in halves until one chunk is left.
+     */
+    private static final class ForEachChunk extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer action;
+
+        ForEachChunk(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(from);
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ForEachChunk(from, middle, action), new ForEachChunk(middle, to, action));
+            }
+        }
+    }
+
+    /**
+     * Parses the records of one range of the file. A parser is used by one thread only.
+     */
+    private static final class ChunkParser {
+        private final ByteBuffer data;
+        private final int length;
+        private final Charset charset;
+        private final boolean utf8;
+        private final int[] fieldStarts = new int[FIELDS];
+        private final int[] fieldEnds = new int[FIELDS];
+        private final boolean[] fieldEscaped = new boolean[FIELDS];
+        private final StringDictionary countryCodes = new StringDictionary();
+        private final StringDictionary countryNames = new StringDictionary();
+        private final StringDictionary timezones = new StringDictionary();
+        private byte[] scratch = new byte[256];
+
+        ChunkParser(ByteBuffer data, Charset charset) {
+            this.data = data;
+            this.length = data.limit();
+            this.charset = charset;
+            this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parses the records that start in a range. The last one may end after the range.
+         */
+        ChunkRows parse(int start, int end, boolean skipHeader, boolean compact) {
+            ChunkRows chunk = new ChunkRows(compact);
+            int position = start;
+            boolean header = skipHeader;
+            try {
+                while (position < end) {
+                    byte b = data.get(position);
+                    if (b == '\n' || b == '\r') {
+                        position++; // Empty lines are ignored
+                        continue;
+                    }
+                    position = parseRecord(position);
+                    if (header) {
+                        header = false;
+                    } else if (compact) {
+                        addTo(chunk.table);
+                    } else {
+                        chunk.rows.add(toGeoData());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Left to CSVReader, which reports the error
+                chunk.failed = true;
+            }
+            chunk.end = position;
+            return chunk;
+        }
+
+        /**
+         * Finds the fields of the record that starts at a position.
+         * @return The position after the record and its line break.
+         */
+        private int parseRecord(int position) throws IOException {
+            int fields = 0;
+            while (true) {
+                int start;
+                int end;
+                boolean escaped = false;
+                if (position < length && data.get(position) == '"') {
+                    start = ++position;
+                    while (true) {
+                        if (position >= length) {
+                            throw new IOException("EOF reached before encapsulated token finished");
+                        }
+                        if (data.get(position) == '"') {
+                            if (position + 1 < length && data.get(position + 1) == '"') {
+                                escaped = true;
+                                position += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        position++;
+                    }
+                    end = position++;
+                    // Only whitespace may follow the closing quote
+                    while (position < length && !isDelimiter(data.get(position))) {
+                        if (!isWhitespace(data.get(position))) {
+                            throw new IOException("Invalid char between encapsulated token and delimiter");
+                        }
+                        position++;
+                    }
+                } else {
+                    start = position;
+                    while (position < length && !isDelimiter(data.get(position))) {
+                        position++;
+                    }
+                    end = position;
+                }
+
+                if (fields < FIELDS) {
+                    fieldStarts[fields] = start;
+                    fieldEnds[fields] = end;
+                    fieldEscaped[fields] = escaped;
+                }
+                fields++;
+
+                if (position >= length) {
+                    break;
+                }
+                byte b = data.get(position++);
+                if (b == '\r') {
+                    if (position < length && data.get(position) == '\n') {
+                        position++;
+                    }
+                    break;
+                } else if (b == '\n') {
+                    break;
+                }
+            }
+            if (fields < FIELDS) {
+                throw new IOException("Record with " + fields + " fields");
+            }
+            return position;
+        }
+
+        private GeoData toGeoData() {
+            return new GeoData(field(0), field(1), countryCodes.get(this, 2), countryNames.get(this, 3),
+                    population(), timezones.get(this, 5), field(6));
+        }
+
+        private void addTo(CompactGeoDataTable.Builder table) {
+            table.addRow(countryCodes.get(this, 2), countryNames.get(this, 3), population(), timezones.get(this, 5));
+            addLazyField(table, 0);
+            addLazyField(table, 1);
+            addLazyField(table, 6);
+        }
+
+        /**
+         * Copies a field to a table builder as UTF-8 bytes. Only a field of another charset with bytes
+         * outside ASCII is decoded to be encoded again.
+         */
+        private void addLazyField(CompactGeoDataTable.Builder table, int field) {
+            int size = copyField(field);
+            if (!utf8) {
+                for (int i = 0; i < size; i++) {
+                    if (scratch[i] < 0) {
+                        byte[] bytes = new String(scratch, 0, size, charset).getBytes(StandardCharsets.UTF_8);
+                        table.addLazyField(bytes, 0, bytes.length);
+                        return;
+                    }
+                }
+            }
+            table.addLazyField(scratch, 0, size);
+        }
+
+        /**
+         * Parses the population column like Long.parseLong("0" + population).
+         */
+        private long population() {
+            int start = fieldStarts[4];
+            int end = fieldEnds[4];
+            if (end - start <= 18) {
+                long population = 0;
+                int position = start;
+                while (position < end) {
+                    byte b = data.get(position);
+                    if (b < '0' || b > '9') {
+                        break;
+                    }
+                    population = population * 10 + (b - '0');
+                    position++;
+                }
+                if (position == end) {
+                    return population;
+                }
+            }
+            return Long.parseLong("0" + field(4));
+        }
+
+        private String field(int field) {
+            return new String(scratch, 0, copyField(field), charset);
+        }
+
+        /**
+         * Copies the bytes of a field to the scratch buffer, unescaping the doubled quotes.
+         * @return The number of bytes copied.
+         */
+        private int copyField(int field) {
+            int start = fieldStarts[field];
+            int size = fieldEnds[field] - start;
+            if (scratch.length < size) {
+                scratch = new byte[Math.max(size, scratch.length * 2)];
+            }
+            if (!fieldEscaped[field]) {
+                data.position(start);
+                data.get(scratch, 0, size);
+                return size;
+            }
+            int copied = 0;
+            for (int position = start; position < start + size; position++) {
+                byte b = data.get(position);
+                scratch[copied++] = b;
+                if (b == '"') {
+                    position++; // Skip the second quote of the pair
+                }
+            }
+            return copied;
+        }
+
+        private static boolean isDelimiter(byte b) {
+            return b == ',' || b == '\n' || b == '\r';
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b >= 0 && Character.isWhitespace(b);
+        }
+    }
+
+    /**
+     * Decodes every distinct value of a column once: the bytes of a field are looked up in an open-addressing
+     * table of the values decoded so far.
+     */
+    private static final class StringDictionary {
+        private byte[][] keys = new byte[64][];
+        private String[] values = new String[64];
+        private int size;
+
+        String get(ChunkParser parser, int field) {
+            int length = parser.copyField(field);
+            byte[] bytes = parser.scratch;
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (equals(keys[slot], bytes, length)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            String value = new String(bytes, 0, length, parser.charset);
+            keys[slot] = Arrays.copyOf(bytes, length);
+            values[slot] = value;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return value;
+        }
+
+        private static boolean equals(byte[] key, byte[] bytes, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int hash = Arrays.hashCode(oldKeys[i]);
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.java_rmi.data_conector;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The SyntheticDataset class generates datasets shaped like exercise_1_dataset.csv, of any size, so that
+ * benchmarks and load tests can run without the real dataset. Country sizes follow a skewed distribution
+ * with a few large countries and many small ones, city populations are spread over several orders of
+ * magnitude, and some names contain commas and quotes so that the CSV quoting is exercised.
+ *
+ * The same number of rows and seed always give the same dataset.
+ */
+public final class SyntheticDataset {
+    public static final long DEFAULT_SEED = 42;
+    public static final String HEADER = "Geoname ID,Name,Country Code,Country name EN,Population,Timezone,Coordinates";
+
+    private static final String[] NAMED_COUNTRIES = {
+            "Ukraine", "Brazil", "Honduras", "Chad", "Egypt", "Sweden", "China", "India", "United States",
+            "Korea, Republic of", "Congo, The Democratic Republic of the", "Iran, Islamic Republic of",
+            "Viet Nam", "Germany", "France", "Spain", "Mexico", "Japan", "Nigeria", "Argentina", "Canada",
+            "Australia", "Norway", "Peru", "Chile", "Kenya", "Poland", "Italy", "Turkey", "Indonesia"
+    };
+    private static final int COUNTRIES = 250;
+    private static final String[] TIMEZONES = {
+            "Europe/Kyiv", "America/Sao_Paulo", "America/Tegucigalpa", "Africa/Ndjamena", "Africa/Cairo",
+            "Europe/Stockholm", "Asia/Shanghai", "Asia/Kolkata", "America/New_York", "Asia/Seoul"
+    };
+
+    private SyntheticDataset() {
+    }
+
+    /**
+     * @param country the number of a country, from 0.
+     * @return the English name of the country.
+     */
+    public static String countryName(int country) {
+        return country < NAMED_COUNTRIES.length ? NAMED_COUNTRIES[country] : "Country " + country;
+    }
+
+    /**
+     * Generates the rows of a dataset.
+     * @param rows the number of rows.
+     * @param seed the seed of the random generator.
+     * @return the rows.
+     */
+    public static List<GeoData> generate(int rows, long seed) {
+        List<GeoData> data = new ArrayList<>(rows);
+        Random random = new Random(seed);
+        for (int i = 0; i < rows; i++) {
+            data.add(row(i, random));
+        }
+        return data;
+    }
+
+    private static GeoData row(int i, Random random) {
+        // Skewed country sizes: the square of a uniform number favors the first countries
+        double u = random.nextDouble();
+        int country = (int) (u * u * COUNTRIES);
+        String countryName = countryName(country);
+        String countryCode = String.valueOf((char) ('A' + country / 26 % 26)) + (char) ('A' + country % 26);
+
+        // City populations from 100 to about 20 million, most of them small
+        long population = (long) Math.pow(10, 2 + random.nextDouble() * random.nextDouble() * 5.3);
+
+        String name = random.nextInt(50) == 0 ? "City \"" + i + "\", Old Town" : "City " + i;
+        String coordinates = String.format("%.5f, %.5f", random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        return new GeoData(String.valueOf(1000000 + i), name, countryCode, countryName, population,
+                TIMEZONES[country % TIMEZONES.length], coordinates);
+    }
+
+    /**
+     * Writes a generated dataset as a CSV file in the format of exercise_1_dataset.csv.
+     * @param rows    the number of rows.
+     * @param seed    the seed of the random generator.
+     * @param csvFile the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writeCSV(int rows, long seed, String csvFile) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(csvFile), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < rows; i++) {
+                GeoData data = row(i, random);
+                line.setLength(0);
+                appendField(line, data.getGeonameID()).append(',');
+                appendField(line, data.getName()).append(',');
+                appendField(line, data.getCountryCode()).append(',');
+                appendField(line, data.getCountryNameEn()).append(',');
+                line.append(data.getPopulation()).append(',');
+                appendField(line, data.getTimezone()).append(',');
+                appendField(line, data.getCoordinates()).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    /**
+     * Appends a CSV field, quoted if it contains a comma, a quote or a line break.
+     */
+    private static StringBuilder appendField(StringBuilder line, String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            return line.append(field);
+        }
+        return line.append('"').append(field.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Writes a synthetic dataset.
+     * @param args rows csvFile [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SyntheticDataset rows csvFile [seed]");
+            return;
+        }
+        int rows = Integer.parseInt(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        long startTime = System.currentTimeMillis();
+        writeCSV(rows, seed, args[1]);
+        System.out.println("Wrote " + rows + " rows to " + args[1] + " in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+}
@@ -0,0 +1,29 @@
+package com.java_rmi.load_balancer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The LeastOutstandingRequestsStrategy class takes the eligible server with the fewest outstanding
+ * requests, that is its last reported load plus the allocations made since. Ties are broken by starting
+ * the scan at a random candidate.
+ */
+public class LeastOutstandingRequestsStrategy extends TieredSelectionStrategy {
+    @Override
+    protected int choose(LoadSnapshot snapshot, int[] candidates, int eligible, int loadLimit) {
+        int start = ThreadLocalRandom.current().nextInt(candidates.length);
+        int best = -1;
+        int bestOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < candidates.length; i++) {
+            int candidate = candidates[(start + i) % candidates.length];
+            if (snapshot.getLoad(candidate) >= loadLimit) {
+                continue;
+            }
+            int outstanding = snapshot.getOutstanding(candidate);
+            if (outstanding < bestOutstanding) {
+                best = candidate;
+                bestOutstanding = outstanding;
+            }
+        }
+        return best;
+    }
+}
@@ -1,9 +1,14 @@
 package com.java_rmi.load_balancer;
 
+import com.java_rmi.server.Server;
 import com.java_rmi.server.ServerAllocation;
+import com.java_rmi.server.ServerLease;
+import com.java_rmi.server.ServerLoad;
+import com.java_rmi.server.ServerMetrics;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * The LoadBalancerInterface represents the remote interface for the load balancer.
@@ -17,6 +22,64 @@ public interface LoadBalancerInterface extends Remote {
      * @throws RemoteException If there is an issue with RMI communication.
      */
     ServerAllocation requestServerAllocation(int clientZone) throws RemoteException;
+
+    /**
+     * Requests the allocation of a server for a query, preferring the server that answered the same query
+     * before, as long as the zone rules allow it.
+     * @param clientZone The zone of the client requesting a server.
+     * @param keyHash    The hash of the query key.
+     * @return A ServerAllocation object representing the allocated server's information.
+     * @throws RemoteException If there is an issue with RMI communication.
+     */
+    ServerAllocation requestServerAllocation(int clientZone, long keyHash) throws RemoteException;
+
+    /**
+     * Requests a lease on a server based on the client's zone, which the client may reuse for several
+     * requests.
+     * @param clientZone The zone of the client requesting a server.
+     * @return A ServerLease object with the allocated server and how long it may be used.
+     * @throws RemoteException If there is an issue with RMI communication.
+     */
+    ServerLease requestServerLease(int clientZone) throws RemoteException;
+
+    /**
+     * Registers a server, or updates a registered server with the same name, so that it can be allocated.
+     * @param server The server, with its name, host, zone and port.
+     * @throws RemoteException If there is an issue with RMI communication.
+     */
+    void registerServer(Server server) throws RemoteException;
+
+    /**
+     * Removes a server, which is no longer allocated.
+     * @param serverName The name of the server.
+     * @throws RemoteException If there is an issue with RMI communication.
+     */
+    void unregisterServer(String serverName) throws RemoteException;
+
+    /**
+     * Receives the periodic load report of a registered server.
+     * @param serverName The name of the reporting server.
+     * @param serverLoad The current load of the server.
+     * @return The membership version, which changes whenever a server is registered, moved or removed, or -1
+     *         if the server is not registered, for example after it stopped reporting for too long.
+     * @throws RemoteException If there is an issue with RMI communication.
+     */
+    long reportLoad(String serverName, ServerLoad serverLoad) throws RemoteException;
+
+    /**
+     * Retrieves the registered servers.
+     * @return The registered servers, with their names, hosts, zones and ports.
+     * @throws RemoteException If there is an issue with RMI communication.
+     */
+    List<Server> getServers() throws RemoteException;
+
+    /**
+     * Retrieves the metrics of all the registered servers, merged into the metrics of the fleet.
+     * @return The merged metrics of the servers that could be reached.
+     * @throws RemoteException If there is an issue with RMI communication.
+     */
+    ServerMetrics getFleetMetrics() throws RemoteException;
+
     public void loadBalancerStarter() throws RemoteException;
 }
 
@@ -7,33 +7,65 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The LoadBalancerServer class implements the LoadBalancerInterface and represents the load balancer server
  * responsible for distributing client requests to available servers based on certain rules and maintaining
- * load information.
+ * load information. The server of every request is chosen by a SelectionStrategy, set with
+ * -Drmi.loadbalancer.strategy, from the latest LoadSnapshot.
+ *
+ * Servers become allocatable when they register themselves (see LoadReporter), which a server does only once
+ * it has warmed up. A registered server whose last load report is older than
+ * -Drmi.loadbalancer.serverTimeoutMillis milliseconds (1000 by default, 0 to never expire) is removed, so a
+ * crashed server stops being allocated; it registers again with its next report. The servers given to the
+ * constructor are static members that never expire.
  */
 public class LoadBalancerServer extends UnicastRemoteObject implements LoadBalancerInterface {
-    private List<Server> servers;
-    private Map<String, Integer> serverRequest;
+    public static final String EXTERNAL_SERVERS_PROPERTY = "rmi.servers.external";
+    public static final String LEASE_REQUESTS_PROPERTY = "rmi.loadbalancer.leaseRequests";
+    public static final String LEASE_MILLIS_PROPERTY = "rmi.loadbalancer.leaseMillis";
+    public static final int DEFAULT_LEASE_REQUESTS = 100;
+    public static final long DEFAULT_LEASE_MILLIS = 1000;
+    public static final String SERVER_TIMEOUT_PROPERTY = "rmi.loadbalancer.serverTimeoutMillis";
+    public static final long DEFAULT_SERVER_TIMEOUT_MILLIS = 1000;
+
+    // Replaced as a whole on every registration or load report, read without locks by the allocations
+    private final AtomicReference<LoadSnapshot> loadSnapshot = new AtomicReference<>(LoadSnapshot.empty());
+    private final SelectionStrategy selectionStrategy;
+    private final int leaseRequests = Integer.getInteger(LEASE_REQUESTS_PROPERTY, DEFAULT_LEASE_REQUESTS);
+    private final long leaseMillis = Long.getLong(LEASE_MILLIS_PROPERTY, DEFAULT_LEASE_MILLIS);
+    private final AtomicLong nextLeaseId = new AtomicLong();
+    private final long serverTimeoutMillis = Long.getLong(SERVER_TIMEOUT_PROPERTY, DEFAULT_SERVER_TIMEOUT_MILLIS);
+    // Time of the last registration or report of every registered server, in System.nanoTime
+    private final Map<String, Long> lastReportNanos = new ConcurrentHashMap<>();
+    private ScheduledExecutorService expiryScheduler; // Started with the first registration
 
     /**
      * Constructor for the LoadBalancerServer class.
      * @param servers A list of available servers to be managed by the load balancer.
      */
     public LoadBalancerServer(List<Server> servers) throws RemoteException {
-        super();
-        this.servers = servers;
-        this.serverRequest = new HashMap<>();
+        this(servers, SelectionStrategy.fromSystemProperty());
+    }
 
-        // Initialize request counts for each server
-        for (Server server : servers) {
-            serverRequest.put(server.getServerName(), 0);
-        }
+    /**
+     * Constructor for the LoadBalancerServer class with a given selection strategy.
+     * @param servers           A list of available servers to be managed by the load balancer.
+     * @param selectionStrategy The strategy that chooses the server of every request.
+     */
+    public LoadBalancerServer(List<Server> servers, SelectionStrategy selectionStrategy) throws RemoteException {
+        super();
+        this.loadSnapshot.set(LoadSnapshot.of(servers));
+        this.selectionStrategy = selectionStrategy;
     }
     public LoadBalancerServer() throws RemoteException {
-
-
+        this(new ArrayList<>());
     }
 
     /**
@@ -44,141 +76,213 @@ public class LoadBalancerServer extends UnicastRemoteObject implements LoadBalan
      */
     @Override
     public ServerAllocation requestServerAllocation(int zone) throws RemoteException {
-        // Implement the server assignment logic based on the rules
-        Server selectedServer = selectServer(zone);
-        // Increment the request count for the selected server
-        increaseRequest(selectedServer.getServerName());
+        LoadSnapshot snapshot = loadSnapshot.get();
+        int selected = allocate(snapshot, zone);
 
-        return new ServerAllocation(selectedServer.getServerName(), selectedServer.getServerPort());
+        Server selectedServer = snapshot.getServer(selected);
+        return new ServerAllocation(selectedServer.getServerName(), selectedServer.getServerHost(), selectedServer.getServerPort());
     }
 
     /**
-     * Selects an appropriate server based on specific rules.
+     * Allocates a server by the same rules, choosing among the eligible servers by the query key, so that
+     * repeated queries reach the server that has their result cached.
+     * @param zone    The client's zone for which a server is requested.
+     * @param keyHash The hash of the query key.
+     * @return A ServerAllocation object containing the selected server's name and port.
+     */
+    @Override
+    public ServerAllocation requestServerAllocation(int zone, long keyHash) throws RemoteException {
+        LoadSnapshot snapshot = loadSnapshot.get();
+        int selected = recordAllocation(snapshot, zone, selectionStrategy.select(snapshot, zone, keyHash));
+
+        Server selectedServer = snapshot.getServer(selected);
+        return new ServerAllocation(selectedServer.getServerName(), selectedServer.getServerHost(), selectedServer.getServerPort());
+    }
+
+    /**
+     * Allocates a server like requestServerAllocation, for as many requests and as long as its load allows.
+     * A server whose load is below half of its limit for the client's zone gets a full lease, one below the
+     * limit a quarter of it, and an overloaded server a lease for a single request, so that clients come
+     * back soon to a server whose load changes. A lease never grants more requests than the server has room
+     * for below its limit, and all of them count as allocations, so the selection of the other zones sees
+     * the leased traffic before the server reports it.
      * @param zone The client's zone for which a server is requested.
-     * @return The selected server.
-     */
-    private Server selectServer(int zone) {
-        List<Server> availableZoneServers = new ArrayList<>();
-        List<Server> availableNeighborZoneServers = new ArrayList<>();
-
-        // Find available servers in the same zone and nearby zones
-        for (Server server : servers) {
-            if (server.getZone() == zone && server.getLoad() < 18) {
-                availableZoneServers.add(server);
-            } else if (nearbyZone(server.getZone(), zone) && server.getLoad() < 8) {
-                availableNeighborZoneServers.add(server);
-            }
+     * @return A ServerLease object with the selected server's name, host and port.
+     */
+    @Override
+    public ServerLease requestServerLease(int zone) throws RemoteException {
+        LoadSnapshot snapshot = loadSnapshot.get();
+        int selected = selectionStrategy.select(snapshot, zone);
+        if (selected < 0) {
+            throw new RemoteException("No server registered for zone " + zone);
         }
+        Server selectedServer = snapshot.getServer(selected);
 
-        if (!availableZoneServers.isEmpty()) {
-            return getRandomServer(availableZoneServers);
-        } else if (!availableNeighborZoneServers.isEmpty()) {
-            return getRandomServer(availableNeighborZoneServers);
+        int loadLimit = selectedServer.getZone() == zone
+                ? TieredSelectionStrategy.ZONE_LOAD_LIMIT : TieredSelectionStrategy.NEIGHBOR_LOAD_LIMIT;
+        int outstanding = snapshot.getOutstanding(selected);
+        int maxRequests = leaseRequests;
+        long ttlMillis = leaseMillis;
+        if (outstanding >= loadLimit) {
+            maxRequests = 1;
+            ttlMillis = 0;
         } else {
-            // If no available servers, select a random server in the same zone
-            List<Server> serversZone = getServersZone(zone);
-            return getRandomServer(serversZone);
+            if (outstanding >= loadLimit / 2) {
+                maxRequests = Math.max(1, leaseRequests / 4);
+                ttlMillis = leaseMillis / 4;
+            }
+            maxRequests = Math.min(maxRequests, loadLimit - outstanding);
         }
+        snapshot.recordAllocations(selected, maxRequests);
+
+        ServerAllocation serverAllocation = new ServerAllocation(selectedServer.getServerName(),
+                selectedServer.getServerHost(), selectedServer.getServerPort());
+        return new ServerLease(serverAllocation, nextLeaseId.incrementAndGet(), maxRequests, ttlMillis);
     }
 
     /**
-     * Checks if a server's zone is a neighbor of the client's zone.
-     * @param serverZone The zone of the server.
-     * @param zone       The client's zone.
-     * @return True if the server's zone is a neighbor of the client's zone, false otherwise.
+     * Selects a server on a snapshot and counts its allocation.
+     * @return The number of the selected server in the snapshot.
      */
-    private boolean nearbyZone(int serverZone, int zone) {
-        return Math.abs(serverZone - zone) <= 2;
+    private int allocate(LoadSnapshot snapshot, int zone) throws RemoteException {
+        // Implement the server assignment logic based on the rules, on the latest reported loads
+        return recordAllocation(snapshot, zone, selectionStrategy.select(snapshot, zone));
     }
 
     /**
-     * Retrieves a list of servers in the specified zone.
-     * @param zone The zone for which servers are to be retrieved.
-     * @return A list of servers in the specified zone.
+     * Counts the allocation of a selected server.
+     * @return The number of the selected server in the snapshot.
+     * @throws RemoteException If no server could be selected.
      */
-    private List<Server> getServersZone(int zone) {
-        List<Server> serversZone = new ArrayList<>();
-        for (Server server : servers) {
-            if (server.getZone() == zone) {
-                serversZone.add(server);
-            }
+    private int recordAllocation(LoadSnapshot snapshot, int zone, int selected) throws RemoteException {
+        if (selected < 0) {
+            throw new RemoteException("No server registered for zone " + zone);
         }
-        return serversZone;
+        // Increment the request count for the selected server
+        snapshot.recordAllocation(selected);
+        return selected;
     }
 
     /**
-     * Selects a random server from a list of servers.
-     * @param servers The list of servers from which to select a random server.
-     * @return A randomly selected server, or null if the list is empty.
+     * Registers a server, or updates a registered server with the same name.
+     * @param server The server, with its name, host, zone and port.
      */
-    private Server getRandomServer(List<Server> servers) {
-        if (!servers.isEmpty()) {
-            Random random = new Random();
-            int randomIndex = random.nextInt(servers.size());
-            return servers.get(randomIndex);
+    @Override
+    public void registerServer(Server server) throws RemoteException {
+        lastReportNanos.put(server.getServerName(), System.nanoTime());
+        startExpiry();
+        LoadSnapshot previous = loadSnapshot.getAndUpdate(snapshot -> snapshot.withServer(server));
+        if (previous.getServer(server.getServerName()) == null) {
+            System.out.println("Registered server name: " + server.getServerName() + ", Zone: " + server.getZone() + ", Port: " + server.getServerPort());
         }
-        return null;
     }
 
     /**
-     * Increases the request count for a server and updates the server load if a threshold is reached.
-     * After every 18 requests, update the server load
-     * @param serverName The name of the server.
+     * Publishes the load reported by a server in a new snapshot.
+     * @param serverName The name of the reporting server.
+     * @param serverLoad The current load of the server.
+     * @return The membership version of the new snapshot, or -1 if the server is not registered.
      */
-    /** If the server in that specific zone is overloaded with client requests
-       (equal or more than 18 requests in the waiting list), the load balancing server tries servers in
-       the next two zones (if server in zone 1 is overloaded, then load balancer will try servers in zone
-       2 and zone 3) to find a server with less than 8 requests in the waiting list.*/
-    private void increaseRequest(String serverName) {
-        int count = serverRequest.get(serverName) + 1;
-        serverRequest.put(serverName, count);
-
-        if (count % 18 == 0) {
-            for (Server server : servers) {
-                if (server.getServerName().equals(serverName)) {
-                    try {
-                        ServerInterface serverStub = getServerStub(server);
-                        if (serverStub != null) {
-                            ServerLoad serverLoad = serverStub.getServerLoadInfo();
-                            server.setLoad(serverLoad.getLoad());
-                            server.setWaitingList(serverLoad.getWaitingList());
-                        }
-                    } catch (RemoteException e) {
-                        e.printStackTrace();
-                        System.out.println("Request count error!!!");
-                    }
-                    break;
-                }
+    @Override
+    public long reportLoad(String serverName, ServerLoad serverLoad) throws RemoteException {
+        lastReportNanos.computeIfPresent(serverName, (name, previous) -> System.nanoTime());
+        LoadSnapshot snapshot = loadSnapshot.updateAndGet(current -> current.withLoad(serverName, serverLoad));
+        return snapshot.getServer(serverName) == null ? -1 : snapshot.getMembershipVersion();
+    }
+
+    /**
+     * Starts removing the registered servers that stopped reporting, unless the timeout is disabled.
+     */
+    private synchronized void startExpiry() {
+        if (expiryScheduler != null || serverTimeoutMillis <= 0) {
+            return;
+        }
+        expiryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-balancer-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMillis = Math.max(1, serverTimeoutMillis / 2);
+        expiryScheduler.scheduleWithFixedDelay(this::expireSilentServers, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Removes the registered servers whose last report is older than the timeout.
+     * @return The number of servers removed.
+     */
+    int expireSilentServers() {
+        long now = System.nanoTime();
+        int expired = 0;
+        for (Map.Entry<String, Long> entry : lastReportNanos.entrySet()) {
+            if (now - entry.getValue() > TimeUnit.MILLISECONDS.toNanos(serverTimeoutMillis)
+                    && lastReportNanos.remove(entry.getKey(), entry.getValue())) {
+                loadSnapshot.updateAndGet(snapshot -> snapshot.withoutServer(entry.getKey()));
+                System.out.println("Server " + entry.getKey() + " stopped reporting its load, unregistered!!!");
+                expired++;
             }
         }
+        return expired;
     }
 
     /**
-     * Gets the RMI server stub for a given server.
-     * @param server The server for which to retrieve the stub.
-     * @return The RMI server stub or null if an error occurs.
+     * Removes a server from the snapshot, so it is no longer allocated.
+     * @param serverName The name of the server.
      */
-    private ServerInterface getServerStub(Server server) {
-        try {
-            Registry registry = LocateRegistry.getRegistry(server.getServerPort());
-            return (ServerInterface) registry.lookup(server.getServerName());
-        } catch (Exception e) {
-            return null;
+    @Override
+    public void unregisterServer(String serverName) throws RemoteException {
+        lastReportNanos.remove(serverName);
+        LoadSnapshot previous = loadSnapshot.getAndUpdate(snapshot -> snapshot.withoutServer(serverName));
+        if (previous.getServer(serverName) != null) {
+            System.out.println("Unregistered server name: " + serverName);
         }
     }
 
+    /**
+     * @return The registered servers.
+     */
+    @Override
+    public List<Server> getServers() throws RemoteException {
+        return new ArrayList<>(loadSnapshot.get().getServers());
+    }
+
+    /**
+     * Asks every registered server for its metrics and merges them. Servers that cannot be reached are
+     * left out of the merged metrics.
+     * @return The metrics of the fleet.
+     */
+    @Override
+    public ServerMetrics getFleetMetrics() throws RemoteException {
+        List<ServerMetrics> serverMetrics = new ArrayList<>();
+        for (Server server : loadSnapshot.get().getServers()) {
+            try {
+                Registry registry = LocateRegistry.getRegistry(server.getServerHost(), server.getServerPort());
+                ServerInterface serverInterface = (ServerInterface) registry.lookup(server.getServerName());
+                serverMetrics.add(serverInterface.getServerMetrics());
+            } catch (Exception e) {
+                System.out.println("Error reading the metrics of " + server.getServerName() + "!!!");
+            }
+        }
+        return ServerMetrics.merge("fleet", serverMetrics);
+    }
+
+    /**
+     * @return The servers and loads the allocations currently use.
+     */
+    public LoadSnapshot getLoadSnapshot() {
+        return loadSnapshot.get();
+    }
+
+    /**
+     * Binds the load balancer in the registry on port 1099 and starts the zone servers, unless they run as
+     * separate processes (-Drmi.servers.external=true). The servers are allocated once they register.
+     */
     public void loadBalancerStarter(){
         try {
             // Create a list of server information
-            List<Server> servers = new ArrayList<>();
-            servers.add(new Server("Server1", 1, 1098));
-            servers.add(new Server("Server2", 2, 1097));
-            servers.add(new Server("Server3", 3, 1096));
-            servers.add(new Server("Server4", 4, 1095));
-            servers.add(new Server("Server5", 5, 1094));
+            List<Server> servers = ServerLauncher.defaultServers();
 
-            // Create an instance of the load balancer server with the list of servers
-            LoadBalancerServer loadBalancer = new LoadBalancerServer(servers);
+            // Create an instance of the load balancer server without servers: each one registers when it is ready
+            LoadBalancerServer loadBalancer = new LoadBalancerServer(new ArrayList<>());
 
             // Start the load balancer server in a new thread
             Thread loadBalancerThread = new Thread(() -> {
@@ -190,14 +294,13 @@ public class LoadBalancerServer extends UnicastRemoteObject implements LoadBalan
 
                     /**
                      * 1) The servers need to registered as rmi objects
-                     * Bind the Server to the RMI registry with the name "LoadServer"
+                     * Every server is bound in its own registry, on its own port, with its server name,
+                     * and registers with the load balancer once it has warmed up
                      */
-                    ServerImplementation server = new ServerImplementation();
-                    registry.bind("LoadServer", server);
-
-                    for(Server server1: servers){
-                        System.out.println("Server name: "+server1.getServerName()+", Zone: "+server1.getZone()+", Port: "+server1.getServerPort());
+                    if (!Boolean.getBoolean(EXTERNAL_SERVERS_PROPERTY)) {
+                        new ServerLauncher().launchAll(servers);
                     }
+
                     System.out.println();
                     System.out.println("Successfully created servers using LoadBalancer");
                 } catch (Exception e) {
@@ -212,4 +315,4 @@ public class LoadBalancerServer extends UnicastRemoteObject implements LoadBalan
     }
 
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,349 @@
+package com.java_rmi.load_balancer;
+
+import com.java_rmi.server.ConsistentHashRing;
+import com.java_rmi.server.Server;
+import com.java_rmi.server.ServerLoad;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LoadSnapshot class is an immutable view of the servers known to the load balancer and of the last
+ * load each of them reported. The load balancer replaces the whole snapshot on every registration or load
+ * report, so the allocation of a server reads a consistent snapshot without locks or remote calls.
+ *
+ * The servers are numbered by their position in the snapshot, and the servers of every zone and of its
+ * neighbor zones are precomputed as arrays of those numbers, so a SelectionStrategy can pick a server
+ * without allocating. The only mutable parts are the allocation counters, which are shared by the
+ * snapshots that follow each other until a server is added or removed. A load report does not reset them:
+ * the new snapshot remembers the count at the report and counts the outstanding allocations from there,
+ * so the snapshots that are still being read do not change.
+ */
+public final class LoadSnapshot {
+    /**
+     * The largest zone distance at which a server may take the clients of another zone.
+     */
+    public static final int NEIGHBOR_ZONE_DISTANCE = 2;
+
+    private static final int[] NO_SERVERS = new int[0];
+    private static final LoadSnapshot EMPTY = new LoadSnapshot(new Server[0], new ServerLoad[0],
+            new AtomicLongArray(0), new AtomicIntegerArray(0), new int[0], 0, 0);
+
+    private final Server[] servers;
+    private final ServerLoad[] loads;
+    private final int[] loadValues;
+    private final long[] nameHashes;
+    private final Map<String, Integer> indexByName;
+    private final int[] allServers;
+    private final int minZone;
+    private final int[][] zoneServers;
+    private final int[][] neighborServers;
+    private final AtomicLongArray requests;
+    private final AtomicIntegerArray allocations;
+    private final int[] allocationsAtReport; // The allocations of each server when it last reported its load
+    private final long version;
+    private final long membershipVersion;
+
+    private LoadSnapshot(Server[] servers, ServerLoad[] loads, AtomicLongArray requests,
+                         AtomicIntegerArray allocations, int[] allocationsAtReport, long version,
+                         long membershipVersion) {
+        this.servers = servers;
+        this.loads = loads;
+        this.requests = requests;
+        this.allocations = allocations;
+        this.allocationsAtReport = allocationsAtReport;
+        this.version = version;
+        this.membershipVersion = membershipVersion;
+
+        this.loadValues = new int[servers.length];
+        this.nameHashes = new long[servers.length];
+        this.indexByName = new HashMap<>();
+        this.allServers = new int[servers.length];
+        int minZone = Integer.MAX_VALUE;
+        int maxZone = Integer.MIN_VALUE;
+        for (int i = 0; i < servers.length; i++) {
+            loadValues[i] = loads[i] == null ? 0 : loads[i].getLoad();
+            nameHashes[i] = ConsistentHashRing.hash(servers[i].getServerName());
+            indexByName.put(servers[i].getServerName(), i);
+            allServers[i] = i;
+            minZone = Math.min(minZone, servers[i].getZone());
+            maxZone = Math.max(maxZone, servers[i].getZone());
+        }
+
+        // Precompute the servers of every zone that has servers in it or within the neighbor distance
+        if (servers.length == 0) {
+            this.minZone = 0;
+            this.zoneServers = new int[0][];
+            this.neighborServers = new int[0][];
+        } else {
+            this.minZone = minZone - NEIGHBOR_ZONE_DISTANCE;
+            int zones = maxZone + NEIGHBOR_ZONE_DISTANCE - this.minZone + 1;
+            this.zoneServers = new int[zones][];
+            this.neighborServers = new int[zones][];
+            for (int z = 0; z < zones; z++) {
+                int zone = this.minZone + z;
+                zoneServers[z] = serversMatching(zone, 0, 0);
+                neighborServers[z] = serversMatching(zone, 1, NEIGHBOR_ZONE_DISTANCE);
+            }
+        }
+    }
+
+    private int[] serversMatching(int zone, int minDistance, int maxDistance) {
+        int[] matching = new int[servers.length];
+        int count = 0;
+        for (int i = 0; i < servers.length; i++) {
+            int distance = Math.abs(servers[i].getZone() - zone);
+            if (distance >= minDistance && distance <= maxDistance) {
+                matching[count++] = i;
+            }
+        }
+        return count == 0 ? NO_SERVERS : Arrays.copyOf(matching, count);
+    }
+
+    /**
+     * @return a snapshot without servers.
+     */
+    public static LoadSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a snapshot of servers that have not reported any load yet.
+     * @param servers the servers.
+     * @return the snapshot.
+     */
+    public static LoadSnapshot of(List<Server> servers) {
+        LoadSnapshot snapshot = EMPTY;
+        for (Server server : servers) {
+            snapshot = snapshot.withServer(server);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns a snapshot that contains the server, replacing a known server with the same name.
+     * @param server the server to add.
+     * @return the new snapshot.
+     */
+    public LoadSnapshot withServer(Server server) {
+        int index = indexOf(server.getServerName());
+        if (index >= 0) {
+            Server known = servers[index];
+            boolean moved = !known.getServerHost().equals(server.getServerHost())
+                    || known.getServerPort() != server.getServerPort() || known.getZone() != server.getZone();
+            Server[] newServers = servers.clone();
+            newServers[index] = server;
+            return new LoadSnapshot(newServers, loads, requests, allocations, allocationsAtReport, version + 1,
+                    moved ? membershipVersion + 1 : membershipVersion);
+        }
+
+        Server[] newServers = Arrays.copyOf(servers, servers.length + 1);
+        newServers[servers.length] = server;
+        return withServers(newServers);
+    }
+
+    /**
+     * Returns a snapshot without a server.
+     * @param serverName the name of the server to remove.
+     * @return the new snapshot, or this one if the server is not known.
+     */
+    public LoadSnapshot withoutServer(String serverName) {
+        int index = indexOf(serverName);
+        if (index < 0) {
+            return this;
+        }
+        Server[] newServers = new Server[servers.length - 1];
+        System.arraycopy(servers, 0, newServers, 0, index);
+        System.arraycopy(servers, index + 1, newServers, index, servers.length - index - 1);
+        return withServers(newServers);
+    }
+
+    /**
+     * Returns a snapshot of other servers, keeping the loads and counters of the servers it already knew.
+     */
+    private LoadSnapshot withServers(Server[] newServers) {
+        ServerLoad[] newLoads = new ServerLoad[newServers.length];
+        AtomicLongArray newRequests = new AtomicLongArray(newServers.length);
+        AtomicIntegerArray newAllocations = new AtomicIntegerArray(newServers.length);
+        int[] newAllocationsAtReport = new int[newServers.length];
+        for (int i = 0; i < newServers.length; i++) {
+            int index = indexOf(newServers[i].getServerName());
+            if (index >= 0) {
+                newLoads[i] = loads[index];
+                newRequests.set(i, requests.get(index));
+                newAllocations.set(i, allocations.get(index));
+                newAllocationsAtReport[i] = allocationsAtReport[index];
+            }
+        }
+        return new LoadSnapshot(newServers, newLoads, newRequests, newAllocations, newAllocationsAtReport,
+                version + 1, membershipVersion + 1);
+    }
+
+    /**
+     * Returns a snapshot in which the load of a server is the one it just reported. The server's
+     * outstanding allocations start counting from 0 again in the new snapshot; this one does not change.
+     * @param serverName the name of the server.
+     * @param serverLoad the reported load.
+     * @return the new snapshot, or this one if the server is not known.
+     */
+    public LoadSnapshot withLoad(String serverName, ServerLoad serverLoad) {
+        int index = indexOf(serverName);
+        if (index < 0) {
+            return this;
+        }
+        ServerLoad[] newLoads = loads.clone();
+        newLoads[index] = serverLoad;
+        int[] newAllocationsAtReport = allocationsAtReport.clone();
+        newAllocationsAtReport[index] = allocations.get(index);
+        return new LoadSnapshot(servers, newLoads, requests, allocations, newAllocationsAtReport, version + 1,
+                membershipVersion);
+    }
+
+    /**
+     * Counts an allocation of a server.
+     * @param index the number of the server.
+     */
+    public void recordAllocation(int index) {
+        requests.incrementAndGet(index);
+        allocations.incrementAndGet(index);
+    }
+
+    /**
+     * Counts several allocations of a server at once, such as the requests of a lease.
+     * @param index the number of the server.
+     * @param count the number of allocations.
+     */
+    public void recordAllocations(int index, int count) {
+        requests.addAndGet(index, count);
+        allocations.addAndGet(index, count);
+    }
+
+    /**
+     * @param serverName the name of the server.
+     * @return the number of the server in this snapshot, or -1 if it is not known.
+     */
+    public int indexOf(String serverName) {
+        Integer index = indexByName.get(serverName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param serverName the name of the server.
+     * @return the server, or null if it is not known.
+     */
+    public Server getServer(String serverName) {
+        int index = indexOf(serverName);
+        return index < 0 ? null : servers[index];
+    }
+
+    public Server getServer(int index) {
+        return servers[index];
+    }
+
+    /**
+     * @param serverName the name of the server.
+     * @return the last load the server reported, or 0 if it has not reported yet.
+     */
+    public int getLoad(String serverName) {
+        int index = indexOf(serverName);
+        return index < 0 ? 0 : loadValues[index];
+    }
+
+    /**
+     * @param index the number of the server.
+     * @return the last load the server reported, or 0 if it has not reported yet.
+     */
+    public int getLoad(int index) {
+        return loadValues[index];
+    }
+
+    /**
+     * @param index the number of the server.
+     * @return the hash of the server's name, which rendezvous hashing combines with the key hashes.
+     */
+    public long getNameHash(int index) {
+        return nameHashes[index];
+    }
+
+    /**
+     * Estimates the requests a server has not answered yet: its last reported load plus the allocations
+     * made since that report.
+     * @param index the number of the server.
+     * @return the estimated outstanding requests.
+     */
+    public int getOutstanding(int index) {
+        // The difference stays right when the counter wraps around
+        return loadValues[index] + allocations.get(index) - allocationsAtReport[index];
+    }
+
+    /**
+     * @param serverName the name of the server.
+     * @return the last load report of the server, or null if it has not reported yet.
+     */
+    public ServerLoad getServerLoad(String serverName) {
+        int index = indexOf(serverName);
+        return index < 0 ? null : loads[index];
+    }
+
+    /**
+     * @param serverName the name of the server.
+     * @return the number of times the server was allocated, or 0 if it is not known.
+     */
+    public long getRequests(String serverName) {
+        int index = indexOf(serverName);
+        return index < 0 ? 0 : requests.get(index);
+    }
+
+    /**
+     * @param zone the zone.
+     * @return the numbers of the servers in the zone. The array must not be modified.
+     */
+    public int[] zoneServers(int zone) {
+        int z = zone - minZone;
+        return z >= 0 && z < zoneServers.length ? zoneServers[z] : NO_SERVERS;
+    }
+
+    /**
+     * @param zone the zone.
+     * @return the numbers of the servers in the other zones within the neighbor distance. The array must
+     * not be modified.
+     */
+    public int[] neighborServers(int zone) {
+        int z = zone - minZone;
+        return z >= 0 && z < neighborServers.length ? neighborServers[z] : NO_SERVERS;
+    }
+
+    /**
+     * @return the numbers of all the servers. The array must not be modified.
+     */
+    public int[] allServers() {
+        return allServers;
+    }
+
+    public List<Server> getServers() {
+        return Collections.unmodifiableList(Arrays.asList(servers));
+    }
+
+    public int size() {
+        return servers.length;
+    }
+
+    /**
+     * @return a number that grows with every change of the snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return a number that grows whenever a server is added, removed or moved.
+     */
+    public long getMembershipVersion() {
+        return membershipVersion;
+    }
+}
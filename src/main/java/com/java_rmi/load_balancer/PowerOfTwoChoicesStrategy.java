@@ -0,0 +1,27 @@
+package com.java_rmi.load_balancer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The PowerOfTwoChoicesStrategy class picks two random eligible servers and takes the one with fewer
+ * outstanding requests. This spreads the load nearly as well as asking every server, while two servers
+ * rarely agree on being the least loaded one between two load reports.
+ */
+public class PowerOfTwoChoicesStrategy extends TieredSelectionStrategy {
+    @Override
+    protected int choose(LoadSnapshot snapshot, int[] candidates, int eligible, int loadLimit) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int firstChoice = random.nextInt(eligible);
+        int first = nthEligible(snapshot, candidates, firstChoice, loadLimit);
+        if (eligible == 1) {
+            return first;
+        }
+        // Draw the second server among the other eligible ones
+        int secondChoice = random.nextInt(eligible - 1);
+        if (secondChoice >= firstChoice) {
+            secondChoice++;
+        }
+        int second = nthEligible(snapshot, candidates, secondChoice, loadLimit);
+        return snapshot.getOutstanding(second) < snapshot.getOutstanding(first) ? second : first;
+    }
+}
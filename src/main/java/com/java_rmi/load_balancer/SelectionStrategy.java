@@ -0,0 +1,50 @@
+package com.java_rmi.load_balancer;
+
+/**
+ * The SelectionStrategy interface chooses the server that handles the next request of a client zone.
+ * Implementations are called concurrently by the RMI threads of the load balancer; they only read the
+ * given snapshot and must not allocate, lock or make remote calls.
+ */
+public interface SelectionStrategy {
+    String STRATEGY_PROPERTY = "rmi.loadbalancer.strategy";
+
+    /**
+     * Selects a server for a client.
+     * @param snapshot The servers and their last reported loads.
+     * @param zone     The client's zone.
+     * @return The number of the selected server in the snapshot, or -1 if the snapshot has no servers.
+     */
+    int select(LoadSnapshot snapshot, int zone);
+
+    /**
+     * Selects a server for a query of a client, preferring the same server for the same query key so that
+     * the query is answered from that server's cache. Strategies without key affinity ignore the key.
+     * @param snapshot The servers and their last reported loads.
+     * @param zone     The client's zone.
+     * @param keyHash  The hash of the query key.
+     * @return The number of the selected server in the snapshot, or -1 if the snapshot has no servers.
+     */
+    default int select(LoadSnapshot snapshot, int zone, long keyHash) {
+        return select(snapshot, zone);
+    }
+
+    /**
+     * Creates the strategy named by the rmi.loadbalancer.strategy system property: "zone" (the default),
+     * "p2c" or "lor".
+     * @return The strategy.
+     */
+    static SelectionStrategy fromSystemProperty() {
+        String name = System.getProperty(STRATEGY_PROPERTY, "zone");
+        switch (name) {
+            case "zone":
+                return new ZoneRuleStrategy();
+            case "p2c":
+                return new PowerOfTwoChoicesStrategy();
+            case "lor":
+                return new LeastOutstandingRequestsStrategy();
+            default:
+                System.out.println("Unknown selection strategy " + name + ", using the zone rules!!!");
+                return new ZoneRuleStrategy();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.java_rmi.load_balancer;
+
+/**
+ * The TieredSelectionStrategy class applies the zone rules of the load balancer and leaves the choice
+ * among the eligible servers to its subclasses. The servers of the client's zone are eligible while their
+ * load is below 18. If none is, the servers of the next two zones on either side are eligible while
+ * their load is below 8. If none is either, any server of the client's zone is, and if the zone has no
+ * servers at all, any server is.
+ *
+ * With a query key, the choice within a tier is made by rendezvous hashing instead, for cache affinity.
+ */
+public abstract class TieredSelectionStrategy implements SelectionStrategy {
+    public static final int ZONE_LOAD_LIMIT = 18;
+    public static final int NEIGHBOR_LOAD_LIMIT = 8;
+    protected static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    @Override
+    public int select(LoadSnapshot snapshot, int zone) {
+        return select(snapshot, zone, 0, false);
+    }
+
+    /**
+     * Applies the same zone rules, but chooses among the eligible servers of a tier by rendezvous hashing:
+     * the server whose name hash mixed with the key hash is the highest. A key therefore keeps going to the
+     * same server while that server is eligible, and only moves to a neighbor zone when the load limits
+     * say so.
+     */
+    @Override
+    public int select(LoadSnapshot snapshot, int zone, long keyHash) {
+        return select(snapshot, zone, keyHash, true);
+    }
+
+    private int select(LoadSnapshot snapshot, int zone, long keyHash, boolean byKey) {
+        int[] zoneServers = snapshot.zoneServers(zone);
+        int eligible = countEligible(snapshot, zoneServers, ZONE_LOAD_LIMIT);
+        if (eligible > 0) {
+            return choose(snapshot, zoneServers, eligible, ZONE_LOAD_LIMIT, keyHash, byKey);
+        }
+
+        int[] neighborServers = snapshot.neighborServers(zone);
+        eligible = countEligible(snapshot, neighborServers, NEIGHBOR_LOAD_LIMIT);
+        if (eligible > 0) {
+            return choose(snapshot, neighborServers, eligible, NEIGHBOR_LOAD_LIMIT, keyHash, byKey);
+        }
+
+        // Every server in reach is overloaded
+        if (zoneServers.length > 0) {
+            return choose(snapshot, zoneServers, zoneServers.length, NO_LIMIT, keyHash, byKey);
+        }
+        int[] allServers = snapshot.allServers();
+        if (allServers.length > 0) {
+            return choose(snapshot, allServers, allServers.length, NO_LIMIT, keyHash, byKey);
+        }
+        return -1;
+    }
+
+    private int choose(LoadSnapshot snapshot, int[] candidates, int eligible, int loadLimit, long keyHash, boolean byKey) {
+        return byKey ? chooseByKey(snapshot, candidates, loadLimit, keyHash) : choose(snapshot, candidates, eligible, loadLimit);
+    }
+
+    /**
+     * @return The eligible candidate with the highest rendezvous weight for the key.
+     */
+    private static int chooseByKey(LoadSnapshot snapshot, int[] candidates, int loadLimit, long keyHash) {
+        int best = -1;
+        long bestWeight = 0;
+        for (int candidate : candidates) {
+            if (snapshot.getLoad(candidate) >= loadLimit) {
+                continue;
+            }
+            long weight = mix(keyHash ^ snapshot.getNameHash(candidate));
+            if (best < 0 || Long.compareUnsigned(weight, bestWeight) > 0) {
+                best = candidate;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Chooses one of the eligible servers.
+     * @param snapshot   The servers and their last reported loads.
+     * @param candidates The numbers of the servers of the tier.
+     * @param eligible   The number of candidates whose reported load is below the limit, at least 1.
+     * @param loadLimit  The reported load below which a candidate is eligible.
+     * @return The number of the chosen server.
+     */
+    protected abstract int choose(LoadSnapshot snapshot, int[] candidates, int eligible, int loadLimit);
+
+    private static int countEligible(LoadSnapshot snapshot, int[] candidates, int loadLimit) {
+        int eligible = 0;
+        for (int candidate : candidates) {
+            if (snapshot.getLoad(candidate) < loadLimit) {
+                eligible++;
+            }
+        }
+        return eligible;
+    }
+
+    /**
+     * @return The n-th (from 0) candidate whose reported load is below the limit.
+     */
+    protected static int nthEligible(LoadSnapshot snapshot, int[] candidates, int n, int loadLimit) {
+        for (int candidate : candidates) {
+            if (snapshot.getLoad(candidate) < loadLimit && n-- == 0) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("Fewer eligible servers than counted");
+    }
+}
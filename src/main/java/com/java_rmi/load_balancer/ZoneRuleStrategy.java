@@ -0,0 +1,14 @@
+package com.java_rmi.load_balancer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The ZoneRuleStrategy class picks a random eligible server, which is how the load balancer has always
+ * allocated servers.
+ */
+public class ZoneRuleStrategy extends TieredSelectionStrategy {
+    @Override
+    protected int choose(LoadSnapshot snapshot, int[] candidates, int eligible, int loadLimit) {
+        return nthEligible(snapshot, candidates, ThreadLocalRandom.current().nextInt(eligible), loadLimit);
+    }
+}
@@ -0,0 +1,172 @@
+package com.java_rmi.server;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The BinaryProtocol class encodes the queries of ServerInterface, and their results, as length-prefixed
+ * binary frames for the NIO endpoint of the servers (see NioQueryServer and NioServerClient). Every frame
+ * starts with its length, not counting the length itself, followed by the correlation id that matches a
+ * response to its request, so that a connection can carry many requests at the same time.
+ *
+ * Request:  int length, long correlationId, byte opcode, byte queryType, short countryLength (-1 for none),
+ *           country bytes in UTF-8, int cityCount, int minPopulation, int maxPopulation
+ * Response: int length, long correlationId, byte status, then for STATUS_OK long result, long waitNanos,
+ *           long executionNanos, long datasetVersion, or for STATUS_ERROR short messageLength and the message in UTF-8
+ */
+public final class BinaryProtocol {
+    public static final byte OP_QUERY = 1;
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    /**
+     * The largest frame either side accepts, a guard against corrupt length prefixes.
+     */
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    private static final Query.Type[] TYPES = Query.Type.values();
+    private static final int MAX_STRING_BYTES = Short.MAX_VALUE;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Encodes a query request as a frame.
+     * @param correlationId the id of the request.
+     * @param query         the query.
+     * @return the frame, ready to be written.
+     */
+    public static ByteBuffer encodeRequest(long correlationId, Query query) {
+        byte[] country = query.getCountryName() == null ? null : utf8(query.getCountryName());
+        int length = 8 + 1 + queryLength(country);
+        ByteBuffer frame = ByteBuffer.allocate(4 + length);
+        frame.putInt(length).putLong(correlationId).put(OP_QUERY);
+        putQuery(frame, query, country);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Encodes a query without a frame, in the layout of a request after its opcode, so that decodeQuery
+     * reads it back. The query log of the servers stores its queries this way.
+     * @param query the query.
+     * @return the encoded query.
+     */
+    public static byte[] encodeQuery(Query query) {
+        byte[] country = query.getCountryName() == null ? null : utf8(query.getCountryName());
+        ByteBuffer buffer = ByteBuffer.allocate(queryLength(country));
+        putQuery(buffer, query, country);
+        return buffer.array();
+    }
+
+    private static int queryLength(byte[] country) {
+        return 1 + 2 + (country == null ? 0 : country.length) + 12;
+    }
+
+    private static void putQuery(ByteBuffer buffer, Query query, byte[] country) {
+        buffer.put((byte) query.getType().ordinal());
+        if (country == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) country.length).put(country);
+        }
+        buffer.putInt(query.getCityCount()).putInt(query.getMinPopulation()).putInt(query.getMaxPopulation());
+    }
+
+    /**
+     * Decodes the query of a request frame, positioned after the opcode.
+     * @param frame the frame.
+     * @return the query.
+     * @throws IllegalArgumentException if the frame is not a valid query.
+     */
+    public static Query decodeQuery(ByteBuffer frame) {
+        try {
+            int type = frame.get();
+            if (type < 0 || type >= TYPES.length) {
+                throw new IllegalArgumentException("Unknown query type " + type);
+            }
+            int countryLength = frame.getShort();
+            String country = null;
+            if (countryLength >= 0) {
+                byte[] bytes = new byte[countryLength];
+                frame.get(bytes);
+                country = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int cityCount = frame.getInt();
+            int minPopulation = frame.getInt();
+            int maxPopulation = frame.getInt();
+            switch (TYPES[type]) {
+                case POPULATION_OF_COUNTRY:
+                    return Query.populationOfCountry(country);
+                case NUMBER_OF_CITIES:
+                    return Query.numberOfCities(country, minPopulation);
+                case NUMBER_OF_COUNTRIES:
+                    return country != null ? Query.numberOfCountriesOfCities(country, minPopulation)
+                            : Query.numberOfCountries(cityCount, minPopulation);
+                default:
+                    return country != null ? Query.numberOfCountriesOfCities(country, minPopulation, maxPopulation)
+                            : Query.numberOfCountries(cityCount, minPopulation, maxPopulation);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated query frame", e);
+        }
+    }
+
+    /**
+     * Encodes the result of a query as a response frame.
+     * @param correlationId the id of the request.
+     * @param result        the result and timings of the query.
+     * @return the frame, ready to be written.
+     */
+    public static ByteBuffer encodeResult(long correlationId, QueryResult result) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + 8 + 1 + 32);
+        frame.putInt(8 + 1 + 32).putLong(correlationId).put(STATUS_OK)
+                .putLong(result.getResult()).putLong(result.getWaitNanos()).putLong(result.getExecutionNanos())
+                .putLong(result.getDatasetVersion());
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Encodes the failure of a request as a response frame.
+     * @param correlationId the id of the request.
+     * @param message       the error message.
+     * @return the frame, ready to be written.
+     */
+    public static ByteBuffer encodeError(long correlationId, String message) {
+        byte[] bytes = utf8(message == null ? "Request failed" : message);
+        ByteBuffer frame = ByteBuffer.allocate(4 + 8 + 1 + 2 + bytes.length);
+        frame.putInt(8 + 1 + 2 + bytes.length).putLong(correlationId).put(STATUS_ERROR)
+                .putShort((short) bytes.length).put(bytes);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Decodes the result of a STATUS_OK response frame, positioned after the status.
+     * @param frame the frame.
+     * @return the result, timings and dataset version of the query.
+     */
+    public static QueryResult decodeResult(ByteBuffer frame) {
+        return new QueryResult(frame.getLong(), frame.getLong(), frame.getLong(), frame.getLong());
+    }
+
+    /**
+     * Decodes the message of a STATUS_ERROR response frame, positioned after the status.
+     * @param frame the frame.
+     * @return the error message.
+     */
+    public static String decodeError(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.getShort()];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long for a frame: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,106 @@
+package com.java_rmi.server;
+
+import java.io.Serializable;
+
+/**
+ * This class represents the statistics of one result cache of a server: its hits, misses and evictions since
+ * the server started, and how full it is.
+ */
+public class CacheStats implements Serializable {
+    private String name;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int size;
+    private int capacity;
+
+    /**
+     * Constructs the statistics of a cache.
+     * @param name      the name of the cache.
+     * @param hits      the number of lookups that found a result.
+     * @param misses    the number of lookups that did not.
+     * @param evictions the number of results removed to make room for others.
+     * @param size      the number of results in the cache.
+     * @param capacity  the largest number of results the cache holds.
+     */
+    public CacheStats(String name, long hits, long misses, long evictions, int size, int capacity) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes the statistics of a cache.
+     * @param cache the cache.
+     * @return the statistics.
+     */
+    public static CacheStats of(ResultCache<?, ?> cache) {
+        return new CacheStats(cache.getName(), cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount(),
+                cache.size(), cache.getCapacity());
+    }
+
+    /**
+     * @return the share of the lookups that found a result, from 0 to 1, or 0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, size=%d/%d",
+                name, hits, misses, getHitRate() * 100, evictions, size, capacity);
+    }
+}
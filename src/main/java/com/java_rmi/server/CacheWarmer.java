@@ -0,0 +1,166 @@
+package com.java_rmi.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * The CacheWarmer class fills the caches of a starting server with the results of the queries it received
+ * most often in its previous runs, as counted by its QueryLog, before the server is bound and registers
+ * with the load balancer. The -Drmi.warmup.keys most frequent queries (300 by default) are computed on
+ * -Drmi.warmup.threads threads (the number of processors by default), for at most
+ * -Drmi.warmup.budgetMillis milliseconds (5000 by default); a warm-up that runs out of time leaves out the
+ * least frequent of them.
+ *
+ * The queries are computed from the most frequent down. Once they are computed, the cached results are
+ * touched again from the least frequent up, so that the most frequent ones are the most recently used
+ * entries of the caches and the last to be evicted.
+ */
+public class CacheWarmer {
+    public static final String KEYS_PROPERTY = "rmi.warmup.keys";
+    public static final String BUDGET_MILLIS_PROPERTY = "rmi.warmup.budgetMillis";
+    public static final String THREADS_PROPERTY = "rmi.warmup.threads";
+    public static final int DEFAULT_KEYS = 300;
+    public static final long DEFAULT_BUDGET_MILLIS = 5000;
+
+    private final int keys;
+    private final long budgetMillis;
+    private final int threads;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a warmer.
+     * @param keys         the number of most frequent queries to compute.
+     * @param budgetMillis the time the warm-up may take.
+     * @param threads      the number of threads that compute the queries.
+     */
+    public CacheWarmer(int keys, long budgetMillis, int threads) {
+        this(keys, budgetMillis, threads, System::nanoTime);
+    }
+
+    CacheWarmer(int keys, long budgetMillis, int threads, LongSupplier clock) {
+        this.keys = keys;
+        this.budgetMillis = budgetMillis;
+        this.threads = Math.max(1, threads);
+        this.clock = clock;
+    }
+
+    /**
+     * Creates the warmer configured by -Drmi.warmup.keys, -Drmi.warmup.budgetMillis and -Drmi.warmup.threads.
+     * @return the warmer.
+     */
+    public static CacheWarmer fromSystemProperties() {
+        return new CacheWarmer(Integer.getInteger(KEYS_PROPERTY, DEFAULT_KEYS),
+                Long.getLong(BUDGET_MILLIS_PROPERTY, DEFAULT_BUDGET_MILLIS),
+                Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Computes the most frequent queries of the log of a server, then resets the cache hit counters of the
+     * server so that its statistics describe the traffic after the warm-up.
+     * @param server the server to warm up.
+     * @return the outcome of the warm-up, or null if the server has no queries in its log.
+     */
+    public Result warmUp(ServerImplementation server) {
+        QueryLog queryLog = server.getQueryLog();
+        if (queryLog == null || queryLog.size() == 0 || keys <= 0) {
+            return null;
+        }
+        long startTime = clock.getAsLong();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        List<Map.Entry<Query, Long>> entries = queryLog.entriesByCount();
+        List<Map.Entry<Query, Long>> candidates = entries.subList(0, Math.min(keys, entries.size()));
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger warmed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, server.getServerName() + "-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < candidates.size() && clock.getAsLong() - deadline < 0) {
+                    try {
+                        server.warm(candidates.get(index).getKey());
+                        warmed.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // A query that fails now also fails for the clients; leave it out
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            // The workers stop at the deadline; only a query that started before it may still be running
+            if (!executor.awaitTermination(budgetMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+                executor.awaitTermination(budgetMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsedNanos = clock.getAsLong() - startTime;
+
+        // The share of the logged queries that the caches now answer, evictions included. Looking a result up
+        // marks it as used, so go from the least frequent query up: the most frequent end up the most recent
+        long total = 0;
+        long cached = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Map.Entry<Query, Long> entry = entries.get(i);
+            total += entry.getValue();
+            if (server.isCached(entry.getKey())) {
+                cached += entry.getValue();
+            }
+        }
+        server.resetCacheHitCounts();
+        return new Result(warmed.get(), candidates.size(), elapsedNanos, total == 0 ? 0 : (double) cached / total);
+    }
+
+    /**
+     * The outcome of a warm-up.
+     */
+    public static final class Result {
+        private final int warmedKeys;
+        private final int candidateKeys;
+        private final long elapsedNanos;
+        private final double hitRate;
+
+        Result(int warmedKeys, int candidateKeys, long elapsedNanos, double hitRate) {
+            this.warmedKeys = warmedKeys;
+            this.candidateKeys = candidateKeys;
+            this.elapsedNanos = elapsedNanos;
+            this.hitRate = hitRate;
+        }
+
+        public int getWarmedKeys() {
+            return warmedKeys;
+        }
+
+        public int getCandidateKeys() {
+            return candidateKeys;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the share of the logged queries, weighted by their counts, whose results are now cached.
+         */
+        public double getHitRate() {
+            return hitRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("warmed up %d of %d queries in %d ms, %.1f%% of the logged queries now hit the cache",
+                    warmedKeys, candidateKeys, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), hitRate * 100);
+        }
+    }
+}
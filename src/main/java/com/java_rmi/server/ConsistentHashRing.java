@@ -0,0 +1,118 @@
+package com.java_rmi.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The ConsistentHashRing class assigns every key to one member out of a set of members. Every member is
+ * placed on a ring of 64 bit hashes at a number of virtual points, and a key belongs to the member of the
+ * first point at or after the key's hash. Adding or removing one of N members therefore moves only about
+ * 1/N of the keys.
+ *
+ * The hash does not depend on the JVM, so all the servers agree on the owner of a key. A ring is immutable;
+ * a change of members builds a new one.
+ */
+public final class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final List<String> members;
+    private final long[] points; // Sorted hashes of the virtual nodes
+    private final String[] owners; // Member of the virtual node at the same position
+
+    /**
+     * Creates a ring.
+     * @param members      the names of the members.
+     * @param virtualNodes the number of points of every member on the ring.
+     */
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        this.members = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(members)));
+
+        long[] points = new long[this.members.size() * virtualNodes];
+        String[] owners = new String[points.length];
+        Integer[] order = new Integer[points.length];
+        int n = 0;
+        for (String member : this.members) {
+            for (int v = 0; v < virtualNodes; v++) {
+                points[n] = hash(member + "#" + v);
+                owners[n] = member;
+                order[n] = n;
+                n++;
+            }
+        }
+        // Sort the points and their owners together; equal points are ordered by member name
+        Arrays.sort(order, (a, b) -> {
+            int byPoint = Long.compare(points[a], points[b]);
+            return byPoint != 0 ? byPoint : owners[a].compareTo(owners[b]);
+        });
+        this.points = new long[points.length];
+        this.owners = new String[points.length];
+        for (int i = 0; i < order.length; i++) {
+            this.points[i] = points[order[i]];
+            this.owners[i] = owners[order[i]];
+        }
+    }
+
+    /**
+     * Creates a ring with the default number of virtual nodes.
+     * @param members the names of the members.
+     */
+    public ConsistentHashRing(Collection<String> members) {
+        this(members, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Finds the member a key belongs to.
+     * @param key the key.
+     * @return the name of the member, or null if the ring has no members.
+     */
+    public String ownerOf(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        long keyHash = hash(key);
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (points[mid] < keyHash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return owners[low == points.length ? 0 : low];
+    }
+
+    /**
+     * Hashes a string with 64 bit FNV-1a over its UTF-8 bytes, followed by a final mix of the bits.
+     * @param key the string.
+     * @return the hash.
+     */
+    public static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistentHashRing" + members;
+    }
+}
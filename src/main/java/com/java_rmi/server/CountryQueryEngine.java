@@ -0,0 +1,250 @@
+package com.java_rmi.server;
+
+import com.java_rmi.data_conector.CountryIndex;
+
+import java.util.Arrays;
+
+/**
+ * The CountryQueryEngine class answers "how many countries have at least K cities with a population of
+ * at least P" without looking at every city.
+ *
+ * For every rank K it keeps the population of the K-th largest city of each country, sorted. A country
+ * has at least K cities of population P or more exactly when its K-th largest city has, so the number of
+ * such countries is a binary search in the array of rank K.
+ *
+ * The legacy count also adds up the cities of rank above K that reach P. For that, every city is a point
+ * (rank, population) in a Fenwick tree over the ranks, from the largest down, whose nodes keep the sorted
+ * populations of their cities. The cities of rank K or more are a prefix of the tree, so their count is a
+ * binary search in each of its O(log maxCities) nodes. The populations in the nodes are replaced by their
+ * position among the distinct populations, to store them as ints.
+ */
+public class CountryQueryEngine {
+    /**
+     * System property selecting the semantics of the getNumberOfCountries queries.
+     */
+    public static final String SEMANTICS_PROPERTY = "rmi.countries.semantics";
+
+    /**
+     * The meaning of the result of a getNumberOfCountries query.
+     */
+    public enum Semantics {
+        /**
+         * The result of the original implementation, which counted a qualifying country once for every
+         * one of its cities in the population range.
+         */
+        LEGACY,
+        /**
+         * The number of distinct qualifying countries.
+         */
+        DISTINCT;
+
+        /**
+         * Reads the semantics from the rmi.countries.semantics system property, LEGACY by default.
+         * @return The configured semantics.
+         */
+        public static Semantics fromSystemProperty() {
+            return valueOf(System.getProperty(SEMANTICS_PROPERTY, LEGACY.name()).trim().toUpperCase());
+        }
+    }
+
+    private final CountryIndex countryIndex;
+    private final Semantics semantics;
+    private final long[][] populationsByRank; // [K - 1] = K-th largest city population of each country, ascending
+    private final long[] distinctPopulations; // Of all cities, ascending
+    private final int[][] rankTree; // Fenwick tree over maxCities + 1 - rank: population positions, ascending
+
+    /**
+     * Builds the engine over a country index.
+     * @param countryIndex the per-country populations of the dataset.
+     * @param semantics    the meaning of the results.
+     */
+    public CountryQueryEngine(CountryIndex countryIndex, Semantics semantics) {
+        this.countryIndex = countryIndex;
+        this.semantics = semantics;
+        this.populationsByRank = buildRankTable(countryIndex);
+        this.distinctPopulations = buildDistinctPopulations(populationsByRank);
+        this.rankTree = buildRankTree(populationsByRank, distinctPopulations);
+    }
+
+    private static long[][] buildRankTable(CountryIndex countryIndex) {
+        int maxCities = 0;
+        for (CountryIndex.Entry entry : countryIndex.getCountries()) {
+            maxCities = Math.max(maxCities, entry.getNumberOfCities());
+        }
+
+        // Count the countries having a city of each rank, then fill the arrays
+        int[] countriesWithRank = new int[maxCities];
+        for (CountryIndex.Entry entry : countryIndex.getCountries()) {
+            for (int rank = 0; rank < entry.getNumberOfCities(); rank++) {
+                countriesWithRank[rank]++;
+            }
+        }
+        long[][] table = new long[maxCities][];
+        for (int rank = 0; rank < maxCities; rank++) {
+            table[rank] = new long[countriesWithRank[rank]];
+        }
+        int[] filled = new int[maxCities];
+        for (CountryIndex.Entry entry : countryIndex.getCountries()) {
+            int cities = entry.getNumberOfCities();
+            for (int rank = 0; rank < cities; rank++) {
+                table[rank][filled[rank]++] = entry.getPopulationAt(cities - 1 - rank);
+            }
+        }
+        for (long[] populations : table) {
+            Arrays.sort(populations);
+        }
+        return table;
+    }
+
+    private static long[] buildDistinctPopulations(long[][] populationsByRank) {
+        int cityCount = 0;
+        for (long[] populations : populationsByRank) {
+            cityCount += populations.length;
+        }
+        long[] all = new long[cityCount];
+        int filled = 0;
+        for (long[] populations : populationsByRank) {
+            System.arraycopy(populations, 0, all, filled, populations.length);
+            filled += populations.length;
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (distinct == 0 || all[i] != all[distinct - 1]) {
+                all[distinct++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, distinct);
+    }
+
+    private static int[][] buildRankTree(long[][] populationsByRank, long[] distinctPopulations) {
+        int maxCities = populationsByRank.length;
+        int[][] tree = new int[maxCities + 1][];
+
+        // Size every node, then fill it with the cities of its ranks and sort it
+        int[] sizes = new int[maxCities + 1];
+        for (int rank = 1; rank <= maxCities; rank++) {
+            for (int node = treeIndex(rank, maxCities); node <= maxCities; node += node & -node) {
+                sizes[node] += populationsByRank[rank - 1].length;
+            }
+        }
+        for (int node = 1; node <= maxCities; node++) {
+            tree[node] = new int[sizes[node]];
+        }
+        int[] filled = new int[maxCities + 1];
+        for (int rank = 1; rank <= maxCities; rank++) {
+            for (long population : populationsByRank[rank - 1]) {
+                int position = Arrays.binarySearch(distinctPopulations, population);
+                for (int node = treeIndex(rank, maxCities); node <= maxCities; node += node & -node) {
+                    tree[node][filled[node]++] = position;
+                }
+            }
+        }
+        for (int node = 1; node <= maxCities; node++) {
+            Arrays.sort(tree[node]);
+        }
+        return tree;
+    }
+
+    /**
+     * @return The position of a rank in the Fenwick tree, where the ranks from the largest down are a prefix.
+     */
+    private static int treeIndex(int rank, int maxCities) {
+        return maxCities + 1 - rank;
+    }
+
+    /**
+     * Counts the countries having at least cityCount cities with a population of at least minPopulation.
+     * @param cityCount     the minimum number of cities required.
+     * @param minPopulation the minimum population of a city to be counted.
+     * @return the number of countries, or the legacy per-city count.
+     */
+    public int getNumberOfCountries(int cityCount, long minPopulation) {
+        int rank = Math.max(cityCount, 0);
+        if (semantics == Semantics.DISTINCT) {
+            return rank == 0 ? countryIndex.size() : countriesWithCityOfRank(rank, minPopulation);
+        }
+
+        // Each qualifying country contributes all its cities above minPopulation: its first cityCount
+        // cities plus one for every further rank whose city is still large enough.
+        int total = rank == 0 ? 0 : rank * countriesWithCityOfRank(rank, minPopulation);
+        return total + citiesOfRankAtLeast(rank + 1, minPopulation);
+    }
+
+    /**
+     * Counts the countries having at least cityCount cities with a population between minPopulation and
+     * maxPopulation. This walks the countries once, with a binary search in each.
+     * @param cityCount     the minimum number of cities required.
+     * @param minPopulation the minimum population of a city to be counted.
+     * @param maxPopulation the maximum population of a city to be counted.
+     * @return the number of countries, or the legacy per-city count.
+     */
+    public int getNumberOfCountries(int cityCount, long minPopulation, long maxPopulation) {
+        if (semantics == Semantics.DISTINCT) {
+            int countryCount = 0;
+            for (CountryIndex.Entry entry : countryIndex.getCountries()) {
+                if (entry.countCitiesBetween(minPopulation, maxPopulation) >= cityCount) {
+                    countryCount++;
+                }
+            }
+            return countryCount;
+        }
+
+        // The original implementation qualified a country on its cities above minPopulation, then
+        // counted its cities inside the range.
+        int total = 0;
+        for (CountryIndex.Entry entry : countryIndex.getCountries()) {
+            if (entry.countCitiesAtLeast(minPopulation) >= cityCount) {
+                total += entry.countCitiesBetween(minPopulation, maxPopulation);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Counts the countries whose rank-th largest city has a population of at least minPopulation.
+     */
+    private int countriesWithCityOfRank(int rank, long minPopulation) {
+        if (rank > populationsByRank.length) {
+            return 0;
+        }
+        long[] populations = populationsByRank[rank - 1];
+        return populations.length - CountryIndex.lowerBound(populations, minPopulation);
+    }
+
+    /**
+     * Counts the cities of rank minRank or more in their country with a population of at least
+     * minPopulation, with a binary search in each node of a prefix of the rank tree.
+     */
+    private int citiesOfRankAtLeast(int minRank, long minPopulation) {
+        int maxCities = populationsByRank.length;
+        if (minRank > maxCities) {
+            return 0;
+        }
+        int minPosition = CountryIndex.lowerBound(distinctPopulations, minPopulation);
+        int cityCount = 0;
+        for (int node = treeIndex(Math.max(minRank, 1), maxCities); node > 0; node -= node & -node) {
+            int[] positions = rankTree[node];
+            cityCount += positions.length - lowerBound(positions, minPosition);
+        }
+        return cityCount;
+    }
+
+    private static int lowerBound(int[] sorted, int key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public Semantics getSemantics() {
+        return semantics;
+    }
+}
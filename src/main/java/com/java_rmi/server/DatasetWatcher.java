@@ -0,0 +1,134 @@
+package com.java_rmi.server;
+
+import com.java_rmi.data_conector.GeoDataStore;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DatasetWatcher class reloads the dataset of the servers of this JVM when its CSV file changes. It
+ * checks the length and modification time of the file every -Drmi.dataset.reloadMillis milliseconds (5000
+ * by default, 0 disables the reload) on a background thread. A change must stay the same for two checks in
+ * a row, so that a file still being written is not read; then the new version of the dataset is loaded,
+ * its indexes built, and every server switches to it (see ServerImplementation.swapDataStore). The servers
+ * keep answering from the previous version the whole time.
+ */
+public class DatasetWatcher {
+    public static final String RELOAD_MILLIS_PROPERTY = "rmi.dataset.reloadMillis";
+    public static final long DEFAULT_RELOAD_MILLIS = 5000;
+
+    private final long intervalMillis;
+    private final List<ServerImplementation> servers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile GeoDataStore current;
+    private long pendingLastModified = -1; // The change seen by the previous check, if any
+    private long pendingLength = -1;
+
+    /**
+     * Creates a watcher of the CSV file a store was loaded from. The checks start with start().
+     * @param store          the dataset the servers answer from, loaded from a CSV file.
+     * @param intervalMillis the time between two checks of the file.
+     */
+    public DatasetWatcher(GeoDataStore store, long intervalMillis) {
+        if (store.getCsvFile() == null) {
+            throw new IllegalArgumentException("The dataset was not loaded from a CSV file");
+        }
+        this.current = store;
+        this.intervalMillis = intervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dataset-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the watcher of a store configured by -Drmi.dataset.reloadMillis.
+     * @param store the dataset the servers answer from.
+     * @return the watcher, or null if the reload is disabled or the store was not loaded from a CSV file.
+     */
+    public static DatasetWatcher fromSystemProperties(GeoDataStore store) {
+        long intervalMillis = Long.getLong(RELOAD_MILLIS_PROPERTY, DEFAULT_RELOAD_MILLIS);
+        if (intervalMillis <= 0 || store.getCsvFile() == null) {
+            return null;
+        }
+        return new DatasetWatcher(store, intervalMillis);
+    }
+
+    /**
+     * Adds a server to switch to the new versions of the dataset. A server started on an older version
+     * switches to the current one right away.
+     * @param server the server.
+     */
+    public void addServer(ServerImplementation server) {
+        servers.add(server);
+        GeoDataStore store = current;
+        if (server.getDataStore().getVersion() < store.getVersion()) {
+            server.swapDataStore(store);
+        }
+    }
+
+    public void removeServer(ServerImplementation server) {
+        servers.remove(server);
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reloadIfChanged();
+            } catch (RuntimeException e) {
+                System.out.println("Error reloading the dataset " + current.getCsvFile() + "!!!");
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Checks the CSV file once, and loads the new version of the dataset if the file changed and has not
+     * changed since the previous check.
+     * @return true if the servers switched to a new version.
+     */
+    public synchronized boolean reloadIfChanged() {
+        GeoDataStore store = current;
+        if (!store.isCsvFileChanged()) {
+            pendingLastModified = -1;
+            return false;
+        }
+        File file = new File(store.getCsvFile());
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (lastModified != pendingLastModified || length != pendingLength) {
+            // Wait for the next check, in case the file is still being written
+            pendingLastModified = lastModified;
+            pendingLength = length;
+            return false;
+        }
+        pendingLastModified = -1;
+
+        GeoDataStore next = GeoDataStore.load(store.getCsvFile(), store.getVersion() + 1);
+        if (next.size() == 0) {
+            System.out.println("The dataset " + store.getCsvFile() + " is empty, keeping version "
+                    + store.getVersion() + "!!!");
+            return false;
+        }
+        current = next;
+        for (ServerImplementation server : servers) {
+            server.swapDataStore(next);
+        }
+        return true;
+    }
+
+    /**
+     * @return the latest version of the dataset.
+     */
+    public GeoDataStore getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,171 @@
+package com.java_rmi.server;
+
+import com.java_rmi.load_balancer.LoadBalancerInterface;
+
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The LoadReporter class pushes the load of a server to the load balancer at a fixed interval. The first
+ * report of a server, and the first one after the load balancer was unreachable, registers the server, so
+ * the load balancer learns about servers started as separate processes and survives restarts; so does a
+ * report that the load balancer answers with -1, because it dropped the server. When the
+ * load balancer answers a report with a new membership version, the registered servers are passed on to
+ * the membership listener, which keeps the partitioned cache of the server up to date.
+ *
+ * The load balancer keeps the last report of every server, so the allocation of a server never waits for a
+ * remote call to the server.
+ */
+public class LoadReporter {
+    public static final String REPORT_INTERVAL_PROPERTY = "rmi.server.loadReportMillis";
+    public static final String LOAD_BALANCER_HOST_PROPERTY = "rmi.loadbalancer.host";
+    public static final String LOAD_BALANCER_PORT_PROPERTY = "rmi.loadbalancer.port";
+    public static final long DEFAULT_REPORT_INTERVAL_MILLIS = 200;
+    public static final int DEFAULT_LOAD_BALANCER_PORT = 1099;
+
+    private final Server server;
+    private final ServerInterface serverImplementation;
+    private final Consumer<List<Server>> membershipListener;
+    private final String loadBalancerHost;
+    private final int loadBalancerPort;
+    private final long reportIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+
+    // Only used by the scheduler thread
+    private LoadBalancerInterface loadBalancer;
+    private boolean reachable;
+    private long previousCompleted;
+    private long previousLatencyNanos;
+    private long membershipVersion = -1;
+    private volatile long reports;
+
+    /**
+     * Creates a reporter. Nothing is sent before start is called.
+     * @param server               the server as the load balancer should know it.
+     * @param serverImplementation the running server whose load is reported.
+     * @param loadBalancerHost     the host of the load balancer's registry.
+     * @param loadBalancerPort     the port of the load balancer's registry.
+     * @param reportIntervalMillis the time between two reports.
+     * @param membershipListener   receives the registered servers whenever they change, or null.
+     */
+    public LoadReporter(Server server, ServerInterface serverImplementation, String loadBalancerHost,
+                        int loadBalancerPort, long reportIntervalMillis, Consumer<List<Server>> membershipListener) {
+        this.server = server;
+        this.serverImplementation = serverImplementation;
+        this.membershipListener = membershipListener;
+        this.loadBalancerHost = loadBalancerHost;
+        this.loadBalancerPort = loadBalancerPort;
+        this.reportIntervalMillis = reportIntervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, server.getServerName() + "-load-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a reporter configured from the rmi.server.loadReportMillis, rmi.loadbalancer.host and
+     * rmi.loadbalancer.port system properties.
+     * @return the reporter, or null if load reporting is disabled (interval of 0 or less).
+     */
+    public static LoadReporter fromSystemProperties(Server server, ServerImplementation serverImplementation) {
+        long reportIntervalMillis = Long.getLong(REPORT_INTERVAL_PROPERTY, DEFAULT_REPORT_INTERVAL_MILLIS);
+        if (reportIntervalMillis <= 0) {
+            return null;
+        }
+        return new LoadReporter(server, serverImplementation,
+                System.getProperty(LOAD_BALANCER_HOST_PROPERTY, "localhost"),
+                Integer.getInteger(LOAD_BALANCER_PORT_PROPERTY, DEFAULT_LOAD_BALANCER_PORT), reportIntervalMillis,
+                serverImplementation::updateMembers);
+    }
+
+    /**
+     * Starts sending reports in the background.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::report, 0, reportIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sending reports and removes the server from the load balancer.
+     */
+    public void stop() {
+        scheduler.execute(() -> {
+            try {
+                if (loadBalancer != null) {
+                    loadBalancer.unregisterServer(server.getServerName());
+                }
+            } catch (Exception e) {
+                // The load balancer is gone already
+            }
+        });
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(reportIntervalMillis + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report() {
+        try {
+            ServerLoad serverLoad = serverImplementation.getServerLoadInfo();
+            serverLoad.setRecentLatencyNanos(recentLatency(serverLoad));
+
+            if (loadBalancer == null) {
+                Registry registry = LocateRegistry.getRegistry(loadBalancerHost, loadBalancerPort);
+                LoadBalancerInterface lookedUp = (LoadBalancerInterface) registry.lookup("LoadBalancer");
+                lookedUp.registerServer(server);
+                loadBalancer = lookedUp;
+            }
+            long reportedMembershipVersion = loadBalancer.reportLoad(server.getServerName(), serverLoad);
+            if (reportedMembershipVersion < 0) {
+                // The load balancer dropped the server, after missed reports or a restart: register again
+                loadBalancer.registerServer(server);
+                reportedMembershipVersion = loadBalancer.reportLoad(server.getServerName(), serverLoad);
+            }
+            if (reportedMembershipVersion != membershipVersion && membershipListener != null) {
+                // A server joined, moved or left
+                membershipListener.accept(loadBalancer.getServers());
+                membershipVersion = reportedMembershipVersion;
+            }
+            if (!reachable && reports > 0) {
+                System.out.println("Load reports of " + server.getServerName() + " resumed");
+            }
+            reachable = true;
+            reports++;
+        } catch (Exception e) {
+            // The load balancer is not started yet or went away: register again on the next report
+            loadBalancer = null;
+            membershipVersion = -1;
+            if (reachable) {
+                System.out.println("Load balancer unreachable, load reports of " + server.getServerName() + " paused!!!");
+            }
+            reachable = false;
+        }
+    }
+
+    /**
+     * Computes the average latency of the requests completed since the previous report.
+     */
+    private long recentLatency(ServerLoad serverLoad) {
+        long latencyNanos = serverLoad.getTotalWaitNanos() + serverLoad.getTotalExecutionNanos();
+        long completed = serverLoad.getCompletedRequests() - previousCompleted;
+        long recentLatencyNanos = completed > 0 ? (latencyNanos - previousLatencyNanos) / completed : 0;
+        previousCompleted = serverLoad.getCompletedRequests();
+        previousLatencyNanos = latencyNanos;
+        return recentLatencyNanos;
+    }
+
+    /**
+     * @return the number of reports the load balancer accepted.
+     */
+    public long getReports() {
+        return reports;
+    }
+}
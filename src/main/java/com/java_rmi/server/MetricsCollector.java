@@ -0,0 +1,236 @@
+package com.java_rmi.server;
+
+import com.java_rmi.data_conector.GeoDataStore;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The MetricsCollector class records the requests of a server as they are executed and takes ServerMetrics
+ * of them. The counters of the query methods are striped LongAdders and their latencies LatencyHistograms,
+ * so that the workers recording at the same time do not contend on one memory location.
+ *
+ * The collector is also the JMX MBean of the server, registered as com.java_rmi:type=Server,name="serverName".
+ */
+public class MetricsCollector implements ServerMetricsMXBean {
+    private static final Query.Type[] TYPES = Query.Type.values();
+
+    private final String serverName;
+    private final RequestExecutor requestExecutor;
+    private final Supplier<GeoDataStore> dataStore;
+    private final List<ResultCache<?, ?>> caches;
+    private final LongAdder[] requests = new LongAdder[TYPES.length];
+    private final LongAdder[] errors = new LongAdder[TYPES.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[TYPES.length];
+    private ObjectName objectName;
+
+    /**
+     * Creates the collector of a server.
+     * @param serverName      the name of the server.
+     * @param requestExecutor the executor of the server, for the depth of its queue.
+     * @param dataStore       the current dataset of the server, for its memory and version.
+     * @param caches          the result caches of the server.
+     */
+    public MetricsCollector(String serverName, RequestExecutor requestExecutor, Supplier<GeoDataStore> dataStore,
+                            List<ResultCache<?, ?>> caches) {
+        this.serverName = serverName;
+        this.requestExecutor = requestExecutor;
+        this.dataStore = dataStore;
+        this.caches = caches;
+        for (int i = 0; i < TYPES.length; i++) {
+            requests[i] = new LongAdder();
+            errors[i] = new LongAdder();
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Executes a query on the calling thread and records it.
+     * @param type  the method of the query.
+     * @param query computes the query.
+     * @return the result of the query.
+     */
+    public long time(Query.Type type, LongSupplier query) {
+        int method = type.ordinal();
+        long startTime = System.nanoTime();
+        try {
+            long result = query.getAsLong();
+            latencies[method].record(System.nanoTime() - startTime);
+            return result;
+        } catch (RuntimeException e) {
+            errors[method].increment();
+            throw e;
+        } finally {
+            requests[method].increment();
+        }
+    }
+
+    /**
+     * @return the metrics recorded so far.
+     */
+    public ServerMetrics snapshot() {
+        ServerMetrics.MethodMetrics[] methods = new ServerMetrics.MethodMetrics[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            methods[i] = new ServerMetrics.MethodMetrics(TYPES[i].name(), requests[i].sum(), errors[i].sum(),
+                    latencies[i].copy());
+        }
+        CacheStats[] cacheStats = new CacheStats[caches.size()];
+        for (int i = 0; i < cacheStats.length; i++) {
+            cacheStats[i] = CacheStats.of(caches.get(i));
+        }
+        GeoDataStore store = dataStore.get();
+        ServerMetrics metrics = new ServerMetrics(serverName, System.currentTimeMillis(), methods, cacheStats,
+                requestExecutor.getInFlight(), requestExecutor.getQueued(), requestExecutor.getCompletedRequests(),
+                requestExecutor.getRejectedRequests(), store.size(), store.getTableHeapBytes(),
+                store.getIndexHeapBytes());
+        metrics.setDatasetVersion(store.getVersion());
+        return metrics;
+    }
+
+    /**
+     * Registers the collector in the platform MBean server, under com.java_rmi:type=Server,name=serverName.
+     */
+    public synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("com.java_rmi:type=Server,name=" + ObjectName.quote(serverName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            System.out.println("Error registering the metrics MBean of " + serverName + "!!!");
+        }
+    }
+
+    /**
+     * Removes the collector from the platform MBean server, if it was registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already unregistered
+        }
+        objectName = null;
+    }
+
+    @Override
+    public String getServerName() {
+        return serverName;
+    }
+
+    @Override
+    public long getRequests() {
+        long total = 0;
+        for (LongAdder methodRequests : requests) {
+            total += methodRequests.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getErrors() {
+        long total = 0;
+        for (LongAdder methodErrors : errors) {
+            total += methodErrors.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getRequestsByMethod() {
+        Map<String, Long> byMethod = new LinkedHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            byMethod.put(TYPES[i].name(), requests[i].sum());
+        }
+        return byMethod;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillisByMethod() {
+        Map<String, Double> byMethod = new LinkedHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            byMethod.put(TYPES[i].name(), latencies[i].getMean() / 1e6);
+        }
+        return byMethod;
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMillisByMethod() {
+        Map<String, Double> byMethod = new LinkedHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            byMethod.put(TYPES[i].name(), latencies[i].getValueAtPercentile(99) / 1e6);
+        }
+        return byMethod;
+    }
+
+    @Override
+    public int getInFlight() {
+        return requestExecutor.getInFlight();
+    }
+
+    @Override
+    public int getQueued() {
+        return requestExecutor.getQueued();
+    }
+
+    @Override
+    public long getRejectedRequests() {
+        return requestExecutor.getRejectedRequests();
+    }
+
+    @Override
+    public long getCacheHits() {
+        long hits = 0;
+        for (ResultCache<?, ?> cache : caches) {
+            hits += cache.getHitCount();
+        }
+        return hits;
+    }
+
+    @Override
+    public long getCacheMisses() {
+        long misses = 0;
+        for (ResultCache<?, ?> cache : caches) {
+            misses += cache.getMissCount();
+        }
+        return misses;
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        long evictions = 0;
+        for (ResultCache<?, ?> cache : caches) {
+            evictions += cache.getEvictionCount();
+        }
+        return evictions;
+    }
+
+    @Override
+    public int getDatasetRows() {
+        return dataStore.get().size();
+    }
+
+    @Override
+    public long getTableHeapBytes() {
+        return dataStore.get().getTableHeapBytes();
+    }
+
+    @Override
+    public long getIndexHeapBytes() {
+        return dataStore.get().getIndexHeapBytes();
+    }
+
+    @Override
+    public long getDatasetVersion() {
+        return dataStore.get().getVersion();
+    }
+}
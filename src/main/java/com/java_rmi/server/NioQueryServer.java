@@ -0,0 +1,346 @@
+package com.java_rmi.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The NioQueryServer class serves the queries of a server over the binary protocol of BinaryProtocol,
+ * alongside RMI. A single selector thread accepts the connections, reads the request frames and writes
+ * the response frames of all the clients; the queries themselves run on the workers of the server, so
+ * a connection may have many requests in flight and their responses may come back in any order.
+ *
+ * A client that pipelines faster than the server answers is slowed down rather than rejected: a connection
+ * stops being read while it has -Drmi.nio.maxInFlight requests (128 by default) whose responses are not
+ * written yet, or while the queue of the server is full, and is read again once responses went out. The
+ * requests it sent meanwhile wait in the socket buffers, and the client blocks when they are full.
+ *
+ * The endpoint listens on the RMI port of the server plus -Drmi.nio.portOffset (1000 by default). It is
+ * started with -Drmi.nio.enabled=true, or with -Drmi.transport=nio, the switch the clients use to pick it.
+ */
+public class NioQueryServer {
+    public static final String ENABLED_PROPERTY = "rmi.nio.enabled";
+    public static final String TRANSPORT_PROPERTY = "rmi.transport";
+    public static final String PORT_OFFSET_PROPERTY = "rmi.nio.portOffset";
+    public static final String MAX_IN_FLIGHT_PROPERTY = "rmi.nio.maxInFlight";
+    public static final int DEFAULT_PORT_OFFSET = 1000;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 128;
+    private static final int READ_BUFFER_SIZE = 4 + BinaryProtocol.MAX_FRAME_LENGTH;
+    private static final long PAUSED_RETRY_MILLIS = 10;
+
+    private final ServerImplementation serverImplementation;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private final Queue<Connection> connectionsToFlush = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> pausedConnections = new LinkedHashSet<>(); // Used by the selector thread only
+    private final int maxInFlight = Math.max(1, Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, DEFAULT_MAX_IN_FLIGHT));
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Opens the endpoint of a server. The endpoint serves requests once it is started.
+     * @param serverImplementation the server that executes the queries.
+     * @param port                 the port to listen on.
+     * @throws IOException if the port cannot be bound.
+     */
+    public NioQueryServer(ServerImplementation serverImplementation, int port) throws IOException {
+        this.serverImplementation = serverImplementation;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::run, serverImplementation.getServerName() + "-nio");
+        selectorThread.setDaemon(true);
+    }
+
+    /**
+     * @return whether the servers should open their NIO endpoint.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY) || "nio".equals(System.getProperty(TRANSPORT_PROPERTY));
+    }
+
+    /**
+     * @param rmiPort the RMI port of a server.
+     * @return the port of the server's NIO endpoint.
+     */
+    public static int portOf(int rmiPort) {
+        return rmiPort + Integer.getInteger(PORT_OFFSET_PROPERTY, DEFAULT_PORT_OFFSET);
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Closes the endpoint and all its connections. Requests still running are not answered.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                // A connection paused by a full server queue may have nothing in flight to wake the selector
+                if (pausedConnections.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.select(PAUSED_RETRY_MILLIS);
+                }
+                Connection connection;
+                while ((connection = connectionsToFlush.poll()) != null) {
+                    connection.flushScheduled.set(false);
+                    flush(connection);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection selected = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(selected);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(selected);
+                        }
+                    }
+                }
+                resumePaused();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.out.println("NIO endpoint of " + serverImplementation.getServerName() + " failed!!!");
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.increment();
+    }
+
+    /**
+     * Reads what the client sent and dispatches the complete request frames.
+     */
+    private void read(Connection connection) {
+        try {
+            if (connection.channel.read(connection.in) < 0) {
+                close(connection);
+                return;
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        dispatchFrames(connection);
+    }
+
+    /**
+     * Dispatches the complete request frames read from a connection, until the connection has to wait for
+     * responses to go out; it is then paused, and the remaining frames stay in its buffer.
+     */
+    private void dispatchFrames(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            if (mustWait(connection)) {
+                pause(connection);
+                break;
+            }
+            int length = in.getInt(in.position());
+            if (length < 9 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                // Not our protocol: there is no way to find the next frame
+                close(connection);
+                return;
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            int frameEnd = in.position() + 4 + length;
+            in.position(in.position() + 4);
+            long correlationId = in.getLong();
+            byte opcode = in.get();
+            ByteBuffer frame = in.slice();
+            frame.limit(frameEnd - in.position());
+            in.position(frameEnd);
+            dispatch(connection, correlationId, opcode, frame);
+        }
+        in.compact();
+    }
+
+    private void dispatch(Connection connection, long correlationId, byte opcode, ByteBuffer frame) {
+        requests.increment();
+        connection.inFlight.incrementAndGet(); // Until its response is written
+        if (opcode != BinaryProtocol.OP_QUERY) {
+            respond(connection, BinaryProtocol.encodeError(correlationId, "Unknown opcode " + opcode));
+            return;
+        }
+        try {
+            Query query = BinaryProtocol.decodeQuery(frame);
+            serverImplementation.submitTimed(query).whenComplete((result, error) -> respond(connection,
+                    error == null ? BinaryProtocol.encodeResult(correlationId, result)
+                            : BinaryProtocol.encodeError(correlationId, String.valueOf(error.getMessage()))));
+        } catch (RemoteException | IllegalArgumentException e) {
+            respond(connection, BinaryProtocol.encodeError(correlationId, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return whether a connection must not send more requests to the server for now.
+     */
+    private boolean mustWait(Connection connection) {
+        return connection.inFlight.get() >= maxInFlight || serverImplementation.isSaturated();
+    }
+
+    /**
+     * Stops reading a connection until resumePaused finds it may send requests again.
+     */
+    private void pause(Connection connection) {
+        if (pausedConnections.add(connection) && connection.key.isValid()) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Reads the paused connections again that may send requests, starting with the frames they already sent.
+     */
+    private void resumePaused() {
+        // A resumed connection may pause again while its buffered frames are dispatched
+        for (Connection connection : new ArrayList<>(pausedConnections)) {
+            if (!connection.key.isValid()) {
+                pausedConnections.remove(connection);
+            } else if (!mustWait(connection)) {
+                pausedConnections.remove(connection);
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+                dispatchFrames(connection);
+            }
+        }
+    }
+
+    /**
+     * Queues a response frame of a connection and has the selector thread write it. Called by the workers.
+     */
+    private void respond(Connection connection, ByteBuffer response) {
+        connection.out.add(response);
+        if (connection.flushScheduled.compareAndSet(false, true)) {
+            connectionsToFlush.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Writes the queued responses of a connection, and asks the selector to tell when the rest can be
+     * written if the socket buffer is full.
+     */
+    private void flush(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        try {
+            int readOps = pausedConnections.contains(connection) ? 0 : SelectionKey.OP_READ;
+            ByteBuffer response;
+            while ((response = connection.out.peek()) != null) {
+                connection.channel.write(response);
+                if (response.hasRemaining()) {
+                    connection.key.interestOps(readOps | SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.out.poll();
+                connection.inFlight.decrementAndGet();
+            }
+            connection.key.interestOps(readOps);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException | ClosedSelectorException e) {
+            // Closing anyway
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    /**
+     * A client connection: the bytes read but not yet dispatched and the responses not yet written. The
+     * responses are at most the requests in flight, so the out queue holds at most maxInFlight frames.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inFlight = new AtomicInteger(); // Dispatched, response not written yet
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
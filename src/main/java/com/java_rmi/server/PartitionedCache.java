@@ -0,0 +1,243 @@
+package com.java_rmi.server;
+
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The PartitionedCache class shares the query results of the zone servers. Every query has an owner server,
+ * chosen by a ConsistentHashRing over the registered servers. A server that misses a query in its own
+ * caches asks the owner for it instead of computing it, and the owner computes every query once, even when
+ * several servers ask for it at the same time, and keeps it in its caches for the others.
+ *
+ * If the owner cannot be reached, or is on another version of the dataset while the servers reload one
+ * after the other, the asking server computes the query itself. The members come from the load balancer
+ * (see LoadReporter); until then a server owns every query.
+ */
+public class PartitionedCache {
+    public static final String ENABLED_PROPERTY = "rmi.cache.partitioned";
+
+    private final String serverName;
+    private volatile ConsistentHashRing ring;
+    private volatile Map<String, Server> members = Collections.emptyMap();
+    private final Map<String, ServerInterface> peerStubs = new ConcurrentHashMap<>();
+    // The queries being computed, by query and dataset version
+    private final Map<Map.Entry<Query, Long>, CompletableFuture<Long>> computing = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> servingPeer = ThreadLocal.withInitial(() -> false);
+    private final LongAdder computations = new LongAdder();
+    private final LongAdder joinedComputations = new LongAdder();
+    private final LongAdder peerFetches = new LongAdder();
+    private final LongAdder peerFailures = new LongAdder();
+    private final LongAdder versionMismatches = new LongAdder();
+    private final LongAdder servedToPeers = new LongAdder();
+
+    /**
+     * Creates the partitioned cache of a server, which owns every query until it learns about the others.
+     * @param serverName the name of the server.
+     */
+    public PartitionedCache(String serverName) {
+        this.serverName = serverName;
+        this.ring = new ConsistentHashRing(Collections.singletonList(serverName));
+    }
+
+    /**
+     * Creates the partitioned cache of a server if it is enabled with -Drmi.cache.partitioned=true.
+     * @param serverName the name of the server.
+     * @return the partitioned cache, or null if every server only uses its own caches.
+     */
+    public static PartitionedCache fromSystemProperty(String serverName) {
+        return Boolean.getBoolean(ENABLED_PROPERTY) ? new PartitionedCache(serverName) : null;
+    }
+
+    /**
+     * Returns the result of a query that missed the caches of this server, from its owner.
+     * @param query          the query.
+     * @param datasetVersion the version of the dataset the query runs on.
+     * @param compute        computes the query on this server, on that version.
+     * @return the result of the query.
+     */
+    public long resolve(Query query, long datasetVersion, LongSupplier compute) {
+        String owner = ring.ownerOf(query.toString());
+        if (owner == null || owner.equals(serverName) || servingPeer.get()) {
+            // Never forward a query asked by a peer, so that queries cannot go around in circles
+            return computeOnce(query, datasetVersion, compute);
+        }
+
+        ServerInterface peer = peerStub(owner);
+        if (peer != null) {
+            try {
+                QueryResult result = peer.fetchOwned(query, datasetVersion);
+                if (result != null && result.getDatasetVersion() == datasetVersion) {
+                    peerFetches.increment();
+                    return result.getResult();
+                }
+                versionMismatches.increment();
+            } catch (RemoteException e) {
+                peerStubs.remove(owner);
+                peerFailures.increment();
+            }
+        }
+        return computeOnce(query, datasetVersion, compute);
+    }
+
+    /**
+     * Executes a query asked by a peer that considers this server its owner.
+     * @param query   the query.
+     * @param execute executes the query against the caches of this server.
+     * @return the result of the query.
+     */
+    public long serveOwned(Query query, LongSupplier execute) {
+        servedToPeers.increment();
+        servingPeer.set(true);
+        try {
+            return execute.getAsLong();
+        } finally {
+            servingPeer.set(false);
+        }
+    }
+
+    /**
+     * Computes a query, letting concurrent callers of the same query on the same version wait for the first one.
+     */
+    private long computeOnce(Query query, long datasetVersion, LongSupplier compute) {
+        Map.Entry<Query, Long> key = new AbstractMap.SimpleImmutableEntry<>(query, datasetVersion);
+        CompletableFuture<Long> computation = new CompletableFuture<>();
+        CompletableFuture<Long> running = computing.putIfAbsent(key, computation);
+        if (running != null) {
+            joinedComputations.increment();
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + query, e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Computing " + query + " failed", e.getCause());
+            }
+        }
+
+        try {
+            long result = compute.getAsLong();
+            computations.increment();
+            computation.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            computation.completeExceptionally(e);
+            throw e;
+        } finally {
+            computing.remove(key);
+        }
+    }
+
+    private ServerInterface peerStub(String peerName) {
+        ServerInterface stub = peerStubs.get(peerName);
+        if (stub != null) {
+            return stub;
+        }
+        Server peer = members.get(peerName);
+        if (peer == null) {
+            return null;
+        }
+        try {
+            stub = (ServerInterface) LocateRegistry.getRegistry(peer.getServerHost(), peer.getServerPort()).lookup(peerName);
+            peerStubs.put(peerName, stub);
+            return stub;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Uses a stub for a peer instead of looking it up in the registry of the peer, for tests.
+     */
+    void setPeerStub(String peerName, ServerInterface stub) {
+        peerStubs.put(peerName, stub);
+    }
+
+    /**
+     * Replaces the members of the ring. The stubs of removed or moved members are dropped.
+     * @param servers the registered servers.
+     */
+    public void updateMembers(List<Server> servers) {
+        Map<String, Server> newMembers = new HashMap<>();
+        for (Server server : servers) {
+            newMembers.put(server.getServerName(), server);
+        }
+        newMembers.putIfAbsent(serverName, new Server(serverName, 0, 0));
+
+        Map<String, Server> oldMembers = members;
+        for (Map.Entry<String, Server> member : oldMembers.entrySet()) {
+            Server server = newMembers.get(member.getKey());
+            if (server == null || !server.getServerHost().equals(member.getValue().getServerHost())
+                    || server.getServerPort() != member.getValue().getServerPort()) {
+                peerStubs.remove(member.getKey());
+            }
+        }
+        members = newMembers;
+        ring = new ConsistentHashRing(new ArrayList<>(newMembers.keySet()));
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @return the number of queries this server computed.
+     */
+    public long getComputations() {
+        return computations.sum();
+    }
+
+    /**
+     * @return the number of times a query was already being computed and the caller waited for it.
+     */
+    public long getJoinedComputations() {
+        return joinedComputations.sum();
+    }
+
+    /**
+     * @return the number of query results fetched from their owners.
+     */
+    public long getPeerFetches() {
+        return peerFetches.sum();
+    }
+
+    /**
+     * @return the number of owners that could not be asked, after which the query was computed locally.
+     */
+    public long getPeerFailures() {
+        return peerFailures.sum();
+    }
+
+    /**
+     * @return the number of owners that were on another version of the dataset, after which the query was
+     *         computed locally.
+     */
+    public long getVersionMismatches() {
+        return versionMismatches.sum();
+    }
+
+    /**
+     * @return the number of queries this server executed for its peers.
+     */
+    public long getServedToPeers() {
+        return servedToPeers.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionedCache{" + serverName + ", ring=" + ring.getMembers() + ", computations=" + getComputations()
+                + ", joinedComputations=" + getJoinedComputations() + ", peerFetches=" + getPeerFetches()
+                + ", peerFailures=" + getPeerFailures() + ", versionMismatches=" + getVersionMismatches()
+                + ", servedToPeers=" + getServedToPeers() + "}";
+    }
+}
@@ -0,0 +1,192 @@
+package com.java_rmi.server;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * The Query class describes one call of a ServerInterface query method, so that several queries can be
+ * sent to a server in a single batch. Queries are immutable and compare equal when they would return
+ * the same result, which lets the server answer duplicates of a batch only once.
+ */
+public final class Query implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The query methods of ServerInterface.
+     */
+    public enum Type {
+        POPULATION_OF_COUNTRY,
+        NUMBER_OF_CITIES,
+        NUMBER_OF_COUNTRIES,
+        NUMBER_OF_COUNTRIES_IN_RANGE
+    }
+
+    private final Type type;
+    private final String countryName;
+    private final int cityCount;
+    private final int minPopulation;
+    private final int maxPopulation;
+
+    private Query(Type type, String countryName, int cityCount, int minPopulation, int maxPopulation) {
+        this.type = type;
+        this.countryName = countryName;
+        this.cityCount = cityCount;
+        this.minPopulation = minPopulation;
+        this.maxPopulation = maxPopulation;
+    }
+
+    /**
+     * Describes a getPopulationOfCountry call.
+     * @param countryName the name of the country.
+     * @return the query.
+     */
+    public static Query populationOfCountry(String countryName) {
+        return new Query(Type.POPULATION_OF_COUNTRY, countryName, 0, 0, 0);
+    }
+
+    /**
+     * Describes a getNumberOfCities call.
+     * @param countryName   the name of the country.
+     * @param minPopulation the minimum population required for a city to be counted.
+     * @return the query.
+     */
+    public static Query numberOfCities(String countryName, int minPopulation) {
+        return new Query(Type.NUMBER_OF_CITIES, countryName, 0, minPopulation, 0);
+    }
+
+    /**
+     * Describes a getNumberOfCountries call.
+     * @param cityCount     the minimum number of cities required.
+     * @param minPopulation the minimum population required for a city to be counted.
+     * @return the query.
+     */
+    public static Query numberOfCountries(int cityCount, int minPopulation) {
+        return new Query(Type.NUMBER_OF_COUNTRIES, null, cityCount, minPopulation, 0);
+    }
+
+    /**
+     * Describes a getNumberOfCountries call with a population range.
+     * @param cityCount     the minimum number of cities required.
+     * @param minPopulation the minimum population required for a city to be counted.
+     * @param maxPopulation the maximum population allowed for a city to be counted.
+     * @return the query.
+     */
+    public static Query numberOfCountries(int cityCount, int minPopulation, int maxPopulation) {
+        return new Query(Type.NUMBER_OF_COUNTRIES_IN_RANGE, null, cityCount, minPopulation, maxPopulation);
+    }
+
+    /**
+     * Describes a getNumberOfCountries call whose city count is the result of getNumberOfCities for a
+     * country, which is how the client replays the getNumberofCountries lines of its input file. The
+     * server resolves the city count itself, saving the client a round trip.
+     * @param cityCountCountry the country whose number of cities is used as the city count.
+     * @param minPopulation    the minimum population required for a city to be counted.
+     * @return the query.
+     */
+    public static Query numberOfCountriesOfCities(String cityCountCountry, int minPopulation) {
+        return new Query(Type.NUMBER_OF_COUNTRIES, cityCountCountry, 0, minPopulation, 0);
+    }
+
+    /**
+     * Describes a getNumberOfCountries call with a population range whose city count is the result of
+     * getNumberOfCities for a country.
+     * @param cityCountCountry the country whose number of cities is used as the city count.
+     * @param minPopulation    the minimum population required for a city to be counted.
+     * @param maxPopulation    the maximum population allowed for a city to be counted.
+     * @return the query.
+     */
+    public static Query numberOfCountriesOfCities(String cityCountCountry, int minPopulation, int maxPopulation) {
+        return new Query(Type.NUMBER_OF_COUNTRIES_IN_RANGE, cityCountCountry, 0, minPopulation, maxPopulation);
+    }
+
+    /**
+     * Builds the query of a line of the client input file, such as "getNumberofCities Honduras 40894 Zone:5".
+     * The elements are separated by single spaces and the last one is the zone of the client. The first
+     * argument of a getNumberofCountries line is the country whose number of cities is used as the city count.
+     * @param line the line of the input file.
+     * @return the query, or null if the line does not match any server method.
+     * @throws NumberFormatException if a population argument is not a number.
+     */
+    public static Query fromTraceLine(String line) {
+        String[] elements = line.split(" ");
+        if (elements.length < 2) {
+            return null;
+        }
+        String[] args = new String[elements.length - 2];
+        System.arraycopy(elements, 1, args, 0, elements.length - 2);
+        return fromTrace(elements[0], args);
+    }
+
+    /**
+     * Builds the query of a method name and arguments of the client input file.
+     * @param methodName the method name, such as getPopulationofCountry.
+     * @param args       the arguments, without the zone.
+     * @return the query, or null if the method and arguments do not match any server method.
+     * @throws NumberFormatException if a population argument is not a number.
+     */
+    public static Query fromTrace(String methodName, String[] args) {
+        if (methodName.equals("getPopulationofCountry")) {
+            if (args.length == 1) {
+                return populationOfCountry(args[0]);
+            }
+        } else if (methodName.equals("getNumberofCities")) {
+            if (args.length == 2) {
+                return numberOfCities(args[0], Integer.parseInt(args[1]));
+            }
+        } else if (methodName.equals("getNumberofCountries")) {
+            if (args.length == 2) {
+                return numberOfCountriesOfCities(args[0], Integer.parseInt("0" + args[1]));
+            } else if (args.length == 3) {
+                return numberOfCountriesOfCities(args[0], Integer.parseInt("0" + args[1]),
+                        Integer.parseInt("0" + args[2]));
+            }
+        }
+        return null;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the country of a population or cities query, the city count country of a countries query, or null.
+     */
+    public String getCountryName() {
+        return countryName;
+    }
+
+    public int getCityCount() {
+        return cityCount;
+    }
+
+    public int getMinPopulation() {
+        return minPopulation;
+    }
+
+    public int getMaxPopulation() {
+        return maxPopulation;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Query)) {
+            return false;
+        }
+        Query query = (Query) other;
+        return type == query.type && cityCount == query.cityCount && minPopulation == query.minPopulation
+                && maxPopulation == query.maxPopulation && Objects.equals(countryName, query.countryName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, countryName, cityCount, minPopulation, maxPopulation);
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + countryName + ":" + cityCount + ":" + minPopulation + ":" + maxPopulation;
+    }
+}
@@ -0,0 +1,247 @@
+package com.java_rmi.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The QueryLog class counts the queries a server receives, and keeps the most frequent ones in a small
+ * file from one run of the server to the next, so that a restarted server can fill its caches with them
+ * before it takes traffic (see CacheWarmer).
+ *
+ * The log of a server is the file serverName.querylog in the directory -Drmi.querylog.dir; it holds only
+ * the distinct queries and their counts, at most -Drmi.querylog.maxKeys of them (10000 by default). It is
+ * written every -Drmi.querylog.flushMillis milliseconds (60000 by default) and when the server shuts down.
+ * A client input file, such as exercise_1_input.txt, can seed the log with -Drmi.warmup.seed when the server
+ * has no log yet: every line counts once.
+ *
+ * File: int MAGIC, int entryCount, then for every entry long count and the query encoded as in BinaryProtocol
+ */
+public class QueryLog {
+    public static final String DIRECTORY_PROPERTY = "rmi.querylog.dir";
+    public static final String MAX_KEYS_PROPERTY = "rmi.querylog.maxKeys";
+    public static final String FLUSH_MILLIS_PROPERTY = "rmi.querylog.flushMillis";
+    public static final String SEED_PROPERTY = "rmi.warmup.seed";
+    public static final int DEFAULT_MAX_KEYS = 10000;
+    public static final long DEFAULT_FLUSH_MILLIS = 60000;
+    public static final String FILE_EXTENSION = ".querylog";
+
+    private static final int MAGIC = 0x514c4f47; // "QLOG"
+
+    private final Path file;
+    private final int maxKeys;
+    private final ConcurrentHashMap<Query, LongAdder> counts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates an empty log.
+     * @param file    the file the log is saved to, or null for a log kept only in memory.
+     * @param maxKeys the maximum number of distinct queries kept.
+     */
+    public QueryLog(Path file, int maxKeys) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("The query log must keep at least one query: " + maxKeys);
+        }
+        this.file = file;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Creates the log of a server configured by -Drmi.querylog.dir and -Drmi.warmup.seed, with the queries
+     * of its previous runs, or of the seed file if it has none.
+     * @param serverName the name of the server.
+     * @return the log, or null if neither a log directory nor a seed file is configured.
+     */
+    public static QueryLog fromSystemProperties(String serverName) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        String seed = System.getProperty(SEED_PROPERTY);
+        if (directory == null && seed == null) {
+            return null;
+        }
+        Path file = directory == null ? null : Paths.get(directory, serverName + FILE_EXTENSION);
+        QueryLog queryLog = new QueryLog(file, Integer.getInteger(MAX_KEYS_PROPERTY, DEFAULT_MAX_KEYS));
+        Path source = file != null && Files.isRegularFile(file) ? file : seed == null ? null : Paths.get(seed);
+        if (source != null) {
+            try {
+                queryLog.load(source);
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Error reading the query log " + source + "!!!");
+            }
+        }
+        return queryLog;
+    }
+
+    /**
+     * Counts one more occurrence of a query.
+     * @param query the query received by the server.
+     */
+    public void record(Query query) {
+        LongAdder count = counts.get(query);
+        if (count == null) {
+            if (counts.size() >= 2 * maxKeys) {
+                trim();
+            }
+            count = counts.computeIfAbsent(query, key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Keeps only the maxKeys most frequent queries, so that a stream of distinct queries cannot grow the log
+     * without bound.
+     */
+    private synchronized void trim() {
+        if (counts.size() < 2 * maxKeys) {
+            return;
+        }
+        List<Map.Entry<Query, Long>> entries = entriesByCount();
+        for (Map.Entry<Query, Long> entry : entries.subList(maxKeys, entries.size())) {
+            counts.remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Adds the queries of a file to the log: a log saved by save(), or a client input file whose every line
+     * counts once.
+     * @param source the file to read.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file is a corrupt log.
+     */
+    public void load(Path source) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(source));
+        if (bytes.remaining() >= 4 && bytes.getInt(0) == MAGIC) {
+            loadLog(bytes);
+        } else {
+            loadTrace(new String(bytes.array(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void loadLog(ByteBuffer bytes) {
+        try {
+            bytes.getInt();
+            int entryCount = bytes.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                long count = bytes.getLong();
+                Query query = BinaryProtocol.decodeQuery(bytes);
+                counts.computeIfAbsent(query, key -> new LongAdder()).add(count);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated query log", e);
+        }
+    }
+
+    private void loadTrace(String trace) {
+        for (String line : trace.split("\\r?\\n")) {
+            try {
+                Query query = Query.fromTraceLine(line);
+                if (query != null) {
+                    record(query);
+                }
+            } catch (NumberFormatException e) {
+                // Not a query of the server, like the lines the client answers with 0
+            }
+        }
+    }
+
+    /**
+     * Writes the most frequent queries to the file of the log. The file is replaced at once, so a crash
+     * while saving leaves the previous version.
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        List<Map.Entry<Query, Long>> entries = entriesByCount();
+        entries = entries.subList(0, Math.min(maxKeys, entries.size()));
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(entries.size());
+            for (Map.Entry<Query, Long> entry : entries) {
+                output.writeLong(entry.getValue());
+                output.write(BinaryProtocol.encodeQuery(entry.getKey()));
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Saves the log every -Drmi.querylog.flushMillis milliseconds on a background thread.
+     */
+    public synchronized void start() {
+        long flushMillis = Long.getLong(FLUSH_MILLIS_PROPERTY, DEFAULT_FLUSH_MILLIS);
+        if (file == null || scheduler != null || flushMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "query-log-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::saveQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background saves and saves the log one last time.
+     */
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        saveQuietly();
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            System.out.println("Error writing the query log " + file + "!!!");
+        }
+    }
+
+    /**
+     * @return the queries of the log and their counts, the most frequent first.
+     */
+    public List<Map.Entry<Query, Long>> entriesByCount() {
+        List<Map.Entry<Query, Long>> entries = new ArrayList<>(counts.size());
+        for (Map.Entry<Query, LongAdder> entry : counts.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+        }
+        entries.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+        return entries;
+    }
+
+    /**
+     * @return the number of distinct queries in the log.
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
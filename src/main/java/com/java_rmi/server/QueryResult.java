@@ -0,0 +1,72 @@
+package com.java_rmi.server;
+
+import java.io.Serializable;
+
+/**
+ * This class represents the result of a query together with how long the query waited in the server's queue
+ * and how long it took to execute, so that clients can tell queueing from computing in their latencies. The
+ * result is stamped with the version of the dataset it was computed on, so that clients can tell when a
+ * result they cached has been replaced by a reload of the dataset.
+ */
+public class QueryResult implements Serializable {
+    private long result;
+    private long waitNanos;
+    private long executionNanos;
+    private long datasetVersion;
+
+    /**
+     * Constructs a QueryResult of an unknown dataset version.
+     * @param result         the result of the query.
+     * @param waitNanos      the time the query waited for a worker of the server.
+     * @param executionNanos the time the server spent executing the query.
+     */
+    public QueryResult(long result, long waitNanos, long executionNanos) {
+        this(result, waitNanos, executionNanos, 0);
+    }
+
+    /**
+     * Constructs a QueryResult.
+     * @param result         the result of the query.
+     * @param waitNanos      the time the query waited for a worker of the server.
+     * @param executionNanos the time the server spent executing the query.
+     * @param datasetVersion the version of the dataset the query ran on, or 0 if it is unknown.
+     */
+    public QueryResult(long result, long waitNanos, long executionNanos, long datasetVersion) {
+        this.result = result;
+        this.waitNanos = waitNanos;
+        this.executionNanos = executionNanos;
+        this.datasetVersion = datasetVersion;
+    }
+
+    public long getResult() {
+        return result;
+    }
+
+    public void setResult(long result) {
+        this.result = result;
+    }
+
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    public void setWaitNanos(long waitNanos) {
+        this.waitNanos = waitNanos;
+    }
+
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    public void setExecutionNanos(long executionNanos) {
+        this.executionNanos = executionNanos;
+    }
+
+    public long getDatasetVersion() {
+        return datasetVersion;
+    }
+
+    public void setDatasetVersion(long datasetVersion) {
+        this.datasetVersion = datasetVersion;
+    }
+}
@@ -0,0 +1,234 @@
+package com.java_rmi.server;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The RequestExecutor class admits the queries of a server into a bounded queue and runs them on a fixed
+ * number of workers. It keeps track of how many requests are running and waiting, and of the time every
+ * request spent in the queue, so that the load reported to the load balancer reflects real backpressure.
+ */
+public class RequestExecutor {
+    public static final String WORKERS_PROPERTY = "rmi.server.workers";
+    public static final String QUEUE_CAPACITY_PROPERTY = "rmi.server.queueCapacity";
+    public static final String VIRTUAL_THREADS_PROPERTY = "rmi.server.virtualThreads";
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalExecutionNanos = new LongAdder();
+
+    /**
+     * Creates an executor.
+     * @param name           the name used for the worker threads.
+     * @param workers        the number of requests executed at the same time.
+     * @param queueCapacity  the number of requests that may wait for a worker before new ones are rejected.
+     * @param virtualThreads whether the workers should be virtual threads, when the JVM supports them.
+     */
+    public RequestExecutor(String name, int workers, int queueCapacity, boolean virtualThreads) {
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory() : null;
+        if (threadFactory == null) {
+            threadFactory = platformThreadFactory(name);
+        }
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Creates an executor configured from the rmi.server.workers, rmi.server.queueCapacity and
+     * rmi.server.virtualThreads system properties.
+     * @param name the name used for the worker threads.
+     * @return a new RequestExecutor.
+     */
+    public static RequestExecutor fromSystemProperties(String name) {
+        return new RequestExecutor(name,
+                Integer.getInteger(WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY),
+                Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY));
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Looks up Thread.ofVirtual().factory() reflectively, since the project still compiles for Java 9.
+     * @return the virtual thread factory, or null if the JVM does not have virtual threads.
+     */
+    public static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads not available, using platform threads!!!");
+            return null;
+        }
+    }
+
+    /**
+     * Queues a request, waits for a worker to run it and returns its result.
+     * @param request the work of the request.
+     * @return the result of the request.
+     * @throws RemoteException if the queue is full or the request fails.
+     */
+    public <T> T execute(Callable<T> request) throws RemoteException {
+        long submitTime = System.nanoTime();
+        queued.incrementAndGet();
+
+        AtomicBoolean started = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = executor.submit(tracked(request, submitTime, started));
+        } catch (RejectedExecutionException e) {
+            throw rejected();
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (future.cancel(true) && started.compareAndSet(false, true)) {
+                // Never started, so it is no longer waiting: free its place in the queue
+                queued.decrementAndGet();
+                executor.remove((Runnable) future);
+            }
+            throw new RemoteException("Interrupted while waiting for the request", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RemoteException("Request failed", e.getCause());
+        }
+    }
+
+    /**
+     * Queues a request without waiting for it, for callers that must not block such as the NIO endpoint.
+     * @param request the work of the request.
+     * @return the result of the request, completed by the worker that runs it.
+     * @throws RemoteException if the queue is full.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> request) throws RemoteException {
+        long submitTime = System.nanoTime();
+        queued.incrementAndGet();
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Callable<T> trackedRequest = tracked(request, submitTime, new AtomicBoolean());
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(trackedRequest.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw rejected();
+        }
+        return future;
+    }
+
+    /**
+     * Wraps a request so that its waiting and execution are counted. The request leaves the queue when it
+     * starts, or when it is cancelled before, whichever sets the started flag first.
+     */
+    private <T> Callable<T> tracked(Callable<T> request, long submitTime, AtomicBoolean started) {
+        return () -> {
+            long startTime = System.nanoTime();
+            if (started.compareAndSet(false, true)) {
+                queued.decrementAndGet();
+            }
+            inFlight.incrementAndGet();
+            totalWaitNanos.add(startTime - submitTime);
+            try {
+                return request.call();
+            } finally {
+                inFlight.decrementAndGet();
+                totalExecutionNanos.add(System.nanoTime() - startTime);
+                completedRequests.increment();
+            }
+        };
+    }
+
+    private RemoteException rejected() {
+        queued.decrementAndGet();
+        rejectedRequests.increment();
+        return new RemoteException("Server queue is full, request rejected");
+    }
+
+    /**
+     * @return whether the queue is full, so that a request submitted now would be rejected.
+     */
+    public boolean isSaturated() {
+        return executor.getQueue().remainingCapacity() == 0;
+    }
+
+    /**
+     * Stops the workers once the queued requests are done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return the number of requests currently being executed.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of requests waiting for a worker.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getCompletedRequests() {
+        return completedRequests.sum();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * @return the total time the completed requests spent waiting in the queue, in nanoseconds.
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    /**
+     * @return the total time the completed requests spent executing, in nanoseconds.
+     */
+    public long getTotalExecutionNanos() {
+        return totalExecutionNanos.sum();
+    }
+
+    public int getWorkers() {
+        return executor.getMaximumPoolSize();
+    }
+}
@@ -0,0 +1,257 @@
+package com.java_rmi.server;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * The ResultCache class is a bounded least-recently-used cache that can be shared by the RMI dispatch
+ * threads. The entries are spread over independently locked segments, each one an access-ordered
+ * LinkedHashMap, so threads looking up different keys rarely wait for each other.
+ * @param <K> the type of the keys.
+ * @param <V> the type of the cached results.
+ */
+public class ResultCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 32;
+
+    private final String name;
+    private final int capacity;
+    private final Segment<K, V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache holding at most capacity entries.
+     * @param name     the name of the cache, used in reports.
+     * @param capacity the maximum number of entries.
+     */
+    public ResultCache(String name, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.name = name;
+        this.capacity = capacity;
+
+        // Use fewer segments for small caches so that every segment keeps a useful share of the capacity
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_CAPACITY <= capacity) {
+            segmentCount *= 2;
+        }
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] newSegments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        this.segments = newSegments;
+        for (int i = 0; i < segmentCount; i++) {
+            // Spread the remainder so the segment capacities add up to the cache capacity
+            int segmentCapacity = capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0);
+            segments[i] = new Segment<>(segmentCapacity, evictions);
+        }
+    }
+
+    /**
+     * Creates a cache whose capacity is read from a system property.
+     * @param name            the name of the cache, used in reports.
+     * @param property        the system property holding the capacity.
+     * @param defaultCapacity the capacity used when the property is not set.
+     * @return a new ResultCache.
+     */
+    public static <K, V> ResultCache<K, V> fromSystemProperty(String name, String property, int defaultCapacity) {
+        return new ResultCache<>(name, Integer.getInteger(property, defaultCapacity));
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * Looks up a cached result and marks it as recently used.
+     * @param key the key of the result.
+     * @return the cached result, or null if there is none.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Looks up a cached result that is still valid, such as a result of the current version of the dataset,
+     * and marks it as recently used. An invalid result counts as a miss.
+     * @param key     the key of the result.
+     * @param isValid tells whether the cached result may be served.
+     * @return the cached result, or null if there is no valid one.
+     */
+    public V get(K key, Predicate<? super V> isValid) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null || !isValid.test(value)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return value;
+    }
+
+    /**
+     * Looks up a cached result without counting a hit or a miss, to inspect the cache rather than serve a
+     * query. The result is still marked as recently used.
+     * @param key the key of the result.
+     * @return the cached result, or null if there is none.
+     */
+    public V peek(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Adds a result to the cache, evicting the least recently used entry of its segment when it is full.
+     * @param key   the key of the result.
+     * @param value the result.
+     */
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * Removes every entry of the cache. The counters are kept.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Sets the hit and miss counters back to zero, so that they describe only the lookups that follow, such
+     * as the traffic after a warm-up.
+     */
+    public void resetHitCounts() {
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Removes the entries that match a condition, such as the results that a new version of the dataset
+     * changes. The condition may be slow: it is tested on a copy of the entries of each segment, without
+     * locking the segment, and an entry replaced in the meantime is kept.
+     * @param condition tells whether an entry must be removed.
+     * @return the number of entries removed.
+     */
+    public int invalidateIf(BiPredicate<? super K, ? super V> condition) {
+        int removed = 0;
+        List<Map.Entry<K, V>> entries = new ArrayList<>();
+        for (Segment<K, V> segment : segments) {
+            entries.clear();
+            synchronized (segment) {
+                for (Map.Entry<K, V> entry : segment.entrySet()) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+                }
+            }
+            for (Map.Entry<K, V> entry : entries) {
+                if (condition.test(entry.getKey(), entry.getValue())) {
+                    synchronized (segment) {
+                        if (segment.remove(entry.getKey(), entry.getValue())) {
+                            removed++;
+                        }
+                    }
+                }
+            }
+        }
+        invalidations.add(removed);
+        return removed;
+    }
+
+    /**
+     * @return the current number of entries.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + " cache: " + size() + "/" + capacity + " entries, " + getHitCount() + " hits, "
+                + getMissCount() + " misses, " + getEvictionCount() + " evictions, " + getInvalidationCount() + " invalidations";
+    }
+
+    /**
+     * One access-ordered segment of the cache. All accesses are guarded by the segment's own monitor.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(Math.max(16, capacity * 4 / 3 + 1), 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            // Remove the least recently used entry when the segment exceeds its capacity
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
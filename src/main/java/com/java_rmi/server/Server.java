@@ -8,6 +8,7 @@ import java.io.Serializable;
  */
 public class Server implements Serializable {
     private String serverName;
+    private String serverHost;
     private int zone;
     private int serverPort;
     private int load;
@@ -20,7 +21,19 @@ public class Server implements Serializable {
      * @param serverPort The port on which the server is listening.
      */
     public Server(String serverName, int zone, int serverPort) {
+        this(serverName, "localhost", zone, serverPort);
+    }
+
+    /**
+     * Constructs a new Server object for a server running on another host.
+     * @param serverName The name of the server.
+     * @param serverHost The host the server's registry runs on.
+     * @param zone       The zone in which the server is located.
+     * @param serverPort The port on which the server is listening.
+     */
+    public Server(String serverName, String serverHost, int zone, int serverPort) {
         this.serverName = serverName;
+        this.serverHost = serverHost;
         this.zone = zone;
         this.serverPort = serverPort;
         this.load = 0;
@@ -35,6 +48,14 @@ public class Server implements Serializable {
         this.serverName = serverName;
     }
 
+    public String getServerHost() {
+        return serverHost;
+    }
+
+    public void setServerHost(String serverHost) {
+        this.serverHost = serverHost;
+    }
+
     public int getZone() {
         return zone;
     }
@@ -3,11 +3,12 @@ package com.java_rmi.server;
 import java.io.Serializable;
 
 /**
- * The ServerAllocation class represents information about a server's allocation, including its name and port.
+ * The ServerAllocation class represents information about a server's allocation, including its name, host and port.
  * It implements the Serializable interface to allow for easy serialization and deserialization of objects.
  */
 public class ServerAllocation implements Serializable {
     private String serverName;
+    private String serverHost;
     private int serverPort;
 
     /**
@@ -16,7 +17,18 @@ public class ServerAllocation implements Serializable {
      * @param serverPort The port on which the server is allocated.
      */
     public ServerAllocation(String serverName, int serverPort) {
+        this(serverName, "localhost", serverPort);
+    }
+
+    /**
+     * Constructs a new ServerAllocation object for a server running on another host.
+     * @param serverName The name of the server.
+     * @param serverHost The host the server's registry runs on.
+     * @param serverPort The port on which the server is allocated.
+     */
+    public ServerAllocation(String serverName, String serverHost, int serverPort) {
         this.serverName = serverName;
+        this.serverHost = serverHost;
         this.serverPort = serverPort;
     }
 
@@ -28,6 +40,14 @@ public class ServerAllocation implements Serializable {
         this.serverName = serverName;
     }
 
+    public String getServerHost() {
+        return serverHost;
+    }
+
+    public void setServerHost(String serverHost) {
+        this.serverHost = serverHost;
+    }
+
     public int getServerPort() {
         return serverPort;
     }
@@ -1,35 +1,85 @@
 package com.java_rmi.server;
 
-import com.java_rmi.data_conector.GeoData;
+import com.java_rmi.data_conector.CountryIndex;
+import com.java_rmi.data_conector.GeoDataStore;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
-import static com.java_rmi.data_conector.CSVReader.readDataCSV;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToLongFunction;
 
 /**
  * This class represents the implementation of the RMI server. It provides methods for
  * retrieving population, city, and country information, along with load balancing.
+ *
+ * The dataset can be replaced by a new version while the server runs (see swapDataStore). Every query
+ * runs on the version that was current when it started, and only uses the cached results of that version:
+ * every cached result carries the version it is valid for.
  */
 public class ServerImplementation extends UnicastRemoteObject implements ServerInterface {
-    private Map<String, Long> populationCache; // Cache for getPopulationOfCountry results
-    private Map<String, Integer> cityCache; // Cache for getNumberOfCities results
-    private Map<String, Integer> countryCache; // Cache for getNumberOfCountries results
-    private int load;
-    private int waitingList;
+    public static final int DEFAULT_CACHE_CAPACITY = 150;
+    private static final String CITIES_KEY_PREFIX = "getNumberOfCities:";
+    private static final String COUNTRIES_KEY_PREFIX = "getNumberOfCountries:";
+
+    private final String serverName;
+    private final CountryQueryEngine.Semantics semantics;
+    private volatile Dataset dataset; // Current version of the dataset, replaced as a whole on reload
+    private final ResultCache<String, CachedResult> populationCache; // Cache for getPopulationOfCountry results
+    private final ResultCache<String, CachedResult> cityCache; // Cache for getNumberOfCities results
+    private final ResultCache<String, CachedResult> countryCache; // Cache for getNumberOfCountries results
+    private final RequestExecutor requestExecutor; // Runs the queries and tracks the load of the server
+    private final PartitionedCache partitionedCache; // Null unless the servers share their results
+    private final MetricsCollector metrics; // Counts and times the queries, also registered as a JMX MBean
+    private final QueryLog queryLog; // Counts the queries for the warm-up of the next start, or null
 
     /**
+     * Creates a server over the dataset shared by all servers of this JVM.
      * @throws RemoteException if there is an issue with RMI.
      */
     public ServerImplementation() throws RemoteException {
-        super();
-        this.populationCache = new LinkedHashMap<>(150, 0.75f, true);
-        this.cityCache = new LinkedHashMap<>(150, 0.75f, true);
-        this.countryCache = new LinkedHashMap<>(150, 0.75f, true);
-        this.load = 0;
-        this.waitingList = 0;
+        this(GeoDataStore.getShared());
+    }
+
+    /**
+     * Creates a server over the given dataset.
+     * @param dataStore the dataset to answer the queries from.
+     * @throws RemoteException if there is an issue with RMI.
+     */
+    public ServerImplementation(GeoDataStore dataStore) throws RemoteException {
+        this("server", 0, dataStore);
+    }
+
+    /**
+     * Creates a named server exported on a given port.
+     * @param serverName the name of the server, used for its worker threads.
+     * @param port       the port the server object is exported on, or 0 for an anonymous port.
+     * @param dataStore  the dataset to answer the queries from.
+     * @throws RemoteException if the server cannot be exported.
+     */
+    public ServerImplementation(String serverName, int port, GeoDataStore dataStore) throws RemoteException {
+        super(port);
+        this.serverName = serverName;
+        this.semantics = CountryQueryEngine.Semantics.fromSystemProperty();
+        this.dataset = new Dataset(dataStore, new CountryQueryEngine(dataStore.getCountryIndex(), semantics));
+        this.populationCache = ResultCache.fromSystemProperty("population", "rmi.cache.population.capacity", DEFAULT_CACHE_CAPACITY);
+        this.cityCache = ResultCache.fromSystemProperty("cities", "rmi.cache.cities.capacity", DEFAULT_CACHE_CAPACITY);
+        this.countryCache = ResultCache.fromSystemProperty("countries", "rmi.cache.countries.capacity", DEFAULT_CACHE_CAPACITY);
+        this.requestExecutor = RequestExecutor.fromSystemProperties(serverName);
+        this.partitionedCache = PartitionedCache.fromSystemProperty(serverName);
+        this.metrics = new MetricsCollector(serverName, requestExecutor, this::getDataStore,
+                Arrays.<ResultCache<?, ?>>asList(populationCache, cityCache, countryCache));
+        metrics.registerMBean();
+        this.queryLog = QueryLog.fromSystemProperties(serverName);
+        if (queryLog != null) {
+            queryLog.start();
+        }
     }
 
     /**
@@ -38,20 +88,28 @@ public class ServerImplementation extends UnicastRemoteObject implements ServerI
      * @return the population of the specified country.
      */
     public long getPopulationOfCountry(String countryName) throws RemoteException {
-        // Check if the result is in the cache
-        if (populationCache.containsKey(countryName)) {
-            return populationCache.get(countryName);
+        if (queryLog != null) {
+            queryLog.record(Query.populationOfCountry(countryName));
         }
+        return requestExecutor.execute(() -> metrics.time(Query.Type.POPULATION_OF_COUNTRY,
+                () -> onDataset(current -> populationOfCountry(current, countryName))));
+    }
 
-        // If not found in cache, perform the operation and add to cache.
-        long sum = 0;
-        for (GeoData geoData : readDataCSV()) {
-            if (geoData.getCountryNameEn().equalsIgnoreCase(countryName)) {
-                sum += geoData.getPopulation();
-            }
+    private long populationOfCountry(Dataset current, String countryName) {
+        // Check if the result is in the cache
+        CachedResult cachedPopulation = populationCache.get(countryName, current::isVersionOf);
+        if (cachedPopulation != null) {
+            return cachedPopulation.result;
         }
 
-        populationCache.put(countryName, sum);
+        // If not found in cache, look the country up in the index and add to cache.
+        // With a partitioned cache, the owner of the query computes it
+        long sum = partitionedCache == null
+                ? current.store.getCountryIndex().getPopulation(countryName)
+                : partitionedCache.resolve(Query.populationOfCountry(countryName), current.store.getVersion(),
+                        () -> current.store.getCountryIndex().getPopulation(countryName));
+
+        populationCache.put(countryName, new CachedResult(sum, current));
         return sum;
     }
 
@@ -62,22 +120,29 @@ public class ServerImplementation extends UnicastRemoteObject implements ServerI
      * @return the number of cities in the specified country.
      */
     public int getNumberOfCities(String countryName, int minPopulation) throws RemoteException {
+        if (queryLog != null) {
+            queryLog.record(Query.numberOfCities(countryName, minPopulation));
+        }
+        return requestExecutor.execute(() -> (int) metrics.time(Query.Type.NUMBER_OF_CITIES,
+                () -> onDataset(current -> numberOfCities(current, countryName, minPopulation))));
+    }
+
+    private int numberOfCities(Dataset current, String countryName, int minPopulation) {
         // Create a cache key based on the method parameters
-        String cacheKey = "getNumberOfCities:" + countryName + ":" + minPopulation;
+        String cacheKey = CITIES_KEY_PREFIX + countryName + ":" + minPopulation;
 
-        if (cityCache.containsKey(cacheKey)) {
-            return cityCache.get(cacheKey);
+        CachedResult cachedCityCount = cityCache.get(cacheKey, current::isVersionOf);
+        if (cachedCityCount != null) {
+            return (int) cachedCityCount.result;
         }
 
-        // If not found in cache, perform the operation and add to cache
-        int cityCount = 0;
-        for (GeoData geoData : readDataCSV()) {
-            if (geoData.getCountryNameEn().equalsIgnoreCase(countryName) && geoData.getPopulation() >= minPopulation) {
-                cityCount++;
-            }
-        }
+        // If not found in cache, binary search the populations of the country and add to cache
+        int cityCount = partitionedCache == null
+                ? current.store.getCountryIndex().getNumberOfCities(countryName, minPopulation)
+                : (int) partitionedCache.resolve(Query.numberOfCities(countryName, minPopulation), current.store.getVersion(),
+                        () -> current.store.getCountryIndex().getNumberOfCities(countryName, minPopulation));
 
-        cityCache.put(cacheKey, cityCount);
+        cityCache.put(cacheKey, new CachedResult(cityCount, current));
         return cityCount;
     }
 
@@ -88,24 +153,30 @@ public class ServerImplementation extends UnicastRemoteObject implements ServerI
      * @return the number of countries that meet the criteria.
      */
     public int getNumberOfCountries(int cityCount, int minPopulation) throws RemoteException {
+        if (queryLog != null) {
+            queryLog.record(Query.numberOfCountries(cityCount, minPopulation));
+        }
+        return requestExecutor.execute(() -> (int) metrics.time(Query.Type.NUMBER_OF_COUNTRIES,
+                () -> onDataset(current -> numberOfCountries(current, cityCount, minPopulation))));
+    }
+
+    private int numberOfCountries(Dataset current, int cityCount, int minPopulation) {
         // Create a cache key based on the method parameters
-        String cacheKey = "getNumberOfCountries:" + cityCount + ":" + minPopulation;
+        String cacheKey = COUNTRIES_KEY_PREFIX + cityCount + ":" + minPopulation;
 
         // Check if the result is in the cache
-        if (countryCache.containsKey(cacheKey)) {
-            return countryCache.get(cacheKey);
+        CachedResult cachedCountryCount = countryCache.get(cacheKey, current::isVersionOf);
+        if (cachedCountryCount != null) {
+            return (int) cachedCountryCount.result;
         }
 
-        int countryCount = 0;
-        for (GeoData geoData : readDataCSV()) {
-            if (geoData.getPopulation() >= minPopulation) {
-                if (getNumberOfCities(geoData.getCountryNameEn(), minPopulation) >= cityCount) {
-                    countryCount++;
-                }
-            }
-        }
+        // If not found in cache, ask the query engine and add to cache
+        int countryCount = partitionedCache == null
+                ? current.countryQueryEngine.getNumberOfCountries(cityCount, minPopulation)
+                : (int) partitionedCache.resolve(Query.numberOfCountries(cityCount, minPopulation), current.store.getVersion(),
+                        () -> current.countryQueryEngine.getNumberOfCountries(cityCount, minPopulation));
 
-        countryCache.put(cacheKey, countryCount);
+        countryCache.put(cacheKey, new CachedResult(countryCount, current));
         return countryCount;
     }
 
@@ -117,26 +188,286 @@ public class ServerImplementation extends UnicastRemoteObject implements ServerI
      * @return the number of countries that meet the criteria.
      */
     public int getNumberOfCountries(int cityCount, int minPopulation, int maxPopulation) throws RemoteException {
+        if (queryLog != null) {
+            queryLog.record(Query.numberOfCountries(cityCount, minPopulation, maxPopulation));
+        }
+        return requestExecutor.execute(() -> (int) metrics.time(Query.Type.NUMBER_OF_COUNTRIES_IN_RANGE,
+                () -> onDataset(current -> numberOfCountries(current, cityCount, minPopulation, maxPopulation))));
+    }
+
+    private int numberOfCountries(Dataset current, int cityCount, int minPopulation, int maxPopulation) {
         // Create a cache key based on the method parameters
-        String cacheKey = "getNumberOfCountries:" + cityCount + ":" + minPopulation + ":" + maxPopulation;
+        String cacheKey = COUNTRIES_KEY_PREFIX + cityCount + ":" + minPopulation + ":" + maxPopulation;
 
         // Check if the result is in the cache
-        if (countryCache.containsKey(cacheKey)) {
-            return countryCache.get(cacheKey);
+        CachedResult cachedCountryCount = countryCache.get(cacheKey, current::isVersionOf);
+        if (cachedCountryCount != null) {
+            return (int) cachedCountryCount.result;
         }
 
-        // If not found in cache, perform the operation and add to cache
-        int countryCount = 0;
-        for (GeoData geoData : readDataCSV()) {
-            long population = geoData.getPopulation();
-            if (population >= minPopulation && population <= maxPopulation) {
-                if (getNumberOfCities(geoData.getCountryNameEn(), minPopulation) >= cityCount) {
-                    countryCount++;
+        // If not found in cache, ask the query engine and add to cache
+        int countryCount = partitionedCache == null
+                ? current.countryQueryEngine.getNumberOfCountries(cityCount, minPopulation, maxPopulation)
+                : (int) partitionedCache.resolve(Query.numberOfCountries(cityCount, minPopulation, maxPopulation),
+                        current.store.getVersion(),
+                        () -> current.countryQueryEngine.getNumberOfCountries(cityCount, minPopulation, maxPopulation));
+        countryCache.put(cacheKey, new CachedResult(countryCount, current));
+        return countryCount;
+    }
+
+    /**
+     * Executes a batch of queries as a single request. Duplicate queries of the batch are executed once.
+     * @param queries the queries to execute.
+     * @return the result of every query, in the order of the queries.
+     * @throws RemoteException if there is an issue with RMI.
+     */
+    @Override
+    public long[] executeBatch(Query[] queries) throws RemoteException {
+        return requestExecutor.execute(() -> {
+            Map<Query, Long> batchResults = new HashMap<>();
+            long[] results = new long[queries.length];
+            for (int i = 0; i < queries.length; i++) {
+                Long result = batchResults.get(queries[i]);
+                if (result == null) {
+                    result = execute(queries[i]);
+                    batchResults.put(queries[i], result);
                 }
+                results[i] = result;
             }
+            return results;
+        });
+    }
+
+    /**
+     * Executes a query and measures the time it waited for a worker and the time it executed.
+     * @param query the query to execute.
+     * @return the result of the query with its timings.
+     * @throws RemoteException if there is an issue with RMI.
+     */
+    @Override
+    public QueryResult executeTimed(Query query) throws RemoteException {
+        return requestExecutor.execute(timed(query));
+    }
+
+    /**
+     * Queues a query without waiting for it, and measures the time it waits for a worker and executes.
+     * @param query the query to execute.
+     * @return the result of the query with its timings, completed by the worker that runs it.
+     * @throws RemoteException if the queue of the server is full.
+     */
+    public CompletableFuture<QueryResult> submitTimed(Query query) throws RemoteException {
+        return requestExecutor.submit(timed(query));
+    }
+
+    /**
+     * @return whether the queue of the server is full, so that submitTimed would reject a query now.
+     */
+    public boolean isSaturated() {
+        return requestExecutor.isSaturated();
+    }
+
+    private Callable<QueryResult> timed(Query query) {
+        long submitTime = System.nanoTime();
+        return () -> {
+            long startTime = System.nanoTime();
+            // The result is stamped with the version it was computed on, even if a reload happens meanwhile
+            Dataset current = dataset;
+            long result = execute(query, current);
+            return new QueryResult(result, startTime - submitTime, System.nanoTime() - startTime, current.store.getVersion());
+        };
+    }
+
+    /**
+     * Executes a query for another server that considers this server the owner of the query in the
+     * partitioned cache. It runs on the calling RMI thread rather than on a worker, so that servers waiting
+     * on each other's queries can never exhaust each other's workers. The requesting server already counted
+     * the query, so it is left out of the metrics and the query log here and only counted as served to a peer.
+     *
+     * While the servers reload one after the other, the asking server may be on another version of the
+     * dataset; the query is then not executed, so that no server caches a result of another version.
+     * @param query          the query to execute.
+     * @param datasetVersion the version of the dataset of the asking server.
+     * @return the result of the query, or null if this server is on another version of the dataset.
+     * @throws RemoteException if there is an issue with RMI.
+     */
+    @Override
+    public QueryResult fetchOwned(Query query, long datasetVersion) throws RemoteException {
+        Dataset current = dataset;
+        if (current.store.getVersion() != datasetVersion) {
+            return null;
         }
-        countryCache.put(cacheKey, countryCount);
-        return countryCount;
+        long result = partitionedCache == null ? executeQuery(current, query)
+                : partitionedCache.serveOwned(query, () -> executeQuery(current, query));
+        return new QueryResult(result, 0, 0, datasetVersion);
+    }
+
+    /**
+     * Updates the servers that share the partitioned cache.
+     * @param servers the registered servers.
+     */
+    public void updateMembers(List<Server> servers) {
+        if (partitionedCache != null) {
+            partitionedCache.updateMembers(servers);
+        }
+    }
+
+    /**
+     * @return the partitioned cache of the server, or null if it only uses its own caches.
+     */
+    public PartitionedCache getPartitionedCache() {
+        return partitionedCache;
+    }
+
+    /**
+     * Executes one query against the caches and indexes of the server, on the calling thread.
+     * @param query the query to execute.
+     * @return the result of the query.
+     */
+    long execute(Query query) {
+        return execute(query, dataset);
+    }
+
+    private long execute(Query query, Dataset current) {
+        if (queryLog != null) {
+            queryLog.record(query);
+        }
+        return metrics.time(query.getType(), () -> executeQuery(current, query));
+    }
+
+    private long executeQuery(Dataset current, Query query) {
+        switch (query.getType()) {
+            case POPULATION_OF_COUNTRY:
+                return populationOfCountry(current, query.getCountryName());
+            case NUMBER_OF_CITIES:
+                return numberOfCities(current, query.getCountryName(), query.getMinPopulation());
+            case NUMBER_OF_COUNTRIES:
+                return numberOfCountries(current, cityCountOf(current, query), query.getMinPopulation());
+            case NUMBER_OF_COUNTRIES_IN_RANGE:
+                return numberOfCountries(current, cityCountOf(current, query), query.getMinPopulation(),
+                        query.getMaxPopulation());
+            default:
+                throw new IllegalArgumentException("Unknown query type: " + query.getType());
+        }
+    }
+
+    /**
+     * Executes a query without counting it in the metrics or the query log: to fill the caches, or for a
+     * peer that counted it already.
+     * @param query the query to execute.
+     * @return the result of the query.
+     */
+    long warm(Query query) {
+        return executeQuery(dataset, query);
+    }
+
+    /**
+     * Tells whether the result of a query is in the caches of the server, without counting a cache hit.
+     * @param query the query.
+     * @return true if the server would answer the query from its caches.
+     */
+    boolean isCached(Query query) {
+        Dataset current = dataset;
+        switch (query.getType()) {
+            case POPULATION_OF_COUNTRY:
+                return current.isVersionOf(populationCache.peek(query.getCountryName()));
+            case NUMBER_OF_CITIES:
+                return current.isVersionOf(cityCache.peek(CITIES_KEY_PREFIX + query.getCountryName() + ":"
+                        + query.getMinPopulation()));
+            default:
+                int cityCount = query.getCityCount();
+                if (query.getCountryName() != null) {
+                    CachedResult cachedCityCount = cityCache.peek(CITIES_KEY_PREFIX + query.getCountryName() + ":"
+                            + query.getMinPopulation());
+                    if (!current.isVersionOf(cachedCityCount)) {
+                        return false;
+                    }
+                    cityCount = (int) cachedCityCount.result;
+                }
+                String cacheKey = COUNTRIES_KEY_PREFIX + cityCount + ":" + query.getMinPopulation();
+                if (query.getType() == Query.Type.NUMBER_OF_COUNTRIES_IN_RANGE) {
+                    cacheKey += ":" + query.getMaxPopulation();
+                }
+                return current.isVersionOf(countryCache.peek(cacheKey));
+        }
+    }
+
+    /**
+     * Resolves the city count of a countries query, which may be given as a country whose cities are counted.
+     */
+    private int cityCountOf(Dataset current, Query query) {
+        if (query.getCountryName() != null) {
+            return numberOfCities(current, query.getCountryName(), query.getMinPopulation());
+        }
+        return query.getCityCount();
+    }
+
+    /**
+     * Runs a query on the current version of the dataset, which it keeps using if a reload happens meanwhile.
+     */
+    private long onDataset(ToLongFunction<Dataset> query) {
+        return query.applyAsLong(dataset);
+    }
+
+    /**
+     * Switches the server to another version of the dataset, without blocking the queries: the queries that
+     * already started finish on the previous version and the next ones run on the new one.
+     *
+     * The cached results of the previous version that the new version does not change are carried over to
+     * it; the others are invalidated. Those are the populations and cities of the countries whose cities
+     * changed, and the countries results that differ on the new version. A query still running on the
+     * previous version may cache its result after this pass, but that result stays of the previous version
+     * and is never served to the queries of the new one.
+     * @param newStore the new version of the dataset.
+     * @return the number of cached results invalidated.
+     */
+    public synchronized int swapDataStore(GeoDataStore newStore) {
+        Dataset previous = dataset;
+        Dataset next = new Dataset(newStore, new CountryQueryEngine(newStore.getCountryIndex(), semantics));
+        Set<String> changedCountries = previous.store.getCountryIndex().changedCountries(newStore.getCountryIndex());
+
+        dataset = next;
+        int invalidated = populationCache.invalidateIf((countryName, cached) -> !cached.carriesOver(previous, next,
+                () -> !changedCountries.contains(CountryIndex.normalize(countryName))));
+        invalidated += cityCache.invalidateIf((cacheKey, cached) -> !cached.carriesOver(previous, next,
+                () -> !changedCountries.contains(CountryIndex.normalize(
+                        cacheKey.substring(CITIES_KEY_PREFIX.length(), cacheKey.lastIndexOf(':'))))));
+        // Every country takes part in a countries query, so compare the result with the new version
+        invalidated += countryCache.invalidateIf((cacheKey, cached) -> !cached.carriesOver(previous, next,
+                () -> changedCountries.isEmpty() || cached.result == countriesOf(next, cacheKey)));
+
+        System.out.println(serverName + " switched to dataset version " + newStore.getVersion() + ": "
+                + changedCountries.size() + " countries changed, " + invalidated + " cached results invalidated");
+        return invalidated;
+    }
+
+    /**
+     * Computes the countries query of a countries cache key on a version of the dataset.
+     */
+    private static int countriesOf(Dataset current, String cacheKey) {
+        String[] parameters = cacheKey.substring(COUNTRIES_KEY_PREFIX.length()).split(":");
+        int cityCount = Integer.parseInt(parameters[0]);
+        int minPopulation = Integer.parseInt(parameters[1]);
+        return parameters.length == 2
+                ? current.countryQueryEngine.getNumberOfCountries(cityCount, minPopulation)
+                : current.countryQueryEngine.getNumberOfCountries(cityCount, minPopulation, Integer.parseInt(parameters[2]));
+    }
+
+    /**
+     * @return the current version of the dataset of the server.
+     */
+    public GeoDataStore getDataStore() {
+        return dataset.store;
+    }
+
+    /**
+     * Retrieves the version of the dataset the server answers from, which grows every time the dataset is
+     * reloaded.
+     * @return the version of the dataset.
+     * @throws RemoteException if there is an issue with RMI.
+     */
+    @Override
+    public long getDatasetVersion() throws RemoteException {
+        return dataset.store.getVersion();
     }
 
     /**
@@ -147,7 +478,127 @@ public class ServerImplementation extends UnicastRemoteObject implements ServerI
     @Override
     public ServerLoad getServerLoadInfo() throws RemoteException {
         // Return the actual load and waiting list size of the server
-        return new ServerLoad(load, waitingList);
+        int waitingList = requestExecutor.getQueued();
+        int inFlight = requestExecutor.getInFlight();
+        ServerLoad serverLoad = new ServerLoad(inFlight + waitingList, waitingList,
+                requestExecutor.getCompletedRequests(), requestExecutor.getTotalWaitNanos(),
+                requestExecutor.getTotalExecutionNanos());
+        serverLoad.setInFlight(inFlight);
+        return serverLoad;
+    }
+
+    /**
+     * Retrieves the statistics of the result caches, to compare the hit rates of the routing modes.
+     * @return the statistics of the population, cities and countries caches.
+     * @throws RemoteException if there is an issue with RMI.
+     */
+    @Override
+    public CacheStats[] getCacheStats() throws RemoteException {
+        return new CacheStats[]{CacheStats.of(populationCache), CacheStats.of(cityCache), CacheStats.of(countryCache)};
     }
 
+    /**
+     * Retrieves the metrics of the server: the requests and latencies of every query method, the cache
+     * statistics, the depth of the request queue and the memory of the dataset.
+     * @return the metrics of the server.
+     * @throws RemoteException if there is an issue with RMI.
+     */
+    @Override
+    public ServerMetrics getServerMetrics() throws RemoteException {
+        return metrics.snapshot();
+    }
+
+    public MetricsCollector getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Empties the result caches of the server.
+     */
+    public void clearCaches() {
+        populationCache.clear();
+        cityCache.clear();
+        countryCache.clear();
+    }
+
+    /**
+     * Sets the hit and miss counters of the result caches back to zero, so that the cache statistics
+     * describe only the queries that follow, such as the traffic after a warm-up.
+     */
+    public void resetCacheHitCounts() {
+        populationCache.resetHitCounts();
+        cityCache.resetHitCounts();
+        countryCache.resetHitCounts();
+    }
+
+    /**
+     * Stops the workers of the server and saves its query log. The caller is responsible for unexporting
+     * the object.
+     */
+    public void shutdown() {
+        requestExecutor.shutdown();
+        metrics.unregisterMBean();
+        if (queryLog != null) {
+            queryLog.close();
+        }
+    }
+
+    /**
+     * @return the log of the queries of the server, or null if it keeps none.
+     */
+    public QueryLog getQueryLog() {
+        return queryLog;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * A version of the dataset with the query engine built over it.
+     */
+    private static final class Dataset {
+        private final GeoDataStore store;
+        private final CountryQueryEngine countryQueryEngine;
+
+        Dataset(GeoDataStore store, CountryQueryEngine countryQueryEngine) {
+            this.store = store;
+            this.countryQueryEngine = countryQueryEngine;
+        }
+
+        /**
+         * @return whether a cached result, possibly null, may be served by the queries on this version.
+         */
+        boolean isVersionOf(CachedResult cached) {
+            return cached != null && cached.dataset == this;
+        }
+    }
+
+    /**
+     * A cached result with the version of the dataset it is valid for.
+     */
+    private static final class CachedResult {
+        private final long result;
+        private volatile Dataset dataset;
+
+        CachedResult(long result, Dataset dataset) {
+            this.result = result;
+            this.dataset = dataset;
+        }
+
+        /**
+         * Tells whether the result is valid on a new version of the dataset. A result of the previous version
+         * that the new version does not change becomes a result of the new version.
+         */
+        boolean carriesOver(Dataset previous, Dataset next, BooleanSupplier unchanged) {
+            if (dataset == next) {
+                return true;
+            }
+            if (dataset != previous || !unchanged.getAsBoolean()) {
+                return false;
+            }
+            dataset = next;
+            return true;
+        }
+    }
 }
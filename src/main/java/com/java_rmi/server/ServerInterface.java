@@ -40,9 +40,50 @@ public interface ServerInterface extends Remote {
      */
     int getNumberOfCountries(int cityCount, int minPopulation, int maxPopulation) throws RemoteException;
 
+    /**
+     * Executes a batch of queries in a single round trip. Duplicate queries of the batch are executed once.
+     * @param queries the queries to execute.
+     * @return the result of every query, in the order of the queries.
+     */
+    long[] executeBatch(Query[] queries) throws RemoteException;
+
+    /**
+     * Executes a query and reports how long it waited in the server's queue and how long it executed.
+     * @param query the query to execute.
+     * @return the result of the query with its timings.
+     */
+    QueryResult executeTimed(Query query) throws RemoteException;
+
+    /**
+     * Executes a query for another server, as the owner of the query in the partitioned cache. The owner only
+     * answers on the version of the dataset of the asking server, which computes the query itself otherwise.
+     * @param query          the query to execute.
+     * @param datasetVersion the version of the dataset of the asking server.
+     * @return the result of the query, or null if the owner is on another version of the dataset.
+     */
+    QueryResult fetchOwned(Query query, long datasetVersion) throws RemoteException;
+
     /**
      * Retrieves server load information.
      * @return a ServerLoad object containing load and waiting list information.
      */
     ServerLoad getServerLoadInfo() throws RemoteException;
+
+    /**
+     * Retrieves the statistics of the result caches of the server.
+     * @return the statistics of every cache, with its hit rate.
+     */
+    CacheStats[] getCacheStats() throws RemoteException;
+
+    /**
+     * Retrieves the metrics of the server.
+     * @return the requests, latencies, cache statistics, queue depth and dataset memory of the server.
+     */
+    ServerMetrics getServerMetrics() throws RemoteException;
+
+    /**
+     * Retrieves the version of the dataset the server answers from.
+     * @return the version, which grows every time the server reloads its dataset.
+     */
+    long getDatasetVersion() throws RemoteException;
 }
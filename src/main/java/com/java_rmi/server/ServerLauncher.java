@@ -0,0 +1,180 @@
+package com.java_rmi.server;
+
+import com.java_rmi.data_conector.GeoDataStore;
+
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ServerLauncher class starts the zone servers. Every server gets its own RMI registry on its
+ * configured port, is exported on that same port and is bound in the registry under its server name,
+ * which is how the load balancer and the clients look it up.
+ *
+ * Every started server reports its load to the load balancer in the background (see LoadReporter), and
+ * also serves its queries over NIO when -Drmi.nio.enabled=true or -Drmi.transport=nio (see NioQueryServer).
+ * The servers started on a dataset loaded from a CSV file switch to a new version of the dataset when the
+ * file changes (see DatasetWatcher); the file is chosen with -Drmi.dataset.path.
+ * A server with a query log (see QueryLog) fills its caches with its most frequent queries before it is
+ * bound and registered (see CacheWarmer).
+ * The servers can run inside one JVM, or each in its own process by running this class with the
+ * arguments: serverName zone port.
+ */
+public class ServerLauncher {
+    private final List<Registry> registries = new ArrayList<>();
+    private final List<ServerImplementation> launchedServers = new ArrayList<>();
+    private final List<LoadReporter> loadReporters = new ArrayList<>();
+    private final List<NioQueryServer> nioServers = new ArrayList<>();
+    private DatasetWatcher datasetWatcher; // Created with the first server on a dataset loaded from a file
+
+    /**
+     * Creates the list of the five zone servers.
+     * @return the servers of zones 1 to 5.
+     */
+    public static List<Server> defaultServers() {
+        List<Server> servers = new ArrayList<>();
+        servers.add(new Server("Server1", 1, 1098));
+        servers.add(new Server("Server2", 2, 1097));
+        servers.add(new Server("Server3", 3, 1096));
+        servers.add(new Server("Server4", 4, 1095));
+        servers.add(new Server("Server5", 5, 1094));
+        return servers;
+    }
+
+    /**
+     * Starts a server and binds it in a new registry on its port.
+     * @param server    the server to start.
+     * @param dataStore the dataset the server answers from.
+     * @return the started server.
+     * @throws RemoteException if the registry cannot be created or the server cannot be exported.
+     */
+    public synchronized ServerImplementation launch(Server server, GeoDataStore dataStore) throws RemoteException {
+        Registry registry = LocateRegistry.createRegistry(server.getServerPort());
+        ServerImplementation serverImplementation = new ServerImplementation(server.getServerName(),
+                server.getServerPort(), dataStore);
+        // Fill the caches before the server can be found by the clients and the load balancer
+        CacheWarmer.Result warmUp = CacheWarmer.fromSystemProperties().warmUp(serverImplementation);
+        if (warmUp != null) {
+            System.out.println(server.getServerName() + " " + warmUp);
+        }
+        registry.rebind(server.getServerName(), serverImplementation);
+
+        registries.add(registry);
+        launchedServers.add(serverImplementation);
+
+        if (NioQueryServer.isEnabled()) {
+            try {
+                NioQueryServer nioServer = new NioQueryServer(serverImplementation, NioQueryServer.portOf(server.getServerPort()));
+                nioServer.start();
+                nioServers.add(nioServer);
+                System.out.println("NIO endpoint of " + server.getServerName() + " on port " + nioServer.getPort());
+            } catch (IOException e) {
+                System.out.println("Error opening the NIO endpoint of " + server.getServerName() + "!!!");
+            }
+        }
+
+        watchDataset(serverImplementation, dataStore);
+
+        // Push the load of the server to the load balancer, which registers the server there
+        LoadReporter loadReporter = LoadReporter.fromSystemProperties(server, serverImplementation);
+        if (loadReporter != null) {
+            loadReporter.start();
+            loadReporters.add(loadReporter);
+        }
+        System.out.println("Server name: " + server.getServerName() + ", Zone: " + server.getZone() + ", Port: " + server.getServerPort());
+        return serverImplementation;
+    }
+
+    /**
+     * Registers a server with the watcher of its dataset file, starting the watcher with the first server.
+     */
+    private void watchDataset(ServerImplementation serverImplementation, GeoDataStore dataStore) {
+        if (dataStore.getCsvFile() == null) {
+            return;
+        }
+        if (datasetWatcher == null) {
+            datasetWatcher = DatasetWatcher.fromSystemProperties(dataStore);
+            if (datasetWatcher == null) {
+                return;
+            }
+            datasetWatcher.start();
+        }
+        if (dataStore.getCsvFile().equals(datasetWatcher.getCurrent().getCsvFile())) {
+            datasetWatcher.addServer(serverImplementation);
+        }
+    }
+
+    /**
+     * Starts all the given servers in this JVM. They share the same dataset.
+     * @param servers the servers to start.
+     * @throws RemoteException if one of the servers cannot be started.
+     */
+    public void launchAll(List<Server> servers) throws RemoteException {
+        GeoDataStore dataStore = GeoDataStore.getShared();
+        for (Server server : servers) {
+            launch(server, dataStore);
+        }
+    }
+
+    /**
+     * Unexports all the servers and registries started by this launcher.
+     */
+    public synchronized void shutdown() {
+        for (LoadReporter loadReporter : loadReporters) {
+            loadReporter.stop();
+        }
+        for (NioQueryServer nioServer : nioServers) {
+            nioServer.stop();
+        }
+        if (datasetWatcher != null) {
+            datasetWatcher.stop();
+            datasetWatcher = null;
+        }
+        for (ServerImplementation server : launchedServers) {
+            server.shutdown();
+            unexport(server);
+        }
+        for (Registry registry : registries) {
+            unexport(registry);
+        }
+        loadReporters.clear();
+        nioServers.clear();
+        launchedServers.clear();
+        registries.clear();
+    }
+
+    private static void unexport(Remote remote) {
+        try {
+            UnicastRemoteObject.unexportObject(remote, true);
+        } catch (NoSuchObjectException e) {
+            // Already unexported
+        }
+    }
+
+    public synchronized List<ServerImplementation> getLaunchedServers() {
+        return new ArrayList<>(launchedServers);
+    }
+
+    /**
+     * Starts one server in this process, or the five default servers if no arguments are given.
+     * @param args serverName zone port, or nothing.
+     */
+    public static void main(String[] args) throws RemoteException {
+        ServerLauncher launcher = new ServerLauncher();
+        if (args.length >= 3) {
+            // The server registers itself with the load balancer under the host RMI exports it on
+            String serverHost = System.getProperty("java.rmi.server.hostname", "localhost");
+            launcher.launch(new Server(args[0], serverHost, Integer.parseInt(args[1]), Integer.parseInt(args[2])),
+                    GeoDataStore.getShared());
+        } else {
+            launcher.launchAll(defaultServers());
+        }
+        // The exported servers keep the JVM running
+    }
+}
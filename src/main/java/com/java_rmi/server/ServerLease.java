@@ -0,0 +1,61 @@
+package com.java_rmi.server;
+
+import java.io.Serializable;
+
+/**
+ * The ServerLease class is an allocation of a server that a client may reuse for up to maxRequests requests
+ * or for ttlMillis milliseconds, whichever ends first, instead of asking the load balancer for every request.
+ * The load balancer grants smaller and shorter leases on servers that approach their load limits.
+ */
+public class ServerLease implements Serializable {
+    private ServerAllocation serverAllocation;
+    private long leaseId;
+    private int maxRequests;
+    private long ttlMillis;
+
+    /**
+     * Constructs a new ServerLease.
+     * @param serverAllocation The allocated server.
+     * @param leaseId          The number of the lease, unique within the load balancer.
+     * @param maxRequests      The number of requests the lease may be used for.
+     * @param ttlMillis        The time the lease may be used for, from when the client receives it.
+     */
+    public ServerLease(ServerAllocation serverAllocation, long leaseId, int maxRequests, long ttlMillis) {
+        this.serverAllocation = serverAllocation;
+        this.leaseId = leaseId;
+        this.maxRequests = maxRequests;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public ServerAllocation getServerAllocation() {
+        return serverAllocation;
+    }
+
+    public void setServerAllocation(ServerAllocation serverAllocation) {
+        this.serverAllocation = serverAllocation;
+    }
+
+    public long getLeaseId() {
+        return leaseId;
+    }
+
+    public void setLeaseId(long leaseId) {
+        this.leaseId = leaseId;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public void setMaxRequests(int maxRequests) {
+        this.maxRequests = maxRequests;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+}
@@ -5,11 +5,19 @@ import java.io.Serializable;
 
 /**
  * This class represents the load information of a server.
- * It includes the current load and the size of the waiting list.
+ * It includes the current load, i.e. the requests running or waiting, and the size of the waiting list,
+ * together with cumulative totals of the completed requests so that queueing time can be told apart from
+ * execution time. The load reports a server pushes to the load balancer also carry the average latency
+ * of the requests completed since the previous report.
  */
 public class ServerLoad implements Serializable {
     private int load;
     private int waitingList;
+    private long completedRequests;
+    private long totalWaitNanos;
+    private long totalExecutionNanos;
+    private int inFlight;
+    private long recentLatencyNanos;
 
     // Constructor to initialize the ServerLoad object with load and waiting list values.
     public ServerLoad(int load, int waitingList) {
@@ -17,6 +25,21 @@ public class ServerLoad implements Serializable {
         this.waitingList = waitingList;
     }
 
+    /**
+     * Constructs a ServerLoad with the totals of the completed requests.
+     * @param load                the number of requests running or waiting.
+     * @param waitingList         the number of requests waiting for a worker.
+     * @param completedRequests   the number of requests completed since the server started.
+     * @param totalWaitNanos      the total time the completed requests waited in the queue.
+     * @param totalExecutionNanos the total time the completed requests spent executing.
+     */
+    public ServerLoad(int load, int waitingList, long completedRequests, long totalWaitNanos, long totalExecutionNanos) {
+        this(load, waitingList);
+        this.completedRequests = completedRequests;
+        this.totalWaitNanos = totalWaitNanos;
+        this.totalExecutionNanos = totalExecutionNanos;
+    }
+
     public int getLoad() {
         return load;
     }
@@ -32,4 +55,48 @@ public class ServerLoad implements Serializable {
     public void setWaitingList(int waitingList) {
         this.waitingList = waitingList;
     }
+
+    public long getCompletedRequests() {
+        return completedRequests;
+    }
+
+    public void setCompletedRequests(long completedRequests) {
+        this.completedRequests = completedRequests;
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    public void setTotalWaitNanos(long totalWaitNanos) {
+        this.totalWaitNanos = totalWaitNanos;
+    }
+
+    public long getTotalExecutionNanos() {
+        return totalExecutionNanos;
+    }
+
+    public void setTotalExecutionNanos(long totalExecutionNanos) {
+        this.totalExecutionNanos = totalExecutionNanos;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * @return the average wait plus execution time of the requests completed since the previous load
+     * report, in nanoseconds, or 0 if there were none.
+     */
+    public long getRecentLatencyNanos() {
+        return recentLatencyNanos;
+    }
+
+    public void setRecentLatencyNanos(long recentLatencyNanos) {
+        this.recentLatencyNanos = recentLatencyNanos;
+    }
 }
@@ -0,0 +1,297 @@
+package com.java_rmi.server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the metrics of a server at one moment: the requests, errors and latencies of every
+ * query method, the statistics of its result caches, the depth of its request queue and the memory held
+ * by its dataset. The metrics of several servers can be merged into the metrics of the fleet.
+ */
+public class ServerMetrics implements Serializable {
+    private String serverName;
+    private long timestampMillis;
+    private MethodMetrics[] methods;
+    private CacheStats[] caches;
+    private int inFlight;
+    private int queued;
+    private long completedRequests;
+    private long rejectedRequests;
+    private int datasetRows;
+    private long tableHeapBytes;
+    private long indexHeapBytes;
+    private long datasetVersion;
+
+    /**
+     * The requests of one query method.
+     */
+    public static class MethodMetrics implements Serializable {
+        private String method;
+        private long requests;
+        private long errors;
+        private LatencyHistogram latency;
+
+        /**
+         * Constructs the metrics of a query method.
+         * @param method   the name of the method.
+         * @param requests the number of requests executed.
+         * @param errors   the number of requests that failed.
+         * @param latency  the execution times of the requests.
+         */
+        public MethodMetrics(String method, long requests, long errors, LatencyHistogram latency) {
+            this.method = method;
+            this.requests = requests;
+            this.errors = errors;
+            this.latency = latency;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public void setRequests(long requests) {
+            this.requests = requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public void setErrors(long errors) {
+            this.errors = errors;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public void setLatency(LatencyHistogram latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            return method + ": requests=" + requests + ", errors=" + errors + ", latency " + latency;
+        }
+    }
+
+    /**
+     * Constructs the metrics of a server.
+     * @param serverName        the name of the server.
+     * @param timestampMillis   the time the metrics were taken.
+     * @param methods           the metrics of the query methods.
+     * @param caches            the statistics of the result caches.
+     * @param inFlight          the number of requests being executed.
+     * @param queued            the number of requests waiting for a worker.
+     * @param completedRequests the number of requests executed since the server started.
+     * @param rejectedRequests  the number of requests rejected because the queue was full.
+     * @param datasetRows       the number of rows of the dataset.
+     * @param tableHeapBytes    the estimated heap memory of the dataset's rows.
+     * @param indexHeapBytes    the estimated heap memory of the country index.
+     */
+    public ServerMetrics(String serverName, long timestampMillis, MethodMetrics[] methods, CacheStats[] caches,
+                         int inFlight, int queued, long completedRequests, long rejectedRequests,
+                         int datasetRows, long tableHeapBytes, long indexHeapBytes) {
+        this.serverName = serverName;
+        this.timestampMillis = timestampMillis;
+        this.methods = methods;
+        this.caches = caches;
+        this.inFlight = inFlight;
+        this.queued = queued;
+        this.completedRequests = completedRequests;
+        this.rejectedRequests = rejectedRequests;
+        this.datasetRows = datasetRows;
+        this.tableHeapBytes = tableHeapBytes;
+        this.indexHeapBytes = indexHeapBytes;
+    }
+
+    /**
+     * Merges the metrics of several servers. Counters, gauges and memory are summed, the latency histograms
+     * of the same method and the statistics of the same cache are combined. Servers of one JVM share their
+     * dataset, so the summed memory is the memory the servers would need on their own. The dataset version
+     * is the oldest one of the servers.
+     * @param name    the name of the merged metrics.
+     * @param servers the metrics of the servers.
+     * @return the merged metrics.
+     */
+    public static ServerMetrics merge(String name, List<ServerMetrics> servers) {
+        Map<String, MethodMetrics> methods = new LinkedHashMap<>();
+        Map<String, CacheStats> caches = new LinkedHashMap<>();
+        ServerMetrics merged = new ServerMetrics(name, System.currentTimeMillis(), new MethodMetrics[0],
+                new CacheStats[0], 0, 0, 0, 0, 0, 0, 0);
+        for (ServerMetrics server : servers) {
+            for (MethodMetrics method : server.methods) {
+                MethodMetrics total = methods.computeIfAbsent(method.method,
+                        m -> new MethodMetrics(m, 0, 0, new LatencyHistogram()));
+                total.requests += method.requests;
+                total.errors += method.errors;
+                total.latency.add(method.latency);
+            }
+            for (CacheStats cache : server.caches) {
+                CacheStats total = caches.computeIfAbsent(cache.getName(), c -> new CacheStats(c, 0, 0, 0, 0, 0));
+                total.setHits(total.getHits() + cache.getHits());
+                total.setMisses(total.getMisses() + cache.getMisses());
+                total.setEvictions(total.getEvictions() + cache.getEvictions());
+                total.setSize(total.getSize() + cache.getSize());
+                total.setCapacity(total.getCapacity() + cache.getCapacity());
+            }
+            merged.inFlight += server.inFlight;
+            merged.queued += server.queued;
+            merged.completedRequests += server.completedRequests;
+            merged.rejectedRequests += server.rejectedRequests;
+            merged.datasetRows += server.datasetRows;
+            merged.tableHeapBytes += server.tableHeapBytes;
+            merged.indexHeapBytes += server.indexHeapBytes;
+            merged.datasetVersion = merged.datasetVersion == 0 ? server.datasetVersion
+                    : Math.min(merged.datasetVersion, server.datasetVersion);
+        }
+        merged.methods = methods.values().toArray(new MethodMetrics[0]);
+        merged.caches = caches.values().toArray(new CacheStats[0]);
+        return merged;
+    }
+
+    /**
+     * @return the requests of all the query methods.
+     */
+    public long getRequests() {
+        long requests = 0;
+        for (MethodMetrics method : methods) {
+            requests += method.requests;
+        }
+        return requests;
+    }
+
+    /**
+     * @return the failed requests of all the query methods.
+     */
+    public long getErrors() {
+        long errors = 0;
+        for (MethodMetrics method : methods) {
+            errors += method.errors;
+        }
+        return errors;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public void setServerName(String serverName) {
+        this.serverName = serverName;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+    }
+
+    public MethodMetrics[] getMethods() {
+        return methods;
+    }
+
+    public void setMethods(MethodMetrics[] methods) {
+        this.methods = methods;
+    }
+
+    public CacheStats[] getCaches() {
+        return caches;
+    }
+
+    public void setCaches(CacheStats[] caches) {
+        this.caches = caches;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public void setQueued(int queued) {
+        this.queued = queued;
+    }
+
+    public long getCompletedRequests() {
+        return completedRequests;
+    }
+
+    public void setCompletedRequests(long completedRequests) {
+        this.completedRequests = completedRequests;
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    public void setRejectedRequests(long rejectedRequests) {
+        this.rejectedRequests = rejectedRequests;
+    }
+
+    public int getDatasetRows() {
+        return datasetRows;
+    }
+
+    public void setDatasetRows(int datasetRows) {
+        this.datasetRows = datasetRows;
+    }
+
+    public long getTableHeapBytes() {
+        return tableHeapBytes;
+    }
+
+    public void setTableHeapBytes(long tableHeapBytes) {
+        this.tableHeapBytes = tableHeapBytes;
+    }
+
+    public long getIndexHeapBytes() {
+        return indexHeapBytes;
+    }
+
+    public void setIndexHeapBytes(long indexHeapBytes) {
+        this.indexHeapBytes = indexHeapBytes;
+    }
+
+    public long getDatasetVersion() {
+        return datasetVersion;
+    }
+
+    public void setDatasetVersion(long datasetVersion) {
+        this.datasetVersion = datasetVersion;
+    }
+
+    @Override
+    public String toString() {
+        List<String> lines = new ArrayList<>();
+        lines.add("ServerMetrics{" + serverName + ", requests=" + getRequests() + ", errors=" + getErrors()
+                + ", inFlight=" + inFlight + ", queued=" + queued + ", completed=" + completedRequests
+                + ", rejected=" + rejectedRequests + ", rows=" + datasetRows + ", tableHeapBytes=" + tableHeapBytes
+                + ", indexHeapBytes=" + indexHeapBytes + ", datasetVersion=" + datasetVersion + "}");
+        for (MethodMetrics method : methods) {
+            lines.add("  " + method);
+        }
+        for (CacheStats cache : caches) {
+            lines.add("  " + cache);
+        }
+        return String.join("\n", lines);
+    }
+}
@@ -0,0 +1,41 @@
+package com.java_rmi.server;
+
+import java.util.Map;
+
+/**
+ * The ServerMetricsMXBean interface is the JMX view of the metrics of a server, registered as
+ * com.java_rmi:type=Server,name="serverName". The maps are keyed by query method.
+ */
+public interface ServerMetricsMXBean {
+    String getServerName();
+
+    long getRequests();
+
+    long getErrors();
+
+    Map<String, Long> getRequestsByMethod();
+
+    Map<String, Double> getMeanLatencyMillisByMethod();
+
+    Map<String, Double> getP99LatencyMillisByMethod();
+
+    int getInFlight();
+
+    int getQueued();
+
+    long getRejectedRequests();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    int getDatasetRows();
+
+    long getTableHeapBytes();
+
+    long getIndexHeapBytes();
+
+    long getDatasetVersion();
+}
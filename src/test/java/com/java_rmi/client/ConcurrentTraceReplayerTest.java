@@ -0,0 +1,171 @@
+package com.java_rmi.client;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for ConcurrentTraceReplayer and ReorderBuffer.
+ */
+public class ConcurrentTraceReplayerTest
+    extends TestCase
+{
+    public ConcurrentTraceReplayerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ConcurrentTraceReplayerTest.class );
+    }
+
+    public void testReorderBufferDeliversInSequenceOrder() throws Exception
+    {
+        List<String> delivered = new ArrayList<>();
+        ReorderBuffer<String> buffer = new ReorderBuffer<>((sequence, result) -> delivered.add(sequence + "=" + result));
+
+        buffer.complete(2, "c");
+        buffer.complete(1, "b");
+        assertTrue(delivered.isEmpty());
+        assertEquals(2, buffer.getWaiting());
+
+        buffer.complete(0, "a");
+        buffer.awaitDelivered(3);
+        assertEquals("[0=a, 1=b, 2=c]", delivered.toString());
+        assertEquals(0, buffer.getWaiting());
+    }
+
+    public void testReorderBufferReportsSinkFailure() throws Exception
+    {
+        List<String> delivered = new ArrayList<>();
+        ReorderBuffer<String> buffer = new ReorderBuffer<>((sequence, result) -> delivered.add(result.toUpperCase()));
+
+        buffer.complete(2, "c");
+        buffer.complete(1, null); // The sink throws a NullPointerException
+        buffer.complete(0, "a");
+        try {
+            buffer.awaitDelivered(3);
+            fail("Expected the failure of the sink");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+        assertEquals("[A]", delivered.toString());
+        assertEquals(0, buffer.getWaiting());
+    }
+
+    public void testReorderBufferDeliversOutsideTheLock() throws Exception
+    {
+        CountDownLatch sinkEntered = new CountDownLatch(1);
+        CountDownLatch releaseSink = new CountDownLatch(1);
+        List<Long> delivered = new ArrayList<>();
+        ReorderBuffer<String> buffer = new ReorderBuffer<>((sequence, result) -> {
+            if (sequence == 0) {
+                sinkEntered.countDown();
+                try {
+                    releaseSink.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            delivered.add(sequence);
+        });
+
+        Thread drainer = new Thread(() -> buffer.complete(0, "a"));
+        drainer.start();
+        assertTrue(sinkEntered.await(5, TimeUnit.SECONDS));
+        // The sink is blocked on the first result: the next ones are still taken without waiting for it
+        buffer.complete(2, "c");
+        buffer.complete(1, "b");
+        assertTrue(delivered.isEmpty());
+
+        releaseSink.countDown();
+        buffer.awaitDelivered(3);
+        drainer.join(5000);
+        assertEquals("[0, 1, 2]", delivered.toString());
+        assertEquals(0, buffer.getWaiting());
+    }
+
+    public void testSaturatedZoneDoesNotStallTheOthers() throws Exception
+    {
+        StringBuilder trace = new StringBuilder();
+        for (int i = 0; i < 2; i++) {
+            trace.append("getPopulationofCountry Slow").append(i).append(" Zone:1\n");
+        }
+        for (int i = 0; i < 5; i++) {
+            trace.append("getPopulationofCountry Fast").append(i).append(" Zone:2\n");
+        }
+
+        // One line of zone 1 at a time, and zone 1 does not get through until zone 2 is done
+        CountDownLatch zoneTwoDone = new CountDownLatch(5);
+        ConcurrentTraceReplayer replayer = new ConcurrentTraceReplayer(8, 1, false);
+        List<String> output = new ArrayList<>();
+        long lines = replayer.replay(new BufferedReader(new StringReader(trace.toString())), line -> {
+            if (line.endsWith("Zone:1") && !zoneTwoDone.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Zone 2 stalled behind zone 1");
+            } else if (line.endsWith("Zone:2")) {
+                zoneTwoDone.countDown();
+            }
+            return line;
+        }, (sequence, line) -> output.add(line));
+
+        assertEquals(7, lines);
+        assertEquals(trace.toString(), String.join("\n", output) + "\n");
+    }
+
+    public void testReplayKeepsInputOrderAndLimits() throws Exception
+    {
+        StringBuilder trace = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            trace.append("getPopulationofCountry Country").append(i).append(" Zone:").append(i % 5 + 1).append('\n');
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> output = new ArrayList<>();
+        ConcurrentTraceReplayer replayer = new ConcurrentTraceReplayer(16, 2, false);
+
+        long lines = replayer.replay(new BufferedReader(new StringReader(trace.toString())), line -> {
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+            running.decrementAndGet();
+            return line;
+        }, (sequence, line) -> output.add(line));
+
+        assertEquals(500, lines);
+        assertEquals(500, output.size());
+        String[] expected = trace.toString().split("\n");
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], output.get(i));
+        }
+        // Five zones with at most two lines each
+        assertTrue("max running " + maxRunning.get(), maxRunning.get() <= 10);
+    }
+
+    public void testReplayStopsAtFirstFailure() throws Exception
+    {
+        ConcurrentTraceReplayer replayer = new ConcurrentTraceReplayer(4, 0, false);
+        try {
+            replayer.replay(new BufferedReader(new StringReader("a Zone:1\nbad Zone:1\nc Zone:1\n")), line -> {
+                if (line.startsWith("bad")) {
+                    throw new IllegalStateException(line);
+                }
+                return line;
+            }, (sequence, line) -> { });
+            fail("Expected the failure of the bad line");
+        } catch (IllegalStateException e) {
+            assertEquals("bad Zone:1", e.getMessage());
+        }
+    }
+}
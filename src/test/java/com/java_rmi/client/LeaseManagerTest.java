@@ -0,0 +1,153 @@
+package com.java_rmi.client;
+
+import com.java_rmi.load_balancer.LoadBalancerServer;
+import com.java_rmi.load_balancer.TieredSelectionStrategy;
+import com.java_rmi.load_balancer.ZoneRuleStrategy;
+import com.java_rmi.server.Server;
+import com.java_rmi.server.ServerAllocation;
+import com.java_rmi.server.ServerLease;
+import com.java_rmi.server.ServerLoad;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit and concurrency test for the renewal and the invalidation of the leases of the client.
+ */
+public class LeaseManagerTest
+    extends TestCase
+{
+    public LeaseManagerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LeaseManagerTest.class );
+    }
+
+    /**
+     * A load balancer that counts the leases it grants and the requests they are for.
+     */
+    private static class CountingLoadBalancer extends LoadBalancerServer {
+        private final AtomicLong leases = new AtomicLong();
+        private final AtomicLong leasedRequests = new AtomicLong();
+
+        CountingLoadBalancer(List<Server> servers) throws RemoteException {
+            super(servers, new ZoneRuleStrategy());
+        }
+
+        @Override
+        public ServerLease requestServerLease(int zone) throws RemoteException {
+            ServerLease lease = super.requestServerLease(zone);
+            leases.incrementAndGet();
+            leasedRequests.addAndGet(lease.getMaxRequests());
+            return lease;
+        }
+    }
+
+    private static List<Server> servers()
+    {
+        List<Server> servers = new ArrayList<>();
+        servers.add(new Server("A", 1, 2001));
+        servers.add(new Server("B", 2, 2002));
+        return servers;
+    }
+
+    public void testLeaseIsUsedUpThenRenewed() throws Exception
+    {
+        CountingLoadBalancer loadBalancer = new CountingLoadBalancer(servers());
+        try {
+            LeaseManager leaseManager = new LeaseManager(loadBalancer);
+            int leaseSize = TieredSelectionStrategy.ZONE_LOAD_LIMIT;
+
+            // The first lease serves its requests without asking the load balancer again
+            for (int i = 0; i < leaseSize; i++) {
+                assertEquals("A", leaseManager.acquire(1).getServerName());
+            }
+            assertEquals(1, leaseManager.getLeaseRequests());
+            leaseManager.acquire(1);
+            assertEquals(2, leaseManager.getLeaseRequests());
+
+            // A failed server ends the lease at once
+            loadBalancer.reportLoad("A", new ServerLoad(0, 0));
+            assertEquals("A", leaseManager.acquire(1).getServerName());
+            assertEquals(3, leaseManager.getLeaseRequests());
+            leaseManager.invalidate(new ServerAllocation("A", "localhost", 2001));
+            leaseManager.acquire(1);
+            assertEquals(4, leaseManager.getLeaseRequests());
+            assertEquals(leaseSize + 3, leaseManager.getAllocations());
+        } finally {
+            UnicastRemoteObject.unexportObject(loadBalancer, true);
+        }
+    }
+
+    public void testConcurrentRenewalsAndInvalidations() throws Exception
+    {
+        CountingLoadBalancer loadBalancer = new CountingLoadBalancer(servers());
+        try {
+            LeaseManager leaseManager = new LeaseManager(loadBalancer);
+            int threads = 16;
+            int acquiresPerThread = 2000;
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            AtomicBoolean running = new AtomicBoolean(true);
+
+            // Failures and load reports keep ending the leases and resizing the new ones
+            Thread invalidator = new Thread(() -> {
+                int load = 0;
+                while (running.get()) {
+                    try {
+                        leaseManager.invalidate(new ServerAllocation("A", "localhost", 2001));
+                        loadBalancer.reportLoad("A", new ServerLoad(load++ % 20, 0));
+                        Thread.yield();
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            invalidator.start();
+
+            List<Thread> clients = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread client = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < acquiresPerThread; i++) {
+                            assertNotNull(leaseManager.acquire(1).getServerName());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                client.start();
+                clients.add(client);
+            }
+            start.countDown();
+            for (Thread client : clients) {
+                client.join();
+            }
+            running.set(false);
+            invalidator.join();
+
+            assertNull(String.valueOf(failure.get()), failure.get());
+            long acquires = (long) threads * acquiresPerThread;
+            assertEquals(acquires, leaseManager.getAllocations());
+            // Every renewal was one lease, and no lease was used for more requests than it was granted
+            assertEquals(loadBalancer.leases.get(), leaseManager.getLeaseRequests());
+            assertTrue(acquires <= loadBalancer.leasedRequests.get());
+        } finally {
+            UnicastRemoteObject.unexportObject(loadBalancer, true);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.java_rmi.client;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit test for the versioned client cache.
+ */
+public class NearCacheTest
+    extends TestCase
+{
+    public NearCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( NearCacheTest.class );
+    }
+
+    public void testNewerVersionInvalidatesOlderEntries()
+    {
+        NearCache cache = new NearCache("client", 10, 0, 1000);
+        cache.put("getPopulationofCountryCanada", 100, 1);
+        cache.put("getNumberofCitiesChad:1000", 3, 0); // Unknown version, kept as version 1 for a second
+        assertEquals(Long.valueOf(100), cache.get("getPopulationofCountryCanada"));
+        assertEquals(Long.valueOf(3), cache.get("getNumberofCitiesChad:1000"));
+
+        cache.observeVersion(2);
+        assertEquals(0, cache.size());
+        assertNull(cache.get("getPopulationofCountryCanada"));
+        assertEquals(2, cache.getStaleCount());
+
+        cache.put("getPopulationofCountryCanada", 90, 1); // Computed by a server still on version 1
+        assertNull(cache.get("getPopulationofCountryCanada"));
+        cache.put("getPopulationofCountryCanada", 110, 2);
+        assertEquals(Long.valueOf(110), cache.get("getPopulationofCountryCanada"));
+    }
+
+    public void testTtlAndCapacity() throws Exception
+    {
+        AtomicLong now = new AtomicLong();
+        NearCache cache = new NearCache("client", 2, 1000, 100, now::get);
+        cache.put("a", 1, 1);
+        cache.put("b", 2, 1);
+        cache.get("a");
+        cache.put("c", 3, 1);
+        assertNull(cache.get("b"));
+        assertEquals(Long.valueOf(1), cache.get("a"));
+
+        now.addAndGet(1000000001L);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getExpiredCount());
+
+        cache.startPolling(() -> 5, 10);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getKnownVersion() != 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        cache.stopPolling();
+        assertEquals(5, cache.getKnownVersion());
+        assertNull(cache.get("c"));
+    }
+
+    public void testUnversionedResultsExpireSoon()
+    {
+        AtomicLong now = new AtomicLong();
+        NearCache cache = new NearCache("server", 10, 60000, 1000, now::get);
+        cache.put("getPopulationofCountryCanada", 100, 0);
+        assertEquals(Long.valueOf(100), cache.get("getPopulationofCountryCanada"));
+        now.addAndGet(1000000001L);
+        assertNull(cache.get("getPopulationofCountryCanada"));
+
+        NearCache versionedOnly = new NearCache("server", 10, 60000, 0, now::get);
+        versionedOnly.put("getPopulationofCountryCanada", 100, 0);
+        assertEquals(0, versionedOnly.size());
+    }
+}
@@ -0,0 +1,134 @@
+package com.java_rmi.client;
+
+import com.java_rmi.data_conector.GeoDataStore;
+import com.java_rmi.data_conector.SyntheticDataset;
+import com.java_rmi.server.NioQueryServer;
+import com.java_rmi.server.Query;
+import com.java_rmi.server.QueryResult;
+import com.java_rmi.server.RequestExecutor;
+import com.java_rmi.server.ServerImplementation;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Unit test for NioServerClient against a NioQueryServer.
+ */
+public class NioServerClientTest
+    extends TestCase
+{
+    private ServerImplementation server;
+    private NioQueryServer nioServer;
+    private NioServerClient client;
+
+    public NioServerClientTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( NioServerClientTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        GeoDataStore dataStore = new GeoDataStore(SyntheticDataset.generate(20000, 1), "synthetic", 0);
+        // A queue much shorter than the pipelined requests: the endpoint must hold back, not reject
+        System.setProperty(RequestExecutor.QUEUE_CAPACITY_PROPERTY, "8");
+        System.setProperty(NioQueryServer.MAX_IN_FLIGHT_PROPERTY, "32");
+        try {
+            server = new ServerImplementation("NioTestServer", 0, dataStore);
+            nioServer = new NioQueryServer(server, 0);
+        } finally {
+            System.clearProperty(RequestExecutor.QUEUE_CAPACITY_PROPERTY);
+            System.clearProperty(NioQueryServer.MAX_IN_FLIGHT_PROPERTY);
+        }
+        nioServer.start();
+        client = new NioServerClient("localhost", nioServer.getPort(), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        client.close();
+        nioServer.stop();
+        server.shutdown();
+        UnicastRemoteObject.unexportObject(server, true);
+    }
+
+    public void testQueriesMatchTheServer() throws Exception
+    {
+        String country = SyntheticDataset.countryName(3);
+        assertEquals(server.getPopulationOfCountry(country), client.getPopulationOfCountry(country));
+        assertEquals(server.getNumberOfCities(country, 5000), client.getNumberOfCities(country, 5000));
+        assertEquals(server.getNumberOfCountries(10, 20000), client.getNumberOfCountries(10, 20000));
+        assertEquals(server.getNumberOfCountries(10, 20000, 5000000), client.getNumberOfCountries(10, 20000, 5000000));
+
+        Query countriesOfCities = Query.numberOfCountriesOfCities(country, 1000);
+        QueryResult result = client.executeTimed(countriesOfCities);
+        assertEquals(server.executeTimed(countriesOfCities).getResult(), result.getResult());
+        assertTrue(result.getExecutionNanos() > 0);
+
+        // Names that need more than one byte per character in UTF-8
+        assertEquals(server.getPopulationOfCountry("C\u00f4te d'Ivoire"), client.getPopulationOfCountry("C\u00f4te d'Ivoire"));
+    }
+
+    public void testPipelinedRequestsGetTheirOwnResponses() throws Exception
+    {
+        List<Query> queries = new ArrayList<>();
+        List<CompletableFuture<QueryResult>> results = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+        {
+            Query query = Query.numberOfCities(SyntheticDataset.countryName(i % 40), i * 97);
+            queries.add(query);
+            results.add(client.submit(query));
+        }
+        List<Long> values = new ArrayList<>();
+        for (CompletableFuture<QueryResult> result : results)
+        {
+            values.add(result.get().getResult());
+        }
+        // Once the pipelined requests are answered, the queue of the server has room for direct calls
+        for (int i = 0; i < queries.size(); i++)
+        {
+            assertEquals(server.executeTimed(queries.get(i)).getResult(), (long) values.get(i));
+        }
+        assertEquals(2000, nioServer.getRequests());
+        assertEquals(1, nioServer.getConnections());
+    }
+
+    public void testTimeoutKeepsTheConnection() throws Exception
+    {
+        try (ServerSocket silentServer = new ServerSocket(0)) {
+            System.setProperty(NioServerClient.TIMEOUT_PROPERTY, "200");
+            NioServerClient silentClient;
+            try {
+                silentClient = new NioServerClient("localhost", silentServer.getLocalPort(), null);
+            } finally {
+                System.clearProperty(NioServerClient.TIMEOUT_PROPERTY);
+            }
+            try (Socket accepted = silentServer.accept()) {
+                try {
+                    silentClient.executeTimed(Query.populationOfCountry("Chad"));
+                    fail("Expected a timeout");
+                } catch (ResponseTimeoutException e) {
+                    assertTrue(e.getMessage().contains("200 ms"));
+                }
+                // Only the request is given up on
+                assertEquals(0, silentClient.getPendingRequests());
+                assertFalse(silentClient.isClosed());
+            } finally {
+                silentClient.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.java_rmi.client;
+
+import com.java_rmi.server.Query;
+import com.java_rmi.server.ServerAllocation;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for the batching of the server calls of the client.
+ */
+public class QueryBatcherTest
+    extends TestCase
+{
+    public QueryBatcherTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryBatcherTest.class );
+    }
+
+    public void testFailedBatchGivesErrorResultsInOrder() throws Exception
+    {
+        int unusedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unusedPort = socket.getLocalPort();
+        }
+        ServerAllocation unreachable = new ServerAllocation("Server1", "127.0.0.1", unusedPort);
+        QueryBatcher batcher = new QueryBatcher(new ServerStubPool(false), 3, 60000);
+        List<Long> results = new ArrayList<>();
+
+        batcher.add(unreachable, Query.populationOfCountry("Chad"), results::add);
+        batcher.addResolved(42, results::add);
+        batcher.add(unreachable, Query.numberOfCities("Chad", 1000), results::add);
+        assertEquals(Arrays.asList(-1L, 42L, -1L), results);
+        assertEquals(1, batcher.getFailedBatches());
+
+        // The failed lines are not pending anymore
+        batcher.flush();
+        assertEquals(3, results.size());
+        batcher.addResolved(7, results::add);
+        batcher.flush();
+        assertEquals(Long.valueOf(7), results.get(3));
+    }
+}
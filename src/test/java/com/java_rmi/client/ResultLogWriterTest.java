@@ -0,0 +1,98 @@
+package com.java_rmi.client;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for the asynchronous output of the client.
+ */
+public class ResultLogWriterTest
+    extends TestCase
+{
+    private final List<Path> files = new ArrayList<>();
+
+    public ResultLogWriterTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ResultLogWriterTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        for (int i = 0; i < 2; i++) {
+            files.add(File.createTempFile("output", ".txt").toPath());
+        }
+    }
+
+    protected void tearDown() throws IOException
+    {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testTextFormatMatchesTheClientOutput() throws IOException
+    {
+        TraceLine cities = TraceLine.parse("getNumberofCities Honduras 40894 Zone:5");
+        TraceLine population = TraceLine.parse("getPopulationofCountry Canada Zone:1");
+        ResultLogWriter writer = new ResultLogWriter(files, ResultLogWriter.Format.TEXT, Charset.defaultCharset(), 16, 64);
+        writer.write(1 | 2, ResultRecord.answered(12, cities, "Server5", 2500000, 1000000, 500000));
+        writer.write(1, ResultRecord.cached(ResultRecord.Source.CLIENT_CACHE, 37, population, "Server1"));
+        writer.write(2, ResultRecord.cached(ResultRecord.Source.SERVER_CACHE, 37, population, "Server2"));
+        writer.close();
+
+        String answered = 12 + " " + cities.getLine() + " " + String.format(
+                "turnaround time: %.3f ms, execution time: %.3f ms, waiting time: %.3f ms)", 2.5, 1.0, 0.5)
+                + ", processed by Server Server5)\n";
+        assertEquals(answered + "37 getPopulationofCountry Canada Zone:1  (data client cached), processed by Server Server1)\n",
+                new String(Files.readAllBytes(files.get(0)), Charset.defaultCharset()));
+        assertEquals(answered + "37 getPopulationofCountry Canada Zone:1  (data server cached), processed by Server Server2)\n",
+                new String(Files.readAllBytes(files.get(1)), Charset.defaultCharset()));
+    }
+
+    public void testCsvFormatAndBackpressure() throws Exception
+    {
+        ResultLogWriter writer = new ResultLogWriter(files, ResultLogWriter.Format.CSV, StandardCharsets.UTF_8, 1, 128);
+        TraceLine countries = TraceLine.parse("getNumberofCountries Chad 100 3000000 Zone:2");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        writer.write(1, ResultRecord.answered(i, countries, "Server2", 3, 2, 1));
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        List<String> lines = Files.readAllLines(files.get(0), StandardCharsets.UTF_8);
+        assertEquals(4001, lines.size());
+        assertEquals("result,method,arguments,zone,source,server,turnaroundNanos,executionNanos,waitingNanos", lines.get(0));
+        assertTrue(lines.contains("999,getNumberofCountries,Chad 100 3000000,2,server,Server2,3,2,1"));
+        assertEquals(Arrays.asList(lines.get(0)), Files.readAllLines(files.get(1), StandardCharsets.UTF_8));
+        assertTrue(writer.toString().startsWith("Output: 4000 records"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.java_rmi.data_conector;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for the dictionary-encoded table.
+ */
+public class CompactGeoDataTableTest
+    extends TestCase
+{
+    public CompactGeoDataTableTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CompactGeoDataTableTest.class );
+    }
+
+    public void testRowsMatchHeapTable()
+    {
+        List<GeoData> rows = SyntheticDataset.generate(5000, 7);
+        rows.add(new GeoData("3448439", "S\u00e3o Paulo", "BR", "Brazil", 10021295, "America/Sao_Paulo", "-23.5475, -46.63611"));
+        rows.add(new GeoData("", "", "", "brazil", 0, "", ""));
+        HeapGeoDataTable heap = new HeapGeoDataTable(rows);
+        CompactGeoDataTable compact = new CompactGeoDataTable(rows);
+
+        assertEquals(heap.size(), compact.size());
+        assertEquals(heap.getCountryCount(), compact.getCountryCount());
+        for (int row = 0; row < rows.size(); row++) {
+            GeoData expected = rows.get(row);
+            GeoData actual = compact.getRow(row);
+            assertEquals(expected.getGeonameID(), actual.getGeonameID());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getCountryCode(), actual.getCountryCode());
+            assertEquals(expected.getCountryNameEn(), actual.getCountryNameEn());
+            assertEquals(expected.getPopulation(), actual.getPopulation());
+            assertEquals(expected.getTimezone(), actual.getTimezone());
+            assertEquals(expected.getCoordinates(), actual.getCoordinates());
+            assertEquals(heap.getCountryName(heap.getCountryId(row)), compact.getCountryName(compact.getCountryId(row)));
+            assertEquals(expected.getPopulation(), compact.getPopulation(row));
+        }
+        assertTrue(compact.estimateHeapBytes() * 3 < heap.estimateHeapBytes());
+    }
+
+    public void testCountryIndexUsesNormalizedNames()
+    {
+        List<GeoData> rows = Arrays.asList(
+                new GeoData("1", "Kyiv", "UA", "Ukraine", 2797553, "Europe/Kiev", "50.45466, 30.5238"),
+                new GeoData("2", "Kharkiv", "UA", "UKRAINE", 1430885, "Europe/Kiev", "49.98081, 36.25272"),
+                new GeoData("3", "Lviv", "UA", "ukraine", 717803, "Europe/Kiev", "49.83826, 24.02324"));
+        CompactGeoDataTable table = new CompactGeoDataTable(rows);
+        assertEquals(3, table.getCountryCount());
+        assertEquals("ukraine", table.getNormalizedCountryName(0));
+        assertSame(table.getNormalizedCountryName(2), table.getCountryName(2));
+
+        CountryIndex countryIndex = CountryIndex.build(table);
+        assertEquals(1, countryIndex.size());
+        assertEquals(4946241, countryIndex.getPopulation("Ukraine"));
+        assertEquals(2, countryIndex.getNumberOfCities("uKRAINE", 1000000));
+    }
+
+    public void testChunkBuildersAreMergedInOrder()
+    {
+        List<GeoData> rows = SyntheticDataset.generate(3000, 11);
+        CompactGeoDataTable.Builder merged = new CompactGeoDataTable.Builder();
+        for (int start = 0; start < rows.size(); start += 700) {
+            // Every chunk has its own dictionaries, with ids in another order
+            CompactGeoDataTable.Builder chunk = new CompactGeoDataTable.Builder();
+            for (int row = Math.min(rows.size(), start + 700) - 1; row >= start; row--) {
+                chunk.addRow(rows.get(row));
+            }
+            merged.addAll(chunk);
+        }
+        CompactGeoDataTable table = merged.build();
+
+        assertEquals(rows.size(), table.size());
+        for (int start = 0; start < rows.size(); start += 700) {
+            int end = Math.min(rows.size(), start + 700);
+            for (int row = start; row < end; row++) {
+                GeoData expected = rows.get(row);
+                GeoData actual = table.getRow(start + end - 1 - row);
+                assertEquals(expected.getGeonameID(), actual.getGeonameID());
+                assertEquals(expected.getName(), actual.getName());
+                assertEquals(expected.getCountryCode(), actual.getCountryCode());
+                assertEquals(expected.getCountryNameEn(), actual.getCountryNameEn());
+                assertEquals(expected.getPopulation(), actual.getPopulation());
+                assertEquals(expected.getTimezone(), actual.getTimezone());
+                assertEquals(expected.getCoordinates(), actual.getCoordinates());
+            }
+        }
+    }
+
+    public void testEveryDictionaryHasNormalizedForms()
+    {
+        List<GeoData> rows = Arrays.asList(
+                new GeoData("1", "Kyiv", "UA", "Ukraine", 2797553, "Europe/Kiev", "50.45466, 30.5238"),
+                new GeoData("2", "Kharkiv", "ua", "Ukraine", 1430885, "europe/kiev", "49.98081, 36.25272"));
+        CompactGeoDataTable table = new CompactGeoDataTable(rows);
+        assertEquals("UA", table.getCountryCode(0));
+        assertEquals("ua", table.getNormalizedCountryCode(0));
+        assertEquals("europe/kiev", table.getNormalizedTimezone(0));
+        assertEquals(table.getNormalizedCountryCode(0), table.getNormalizedCountryCode(1));
+        assertEquals(table.getNormalizedTimezone(0), table.getNormalizedTimezone(1));
+        assertSame(table.getTimezone(1), table.getNormalizedTimezone(1));
+
+        // The lazy fields must follow their row
+        CompactGeoDataTable.Builder builder = new CompactGeoDataTable.Builder();
+        builder.addRow("UA", "Ukraine", 1, "Europe/Kiev");
+        try {
+            builder.build();
+            fail("Expected the missing lazy fields to be reported");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
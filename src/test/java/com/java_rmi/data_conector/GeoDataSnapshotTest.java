@@ -0,0 +1,83 @@
+package com.java_rmi.data_conector;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Unit test for the binary dataset snapshot.
+ */
+public class GeoDataSnapshotTest
+    extends TestCase
+{
+    private File csvFile;
+
+    public GeoDataSnapshotTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( GeoDataSnapshotTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        csvFile = File.createTempFile("dataset", ".csv");
+        try (FileWriter writer = new FileWriter(csvFile)) {
+            writer.write("Geoname ID,Name,Country Code,Country name EN,Population,Timezone,Coordinates\n");
+            writer.write("703448,Kyiv,UA,Ukraine,2797553,Europe/Kiev,\"50.45466, 30.5238\"\n");
+            writer.write("706483,Kharkiv,UA,Ukraine,1430885,Europe/Kiev,\"49.98081, 36.25272\"\n");
+            writer.write("3448439,S\u00e3o Paulo,BR,Brazil,10021295,America/Sao_Paulo,\"-23.5475, -46.63611\"\n");
+            writer.write("2427123,N'Djamena,TD,Chad,,Africa/Ndjamena,\"12.10672, 15.0444\"\n");
+        }
+    }
+
+    protected void tearDown()
+    {
+        csvFile.delete();
+        new File(GeoDataSnapshot.snapshotFileFor(csvFile.getPath())).delete();
+    }
+
+    public void testSnapshotRoundTrip() throws IOException
+    {
+        List<GeoData> rows = CSVReader.readDataCSV(csvFile.getPath());
+        String snapshotFile = GeoDataSnapshot.snapshotFileFor(csvFile.getPath());
+        GeoDataSnapshot.write(new HeapGeoDataTable(rows), csvFile.getPath(), snapshotFile);
+
+        MappedGeoDataTable table = GeoDataSnapshot.map(snapshotFile);
+        assertEquals(rows.size(), table.size());
+        for (int row = 0; row < rows.size(); row++) {
+            GeoData expected = rows.get(row);
+            GeoData actual = table.getRow(row);
+            assertEquals(expected.getGeonameID(), actual.getGeonameID());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getCountryCode(), actual.getCountryCode());
+            assertEquals(expected.getCountryNameEn(), actual.getCountryNameEn());
+            assertEquals(expected.getPopulation(), actual.getPopulation());
+            assertEquals(expected.getTimezone(), actual.getTimezone());
+            assertEquals(expected.getCoordinates(), actual.getCoordinates());
+        }
+        assertEquals(4228438, CountryIndex.build(table).getPopulation("UKRAINE"));
+    }
+
+    public void testLoadPrefersSnapshotUntilCsvChanges() throws IOException
+    {
+        String snapshotFile = GeoDataSnapshot.snapshotFileFor(csvFile.getPath());
+        assertEquals(csvFile.getPath(), GeoDataStore.load(csvFile.getPath()).getSource());
+
+        GeoDataStore mapped = GeoDataStore.load(csvFile.getPath());
+        assertEquals(snapshotFile, mapped.getSource());
+        assertEquals(4, mapped.size());
+
+        csvFile.setLastModified(csvFile.lastModified() - 60000);
+        assertFalse(GeoDataSnapshot.isUsable(snapshotFile, csvFile.getPath()));
+        assertEquals(csvFile.getPath(), GeoDataStore.load(csvFile.getPath()).getSource());
+    }
+}
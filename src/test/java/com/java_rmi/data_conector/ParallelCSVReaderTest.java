@@ -0,0 +1,130 @@
+package com.java_rmi.data_conector;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for the parallel CSV reader.
+ */
+public class ParallelCSVReaderTest
+    extends TestCase
+{
+    private File csvFile;
+
+    public ParallelCSVReaderTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ParallelCSVReaderTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        csvFile = File.createTempFile("dataset", ".csv");
+    }
+
+    protected void tearDown()
+    {
+        csvFile.delete();
+    }
+
+    public void testQuotedFieldsMatchCsvReader() throws IOException
+    {
+        try (FileWriter writer = new FileWriter(csvFile)) {
+            writer.write("Geoname ID,Name,Country Code,Country name EN,Population,Timezone,Coordinates\r\n");
+            writer.write("703448,Kyiv,UA,Ukraine,2797553,Europe/Kiev,\"50.45466, 30.5238\"\r\n");
+            writer.write("\n");
+            writer.write("3448439,S\u00e3o Paulo,BR,Brazil,10021295,America/Sao_Paulo,\"-23.5475, -46.63611\"\n");
+            writer.write("2427123,\"N'Djamena \"\"Old\"\"\nTown\",TD,Chad,,Africa/Ndjamena,\"12.10672, 15.0444\"  \n");
+            writer.write("1835848,\"Seoul\",KR,\"Korea, Republic of\",\"10349312\",Asia/Seoul,\"37.566, 126.9784\",extra\n");
+            writer.write("706483,Kharkiv,UA,Ukraine,1430885,Europe/Kiev,");
+        }
+        assertSameRows(CSVReader.readDataCSV(csvFile.getPath()), 1, 8);
+    }
+
+    public void testQuoteInsideUnquotedFieldMatchesCsvReader() throws IOException
+    {
+        try (FileWriter writer = new FileWriter(csvFile)) {
+            writer.write("Geoname ID,Name,Country Code,Country name EN,Population,Timezone,Coordinates\n");
+            writer.write("1,Tom's \"Place,UA,Ukraine,10,Europe/Kiev,\"50.4, 30.5\"\n");
+            for (int i = 2; i < 20; i++) {
+                writer.write(i + ",City " + i + ",UA,Ukraine," + i + ",Europe/Kiev,\"50.4, 30.5\"\n");
+            }
+        }
+        assertSameRows(CSVReader.readDataCSV(csvFile.getPath()), 4, 16);
+    }
+
+    public void testSyntheticDatasetMatchesCsvReader() throws IOException
+    {
+        SyntheticDataset.writeCSV(20000, SyntheticDataset.DEFAULT_SEED, csvFile.getPath());
+        List<GeoData> expected = CSVReader.readDataCSV(csvFile.getPath());
+        assertEquals(20000, expected.size());
+        assertSameRows(expected, 3, 4096);
+    }
+
+    /**
+     * Reads a synthetic dataset with more and more threads and reports the throughput of each.
+     */
+    public void testThroughput() throws IOException
+    {
+        SyntheticDataset.writeCSV(300000, SyntheticDataset.DEFAULT_SEED, csvFile.getPath());
+        double megabytes = csvFile.length() / (1024.0 * 1024.0);
+
+        long startTime = System.nanoTime();
+        int expectedRows = CSVReader.readDataCSV(csvFile.getPath()).size();
+        System.out.printf("CSVReader: %.1f MB/s%n", megabytes * 1e9 / (System.nanoTime() - startTime));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= Math.max(2, processors); parallelism *= 2) {
+            ParallelCSVReader reader = new ParallelCSVReader(parallelism);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                startTime = System.nanoTime();
+                assertEquals(expectedRows, reader.read(csvFile.getPath()).size());
+                best = Math.min(best, System.nanoTime() - startTime);
+            }
+            System.out.printf("ParallelCSVReader with %d threads: %.1f MB/s%n", parallelism, megabytes * 1e9 / best);
+        }
+    }
+
+    private void assertSameRows(List<GeoData> expected, int parallelism, int chunkBytes) throws IOException
+    {
+        // Small chunks put chunk boundaries inside records and quoted fields
+        for (int chunk = 1; chunk <= chunkBytes; chunk *= 2) {
+            ParallelCSVReader reader = new ParallelCSVReader(parallelism, chunk, Charset.defaultCharset());
+            assertSameRows(expected, reader.read(csvFile.getPath()));
+            // The compact table is filled from the bytes of the fields and holds the same rows
+            CompactGeoDataTable table = reader.readTable(csvFile.getPath());
+            List<GeoData> rows = new ArrayList<>();
+            for (int row = 0; row < table.size(); row++) {
+                rows.add(table.getRow(row));
+            }
+            assertSameRows(expected, rows);
+        }
+    }
+
+    private static void assertSameRows(List<GeoData> expected, List<GeoData> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.get(row).getGeonameID(), actual.get(row).getGeonameID());
+            assertEquals(expected.get(row).getName(), actual.get(row).getName());
+            assertEquals(expected.get(row).getCountryCode(), actual.get(row).getCountryCode());
+            assertEquals(expected.get(row).getCountryNameEn(), actual.get(row).getCountryNameEn());
+            assertEquals(expected.get(row).getPopulation(), actual.get(row).getPopulation());
+            assertEquals(expected.get(row).getTimezone(), actual.get(row).getTimezone());
+            assertEquals(expected.get(row).getCoordinates(), actual.get(row).getCoordinates());
+        }
+    }
+}
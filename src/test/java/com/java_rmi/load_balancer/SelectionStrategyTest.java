@@ -0,0 +1,322 @@
+package com.java_rmi.load_balancer;
+
+import com.java_rmi.server.Server;
+import com.java_rmi.server.ServerAllocation;
+import com.java_rmi.server.ServerLauncher;
+import com.java_rmi.server.ServerLease;
+import com.java_rmi.server.ServerLoad;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.lang.management.ManagementFactory;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit, concurrency and allocation test for the selection strategies of the load balancer.
+ */
+public class SelectionStrategyTest
+    extends TestCase
+{
+    private static final SelectionStrategy[] STRATEGIES = {
+            new ZoneRuleStrategy(), new PowerOfTwoChoicesStrategy(), new LeastOutstandingRequestsStrategy()
+    };
+
+    public SelectionStrategyTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SelectionStrategyTest.class );
+    }
+
+    private static LoadSnapshot withLoad(LoadSnapshot snapshot, String serverName, int load)
+    {
+        return snapshot.withLoad(serverName, new ServerLoad(load, 0));
+    }
+
+    private static String select(SelectionStrategy strategy, LoadSnapshot snapshot, int zone)
+    {
+        return snapshot.getServer(strategy.select(snapshot, zone)).getServerName();
+    }
+
+    public void testZoneRules()
+    {
+        LoadSnapshot snapshot = LoadSnapshot.of(ServerLauncher.defaultServers());
+        for (SelectionStrategy strategy : STRATEGIES) {
+            assertEquals("Server1", select(strategy, snapshot, 1));
+
+            // Overloaded zone server: a neighbor within two zones with a load below 8
+            LoadSnapshot overloaded = withLoad(withLoad(snapshot, "Server1", 18), "Server2", 8);
+            for (int i = 0; i < 50; i++) {
+                assertEquals("Server3", select(strategy, overloaded, 1));
+            }
+
+            // Every server in reach is overloaded: back to the zone's own server
+            overloaded = withLoad(overloaded, "Server3", 9);
+            assertEquals("Server1", select(strategy, overloaded, 1));
+
+            // A zone without servers gets any server instead of none
+            assertTrue(select(strategy, snapshot, 42).startsWith("Server"));
+            assertEquals(-1, strategy.select(LoadSnapshot.empty(), 1));
+        }
+    }
+
+    public void testLeastOutstandingRequests()
+    {
+        List<Server> servers = new ArrayList<>();
+        servers.add(new Server("A", 1, 2001));
+        servers.add(new Server("B", 1, 2002));
+        servers.add(new Server("C", 1, 2003));
+        LoadSnapshot snapshot = withLoad(withLoad(withLoad(LoadSnapshot.of(servers), "A", 5), "B", 2), "C", 7);
+
+        SelectionStrategy strategy = new LeastOutstandingRequestsStrategy();
+        assertEquals("B", select(strategy, snapshot, 1));
+
+        // Allocations since the last report count as outstanding requests
+        for (int i = 0; i < 4; i++) {
+            snapshot.recordAllocation(snapshot.indexOf("B"));
+        }
+        assertEquals("A", select(strategy, snapshot, 1));
+        assertEquals(4, snapshot.getRequests("B"));
+
+        // A new report of B resets its allocations since the report
+        snapshot = withLoad(snapshot, "B", 1);
+        assertEquals("B", select(strategy, snapshot, 1));
+        assertEquals(4, snapshot.getRequests("B"));
+    }
+
+    public void testKeyAffinity()
+    {
+        List<Server> servers = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            servers.add(new Server("Zone1Server" + i, 1, 2000 + i));
+        }
+        servers.add(new Server("Zone2Server", 2, 2010));
+        LoadSnapshot snapshot = LoadSnapshot.of(servers);
+
+        for (SelectionStrategy strategy : STRATEGIES) {
+            int[] keysPerServer = new int[servers.size()];
+            for (long key = 0; key < 400; key++) {
+                long keyHash = key * 0x9e3779b97f4a7c15L;
+                int selected = strategy.select(snapshot, 1, keyHash);
+                // The same key always goes to the same server, and keys spread over the zone's servers
+                assertEquals(selected, strategy.select(snapshot, 1, keyHash));
+                keysPerServer[selected]++;
+            }
+            for (int i = 0; i < 4; i++) {
+                assertTrue("keys of server " + i + ": " + keysPerServer[i], keysPerServer[i] > 50);
+            }
+            assertEquals(0, keysPerServer[4]);
+
+            // Overloading the key's server moves the key to another zone server, not to the neighbor zone
+            int selected = strategy.select(snapshot, 1, 42);
+            LoadSnapshot overloaded = withLoad(snapshot, snapshot.getServer(selected).getServerName(), 18);
+            int moved = strategy.select(overloaded, 1, 42);
+            assertTrue(moved != selected && snapshot.getServer(moved).getZone() == 1);
+
+            // Only when every zone server is overloaded does the key go to the neighbor zone
+            for (int i = 1; i <= 4; i++) {
+                overloaded = withLoad(overloaded, "Zone1Server" + i, 18);
+            }
+            assertEquals("Zone2Server", selectForKey(overloaded, strategy, 42));
+        }
+    }
+
+    private static String selectForKey(LoadSnapshot snapshot, SelectionStrategy strategy, long keyHash)
+    {
+        return snapshot.getServer(strategy.select(snapshot, 1, keyHash)).getServerName();
+    }
+
+    public void testConcurrentAllocations() throws Exception
+    {
+        LoadBalancerServer loadBalancer = new LoadBalancerServer(ServerLauncher.defaultServers(), new PowerOfTwoChoicesStrategy());
+        try {
+            int threads = 200;
+            int allocationsPerThread = 500;
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            AtomicBoolean running = new AtomicBoolean(true);
+
+            // Load reports keep replacing the snapshot during the allocations
+            Thread reporter = new Thread(() -> {
+                int load = 0;
+                while (running.get()) {
+                    try {
+                        loadBalancer.reportLoad("Server" + (load % 5 + 1), new ServerLoad(load++ % 25, 0));
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            reporter.start();
+
+            List<Thread> clients = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int zone = t % 5 + 1;
+                Thread client = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < allocationsPerThread; i++) {
+                            ServerAllocation allocation = loadBalancer.requestServerAllocation(zone);
+                            assertNotNull(allocation.getServerName());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                client.start();
+                clients.add(client);
+            }
+            start.countDown();
+            for (Thread client : clients) {
+                client.join();
+            }
+            running.set(false);
+            reporter.join();
+
+            assertNull(String.valueOf(failure.get()), failure.get());
+            LoadSnapshot snapshot = loadBalancer.getLoadSnapshot();
+            long requests = 0;
+            for (Server server : snapshot.getServers()) {
+                requests += snapshot.getRequests(server.getServerName());
+            }
+            assertEquals((long) threads * allocationsPerThread, requests);
+        } finally {
+            UnicastRemoteObject.unexportObject(loadBalancer, true);
+        }
+    }
+
+    public void testLoadReportLeavesPublishedSnapshots()
+    {
+        LoadSnapshot reported = withLoad(LoadSnapshot.of(ServerLauncher.defaultServers()), "Server1", 3);
+        int server1 = reported.indexOf("Server1");
+        reported.recordAllocations(server1, 4);
+        assertEquals(7, reported.getOutstanding(server1));
+
+        // The next report starts a new count in the new snapshot only, however often it is computed
+        withLoad(reported, "Server1", 5); // As a failed compare-and-set would
+        LoadSnapshot next = withLoad(reported, "Server1", 5);
+        assertEquals(7, reported.getOutstanding(server1));
+        assertEquals(5, next.getOutstanding(server1));
+
+        // The allocations made afterwards count in both
+        next.recordAllocation(server1);
+        assertEquals(8, reported.getOutstanding(server1));
+        assertEquals(6, next.getOutstanding(server1));
+        assertEquals(5, next.getRequests("Server1"));
+    }
+
+    public void testLeaseSizing() throws Exception
+    {
+        List<Server> servers = new ArrayList<>();
+        servers.add(new Server("A", 1, 2001));
+        servers.add(new Server("B", 1, 2002));
+        servers.add(new Server("Neighbor", 2, 2003));
+        LoadBalancerServer loadBalancer = new LoadBalancerServer(servers, new LeastOutstandingRequestsStrategy());
+        try {
+            // An idle server is leased up to its limit, and the whole lease counts as outstanding
+            ServerLease lease = loadBalancer.requestServerLease(1);
+            String leased = lease.getServerAllocation().getServerName();
+            assertEquals(TieredSelectionStrategy.ZONE_LOAD_LIMIT, lease.getMaxRequests());
+            assertEquals(LoadBalancerServer.DEFAULT_LEASE_MILLIS, lease.getTtlMillis());
+            LoadSnapshot snapshot = loadBalancer.getLoadSnapshot();
+            assertEquals(TieredSelectionStrategy.ZONE_LOAD_LIMIT, snapshot.getOutstanding(snapshot.indexOf(leased)));
+            assertEquals(TieredSelectionStrategy.ZONE_LOAD_LIMIT, snapshot.getRequests(leased));
+
+            // So the next lease goes to the other server instead of the same one
+            assertFalse(leased.equals(loadBalancer.requestServerLease(1).getServerAllocation().getServerName()));
+
+            // Above half of its limit, a server gets a short lease for the room it has left
+            loadBalancer.reportLoad("A", new ServerLoad(15, 0));
+            loadBalancer.reportLoad("B", new ServerLoad(16, 0));
+            lease = loadBalancer.requestServerLease(1);
+            assertEquals("A", lease.getServerAllocation().getServerName());
+            assertEquals(3, lease.getMaxRequests());
+            assertEquals(LoadBalancerServer.DEFAULT_LEASE_MILLIS / 4, lease.getTtlMillis());
+
+            // A neighbor zone's server is leased up to the lower neighbor limit
+            loadBalancer.reportLoad("A", new ServerLoad(18, 0));
+            loadBalancer.reportLoad("B", new ServerLoad(18, 0));
+            lease = loadBalancer.requestServerLease(1);
+            assertEquals("Neighbor", lease.getServerAllocation().getServerName());
+            assertEquals(TieredSelectionStrategy.NEIGHBOR_LOAD_LIMIT, lease.getMaxRequests());
+
+            // An overloaded server only gets a lease for a single request
+            loadBalancer.reportLoad("Neighbor", new ServerLoad(20, 0));
+            lease = loadBalancer.requestServerLease(1);
+            assertEquals(1, lease.getMaxRequests());
+            assertEquals(0, lease.getTtlMillis());
+        } finally {
+            UnicastRemoteObject.unexportObject(loadBalancer, true);
+        }
+    }
+
+    public void testSilentServersExpire() throws Exception
+    {
+        List<Server> servers = new ArrayList<>();
+        servers.add(new Server("Static", 1, 2001));
+        System.setProperty(LoadBalancerServer.SERVER_TIMEOUT_PROPERTY, "100");
+        LoadBalancerServer loadBalancer;
+        try {
+            loadBalancer = new LoadBalancerServer(servers);
+        } finally {
+            System.clearProperty(LoadBalancerServer.SERVER_TIMEOUT_PROPERTY);
+        }
+        try {
+            loadBalancer.registerServer(new Server("Registered", 1, 2002));
+            assertTrue(loadBalancer.reportLoad("Registered", new ServerLoad(1, 0)) >= 0);
+            assertEquals(2, loadBalancer.getServers().size());
+
+            // A registered server that stops reporting is dropped; a static one stays
+            Thread.sleep(250);
+            loadBalancer.expireSilentServers();
+            assertEquals(1, loadBalancer.getServers().size());
+            assertEquals("Static", loadBalancer.getServers().get(0).getServerName());
+            assertEquals(-1, loadBalancer.reportLoad("Registered", new ServerLoad(1, 0)));
+            assertTrue(loadBalancer.reportLoad("Static", new ServerLoad(1, 0)) >= 0);
+
+            // Registering again makes it allocatable again
+            loadBalancer.registerServer(new Server("Registered", 1, 2002));
+            assertEquals(2, loadBalancer.getServers().size());
+            assertTrue(loadBalancer.reportLoad("Registered", new ServerLoad(1, 0)) >= 0);
+        } finally {
+            UnicastRemoteObject.unexportObject(loadBalancer, true);
+        }
+    }
+
+    public void testSelectionDoesNotAllocate()
+    {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return; // Allocation counting is not available on this JVM
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+
+        LoadSnapshot snapshot = withLoad(LoadSnapshot.of(ServerLauncher.defaultServers()), "Server3", 20);
+        int calls = 1000000;
+        for (SelectionStrategy strategy : STRATEGIES) {
+            long checksum = 0;
+            for (int i = 0; i < 200000; i++) {
+                checksum += strategy.select(snapshot, i % 5 + 1);
+            }
+            long before = allocationBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < calls; i++) {
+                checksum += strategy.select(snapshot, i % 5 + 1);
+            }
+            long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+            double bytesPerCall = (double) allocated / calls;
+            System.out.println(strategy.getClass().getSimpleName() + ": " + bytesPerCall + " bytes allocated per selection (checksum " + checksum + ")");
+            assertTrue(strategy.getClass().getSimpleName() + " allocates " + bytesPerCall + " bytes per call", bytesPerCall < 1);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.java_rmi.server;
+
+import com.java_rmi.data_conector.CompactGeoDataTable;
+import com.java_rmi.data_conector.GeoData;
+import com.java_rmi.data_conector.GeoDataStore;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit test for the query log and the cache warm-up.
+ */
+public class CacheWarmerTest
+    extends TestCase
+{
+    private File traceFile;
+    private File logFile;
+
+    public CacheWarmerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CacheWarmerTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        traceFile = File.createTempFile("trace", ".txt");
+        logFile = File.createTempFile("server", QueryLog.FILE_EXTENSION);
+        try (FileWriter writer = new FileWriter(traceFile)) {
+            writer.write("getPopulationofCountry Ukraine Zone:1\n");
+            writer.write("getPopulationofCountry Ukraine Zone:2\n");
+            writer.write("getNumberofCities Ukraine 1000000 Zone:3\n");
+            writer.write("getNumberofCountries Ukraine 100 Zone:4\n");
+            writer.write("getNumberofCountries Chad 100 3000000 Zone:5\n");
+            writer.write("getPopulationofCountry Zone:1\n");
+        }
+    }
+
+    protected void tearDown()
+    {
+        System.clearProperty(QueryLog.SEED_PROPERTY);
+        traceFile.delete();
+        logFile.delete();
+    }
+
+    public void testLogIsSavedAndLoaded() throws IOException
+    {
+        QueryLog queryLog = new QueryLog(logFile.toPath(), 10);
+        queryLog.load(traceFile.toPath());
+        queryLog.record(Query.numberOfCountries(2, 500, 800000));
+        queryLog.record(Query.populationOfCountry("S\u00e3o Tom\u00e9"));
+        assertEquals(6, queryLog.size());
+        queryLog.save();
+
+        QueryLog loaded = new QueryLog(null, 10);
+        loaded.load(logFile.toPath());
+        List<Map.Entry<Query, Long>> entries = loaded.entriesByCount();
+        assertEquals(queryLog.entriesByCount().size(), entries.size());
+        assertEquals(Query.populationOfCountry("Ukraine"), entries.get(0).getKey());
+        assertEquals(Long.valueOf(2), entries.get(0).getValue());
+        for (Map.Entry<Query, Long> entry : queryLog.entriesByCount()) {
+            assertTrue(entries.contains(entry));
+        }
+    }
+
+    public void testWarmUpFillsTheCaches() throws Exception
+    {
+        System.setProperty(QueryLog.SEED_PROPERTY, traceFile.getPath());
+        List<GeoData> rows = Arrays.asList(
+                new GeoData("703448", "Kyiv", "UA", "Ukraine", 2797553, "Europe/Kiev", "50.45466, 30.5238"),
+                new GeoData("706483", "Kharkiv", "UA", "Ukraine", 1430885, "Europe/Kiev", "49.98081, 36.25272"),
+                new GeoData("2427123", "N'Djamena", "TD", "Chad", 721081, "Africa/Ndjamena", "12.10672, 15.0444"));
+        ServerImplementation server = new ServerImplementation("WarmUpTestServer", 0,
+                new GeoDataStore(new CompactGeoDataTable(rows), "test", 0, 1));
+        try {
+            CacheWarmer.Result result = new CacheWarmer(10, 60000, 2).warmUp(server);
+            assertEquals(4, result.getWarmedKeys());
+            assertEquals(1.0, result.getHitRate(), 0.0);
+            assertEquals(0, server.getCacheStats()[0].getMisses());
+
+            assertEquals(4228438, server.getPopulationOfCountry("Ukraine"));
+            assertEquals(1, server.getCacheStats()[0].getHits());
+            assertEquals(0, server.getCacheStats()[0].getMisses());
+            assertEquals(2, server.getNumberOfCities("Ukraine", 1000000));
+            assertEquals(1, server.getCacheStats()[1].getHits());
+            assertEquals(Long.valueOf(3), server.getQueryLog().entriesByCount().get(0).getValue());
+        } finally {
+            server.shutdown();
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    public void testPeerFetchesAreNotCounted() throws Exception
+    {
+        System.setProperty(QueryLog.SEED_PROPERTY, traceFile.getPath());
+        List<GeoData> rows = Arrays.asList(
+                new GeoData("703448", "Kyiv", "UA", "Ukraine", 2797553, "Europe/Kiev", "50.45466, 30.5238"));
+        ServerImplementation server = new ServerImplementation("PeerTestServer", 0,
+                new GeoDataStore(new CompactGeoDataTable(rows), "test", 0, 1));
+        try {
+            long requests = server.getServerMetrics().getRequests();
+            assertEquals(2797553, server.fetchOwned(Query.populationOfCountry("Ukraine"), 1).getResult());
+            assertNull(server.fetchOwned(Query.populationOfCountry("Ukraine"), 2)); // Not on that version
+            // The requesting server counted the query: the owner leaves it out of its metrics and log
+            assertEquals(requests, server.getServerMetrics().getRequests());
+            assertEquals(Long.valueOf(2), server.getQueryLog().entriesByCount().get(0).getValue());
+        } finally {
+            server.shutdown();
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    public void testShortBudgetWarmsTheMostFrequentQueries() throws Exception
+    {
+        try (FileWriter writer = new FileWriter(traceFile)) {
+            String[] lines = {"getPopulationofCountry Ukraine", "getPopulationofCountry Chad",
+                    "getNumberofCities Ukraine 1000000", "getNumberofCities Chad 0", "getNumberofCities Ukraine 0",
+                    "getNumberofCountries Ukraine 100"};
+            for (int i = 0; i < lines.length; i++) {
+                for (int repeat = 0; repeat < lines.length - i; repeat++) {
+                    writer.write(lines[i] + " Zone:1\n");
+                }
+            }
+        }
+        System.setProperty(QueryLog.SEED_PROPERTY, traceFile.getPath());
+        List<GeoData> rows = Arrays.asList(
+                new GeoData("703448", "Kyiv", "UA", "Ukraine", 2797553, "Europe/Kiev", "50.45466, 30.5238"),
+                new GeoData("2427123", "N'Djamena", "TD", "Chad", 721081, "Africa/Ndjamena", "12.10672, 15.0444"));
+        ServerImplementation server = new ServerImplementation("ShortWarmUpTestServer", 0,
+                new GeoDataStore(new CompactGeoDataTable(rows), "test", 0, 1));
+        try {
+            // Every reading of the clock takes a second, so a budget of 5 seconds covers 4 queries
+            AtomicLong now = new AtomicLong();
+            CacheWarmer.Result result = new CacheWarmer(6, 5000, 1, () -> now.getAndAdd(1000000000L)).warmUp(server);
+            assertEquals(4, result.getWarmedKeys());
+            assertTrue(server.isCached(Query.populationOfCountry("Ukraine")));
+            assertTrue(server.isCached(Query.numberOfCities("Chad", 0)));
+            assertFalse(server.isCached(Query.numberOfCities("Ukraine", 0)));
+            assertFalse(server.isCached(Query.numberOfCountriesOfCities("Ukraine", 100)));
+            assertEquals(18.0 / 21.0, result.getHitRate(), 1e-9);
+        } finally {
+            server.shutdown();
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+}
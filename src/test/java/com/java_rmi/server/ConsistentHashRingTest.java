@@ -0,0 +1,80 @@
+package com.java_rmi.server;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for ConsistentHashRing.
+ */
+public class ConsistentHashRingTest
+    extends TestCase
+{
+    private static final int KEYS = 20000;
+
+    public ConsistentHashRingTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ConsistentHashRingTest.class );
+    }
+
+    private static String key(int i)
+    {
+        return Query.numberOfCities("Country" + (i % 250), i).toString();
+    }
+
+    public void testOwnersAreSpreadAndStable()
+    {
+        List<String> members = Arrays.asList("Server1", "Server2", "Server3", "Server4", "Server5");
+        ConsistentHashRing ring = new ConsistentHashRing(members);
+        ConsistentHashRing sameMembers = new ConsistentHashRing(Arrays.asList("Server5", "Server3", "Server1", "Server2", "Server4"));
+
+        Map<String, Integer> keysPerMember = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String owner = ring.ownerOf(key(i));
+            assertEquals(owner, sameMembers.ownerOf(key(i)));
+            keysPerMember.merge(owner, 1, Integer::sum);
+        }
+        for (String member : members) {
+            int keys = keysPerMember.get(member);
+            assertTrue(member + " owns " + keys + " keys", keys > KEYS / 5 * 0.7 && keys < KEYS / 5 * 1.3);
+        }
+        assertNull(new ConsistentHashRing(Arrays.<String>asList()).ownerOf("key"));
+    }
+
+    public void testJoinAndLeaveMoveAboutOneNthOfTheKeys()
+    {
+        ConsistentHashRing five = new ConsistentHashRing(Arrays.asList("Server1", "Server2", "Server3", "Server4", "Server5"));
+        ConsistentHashRing six = new ConsistentHashRing(Arrays.asList("Server1", "Server2", "Server3", "Server4", "Server5", "Server6"));
+        ConsistentHashRing four = new ConsistentHashRing(Arrays.asList("Server1", "Server2", "Server4", "Server5"));
+
+        int movedOnJoin = 0;
+        int movedOnLeave = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = five.ownerOf(key(i));
+            String ownerAfterJoin = six.ownerOf(key(i));
+            if (!owner.equals(ownerAfterJoin)) {
+                // Keys only move to the new member
+                assertEquals("Server6", ownerAfterJoin);
+                movedOnJoin++;
+            }
+            String ownerAfterLeave = four.ownerOf(key(i));
+            if (!owner.equals(ownerAfterLeave)) {
+                // Only the keys of the member that left move
+                assertEquals("Server3", owner);
+                movedOnLeave++;
+            }
+        }
+        assertTrue("moved on join: " + movedOnJoin, movedOnJoin > KEYS / 6 * 0.7 && movedOnJoin < KEYS / 6 * 1.3);
+        assertTrue("moved on leave: " + movedOnLeave, movedOnLeave > KEYS / 5 * 0.7 && movedOnLeave < KEYS / 5 * 1.3);
+    }
+}
@@ -0,0 +1,174 @@
+package com.java_rmi.server;
+
+import com.java_rmi.data_conector.CountryIndex;
+import com.java_rmi.data_conector.GeoData;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the CountryQueryEngine against the original row-by-row getNumberOfCountries algorithm.
+ */
+public class CountryQueryEngineTest
+    extends TestCase
+{
+    private static final String[] COUNTRIES = {"Ukraine", "ukraine", "Brazil", "Chad", "Peru", "Palau", "Canada", "Tokelau"};
+
+    private List<GeoData> data;
+    private CountryIndex countryIndex;
+
+    public CountryQueryEngineTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CountryQueryEngineTest.class );
+    }
+
+    protected void setUp()
+    {
+        Random random = new Random(42);
+        data = new ArrayList<>();
+        for (int i = 0; i < 800; i++) {
+            String country = COUNTRIES[random.nextInt(COUNTRIES.length - 1)]; // Tokelau has no city
+            long population = random.nextInt(10) == 0 ? 0 : random.nextInt(200000);
+            data.add(new GeoData(String.valueOf(i), "City" + i, "XX", country, population, "UTC", "0,0"));
+        }
+        countryIndex = CountryIndex.build(data);
+    }
+
+    public void testLegacySemanticsMatchesOriginalAlgorithm()
+    {
+        CountryQueryEngine engine = new CountryQueryEngine(countryIndex, CountryQueryEngine.Semantics.LEGACY);
+        Random random = new Random(7);
+        for (int i = 0; i < 150; i++) {
+            int cityCount = random.nextInt(150) - 5;
+            int minPopulation = random.nextInt(220000);
+            int maxPopulation = random.nextInt(5) == 0 ? 0 : minPopulation + random.nextInt(100000);
+
+            assertEquals(legacyCountries(cityCount, minPopulation), engine.getNumberOfCountries(cityCount, minPopulation));
+            assertEquals(legacyCountries(cityCount, minPopulation, maxPopulation),
+                    engine.getNumberOfCountries(cityCount, minPopulation, maxPopulation));
+        }
+    }
+
+    public void testLegacySemanticsWithUnevenCountries()
+    {
+        // One country with many more cities than the others, so the rank tree has many levels
+        Random random = new Random(3);
+        List<GeoData> uneven = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String country = i % 3 == 0 ? COUNTRIES[random.nextInt(COUNTRIES.length - 1)] : "Canada";
+            uneven.add(new GeoData(String.valueOf(i), "City" + i, "XX", country, random.nextInt(50000), "UTC", "0,0"));
+        }
+        CountryIndex unevenIndex = CountryIndex.build(uneven);
+        CountryQueryEngine engine = new CountryQueryEngine(unevenIndex, CountryQueryEngine.Semantics.LEGACY);
+        for (int i = 0; i < 300; i++) {
+            int cityCount = i < 20 ? i : random.nextInt(2100);
+            long minPopulation = random.nextInt(55000);
+
+            // Every country with at least cityCount cities of minPopulation or more counts all of them
+            int expected = 0;
+            for (CountryIndex.Entry entry : unevenIndex.getCountries()) {
+                int cities = entry.countCitiesAtLeast(minPopulation);
+                if (cities >= cityCount) {
+                    expected += cities;
+                }
+            }
+            assertEquals(expected, engine.getNumberOfCountries(cityCount, minPopulation));
+        }
+    }
+
+    public void testTraceStyleQueries()
+    {
+        // The client resolves the first argument of a getNumberofCountries line as a country name, so the
+        // trace sends a city count of 0 and, for the two-argument lines, a maximum population of 0.
+        CountryQueryEngine engine = new CountryQueryEngine(countryIndex, CountryQueryEngine.Semantics.LEGACY);
+        assertEquals(legacyCountries(0, 24006), engine.getNumberOfCountries(0, 24006));
+        assertEquals(0, engine.getNumberOfCountries(0, 24006, 0));
+        assertEquals(legacyCountries(0, 0), engine.getNumberOfCountries(0, 0));
+    }
+
+    public void testDistinctSemanticsCountsEachCountryOnce()
+    {
+        CountryQueryEngine engine = new CountryQueryEngine(countryIndex, CountryQueryEngine.Semantics.DISTINCT);
+        Random random = new Random(11);
+        for (int i = 0; i < 150; i++) {
+            int cityCount = random.nextInt(150) - 5;
+            int minPopulation = random.nextInt(220000);
+            int maxPopulation = minPopulation + random.nextInt(100000);
+
+            assertEquals(distinctCountries(cityCount, minPopulation, Long.MAX_VALUE), engine.getNumberOfCountries(cityCount, minPopulation));
+            assertEquals(distinctCountries(cityCount, minPopulation, maxPopulation),
+                    engine.getNumberOfCountries(cityCount, minPopulation, maxPopulation));
+        }
+    }
+
+    private int legacyCities(String countryName, int minPopulation)
+    {
+        int cityCount = 0;
+        for (GeoData geoData : data) {
+            if (geoData.getCountryNameEn().equalsIgnoreCase(countryName) && geoData.getPopulation() >= minPopulation) {
+                cityCount++;
+            }
+        }
+        return cityCount;
+    }
+
+    private int legacyCountries(int cityCount, int minPopulation)
+    {
+        int countryCount = 0;
+        for (GeoData geoData : data) {
+            if (geoData.getPopulation() >= minPopulation) {
+                if (legacyCities(geoData.getCountryNameEn(), minPopulation) >= cityCount) {
+                    countryCount++;
+                }
+            }
+        }
+        return countryCount;
+    }
+
+    private int legacyCountries(int cityCount, int minPopulation, int maxPopulation)
+    {
+        int countryCount = 0;
+        for (GeoData geoData : data) {
+            long population = geoData.getPopulation();
+            if (population >= minPopulation && population <= maxPopulation) {
+                if (legacyCities(geoData.getCountryNameEn(), minPopulation) >= cityCount) {
+                    countryCount++;
+                }
+            }
+        }
+        return countryCount;
+    }
+
+    private int distinctCountries(int cityCount, long minPopulation, long maxPopulation)
+    {
+        Set<String> countries = new HashSet<>();
+        for (GeoData geoData : data) {
+            countries.add(geoData.getCountryNameEn().toLowerCase());
+        }
+        int countryCount = 0;
+        for (String country : countries) {
+            int cities = 0;
+            for (GeoData geoData : data) {
+                long population = geoData.getPopulation();
+                if (geoData.getCountryNameEn().equalsIgnoreCase(country) && population >= minPopulation && population <= maxPopulation) {
+                    cities++;
+                }
+            }
+            if (cities >= cityCount) {
+                countryCount++;
+            }
+        }
+        return countryCount;
+    }
+}
@@ -0,0 +1,137 @@
+package com.java_rmi.server;
+
+import com.java_rmi.data_conector.CompactGeoDataTable;
+import com.java_rmi.data_conector.GeoData;
+import com.java_rmi.data_conector.GeoDataSnapshot;
+import com.java_rmi.data_conector.GeoDataStore;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit test for reloading the dataset of a running server.
+ */
+public class DatasetReloadTest
+    extends TestCase
+{
+    private File csvFile;
+    private ServerImplementation server;
+
+    public DatasetReloadTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( DatasetReloadTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        csvFile = File.createTempFile("dataset", ".csv");
+        writeDataset(2797553);
+        server = new ServerImplementation("ReloadTestServer", 0, GeoDataStore.load(csvFile.getPath()));
+    }
+
+    protected void tearDown() throws IOException
+    {
+        server.shutdown();
+        UnicastRemoteObject.unexportObject(server, true);
+        csvFile.delete();
+        new File(GeoDataSnapshot.snapshotFileFor(csvFile.getPath())).delete();
+    }
+
+    private void writeDataset(long kyivPopulation) throws IOException
+    {
+        try (FileWriter writer = new FileWriter(csvFile)) {
+            writer.write("Geoname ID,Name,Country Code,Country name EN,Population,Timezone,Coordinates\n");
+            writer.write("703448,Kyiv,UA,Ukraine," + kyivPopulation + ",Europe/Kiev,\"50.45466, 30.5238\"\n");
+            writer.write("706483,Kharkiv,UA,Ukraine,1430885,Europe/Kiev,\"49.98081, 36.25272\"\n");
+            writer.write("2427123,N'Djamena,TD,Chad,721081,Africa/Ndjamena,\"12.10672, 15.0444\"\n");
+        }
+    }
+
+    public void testReloadInvalidatesOnlyTheChangedCountries() throws Exception
+    {
+        assertEquals(4228438, server.getPopulationOfCountry("Ukraine"));
+        assertEquals(721081, server.getPopulationOfCountry("Chad"));
+        assertEquals(2, server.getNumberOfCities("ukraine", 1000000));
+        assertEquals(1, server.getDatasetVersion());
+
+        writeDataset(500000);
+        csvFile.setLastModified(csvFile.lastModified() + 2000);
+        DatasetWatcher watcher = new DatasetWatcher(server.getDataStore(), 60000);
+        watcher.addServer(server);
+        assertFalse(watcher.reloadIfChanged()); // The change must be seen twice
+        assertTrue(watcher.reloadIfChanged());
+        assertFalse(watcher.reloadIfChanged());
+        assertEquals(2, server.getDatasetVersion());
+        assertEquals(2, server.getServerMetrics().getDatasetVersion());
+
+        long hits = server.getCacheStats()[0].getHits();
+        assertEquals(721081, server.getPopulationOfCountry("Chad"));
+        assertEquals(hits + 1, server.getCacheStats()[0].getHits());
+        assertEquals(1930885, server.getPopulationOfCountry("Ukraine"));
+        assertEquals(1, server.getNumberOfCities("ukraine", 1000000));
+    }
+
+    public void testQueriesDuringReloadsSeeOneVersion() throws Exception
+    {
+        GeoDataStore[] versions = new GeoDataStore[2];
+        for (int i = 0; i < versions.length; i++) {
+            List<GeoData> rows = Arrays.asList(
+                    new GeoData("1", "Kyiv", "UA", "Ukraine", 1000 * (i + 1), "Europe/Kiev", "50.4, 30.5"),
+                    new GeoData("2", "Lviv", "UA", "Ukraine", 100, "Europe/Kiev", "49.8, 24.0"));
+            versions[i] = new GeoDataStore(new CompactGeoDataTable(rows), "test", 0, i + 2);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        long population = server.getPopulationOfCountry("Ukraine");
+                        if (population != 1100 && population != 2100 && population != 4228438) {
+                            failure.set("Unexpected population " + population);
+                        }
+                        // A result is stamped with the version it comes from, cached or not
+                        QueryResult result = server.executeTimed(Query.populationOfCountry("Ukraine"));
+                        long expected = result.getDatasetVersion() == 1 ? 4228438 : result.getDatasetVersion() == 2 ? 1100 : 2100;
+                        if (result.getResult() != expected) {
+                            failure.set("Population " + result.getResult() + " stamped with version " + result.getDatasetVersion());
+                        }
+                    } catch (Exception e) {
+                        failure.set(e.toString());
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (int swap = 0; swap < 50; swap++) {
+            server.swapDataStore(versions[swap % 2]);
+            Thread.yield();
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        // No result of an older version may stay cached
+        assertEquals(2100, server.getPopulationOfCountry("Ukraine"));
+        assertEquals(3, server.getDatasetVersion());
+    }
+}
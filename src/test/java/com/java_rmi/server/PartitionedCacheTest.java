@@ -0,0 +1,200 @@
+package com.java_rmi.server;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Unit and concurrency test for the sharing of query results between in-process peers.
+ */
+public class PartitionedCacheTest
+    extends TestCase
+{
+    private static final long VERSION = 1;
+
+    public PartitionedCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PartitionedCacheTest.class );
+    }
+
+    private static List<Server> members(String... serverNames)
+    {
+        List<Server> servers = new ArrayList<>();
+        for (int i = 0; i < serverNames.length; i++) {
+            servers.add(new Server(serverNames[i], 1, 1 + i));
+        }
+        return servers;
+    }
+
+    /**
+     * Finds a query owned by a server in one ring and by another server in a second ring.
+     */
+    private static Query queryOwnedBy(ConsistentHashRing ring, String owner, ConsistentHashRing otherRing, String otherOwner)
+    {
+        for (int i = 0; ; i++) {
+            Query query = Query.populationOfCountry("Country" + i);
+            if (owner.equals(ring.ownerOf(query.toString())) && otherOwner.equals(otherRing.ownerOf(query.toString()))) {
+                return query;
+            }
+        }
+    }
+
+    /**
+     * A peer whose fetchOwned is answered by a handler; its other methods are not used.
+     */
+    private static ServerInterface peer(InvocationHandler fetchOwned)
+    {
+        return (ServerInterface) Proxy.newProxyInstance(ServerInterface.class.getClassLoader(),
+                new Class<?>[]{ServerInterface.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("fetchOwned")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return fetchOwned.invoke(proxy, method, args);
+                });
+    }
+
+    /**
+     * A peer served by the partitioned cache of another server, the way ServerImplementation.fetchOwned
+     * serves it: the owner resolves the query itself, on the asked version only.
+     */
+    private static ServerInterface peer(PartitionedCache owner, LongSupplier compute, AtomicInteger fetches)
+    {
+        return peer((proxy, method, args) -> {
+            fetches.incrementAndGet();
+            Query query = (Query) args[0];
+            long datasetVersion = (Long) args[1];
+            if (datasetVersion != VERSION) {
+                return null;
+            }
+            long result = owner.serveOwned(query, () -> owner.resolve(query, datasetVersion, compute));
+            return new QueryResult(result, 0, 0, datasetVersion);
+        });
+    }
+
+    public void testOwnerComputesOnce() throws Exception
+    {
+        PartitionedCache serverA = new PartitionedCache("A");
+        PartitionedCache serverB = new PartitionedCache("B");
+        serverA.updateMembers(members("A", "B"));
+        serverB.updateMembers(members("A", "B"));
+        Query query = queryOwnedBy(serverA.getRing(), "B", serverB.getRing(), "B");
+
+        AtomicInteger computationsOfB = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        LongSupplier computeOnB = () -> {
+            computationsOfB.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 42;
+        };
+        LongSupplier computeOnA = () -> {
+            throw new AssertionError("A does not own " + query);
+        };
+        serverA.setPeerStub("B", peer(serverB, computeOnB, new AtomicInteger()));
+
+        // Half of the callers miss on A and are forwarded to B, the others miss on B itself
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                PartitionedCache server = i % 2 == 0 ? serverA : serverB;
+                LongSupplier compute = i % 2 == 0 ? computeOnA : computeOnB;
+                results.add(executor.submit(() -> server.resolve(query, VERSION, compute)));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (serverB.getJoinedComputations() < callers - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<Long> result : results) {
+                assertEquals(Long.valueOf(42), result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, computationsOfB.get());
+        assertEquals(1, serverB.getComputations());
+        assertEquals(callers - 1, serverB.getJoinedComputations());
+        assertEquals(callers / 2, serverB.getServedToPeers());
+        assertEquals(callers / 2, serverA.getPeerFetches());
+        assertEquals(0, serverA.getComputations());
+    }
+
+    public void testFailingPeerFallsBackLocally() throws Exception
+    {
+        PartitionedCache serverA = new PartitionedCache("A");
+        serverA.updateMembers(members("A", "B"));
+        Query query = queryOwnedBy(serverA.getRing(), "B", serverA.getRing(), "B");
+        AtomicInteger fetches = new AtomicInteger();
+        serverA.setPeerStub("B", peer((proxy, method, args) -> {
+            fetches.incrementAndGet();
+            throw new RemoteException("Connection refused");
+        }));
+
+        assertEquals(7, serverA.resolve(query, VERSION, () -> 7));
+        assertEquals(1, fetches.get());
+        assertEquals(1, serverA.getPeerFailures());
+        assertEquals(1, serverA.getComputations());
+        assertEquals(0, serverA.getPeerFetches());
+
+        // An owner on another version of the dataset is not trusted either
+        PartitionedCache serverB = new PartitionedCache("B");
+        serverB.updateMembers(members("A", "B"));
+        serverA.setPeerStub("B", peer(serverB, () -> 8, fetches));
+        assertEquals(9, serverA.resolve(query, VERSION + 1, () -> 9));
+        assertEquals(1, serverA.getVersionMismatches());
+        assertEquals(0, serverB.getComputations());
+        assertEquals(8, serverA.resolve(query, VERSION, () -> 9));
+        assertEquals(1, serverA.getPeerFetches());
+    }
+
+    public void testForwardedQueryIsNotForwardedAgain() throws Exception
+    {
+        // B already knows about C, which owns the query for B, while A still sends it to B
+        PartitionedCache serverA = new PartitionedCache("A");
+        PartitionedCache serverB = new PartitionedCache("B");
+        serverA.updateMembers(members("A", "B"));
+        serverB.updateMembers(members("A", "B", "C"));
+        Query query = queryOwnedBy(serverA.getRing(), "B", serverB.getRing(), "C");
+
+        AtomicInteger fetchesOfB = new AtomicInteger();
+        AtomicInteger fetchesOfC = new AtomicInteger();
+        serverA.setPeerStub("B", peer(serverB, () -> 5, fetchesOfB));
+        serverB.setPeerStub("C", peer(new PartitionedCache("C"), () -> 6, fetchesOfC));
+
+        assertEquals(5, serverA.resolve(query, VERSION, () -> 4));
+        assertEquals(1, fetchesOfB.get());
+        assertEquals(0, fetchesOfC.get());
+        assertEquals(1, serverB.getComputations());
+
+        // B's own misses still go to C
+        assertEquals(6, serverB.resolve(query, VERSION, () -> 5));
+        assertEquals(1, fetchesOfC.get());
+        assertEquals(1, serverB.getPeerFetches());
+        assertEquals(0, serverA.getComputations());
+    }
+}
@@ -0,0 +1,128 @@
+package com.java_rmi.server;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit test for the bounded queue and the load accounting of RequestExecutor.
+ */
+public class RequestExecutorTest
+    extends TestCase
+{
+    public RequestExecutorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( RequestExecutorTest.class );
+    }
+
+    public void testFullQueueRejectsAndCountsTheLoad() throws Exception
+    {
+        RequestExecutor executor = new RequestExecutor("RequestExecutorTest", 1, 2, false);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<CompletableFuture<Integer>> results = new ArrayList<>();
+            results.add(executor.submit(() -> {
+                running.countDown();
+                release.await();
+                return 1;
+            }));
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            results.add(executor.submit(() -> 2));
+            results.add(executor.submit(() -> 3));
+            assertEquals(1, executor.getInFlight());
+            assertEquals(2, executor.getQueued());
+            assertTrue(executor.isSaturated());
+
+            // The worker is busy and the queue is full: both ways in are rejected
+            try {
+                executor.submit(() -> 4);
+                fail("Expected the queue to be full");
+            } catch (RemoteException e) {
+                assertEquals("Server queue is full, request rejected", e.getMessage());
+            }
+            try {
+                executor.execute(() -> 5);
+                fail("Expected the queue to be full");
+            } catch (RemoteException e) {
+                assertEquals("Server queue is full, request rejected", e.getMessage());
+            }
+            assertEquals(2, executor.getRejectedRequests());
+            assertEquals(2, executor.getQueued());
+
+            release.countDown();
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(Integer.valueOf(i + 1), results.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(Integer.valueOf(6), executor.execute(() -> 6));
+            assertEquals(0, executor.getInFlight());
+            assertEquals(0, executor.getQueued());
+            assertFalse(executor.isSaturated());
+            assertEquals(4, executor.getCompletedRequests());
+            assertTrue(executor.getTotalWaitNanos() > 0);
+            assertTrue(executor.getTotalExecutionNanos() > 0);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    public void testInterruptedCallLeavesTheQueue() throws Exception
+    {
+        RequestExecutor executor = new RequestExecutor("RequestExecutorTest", 1, 1, false);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Integer> busy = executor.submit(() -> {
+                running.countDown();
+                release.await();
+                return 1;
+            });
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            Thread caller = new Thread(() -> {
+                try {
+                    executor.execute(() -> 2);
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            });
+            caller.start();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!executor.isSaturated() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, executor.getQueued());
+            caller.interrupt();
+            caller.join(5000);
+
+            assertTrue(failure.get() instanceof RemoteException);
+            // The cancelled request no longer counts in the load, nor takes a place in the queue
+            assertEquals(0, executor.getQueued());
+            assertFalse(executor.isSaturated());
+
+            release.countDown();
+            assertEquals(Integer.valueOf(1), busy.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(3), executor.execute(() -> 3));
+            assertEquals(0, executor.getQueued());
+            assertEquals(2, executor.getCompletedRequests());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+}
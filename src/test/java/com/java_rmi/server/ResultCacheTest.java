@@ -0,0 +1,128 @@
+package com.java_rmi.server;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit and concurrency stress test for ResultCache.
+ */
+public class ResultCacheTest
+    extends TestCase
+{
+    public ResultCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ResultCacheTest.class );
+    }
+
+    public void testEvictsLeastRecentlyUsedEntry()
+    {
+        ResultCache<String, Long> cache = new ResultCache<>("test", 3);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        cache.put("c", 3L);
+        assertEquals(Long.valueOf(1L), cache.get("a")); // "b" is now the least recently used entry
+        cache.put("d", 4L);
+
+        assertNull(cache.get("b"));
+        assertEquals(Long.valueOf(1L), cache.get("a"));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testInvalidationDoesNotBlockTheQueries() throws InterruptedException
+    {
+        ResultCache<String, Long> cache = new ResultCache<>("test", 3);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        AtomicReference<Long> seen = new AtomicReference<>();
+
+        int removed = cache.invalidateIf((key, value) -> {
+            if (key.equals("a")) {
+                // A query replaces the entry while the condition is tested
+                Thread query = new Thread(() -> {
+                    seen.set(cache.get("b"));
+                    cache.put("a", 10L);
+                });
+                query.start();
+                try {
+                    query.join(5000);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                assertFalse("The query waited for the invalidation", query.isAlive());
+            }
+            return true;
+        });
+
+        assertEquals(Long.valueOf(2L), seen.get());
+        assertEquals(1, removed);
+        assertEquals(Long.valueOf(10L), cache.get("a")); // Replaced, so kept
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    public void testConcurrentAccessStaysBoundedAndConsistent() throws InterruptedException
+    {
+        final int capacity = 150;
+        final int threads = 16;
+        final int operations = 200000;
+        final int keys = 1000;
+        final ResultCache<String, Long> cache = new ResultCache<>("stress", capacity);
+        final AtomicInteger gets = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operations; i++) {
+                    // Skew the keys so that some of them stay hot
+                    int key = random.nextInt(4) == 0 ? random.nextInt(keys) : random.nextInt(keys / 20);
+                    Long value = cache.get("key" + key);
+                    gets.incrementAndGet();
+                    if (value == null) {
+                        cache.put("key" + key, (long) key * 31);
+                    } else if (value != (long) key * 31) {
+                        failure.compareAndSet(null, "Wrong value " + value + " for key " + key);
+                    }
+                    if (cache.size() > capacity) {
+                        failure.compareAndSet(null, "Cache grew to " + cache.size() + " entries");
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertTrue(cache.size() <= capacity);
+        assertEquals(gets.get(), cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.getHitCount() > 0);
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+}
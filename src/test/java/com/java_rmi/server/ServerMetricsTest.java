@@ -0,0 +1,84 @@
+package com.java_rmi.server;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * Unit test for ServerMetrics.
+ */
+public class ServerMetricsTest
+    extends TestCase
+{
+    public ServerMetricsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ServerMetricsTest.class );
+    }
+
+    private static ServerMetrics metrics(String serverName, long requests, long latencyNanos, long hits)
+    {
+        LatencyHistogram latency = new LatencyHistogram();
+        for (int i = 0; i < requests; i++)
+        {
+            latency.record(latencyNanos);
+        }
+        ServerMetrics.MethodMetrics[] methods = {
+                new ServerMetrics.MethodMetrics("NUMBER_OF_CITIES", requests, 1, latency)
+        };
+        CacheStats[] caches = { new CacheStats("cities", hits, requests - hits, 0, 10, 150) };
+        return new ServerMetrics(serverName, 0, methods, caches, 1, 2, requests, 0, 100, 1000, 10);
+    }
+
+    public void testMergeSumsTheServers()
+    {
+        ServerMetrics fleet = ServerMetrics.merge("fleet",
+                Arrays.asList(metrics("Server1", 10, 1000, 4), metrics("Server2", 30, 3000, 6)));
+
+        assertEquals(40, fleet.getRequests());
+        assertEquals(2, fleet.getErrors());
+        assertEquals(4, fleet.getQueued());
+        assertEquals(2000, fleet.getTableHeapBytes());
+        assertEquals(1, fleet.getMethods().length);
+        LatencyHistogram latency = fleet.getMethods()[0].getLatency();
+        assertEquals(40, latency.getCount());
+        assertEquals(2500.0, latency.getMean(), 1e-9);
+        assertTrue(latency.getValueAtPercentile(50) >= 3000);
+        assertEquals(1, fleet.getCaches().length);
+        assertEquals(10, fleet.getCaches()[0].getHits());
+        assertEquals(300, fleet.getCaches()[0].getCapacity());
+    }
+
+    public void testSerializedHistogramKeepsItsBuckets() throws Exception
+    {
+        ServerMetrics original = metrics("Server1", 1000, 123456, 500);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(original);
+        }
+        assertTrue("Only the non-empty buckets are written: " + bytes.size(), bytes.size() < 4000);
+
+        ServerMetrics copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            copy = (ServerMetrics) in.readObject();
+        }
+        LatencyHistogram latency = copy.getMethods()[0].getLatency();
+        assertEquals(1000, latency.getCount());
+        assertEquals(123456, latency.getMax());
+        assertEquals(original.getMethods()[0].getLatency().getValueAtPercentile(99), latency.getValueAtPercentile(99));
+        latency.record(1);
+        assertEquals(1001, latency.getCount());
+    }
+}